@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+/**
+ * A force that only adds to the vertex velocities.
+ * <p>
+ * Such a force doesn't depend on what the other forces do in the same tick,
+ * so a simulation can evaluate it concurrently with other accumulating forces,
+ * each into velocity buffers of its own, and add the buffers to the vertex
+ * velocities afterwards.
+ *
+ * @author algol
+ */
+public interface AccumulatingForce extends Force {
+    /**
+     * Add the force's contribution to the velocities to the given buffers.
+     * <p>
+     * The vertices must not be modified, because other forces may be reading
+     * them at the same time. Where a force reads the velocities, it sees the
+     * velocities that the vertices had at the start of the tick plus its own
+     * contribution so far.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvel The x velocity buffer, indexed by vertex index.
+     * @param yvel The y velocity buffer, indexed by vertex index.
+     */
+    void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel);
+
+    /**
+     * Can this force be accumulated?
+     * <p>
+     * Forces that wrap other forces override this to say whether the wrapped
+     * force can be accumulated.
+     *
+     * @return True if accumulate() can be used instead of force().
+     */
+    default boolean isAccumulating() {
+        return true;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.function.IntPredicate;
+
+/**
+ * The subset of vertices that are free to move.
+ * <p>
+ * Vertices that are not in the set are held fixed: forces still use them as
+ * sources, but their positions and velocities are not changed.
+ * <p>
+ * The members are kept in a compact array of vertex indexes so loops over
+ * the active vertices stay dense. The version changes every time the
+ * membership changes, so forces can cache anything that depends on
+ * the fixed vertices until it does.
+ *
+ * @author algol
+ */
+public final class ActiveSet {
+    private final int[] indexes;
+    private final int[] slots;
+    private final boolean[] member;
+    private int size;
+    private int version;
+
+    /**
+     * Create an empty active set.
+     *
+     * @param n The number of vertices in the simulation.
+     */
+    public ActiveSet(final int n) {
+        indexes = new int[n];
+        slots = new int[n];
+        member = new boolean[n];
+        size = 0;
+        version = 0;
+    }
+
+    /**
+     * Add a vertex to the active set.
+     *
+     * @param index The index of the vertex.
+     *
+     * @return True if the vertex was not already active.
+     */
+    public boolean add(final int index) {
+        if(member[index]) {
+            return false;
+        }
+
+        member[index] = true;
+        slots[index] = size;
+        indexes[size++] = index;
+        version++;
+
+        return true;
+    }
+
+    /**
+     * Remove a vertex from the active set.
+     * <p>
+     * The last active vertex takes the place of the removed vertex,
+     * so the order of the active vertices changes.
+     *
+     * @param index The index of the vertex.
+     *
+     * @return True if the vertex was active.
+     */
+    public boolean remove(final int index) {
+        if(!member[index]) {
+            return false;
+        }
+
+        member[index] = false;
+        final int last = indexes[--size];
+        indexes[slots[index]] = last;
+        slots[last] = slots[index];
+        version++;
+
+        return true;
+    }
+
+    /**
+     * Remove every vertex that matches the predicate.
+     * <p>
+     * Unlike remove(), this keeps the remaining vertices in order.
+     *
+     * @param filter A predicate on vertex indexes.
+     *
+     * @return The number of vertices removed.
+     */
+    public int removeIf(final IntPredicate filter) {
+        int kept = 0;
+        for(int i=0; i<size; i++) {
+            final int index = indexes[i];
+            if(filter.test(index)) {
+                member[index] = false;
+            } else {
+                slots[index] = kept;
+                indexes[kept++] = index;
+            }
+        }
+
+        final int removed = size - kept;
+        size = kept;
+        if(removed>0) {
+            version++;
+        }
+
+        return removed;
+    }
+
+    public void clear() {
+        for(int i=0; i<size; i++) {
+            member[indexes[i]] = false;
+        }
+
+        size = 0;
+        version++;
+    }
+
+    public boolean contains(final int index) {
+        return member[index];
+    }
+
+    /**
+     * The number of active vertices.
+     *
+     * @return The number of active vertices.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of vertices in the simulation.
+     *
+     * @return The number of vertices in the simulation.
+     */
+    public int capacity() {
+        return member.length;
+    }
+
+    /**
+     * The index of the i'th active vertex.
+     *
+     * @param i A value from 0 to size()-1.
+     *
+     * @return The index of the i'th active vertex.
+     */
+    public int get(final int i) {
+        return indexes[i];
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
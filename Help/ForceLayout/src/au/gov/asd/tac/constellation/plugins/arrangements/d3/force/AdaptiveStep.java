@@ -0,0 +1,274 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Adaptive integration for a Simulation.
+ * <p>
+ * The force on a vertex in a tick is the change that the forces made to
+ * its velocity. Each vertex has its own step size that scales its force:
+ * the step grows while the vertex's force keeps pointing the same way,
+ * and shrinks when the force reverses, which is a vertex oscillating
+ * about its position.
+ * <p>
+ * The forces are also scaled by a heat that follows Hu's adaptive
+ * cooling: the heat falls whenever the energy (the sum of the squared
+ * forces at an alpha of 1) rises, and is raised again after five ticks in
+ * a row in which the energy falls. The layout has converged when the mean
+ * distance moved in a tick is a small fraction of the spread of the
+ * vertices.
+ * <p>
+ * Constraints, such as ForceCollide, correct the positions the vertices
+ * are about to move to, so the forces are scaled before the constraints
+ * are applied, and the constraints see the velocities the vertices will
+ * actually move with. Their corrections are added in full and aren't
+ * counted in the energy. A step is adjusted by comparing the force with
+ * the whole change of the last tick, corrections included, so a force
+ * that a constraint holds back doesn't keep growing its step.
+ *
+ * @author algol
+ */
+final class AdaptiveStep {
+    private static final double STEP_GROWTH = 1.2;
+    private static final double STEP_SHRINK = 0.5;
+    private static final double STEP_MIN = 0.1;
+    private static final double STEP_MAX = 4;
+    private static final double COOLING = 0.97;
+    private static final double HEAT_MIN = 0.01;
+    private static final int PROGRESS_TICKS = 5;
+
+    private final List<IVertex> vxs;
+    private final int dimensions;
+    private final double[] steps;
+
+    // The velocities before the forces of this tick, the changes to the
+    // velocities in the last tick, and the squared forces of this tick.
+    //
+    private final double[] xvel;
+    private final double[] yvel;
+    private final double[] zvel;
+    private final double[] xforce;
+    private final double[] yforce;
+    private final double[] zforce;
+    private final double[] force2;
+    private boolean constrained;
+
+    private double heat;
+    private double lastEnergy;
+    private int progress;
+
+    // Sums over the vertices integrated in this tick.
+    //
+    private int count;
+    private double energy;
+    private double moved;
+    private final double[] sums;
+    private final double[] squares;
+
+    AdaptiveStep(final List<IVertex> vxs, final int dimensions) {
+        this.vxs = vxs;
+        this.dimensions = dimensions;
+        final int n = vxs.size();
+        steps = new double[n];
+        xvel = new double[n];
+        yvel = new double[n];
+        zvel = new double[n];
+        xforce = new double[n];
+        yforce = new double[n];
+        zforce = new double[n];
+        force2 = new double[n];
+        sums = new double[3];
+        squares = new double[3];
+        reset();
+    }
+
+    /**
+     * Forget the state of the layout, as after a reheat.
+     */
+    void reset() {
+        Arrays.fill(steps, 1);
+        Arrays.fill(xforce, 0);
+        Arrays.fill(yforce, 0);
+        Arrays.fill(zforce, 0);
+        heat = 1;
+        lastEnergy = Double.POSITIVE_INFINITY;
+        progress = 0;
+    }
+
+    int size() {
+        return steps.length;
+    }
+
+    double getHeat() {
+        return heat;
+    }
+
+    /**
+     * Start a tick: remember the velocities before the forces are applied.
+     *
+     * @param set The vertices that are free to move, or null for every vertex.
+     */
+    void start(final ActiveSet set) {
+        final int n = set==null ? vxs.size() : set.size();
+        Util.parallelFor(n, j -> {
+            final IVertex vx = vxs.get(set==null ? j : set.get(j));
+            final int i = vx.getIndex();
+            xvel[i] = vx.getXVelocity();
+            yvel[i] = vx.getYVelocity();
+            zvel[i] = dimensions==3 ? ((IVertex3)vx).getZVelocity() : 0;
+        });
+
+        constrained = false;
+        count = 0;
+        energy = 0;
+        moved = 0;
+        Arrays.fill(sums, 0);
+        Arrays.fill(squares, 0);
+    }
+
+    /**
+     * The forces of this tick are done: scale them before the constraints are applied.
+     *
+     * @param set The vertices that are free to move, or null for every vertex.
+     */
+    void constrain(final ActiveSet set) {
+        final int n = set==null ? vxs.size() : set.size();
+        Util.parallelFor(n, j -> scale(vxs.get(set==null ? j : set.get(j))));
+        constrained = true;
+    }
+
+    /**
+     * Scale a vertex's force by its own step.
+     * <p>
+     * The step is adjusted first by the angle between this tick's force
+     * and the last tick's change. The velocity becomes the velocity before
+     * the forces plus the scaled force.
+     */
+    private void scale(final IVertex vx) {
+        final int i = vx.getIndex();
+        final double fx = vx.getXVelocity() - xvel[i];
+        final double fy = vx.getYVelocity() - yvel[i];
+        final double fz = dimensions==3 ? ((IVertex3)vx).getZVelocity() - zvel[i] : 0;
+
+        // The cosine of the angle between this tick's force and the last change.
+        //
+        final double dot = fx*xforce[i] + fy*yforce[i] + fz*zforce[i];
+        final double f2 = fx*fx + fy*fy + fz*fz;
+        final double last2 = xforce[i]*xforce[i] + yforce[i]*yforce[i] + zforce[i]*zforce[i];
+        if(f2>0 && last2>0) {
+            final double cos = dot / Math.sqrt(f2 * last2);
+            if(cos>0.5) {
+                steps[i] = Math.min(steps[i] * STEP_GROWTH, STEP_MAX);
+            } else if(cos<0) {
+                steps[i] = Math.max(steps[i] * STEP_SHRINK, STEP_MIN);
+            }
+        }
+        final double step = steps[i];
+        xforce[i] = step * fx;
+        yforce[i] = step * fy;
+        zforce[i] = step * fz;
+        force2[i] = f2;
+
+        vx.setXVelocity(xvel[i] + step*fx);
+        vx.setYVelocity(yvel[i] + step*fy);
+        if(dimensions==3) {
+            ((IVertex3)vx).setZVelocity(zvel[i] + step*fz);
+        }
+    }
+
+    /**
+     * Move a vertex by its velocity, with its force scaled by its own step.
+     *
+     * @param vx The vertex.
+     * @param velocityDecay The simulation's velocity decay.
+     */
+    void integrate(final IVertex vx, final double velocityDecay) {
+        if(!constrained) {
+            scale(vx);
+        }
+
+        // The change includes the corrections of the constraints.
+        //
+        final int i = vx.getIndex();
+        if(constrained) {
+            xforce[i] = vx.getXVelocity() - xvel[i];
+            yforce[i] = vx.getYVelocity() - yvel[i];
+            zforce[i] = dimensions==3 ? ((IVertex3)vx).getZVelocity() - zvel[i] : 0;
+        }
+
+        final double xv = vx.getXVelocity() * velocityDecay;
+        final double yv = vx.getYVelocity() * velocityDecay;
+        vx.setXVelocity(xv);
+        vx.setYVelocity(yv);
+        vx.setX(vx.getX() + xv);
+        vx.setY(vx.getY() + yv);
+        double zv = 0;
+        if(dimensions==3) {
+            final IVertex3 vx3 = (IVertex3)vx;
+            zv = vx3.getZVelocity() * velocityDecay;
+            vx3.setZVelocity(zv);
+            vx3.setZ(vx3.getZ() + zv);
+            sums[2] += vx3.getZ();
+            squares[2] += vx3.getZ() * vx3.getZ();
+        }
+
+        count++;
+        energy += force2[i];
+        moved += Math.sqrt(xv*xv + yv*yv + zv*zv);
+        sums[0] += vx.getX();
+        sums[1] += vx.getY();
+        squares[0] += vx.getX() * vx.getX();
+        squares[1] += vx.getY() * vx.getY();
+    }
+
+    /**
+     * Finish a tick: adjust the heat from the energy, and test for convergence.
+     *
+     * @param alpha The alpha that the forces were applied with, including the heat.
+     * @param convergence The largest mean distance moved, as a fraction of the spread, that is converged.
+     *
+     * @return True if the layout has converged; false if no vertex moved.
+     */
+    boolean finish(final double alpha, final double convergence) {
+        if(count==0) {
+            return false;
+        }
+
+        final double e = alpha>0 ? energy / (alpha*alpha) : 0;
+        if(e<lastEnergy) {
+            progress++;
+            if(progress>=PROGRESS_TICKS) {
+                progress = 0;
+                heat = Math.min(heat / COOLING, 1);
+            }
+        } else {
+            progress = 0;
+            heat = Math.max(heat * COOLING, HEAT_MIN);
+        }
+        lastEnergy = e;
+
+        double variance = 0;
+        for(int d=0; d<dimensions; d++) {
+            final double mean = sums[d] / count;
+            variance += Math.max(squares[d] / count - mean*mean, 0);
+        }
+
+        return moved / count<convergence * Math.sqrt(variance);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Vertex adjacency in compressed sparse row form.
+ * <p>
+ * The neighbours of vertex v are neighbours[offsets[v]] to
+ * neighbours[offsets[v+1]-1]; links[j] is the index of the link that
+ * connects v to neighbours[j]. Links are undirected here: each link appears
+ * once in the row of its source and once in the row of its target.
+ * <p>
+ * Vertices and links can be added with extend(), in time proportional to
+ * the number added. Their neighbours are kept after the rows rather than
+ * in them, so the rows of an extended adjacency must be read with
+ * degree(), neighbour() and link() instead of the arrays.
+ * <p>
+ * Vertex instances must already have had their index initialised.
+ *
+ * @author algol
+ */
+final class Adjacency {
+    int[] offsets;
+    final int[] neighbours;
+    final int[] links;
+    private int n;
+
+    // The neighbours and links added by extend(), per vertex, or null if
+    // the adjacency hasn't been extended.
+    //
+    private int[] extraCount;
+    private int[][] extraNeighbours;
+    private int[][] extraLinks;
+
+    private Adjacency(final int[] offsets, final int[] neighbours, final int[] links) {
+        this.offsets = offsets;
+        this.neighbours = neighbours;
+        this.links = links;
+        n = offsets.length - 1;
+    }
+
+    static Adjacency build(final int n, final List<ILink> links) {
+        final int m = links.size();
+        final int[] source = new int[m];
+        final int[] target = new int[m];
+        for(int i=0; i<m; i++) {
+            final ILink link = links.get(i);
+            source[i] = link.getSource().getIndex();
+            target[i] = link.getTarget().getIndex();
+        }
+
+        return build(n, source, target);
+    }
+
+    /**
+     * Build the adjacency of links given as arrays of vertex indexes.
+     *
+     * @param n The number of vertices.
+     * @param source The source vertex of each link.
+     * @param target The target vertex of each link.
+     *
+     * @return The adjacency.
+     */
+    static Adjacency build(final int n, final int[] source, final int[] target) {
+        final int m = source.length;
+        final int[] offsets = new int[n+1];
+        for(int i=0; i<m; i++) {
+            offsets[source[i]+1]++;
+            offsets[target[i]+1]++;
+        }
+
+        for(int v=0; v<n; v++) {
+            offsets[v+1] += offsets[v];
+        }
+
+        final int[] next = new int[n];
+        System.arraycopy(offsets, 0, next, 0, n);
+        final int[] neighbours = new int[2*m];
+        final int[] linkIxs = new int[2*m];
+        for(int i=0; i<m; i++) {
+            int j = next[source[i]]++;
+            neighbours[j] = target[i];
+            linkIxs[j] = i;
+
+            j = next[target[i]]++;
+            neighbours[j] = source[i];
+            linkIxs[j] = i;
+        }
+
+        return new Adjacency(offsets, neighbours, linkIxs);
+    }
+
+    int size() {
+        return n;
+    }
+
+    int degree(final int v) {
+        return offsets[v+1] - offsets[v] + (extraCount!=null ? extraCount[v] : 0);
+    }
+
+    /**
+     * The k'th neighbour of a vertex.
+     *
+     * @param v The vertex.
+     * @param k From 0 to degree(v)-1.
+     *
+     * @return The neighbour.
+     */
+    int neighbour(final int v, final int k) {
+        final int row = offsets[v+1] - offsets[v];
+
+        return k<row ? neighbours[offsets[v]+k] : extraNeighbours[v][k-row];
+    }
+
+    /**
+     * The index of the link to the k'th neighbour of a vertex.
+     *
+     * @param v The vertex.
+     * @param k From 0 to degree(v)-1.
+     *
+     * @return The index of the link.
+     */
+    int link(final int v, final int k) {
+        final int row = offsets[v+1] - offsets[v];
+
+        return k<row ? links[offsets[v]+k] : extraLinks[v][k-row];
+    }
+
+    /**
+     * Add vertices and links.
+     * <p>
+     * The new vertices have empty rows. The arrays grow by doubling, so the
+     * cost is proportional to the number of new vertices and links.
+     *
+     * @param n The number of vertices, including the new ones.
+     * @param links Every link, with the new ones last.
+     * @param m0 The index of the first new link.
+     */
+    void extend(final int n, final List<ILink> links, final int m0) {
+        final int n0 = this.n;
+        if(n+1>offsets.length) {
+            final int capacity = Math.max(n+1, 2*offsets.length);
+            final int end = offsets[n0];
+            offsets = Arrays.copyOf(offsets, capacity);
+            Arrays.fill(offsets, n0+1, capacity, end);
+        }
+        if(extraCount==null) {
+            extraCount = new int[offsets.length - 1];
+            extraNeighbours = new int[offsets.length - 1][];
+            extraLinks = new int[offsets.length - 1][];
+        } else if(extraCount.length<offsets.length-1) {
+            extraCount = Arrays.copyOf(extraCount, offsets.length - 1);
+            extraNeighbours = Arrays.copyOf(extraNeighbours, offsets.length - 1);
+            extraLinks = Arrays.copyOf(extraLinks, offsets.length - 1);
+        }
+        this.n = n;
+
+        final int m = links.size();
+        for(int i=m0; i<m; i++) {
+            final ILink link = links.get(i);
+            final int s = link.getSource().getIndex();
+            final int t = link.getTarget().getIndex();
+            append(s, t, i);
+            append(t, s, i);
+        }
+    }
+
+    private void append(final int v, final int u, final int link) {
+        final int c = extraCount[v];
+        if(extraNeighbours[v]==null) {
+            extraNeighbours[v] = new int[4];
+            extraLinks[v] = new int[4];
+        } else if(c==extraNeighbours[v].length) {
+            extraNeighbours[v] = Arrays.copyOf(extraNeighbours[v], 2*c);
+            extraLinks[v] = Arrays.copyOf(extraLinks[v], 2*c);
+        }
+
+        extraNeighbours[v][c] = u;
+        extraLinks[v][c] = link;
+        extraCount[v]++;
+    }
+
+    /**
+     * The hop counts from a vertex by breadth first search.
+     *
+     * @param source The vertex to search from.
+     *
+     * @return The number of links from the source to each vertex, or -1 for
+     * vertices that can't be reached.
+     */
+    int[] distances(final int source) {
+        final int n = size();
+        final int[] distances = new int[n];
+        Arrays.fill(distances, -1);
+        final int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        distances[source] = 0;
+        queue[tail++] = source;
+        while(head<tail) {
+            final int v = queue[head++];
+            final int degree = degree(v);
+            for(int k=0; k<degree; k++) {
+                final int u = neighbour(v, k);
+                if(distances[u]<0) {
+                    distances[u] = distances[v] + 1;
+                    queue[tail++] = u;
+                }
+            }
+        }
+
+        return distances;
+    }
+}
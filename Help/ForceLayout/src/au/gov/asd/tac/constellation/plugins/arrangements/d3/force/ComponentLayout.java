@@ -0,0 +1,375 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Lay out each connected component of a graph independently, then pack the
+ * components together.
+ * <p>
+ * The components are found from the links with a concurrent union-find.
+ * Each component is laid out by its own Simulation, so no many-body work is
+ * spent pushing unrelated components apart. The simulations are run
+ * concurrently in a ForkJoinPool; small components are batched into tasks
+ * of at least the batch size vertices so the task overhead doesn't dominate.
+ * Isolated vertices aren't simulated at all.
+ * <p>
+ * Each simulation is given its forces by a callback that is called with the
+ * simulation and the component's links. The forces must be new for each
+ * call, because a force keeps the vertices it was initialised with. The
+ * default adds a ForceLink and a ForceManyBody.
+ * <p>
+ * The laid out components are packed by a ComponentPacker so they don't
+ * overlap, either as their bounding boxes or as enclosing circles.
+ *
+ * @author algol
+ */
+public final class ComponentLayout {
+    /**
+     * The shape that each component is packed as.
+     */
+    public enum Packing {
+        RECTANGLES,
+        CIRCLES
+    }
+
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private BiConsumer<Simulation, List<ILink>> forces;
+    private ForkJoinPool pool;
+    private int batchSize;
+    private double padding;
+    private Packing packing;
+
+    // The component of each vertex.
+    //
+    private int[] components;
+    private int nComponents;
+
+    public ComponentLayout(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        forces = (sim, simLinks) -> {
+            sim.addForce("link", new ForceLink(simLinks));
+            sim.addForce("many_body", new ForceManyBody());
+        };
+        pool = ForkJoinPool.commonPool();
+        batchSize = 1024;
+        padding = 10;
+        packing = Packing.RECTANGLES;
+        components = new int[0];
+        nComponents = 0;
+    }
+
+    /**
+     * Lay out and pack the components.
+     * <p>
+     * The vertices keep their index in the list of vertices.
+     *
+     * @return The layout.
+     */
+    public ComponentLayout layout() {
+        final int n = vxs.size();
+        for(int i=0; i<n; i++) {
+            vxs.get(i).setIndex(i);
+        }
+
+        findComponents();
+
+        // Gather the vertices and links of each component.
+        //
+        final List<List<IVertex>> cvxs = new ArrayList<>(nComponents);
+        final List<List<ILink>> clinks = new ArrayList<>(nComponents);
+        for(int c=0; c<nComponents; c++) {
+            cvxs.add(new ArrayList<>());
+            clinks.add(new ArrayList<>());
+        }
+        for(int i=0; i<n; i++) {
+            cvxs.get(components[i]).add(vxs.get(i));
+        }
+        for(final ILink link : links) {
+            clinks.get(components[link.getSource().getIndex()]).add(link);
+        }
+
+        // Batch the components into tasks; a component that is at least
+        // the batch size is a task by itself.
+        //
+        final List<int[]> tasks = new ArrayList<>();
+        final int[] batch = new int[nComponents];
+        int batchLength = 0;
+        int batchVxs = 0;
+        for(int c=0; c<nComponents; c++) {
+            final int size = cvxs.get(c).size();
+            if(size>=batchSize) {
+                tasks.add(new int[]{c});
+            } else {
+                batch[batchLength++] = c;
+                batchVxs += size;
+                if(batchVxs>=batchSize) {
+                    tasks.add(Arrays.copyOf(batch, batchLength));
+                    batchLength = 0;
+                    batchVxs = 0;
+                }
+            }
+        }
+        if(batchLength>0) {
+            tasks.add(Arrays.copyOf(batch, batchLength));
+        }
+
+        pool.submit(() -> tasks.parallelStream().forEach(task -> {
+            for(final int c : task) {
+                layoutComponent(cvxs.get(c), clinks.get(c));
+            }
+        })).join();
+
+        // Simulation re-indexes the vertices it is given.
+        //
+        for(int i=0; i<n; i++) {
+            vxs.get(i).setIndex(i);
+        }
+
+        pack(cvxs);
+
+        return this;
+    }
+
+    private void layoutComponent(final List<IVertex> cvxs, final List<ILink> clinks) {
+        if(cvxs.size()==1) {
+            final IVertex vx = cvxs.get(0);
+            vx.setX(0);
+            vx.setY(0);
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+        } else {
+            final Simulation sim = new Simulation(cvxs, clinks);
+            forces.accept(sim, clinks);
+            sim.step();
+        }
+    }
+
+    /**
+     * Find the connected components with a concurrent union-find.
+     * <p>
+     * Each link joins the trees of its two vertices by pointing the higher
+     * root at the lower root with a compare-and-set, which only succeeds if
+     * the higher root is still a root. The components are then numbered in
+     * order of their lowest vertex.
+     */
+    private void findComponents() {
+        final int n = vxs.size();
+        final AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        Util.parallelFor(n, i -> parent.set(i, i));
+        Util.parallelFor(links.size(), i -> {
+            final ILink link = links.get(i);
+            int a = link.getSource().getIndex();
+            int b = link.getTarget().getIndex();
+            while(true) {
+                a = find(parent, a);
+                b = find(parent, b);
+                if(a==b) {
+                    break;
+                }
+
+                if(a<b ? parent.compareAndSet(b, b, a) : parent.compareAndSet(a, a, b)) {
+                    break;
+                }
+            }
+        });
+
+        components = new int[n];
+        Util.parallelFor(n, i -> components[i] = find(parent, i));
+
+        final int[] ids = new int[n];
+        nComponents = 0;
+        for(int i=0; i<n; i++) {
+            if(components[i]==i) {
+                ids[i] = nComponents++;
+            }
+        }
+
+        Util.parallelFor(n, i -> components[i] = ids[components[i]]);
+    }
+
+    /**
+     * Find the root of a vertex's tree, shortening the path on the way.
+     */
+    private static int find(final AtomicIntegerArray parent, final int vx) {
+        int i = vx;
+        int p = parent.get(i);
+        while(p!=i) {
+            final int gp = parent.get(p);
+            parent.compareAndSet(i, p, gp);
+            i = p;
+            p = gp;
+        }
+
+        return i;
+    }
+
+    /**
+     * Pack the components with a ComponentPacker.
+     * <p>
+     * Each component is packed as its bounding box, or as a circle around its
+     * centroid that encloses every vertex.
+     */
+    private void pack(final List<List<IVertex>> cvxs) {
+        final ComponentPacker packer = new ComponentPacker().setPadding(padding);
+        final double[] xs = new double[nComponents];
+        final double[] ys = new double[nComponents];
+        if(packing==Packing.CIRCLES) {
+            final double[] cxs = new double[nComponents];
+            final double[] cys = new double[nComponents];
+            final double[] radii = new double[nComponents];
+            Util.parallelFor(nComponents, c -> {
+                final List<IVertex> component = cvxs.get(c);
+                double cx = 0;
+                double cy = 0;
+                for(final IVertex vx : component) {
+                    cx += vx.getX();
+                    cy += vx.getY();
+                }
+                cx /= component.size();
+                cy /= component.size();
+
+                double radius = 0;
+                for(final IVertex vx : component) {
+                    radius = Math.max(radius, Math.hypot(vx.getX()-cx, vx.getY()-cy) + vx.getRadius());
+                }
+
+                cxs[c] = cx;
+                cys[c] = cy;
+                radii[c] = radius;
+            });
+
+            packer.packCircles(radii, xs, ys);
+            Util.parallelFor(nComponents, c -> move(cvxs.get(c), xs[c]-cxs[c], ys[c]-cys[c]));
+        } else {
+            final double[] x0s = new double[nComponents];
+            final double[] y0s = new double[nComponents];
+            final double[] widths = new double[nComponents];
+            final double[] heights = new double[nComponents];
+            Util.parallelFor(nComponents, c -> {
+                double x0 = Double.POSITIVE_INFINITY;
+                double y0 = Double.POSITIVE_INFINITY;
+                double x1 = Double.NEGATIVE_INFINITY;
+                double y1 = Double.NEGATIVE_INFINITY;
+                for(final IVertex vx : cvxs.get(c)) {
+                    final double r = vx.getRadius();
+                    x0 = Math.min(x0, vx.getX()-r);
+                    y0 = Math.min(y0, vx.getY()-r);
+                    x1 = Math.max(x1, vx.getX()+r);
+                    y1 = Math.max(y1, vx.getY()+r);
+                }
+
+                x0s[c] = x0;
+                y0s[c] = y0;
+                widths[c] = x1 - x0;
+                heights[c] = y1 - y0;
+            });
+
+            packer.packRectangles(widths, heights, xs, ys);
+            Util.parallelFor(nComponents, c -> move(cvxs.get(c), xs[c]-x0s[c], ys[c]-y0s[c]));
+        }
+    }
+
+    private static void move(final List<IVertex> component, final double dx, final double dy) {
+        for(final IVertex vx : component) {
+            vx.setX(vx.getX() + dx);
+            vx.setY(vx.getY() + dy);
+        }
+    }
+
+    /**
+     * The component of each vertex in the last layout.
+     * <p>
+     * Components are numbered in order of their lowest vertex index.
+     *
+     * @return The component of each vertex.
+     */
+    public int[] getComponents() {
+        return components.clone();
+    }
+
+    public int getComponentCount() {
+        return nComponents;
+    }
+
+    /**
+     * The forces to add to each component's simulation.
+     *
+     * @param forces Called with each simulation and the links of its component.
+     *
+     * @return The layout.
+     */
+    public ComponentLayout setForces(final BiConsumer<Simulation, List<ILink>> forces) {
+        this.forces = forces;
+
+        return this;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public ComponentLayout setPool(final ForkJoinPool pool) {
+        this.pool = pool;
+
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Components smaller than this are batched into tasks of at least this many vertices.
+     *
+     * @param batchSize The number of vertices in a batch.
+     *
+     * @return The layout.
+     */
+    public ComponentLayout setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+
+        return this;
+    }
+
+    public double getPadding() {
+        return padding;
+    }
+
+    public ComponentLayout setPadding(final double padding) {
+        this.padding = padding;
+
+        return this;
+    }
+
+    public Packing getPacking() {
+        return packing;
+    }
+
+    public ComponentLayout setPacking(final Packing packing) {
+        this.packing = packing;
+
+        return this;
+    }
+}
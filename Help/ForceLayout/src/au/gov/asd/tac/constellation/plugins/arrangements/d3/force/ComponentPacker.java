@@ -0,0 +1,462 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.IPoint;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Pack rectangles or circles together without overlapping.
+ * <p>
+ * Rectangles are packed with a bottom-left skyline: they are placed in order
+ * of decreasing height, each at the lowest (then leftmost) position on the
+ * skyline where it fits within a strip about as wide as the square root of
+ * the total area. The skyline is kept as a list of segments, so placing a
+ * rectangle never has to check it against the rectangles already placed.
+ * <p>
+ * Circles are packed with the front-chain algorithm of d3-hierarchy's
+ * packSiblings: they are placed in order of decreasing radius, each tangent
+ * to the pair of adjacent circles on the front chain that is closest to
+ * the origin. Before the front chain is searched for an intersecting circle,
+ * the candidate position is checked against D3QuadTrees of the circles
+ * already placed; most candidates don't intersect anything, so the chain
+ * only has to be searched when a candidate is rejected. The pairs on the
+ * chain are kept in a priority queue rather than scanned after every
+ * circle, and a candidate that overlaps a circle that has dropped off the
+ * chain is moved outwards until it is clear, so circles never overlap.
+ * <p>
+ * The padding is added to every width and height, and to every diameter.
+ *
+ * @author algol
+ */
+public final class ComponentPacker {
+    private double padding;
+
+    /**
+     * A circle that has been placed.
+     */
+    private static final class Circle implements IPoint {
+        final double x;
+        final double y;
+        final double r;
+
+        Circle(final double x, final double y, final double r) {
+            this.x = x;
+            this.y = y;
+            this.r = r;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+    }
+
+    /**
+     * A pair of adjacent circles on the front chain.
+     */
+    private static final class Pair implements Comparable<Pair> {
+        final int a;
+        final int b;
+        final double score;
+
+        Pair(final int a, final int b, final double score) {
+            this.a = a;
+            this.b = b;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(final Pair other) {
+            return Double.compare(score, other.score);
+        }
+    }
+
+    /**
+     * The circles that have been placed.
+     * <p>
+     * The circles are kept in a D3QuadTree for each power of two of radius,
+     * so a query only has to reach as far as the largest circles of each
+     * tree, and a small circle isn't checked against every small circle
+     * within reach of the largest circle.
+     */
+    private static final class Placed {
+        private final TreeMap<Integer, D3QuadTree> trees = new TreeMap<>();
+
+        void add(final Circle circle) {
+            trees.computeIfAbsent(Math.getExponent(circle.r), e -> new D3QuadTree()).add(circle);
+        }
+
+        /**
+         * Does a circle intersect any circle that has been placed?
+         */
+        boolean overlaps(final double x, final double y, final double r) {
+            final boolean[] overlap = new boolean[1];
+            for(final Map.Entry<Integer, D3QuadTree> entry : trees.entrySet()) {
+                final double reach = r + Math.scalb(1.0, entry.getKey()+1);
+                entry.getValue().visit(quad -> {
+                    if(overlap[0] || quad.x0>x+reach || quad.y0>y+reach || quad.x1<x-reach || quad.y1<y-reach) {
+                        return true;
+                    }
+
+                    if(quad.node.isLeaf()) {
+                        for(final IPoint p : quad.node.getData()) {
+                            final Circle circle = (Circle)p;
+                            if(intersects(circle.x, circle.y, circle.r, x, y, r)) {
+                                overlap[0] = true;
+                            }
+                        }
+                    }
+
+                    return false;
+                });
+
+                if(overlap[0]) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    public ComponentPacker() {
+        padding = 0;
+    }
+
+    /**
+     * Pack rectangles.
+     *
+     * @param widths The width of each rectangle.
+     * @param heights The height of each rectangle.
+     * @param xs Set to the x coordinate of the left edge of each rectangle.
+     * @param ys Set to the y coordinate of the bottom edge of each rectangle.
+     */
+    public void packRectangles(final double[] widths, final double[] heights, final double[] xs, final double[] ys) {
+        final int n = widths.length;
+        if(n==0) {
+            return;
+        }
+
+        double area = 0;
+        double maxWidth = 0;
+        for(int i=0; i<n; i++) {
+            area += (widths[i]+padding) * (heights[i]+padding);
+            maxWidth = Math.max(maxWidth, widths[i]+padding);
+        }
+
+        final int[] order = sortDescending(heights);
+
+        // The skyline is a list of segments, left to right; segment s starts at
+        // sx[s] and has height sy[s], and ends where the next segment starts.
+        // The last segment always ends at the strip width.
+        //
+        final double strip = Math.max(maxWidth, Math.sqrt(area));
+        double[] sx = new double[16];
+        double[] sy = new double[16];
+        int ns = 1;
+        sx[0] = 0;
+        sy[0] = 0;
+
+        for(final int i : order) {
+            final double w = widths[i] + padding;
+            final double h = heights[i] + padding;
+
+            // Find the lowest, then leftmost, position where the rectangle fits.
+            //
+            int best = -1;
+            double bestY = Double.POSITIVE_INFINITY;
+            for(int s=0; s<ns && sx[s]+w<=strip; s++) {
+                if(sy[s]>=bestY) {
+                    continue;
+                }
+
+                double y = sy[s];
+                for(int t=s+1; t<ns && sx[t]<sx[s]+w; t++) {
+                    y = Math.max(y, sy[t]);
+                }
+
+                if(y<bestY) {
+                    best = s;
+                    bestY = y;
+                }
+            }
+
+            final double x0 = sx[best];
+            final double x1 = x0 + w;
+            xs[i] = x0;
+            ys[i] = bestY;
+
+            // Replace the segments under the rectangle with its top edge,
+            // keeping the part of the last covered segment that sticks out.
+            //
+            int end = best + 1;
+            while(end<ns && sx[end]<x1) {
+                end++;
+            }
+            final double tailY = sy[end-1];
+            final boolean tail = (end==ns ? strip : sx[end])>x1;
+
+            final int removed = end - best;
+            final int added = tail ? 2 : 1;
+            if(ns-removed+added>sx.length) {
+                sx = Arrays.copyOf(sx, 2*sx.length);
+                sy = Arrays.copyOf(sy, 2*sy.length);
+            }
+            System.arraycopy(sx, end, sx, best+added, ns-end);
+            System.arraycopy(sy, end, sy, best+added, ns-end);
+            ns += added - removed;
+
+            sx[best] = x0;
+            sy[best] = bestY + h;
+            if(tail) {
+                sx[best+1] = x1;
+                sy[best+1] = tailY;
+            }
+        }
+
+        if(padding>0) {
+            for(int i=0; i<n; i++) {
+                xs[i] += padding/2;
+                ys[i] += padding/2;
+            }
+        }
+    }
+
+    /**
+     * Pack circles around the origin.
+     *
+     * @param radii The radius of each circle.
+     * @param xs Set to the x coordinate of the centre of each circle.
+     * @param ys Set to the y coordinate of the centre of each circle.
+     */
+    public void packCircles(final double[] radii, final double[] xs, final double[] ys) {
+        final int n = radii.length;
+        if(n==0) {
+            return;
+        }
+
+        final int[] order = sortDescending(radii);
+        final double[] r = new double[n];
+        for(int k=0; k<n; k++) {
+            r[k] = radii[order[k]] + padding/2;
+        }
+
+        // The circles are packed in sorted order into cx, cy;
+        // next and previous link the circles on the front chain.
+        //
+        final double[] cx = new double[n];
+        final double[] cy = new double[n];
+        final int[] next = new int[n];
+        final int[] previous = new int[n];
+        final Placed placed = new Placed();
+
+        cx[0] = 0;
+        cy[0] = 0;
+        if(n>1) {
+            cx[0] = -r[1];
+            cx[1] = r[0];
+            cy[1] = 0;
+        }
+        if(n>2) {
+            place(1, 0, 2, cx, cy, r);
+            next[0] = previous[2] = 1;
+            next[1] = previous[0] = 2;
+            next[2] = previous[1] = 0;
+        }
+        for(int k=0; k<Math.min(n, 3); k++) {
+            placed.add(new Circle(cx[k], cy[k], r[k]));
+        }
+
+        // The pairs of adjacent circles on the front chain, closest to the origin first.
+        // A pair is stale once a circle has been inserted between the two circles,
+        // or one of them has been dropped from the chain.
+        //
+        final boolean[] dropped = new boolean[n];
+        final PriorityQueue<Pair> pairs = new PriorityQueue<>();
+        for(int k=0; k<Math.min(n, 3); k++) {
+            pairs.add(new Pair(k, next[k], score(k, next[k], cx, cy, r)));
+        }
+
+        int a = 0;
+        int b = 1;
+        for(int c=3; c<n; c++) {
+            place(a, b, c, cx, cy, r);
+
+            if(placed.overlaps(cx[c], cy[c], r[c])) {
+                // Find the closest intersecting circle on the front chain,
+                // measured by distance along the chain, and drop the circles
+                // between it and the pair from the chain.
+                //
+                int j = next[b];
+                int k = previous[a];
+                double sj = r[b];
+                double sk = r[a];
+                int hit = -1;
+                do {
+                    if(sj<=sk) {
+                        if(intersects(j, c, cx, cy, r)) {
+                            hit = j;
+                            b = j;
+                            break;
+                        }
+                        sj += r[j];
+                        j = next[j];
+                    } else {
+                        if(intersects(k, c, cx, cy, r)) {
+                            hit = k;
+                            a = k;
+                            break;
+                        }
+                        sk += r[k];
+                        k = previous[k];
+                    }
+                } while(j!=next[k]);
+
+                if(hit!=-1) {
+                    for(int d=next[a]; d!=b; d=next[d]) {
+                        dropped[d] = true;
+                    }
+                    next[a] = b;
+                    previous[b] = a;
+                    pairs.add(new Pair(a, b, score(a, b, cx, cy, r)));
+                    c--;
+                    continue;
+                }
+
+                // The circle overlaps a circle that is no longer on the chain.
+                // Move it away from the origin until it is clear, and leave it off the chain.
+                //
+                double dx = cx[c];
+                double dy = cy[c];
+                final double d = Math.sqrt(dx*dx + dy*dy);
+                dx = d>0 ? dx/d : 1;
+                dy = d>0 ? dy/d : 0;
+                while(placed.overlaps(cx[c], cy[c], r[c])) {
+                    cx[c] += dx * r[c];
+                    cy[c] += dy * r[c];
+                }
+                dropped[c] = true;
+                placed.add(new Circle(cx[c], cy[c], r[c]));
+
+                continue;
+            }
+
+            // Insert the new circle between a and b.
+            //
+            previous[c] = a;
+            next[c] = b;
+            next[a] = c;
+            previous[b] = c;
+            placed.add(new Circle(cx[c], cy[c], r[c]));
+            pairs.add(new Pair(a, c, score(a, c, cx, cy, r)));
+            pairs.add(new Pair(c, b, score(c, b, cx, cy, r)));
+
+            // Continue from the pair of adjacent circles on the chain closest to the origin.
+            //
+            Pair closest = pairs.peek();
+            while(dropped[closest.a] || dropped[closest.b] || next[closest.a]!=closest.b) {
+                pairs.poll();
+                closest = pairs.peek();
+            }
+            a = closest.a;
+            b = closest.b;
+        }
+
+        for(int k=0; k<n; k++) {
+            xs[order[k]] = cx[k];
+            ys[order[k]] = cy[k];
+        }
+    }
+
+    /**
+     * Place circle c tangent to circles p and q.
+     */
+    private static void place(final int p, final int q, final int c, final double[] cx, final double[] cy, final double[] r) {
+        final double dx = cx[p] - cx[q];
+        final double dy = cy[p] - cy[q];
+        final double d2 = dx*dx + dy*dy;
+        if(d2>0) {
+            final double q2 = (r[q]+r[c]) * (r[q]+r[c]);
+            final double p2 = (r[p]+r[c]) * (r[p]+r[c]);
+            if(q2>p2) {
+                final double x = (d2 + p2 - q2) / (2*d2);
+                final double y = Math.sqrt(Math.max(0, p2/d2 - x*x));
+                cx[c] = cx[p] - x*dx - y*dy;
+                cy[c] = cy[p] - x*dy + y*dx;
+            } else {
+                final double x = (d2 + q2 - p2) / (2*d2);
+                final double y = Math.sqrt(Math.max(0, q2/d2 - x*x));
+                cx[c] = cx[q] + x*dx - y*dy;
+                cy[c] = cy[q] + x*dy + y*dx;
+            }
+        } else {
+            cx[c] = cx[q] + r[c];
+            cy[c] = cy[q];
+        }
+    }
+
+    private static boolean intersects(final int a, final int b, final double[] cx, final double[] cy, final double[] r) {
+        return intersects(cx[a], cy[a], r[a], cx[b], cy[b], r[b]);
+    }
+
+    private static boolean intersects(final double ax, final double ay, final double ar, final double bx, final double by, final double br) {
+        final double dr = ar + br - 1e-6;
+        final double dx = bx - ax;
+        final double dy = by - ay;
+
+        return dr>0 && dr*dr>dx*dx + dy*dy;
+    }
+
+    /**
+     * The squared distance from the origin of the weighted midpoint of two circles.
+     */
+    private static double score(final int a, final int b, final double[] cx, final double[] cy, final double[] r) {
+        final double ab = r[a] + r[b];
+        final double dx = (cx[a]*r[b] + cx[b]*r[a]) / ab;
+        final double dy = (cy[a]*r[b] + cy[b]*r[a]) / ab;
+
+        return dx*dx + dy*dy;
+    }
+
+    private static int[] sortDescending(final double[] values) {
+        return IntStream.range(0, values.length)
+                .boxed()
+                .sorted((i, j) -> Double.compare(values[j], values[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    public double getPadding() {
+        return padding;
+    }
+
+    public ComponentPacker setPadding(final double padding) {
+        this.padding = padding;
+
+        return this;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+/**
+ * A plain link for the graphs that layouts build for themselves, such as
+ * the coarse levels of a MultilevelLayout and the sample of a PreviewLayout.
+ *
+ * @author algol
+ */
+final class Edge implements ILink {
+    private final IVertex source;
+    private final IVertex target;
+    private int index;
+
+    Edge(final IVertex source, final IVertex target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    @Override
+    public IVertex getSource() {
+        return source;
+    }
+
+    @Override
+    public IVertex getTarget() {
+        return target;
+    }
+
+    @Override
+    public void setIndex(final int index) {
+        this.index = index;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+}
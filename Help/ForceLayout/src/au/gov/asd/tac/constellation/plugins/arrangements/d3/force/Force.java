@@ -24,4 +24,64 @@ import java.util.List;
 public interface Force {
     void initialise(final List<IVertex> vxs);
     void force(final double alpha);
+
+    /**
+     * Initialise the force again after vertices have been appended to its list.
+     * <p>
+     * The first n0 vertices are the ones the force was initialised with.
+     * A force that keeps per-vertex state for them, such as the targets of
+     * ForceX or the radii of ForceRadial, keeps it and only sets up the new
+     * vertices. The default initialises the force again.
+     *
+     * @param vxs The vertices, including the new vertices.
+     * @param n0 The number of vertices before the new vertices.
+     */
+    default void extend(final List<IVertex> vxs, final int n0) {
+        initialise(vxs);
+    }
+
+    /**
+     * A vertex outside the active set has been moved between ticks.
+     * <p>
+     * A force that keeps anything about the fixed vertices from one tick to
+     * the next, such as the frozen far field of ForceManyBody, must update
+     * it for this vertex. The default does nothing.
+     *
+     * @param vx The vertex that was moved.
+     */
+    default void fixedMoved(final IVertex vx) {
+    }
+
+    /**
+     * Is this force a constraint?
+     * <p>
+     * A constraint, such as ForceCollide, changes the velocities to correct
+     * the positions the vertices are about to move to, rather than pushing
+     * or pulling them. A simulation applies the constraints after the other
+     * forces, and adaptive integration adds their changes to the velocities
+     * in full instead of scaling them by each vertex's step.
+     *
+     * @return True if this force is a constraint; the default is false.
+     */
+    default boolean isConstraint() {
+        return false;
+    }
+
+    /**
+     * Apply the force to the active vertices only.
+     * <p>
+     * Vertices outside the active set are held fixed by the simulation: they
+     * may be used as sources, but their velocities must not be changed, and
+     * forces that read velocities should treat theirs as zero.
+     * <p>
+     * The default implementation applies the force to every vertex; forces
+     * should override it so the cost is proportional to the size of
+     * the active set.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move.
+     */
+    default void force(final double alpha, final ActiveSet active) {
+        force(alpha);
+    }
 }
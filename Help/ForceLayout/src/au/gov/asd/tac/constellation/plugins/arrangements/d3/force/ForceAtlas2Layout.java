@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * A ForceAtlas2 layout, after Jacomy, Venturini, Heymann and Bastian's
+ * "ForceAtlas2, a Continuous Graph Layout Algorithm for Handy Network
+ * Visualization".
+ * <p>
+ * The forces are ForceDegreeRepulsion, ForceLinLog and ForceGravity, which
+ * are ordinary accumulating forces and can also be used in a Simulation.
+ * The difference is the integration: instead of velocities that decay
+ * with a cooling alpha, each tick moves each vertex by its force times a
+ * speed that adapts to how the layout is moving.
+ * <p>
+ * A vertex's swing is the change in its force since the last tick times
+ * its mass, and its traction is the mean of the two forces times its
+ * mass. A vertex that swings is oscillating and is slowed down by its own
+ * factor of 1 / (1 + sqrt(speed * swing)). The global speed is raised
+ * while the total swing is small compared to the total traction, which
+ * is the useful movement, and lowered when it isn't. Far fewer ticks are
+ * needed than with a fixed cooling schedule, and the layout stays stable
+ * if it keeps running.
+ * <p>
+ * The forces are evaluated concurrently, each into buffers of its own as
+ * in a concurrent Simulation, and every per-vertex loop is parallel for
+ * large graphs. Other accumulating forces can be added; they are evaluated
+ * with an alpha of 1. After each tick, a vertex's velocity is the
+ * distance it moved.
+ * <p>
+ * If any vertex doesn't have a position, every vertex is first placed by
+ * PivotMDS; otherwise the layout starts from the current positions.
+ *
+ * @author algol
+ */
+public final class ForceAtlas2Layout {
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private final ForceDegreeRepulsion repulsion;
+    private final ForceLinLog attraction;
+    private final ForceGravity gravity;
+    private final Map<String, AccumulatingForce> forces;
+    private int iterations;
+    private double jitterTolerance;
+
+    // The state of the speed controller.
+    //
+    private double[] masses;
+    private double[] xforce;
+    private double[] yforce;
+    private double[] oldXforce;
+    private double[] oldYforce;
+    private double[][] xbuffers;
+    private double[][] ybuffers;
+    private double speed;
+    private double speedEfficiency;
+    private double swing;
+    private double traction;
+
+    public ForceAtlas2Layout(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        repulsion = new ForceDegreeRepulsion(links);
+        attraction = new ForceLinLog(links);
+        gravity = new ForceGravity(links);
+        forces = new LinkedHashMap<>();
+        forces.put("repulsion", repulsion);
+        forces.put("attraction", attraction);
+        forces.put("gravity", gravity);
+        iterations = 100;
+        jitterTolerance = 1;
+    }
+
+    /**
+     * Add another force; it is evaluated with an alpha of 1.
+     *
+     * @param name The name of the force.
+     * @param force The force.
+     *
+     * @return The layout.
+     */
+    public ForceAtlas2Layout addForce(final String name, final AccumulatingForce force) {
+        forces.put(name, force);
+
+        return this;
+    }
+
+    /**
+     * Lay out the vertices.
+     * <p>
+     * The vertices keep their index in the list of vertices.
+     *
+     * @return The layout.
+     */
+    public ForceAtlas2Layout layout() {
+        initialise();
+        for(int k=0; k<iterations; k++) {
+            tick();
+        }
+
+        return this;
+    }
+
+    /**
+     * Index and place the vertices, initialise the forces and reset the speed.
+     */
+    void initialise() {
+        final int n = vxs.size();
+        if(vxs.stream().anyMatch(vx -> Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()))) {
+            new PivotMDS(vxs, links).place();
+        }
+
+        for(int i=0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            vx.setIndex(i);
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+        }
+
+        forces.values().forEach(force -> force.initialise(vxs));
+
+        masses = ForceDegreeRepulsion.masses(vxs, links);
+        xforce = new double[n];
+        yforce = new double[n];
+        oldXforce = new double[n];
+        oldYforce = new double[n];
+        xbuffers = new double[forces.size()][n];
+        ybuffers = new double[forces.size()][n];
+        speed = 1;
+        speedEfficiency = 1;
+        swing = 0;
+        traction = 0;
+    }
+
+    /**
+     * Move every vertex once.
+     */
+    void tick() {
+        final int n = vxs.size();
+        if(n==0) {
+            return;
+        }
+
+        final List<AccumulatingForce> fs = new ArrayList<>(forces.values());
+        final int nf = fs.size();
+        IntStream.range(0, nf).parallel().forEach(f -> {
+            Arrays.fill(xbuffers[f], 0);
+            Arrays.fill(ybuffers[f], 0);
+            fs.get(f).accumulate(1, null, xbuffers[f], ybuffers[f]);
+        });
+
+        Util.parallelFor(n, i -> {
+            double fx = 0;
+            double fy = 0;
+            for(int f=0; f<nf; f++) {
+                fx += xbuffers[f][i];
+                fy += ybuffers[f][i];
+            }
+            xforce[i] = fx;
+            yforce[i] = fy;
+        });
+
+        // The total swing and traction, as a parallel reduction.
+        //
+        IntStream range = IntStream.range(0, n);
+        if(n>=Util.PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        final double[] totals = range.collect(() -> new double[2], (sums, i) -> {
+            sums[0] += masses[i] * Math.hypot(xforce[i] - oldXforce[i], yforce[i] - oldYforce[i]);
+            sums[1] += masses[i] * Math.hypot(xforce[i] + oldXforce[i], yforce[i] + oldYforce[i]) / 2;
+        }, (a, b) -> {
+            a[0] += b[0];
+            a[1] += b[1];
+        });
+        swing = totals[0];
+        traction = totals[1];
+
+        adjustSpeed(n);
+
+        final double s = speed;
+        Util.parallelFor(n, i -> {
+            final double vertexSwing = masses[i] * Math.hypot(xforce[i] - oldXforce[i], yforce[i] - oldYforce[i]);
+            final double factor = s / (1 + Math.sqrt(s * vertexSwing));
+            final double dx = xforce[i] * factor;
+            final double dy = yforce[i] * factor;
+            final IVertex vx = vxs.get(i);
+            vx.setX(vx.getX() + dx);
+            vx.setY(vx.getY() + dy);
+            vx.setXVelocity(dx);
+            vx.setYVelocity(dy);
+            oldXforce[i] = xforce[i];
+            oldYforce[i] = yforce[i];
+        });
+    }
+
+    /**
+     * Adjust the global speed from the total swing and traction, as in Gephi.
+     * <p>
+     * The jitter tolerance is scaled by an estimate of the best tolerance for
+     * the size of the graph. The speed efficiency falls when the swing is
+     * too large and rises otherwise; the target speed is the tolerated swing
+     * per unit of traction, and the speed can rise by at most half each tick.
+     */
+    private void adjustSpeed(final int n) {
+        if(swing==0) {
+            return;
+        }
+
+        final double estimatedJitter = 0.05 * Math.sqrt(n);
+        final double minJitter = Math.sqrt(estimatedJitter);
+        final double maxJitter = 10;
+        double jitter = jitterTolerance * Math.max(minJitter, Math.min(maxJitter, estimatedJitter * traction / ((double)n * n)));
+
+        final double minSpeedEfficiency = 0.05;
+        if(swing/traction>2) {
+            if(speedEfficiency>minSpeedEfficiency) {
+                speedEfficiency *= 0.5;
+            }
+            jitter = Math.max(jitter, jitterTolerance);
+        }
+
+        final double targetSpeed = jitter * speedEfficiency * traction / swing;
+        if(swing>jitter*traction) {
+            if(speedEfficiency>minSpeedEfficiency) {
+                speedEfficiency *= 0.7;
+            }
+        } else if(speed<1000) {
+            speedEfficiency *= 1.3;
+        }
+
+        final double maxRise = 0.5;
+        speed += Math.min(targetSpeed - speed, maxRise * speed);
+    }
+
+    public ForceDegreeRepulsion getRepulsion() {
+        return repulsion;
+    }
+
+    public ForceLinLog getAttraction() {
+        return attraction;
+    }
+
+    public ForceGravity getGravity() {
+        return gravity;
+    }
+
+    /**
+     * The global speed of the last tick.
+     *
+     * @return The global speed.
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * The total swing of the last tick; this falls as the layout converges.
+     *
+     * @return The total swing.
+     */
+    public double getSwing() {
+        return swing;
+    }
+
+    public double getTraction() {
+        return traction;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public ForceAtlas2Layout setIterations(final int iterations) {
+        this.iterations = iterations;
+
+        return this;
+    }
+
+    public double getJitterTolerance() {
+        return jitterTolerance;
+    }
+
+    /**
+     * How much swing is tolerated; higher is faster but less precise.
+     *
+     * @param jitterTolerance The jitter tolerance.
+     *
+     * @return The layout.
+     */
+    public ForceAtlas2Layout setJitterTolerance(final double jitterTolerance) {
+        this.jitterTolerance = jitterTolerance;
+
+        return this;
+    }
+}
@@ -54,4 +54,11 @@ public class ForceCentre implements Force {
             vx.setY(vx.getY()-fy);
         });
     }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        // Centring translates every vertex, including the fixed ones.
+        // The fixed vertices already anchor the layout, so do nothing.
+        //
+    }
 }
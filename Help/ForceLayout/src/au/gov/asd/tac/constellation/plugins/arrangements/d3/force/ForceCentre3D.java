@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.List;
+
+/**
+ * Position the vertices of a three-dimensional simulation around the given centre.
+ *
+ * @author algol
+ */
+public class ForceCentre3D implements Force {
+    private List<IVertex> vxs;
+    private final double centreX;
+    private final double centreY;
+    private final double centreZ;
+
+    public ForceCentre3D(final double centreX, final double centreY, final double centreZ) {
+        this.centreX = centreX;
+        this.centreY = centreY;
+        this.centreZ = centreZ;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+    }
+
+    @Override
+    public void force(final double alpha) {
+        double sx = 0;
+        double sy = 0;
+        double sz = 0;
+
+        for(final IVertex vx : vxs) {
+            sx += vx.getX();
+            sy += vx.getY();
+            sz += ((IVertex3)vx).getZ();
+        }
+
+        final double fx = sx/vxs.size() - centreX;
+        final double fy = sy/vxs.size() - centreY;
+        final double fz = sz/vxs.size() - centreZ;
+        vxs.forEach(vx -> {
+            vx.setX(vx.getX()-fx);
+            vx.setY(vx.getY()-fy);
+            ((IVertex3)vx).setZ(((IVertex3)vx).getZ()-fz);
+        });
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        // Centring translates every vertex, including the fixed ones.
+        // The fixed vertices already anchor the layout, so do nothing.
+        // A simulation ticks every force in full while every vertex is
+        // awake, so the layout is still centred until vertices freeze.
+        //
+    }
+}
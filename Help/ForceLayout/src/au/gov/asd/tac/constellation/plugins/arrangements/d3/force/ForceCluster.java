@@ -0,0 +1,244 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Pull each vertex towards the centroid of its cluster.
+ * <p>
+ * Cluster membership is given as an array of cluster ids indexed by vertex
+ * index, such as the communities found by a clustering algorithm.
+ * Ids are numbered from 0; a vertex with a negative id isn't in a cluster
+ * and isn't pulled. The strength of the force is proportional to the
+ * distance between the vertex and the centroid.
+ * <p>
+ * Each tick, the centroids of every cluster are found in a single pass
+ * over the vertices (a parallel reduction for large graphs), then each
+ * vertex is pulled towards its centroid, so the cost of a tick is
+ * proportional to the number of vertices plus the number of clusters.
+ * <p>
+ * When only some vertices are active, the sums of the fixed vertices are
+ * kept until the active set changes, and only the active vertices are
+ * added to them each tick.
+ *
+ * @author algol
+ */
+public class ForceCluster implements AccumulatingForce {
+    private List<IVertex> vxs;
+    private final int[] clusters;
+    private int nClusters;
+    private double strength;
+
+    // The centroid of each cluster.
+    //
+    private double[] cx;
+    private double[] cy;
+
+    // The x, y and count sums of the vertices outside the active set,
+    // and the active set version they were computed for.
+    //
+    private double[] fixedSums;
+    private ActiveSet fixedSet;
+    private int fixedVersion;
+
+    /**
+     * Create a cluster force.
+     *
+     * @param clusters The cluster id of each vertex, indexed by vertex index.
+     */
+    public ForceCluster(final int[] clusters) {
+        this.clusters = clusters;
+        strength = 0.1;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        if(clusters.length<vxs.size()) {
+            throw new IllegalArgumentException(String.format("%d cluster ids for %d vertices", clusters.length, vxs.size()));
+        }
+
+        nClusters = 0;
+        for(int i=0; i<vxs.size(); i++) {
+            nClusters = Math.max(nClusters, clusters[i]+1);
+        }
+
+        cx = new double[nClusters];
+        cy = new double[nClusters];
+        fixedSums = null;
+        fixedSet = null;
+    }
+
+    @Override
+    public void force(final double alpha) {
+        apply(alpha, null, null, null);
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        apply(alpha, active, null, null);
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        apply(alpha, active, xvel, yvel);
+    }
+
+    /**
+     * Apply the force to every vertex, or to the active vertices.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void apply(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        centroids(active);
+
+        final double k = strength * alpha;
+        final int n = active==null ? vxs.size() : active.size();
+        Util.parallelFor(n, j -> {
+            final int i = active==null ? j : active.get(j);
+            final int c = clusters[i];
+            if(c>=0) {
+                final IVertex vx = vxs.get(i);
+                final double dx = (cx[c] - vx.getX()) * k;
+                final double dy = (cy[c] - vx.getY()) * k;
+                if(xvel==null) {
+                    vx.setXVelocity(vx.getXVelocity() + dx);
+                    vx.setYVelocity(vx.getYVelocity() + dy);
+                } else {
+                    xvel[i] += dx;
+                    yvel[i] += dy;
+                }
+            }
+        });
+    }
+
+    /**
+     * The sums of the fixed vertices are found again on the next tick.
+     *
+     * @param vx The vertex that was moved.
+     */
+    @Override
+    public void fixedMoved(final IVertex vx) {
+        fixedSums = null;
+    }
+
+    /**
+     * Find the centroid of every cluster.
+     *
+     * @param active The vertices that are free to move, or null for every vertex.
+     */
+    private void centroids(final ActiveSet active) {
+        final double[] sums;
+        if(active==null) {
+            // Every vertex moves, so the sums of the fixed vertices from an
+            // earlier restricted tick are out of date.
+            //
+            fixedSums = null;
+            sums = sum(vxs.size(), i -> i);
+        } else {
+            if(fixedSums==null || fixedSet!=active || fixedVersion!=active.getVersion()) {
+                fixedSums = sum(vxs.size(), i -> active.contains(i) ? -1 : i);
+                fixedSet = active;
+                fixedVersion = active.getVersion();
+            }
+
+            sums = sum(active.size(), active::get);
+            for(int c=0; c<3*nClusters; c++) {
+                sums[c] += fixedSums[c];
+            }
+        }
+
+        for(int c=0; c<nClusters; c++) {
+            final double count = sums[3*c+2];
+            cx[c] = count>0 ? sums[3*c] / count : 0;
+            cy[c] = count>0 ? sums[3*c+1] / count : 0;
+        }
+    }
+
+    /**
+     * Sum the positions of some vertices by cluster.
+     * <p>
+     * This is a parallel reduction if there are enough vertices:
+     * each thread sums into its own array, then the arrays are added.
+     *
+     * @param n The number of vertices to sum.
+     * @param index Maps 0 to n-1 to vertex indexes; a negative index is skipped.
+     *
+     * @return The x sum, y sum and count of each cluster, interleaved.
+     */
+    private double[] sum(final int n, final IntUnaryOperator index) {
+        final int length = 3 * nClusters;
+        IntStream range = IntStream.range(0, n);
+        if(n>=Util.PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+
+        return range.collect(() -> new double[length], (sums, j) -> {
+            final int i = index.applyAsInt(j);
+            if(i>=0) {
+                final int c = clusters[i];
+                if(c>=0) {
+                    final IVertex vx = vxs.get(i);
+                    sums[3*c] += vx.getX();
+                    sums[3*c+1] += vx.getY();
+                    sums[3*c+2]++;
+                }
+            }
+        }, (a, b) -> {
+            for(int c=0; c<length; c++) {
+                a[c] += b[c];
+            }
+        });
+    }
+
+    /**
+     * The number of clusters.
+     * <p>
+     * This is one more than the largest cluster id.
+     *
+     * @return The number of clusters.
+     */
+    public int getClusterCount() {
+        return nClusters;
+    }
+
+    /**
+     * The centroid of a cluster, as found by the last tick.
+     *
+     * @param cluster A cluster id.
+     *
+     * @return The x and y coordinates of the centroid.
+     */
+    public double[] getCentroid(final int cluster) {
+        return new double[]{cx[cluster], cy[cluster]};
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    public ForceCluster setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.Util.jiggle;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3AfterVisitor;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3Quad;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadNode;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3Visitor;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.IPoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Treat vertices as circles with the radius given by IVertex.getRadius(),
+ * and push apart vertices that overlap.
+ * <p>
+ * This is a port of d3's forceCollide. Overlaps are found using the
+ * positions the vertices will have after this tick (position plus velocity).
+ * Each quadtree node records the largest radius of the vertices below it,
+ * so a search only descends into quadrants that could hold an overlapping
+ * vertex, and the cost of a tick is close to linear in the number of vertices.
+ * <p>
+ * Unlike d3, which updates both vertices of an overlapping pair as it finds
+ * them, every vertex here looks for its own overlaps and takes its share of
+ * each correction, so the searches are independent and run in parallel.
+ * The corrections are added to the velocities when every search is done.
+ * The pair is separated by the same amount as in d3, but because no search
+ * sees the corrections made by the others in the same iteration, the result
+ * is not identical. Use more iterations for a more rigid constraint.
+ * <p>
+ * Because the force depends on the velocities the other forces have already
+ * produced, it is a constraint: a simulation applies it after them, it is
+ * never accumulated concurrently with them, and adaptive integration doesn't
+ * scale its corrections.
+ * <p>
+ * When only some vertices are active, the fixed vertices don't move, so
+ * they are kept in a quadtree of their own at their current positions.
+ * Each iteration only the active vertices are put in a new quadtree.
+ * The quadtree of fixed vertices is kept from one restricted tick to the
+ * next: when the active set changes, only the vertices that became active
+ * or stopped being active are removed from it or added to it, and a fixed
+ * vertex that is moved is moved in it. It is built again after a full tick.
+ *
+ * @author algol
+ */
+public class ForceCollide implements Force {
+    private List<IVertex> vxs;
+    private double[] radii;
+    private double[] dxv;
+    private double[] dyv;
+    private Point[] points;
+    private List<IPoint> pointList;
+
+    // The quadtree of the fixed vertices, which vertices are in it, and
+    // the active set it was last brought up to date with. The fixed
+    // vertices have points of their own, because predict() moves the
+    // points of the active vertices.
+    //
+    private D3QuadTree fixedTree;
+    private Point[] fixedPoints;
+    private boolean[] fixed;
+    private ActiveSet fixedSet;
+    private int fixedVersion;
+    private int[] lastActive;
+    private int lastActiveCount;
+    private final List<D3QuadNode> path;
+
+    private double strength;
+    private int iterations;
+
+    /**
+     * A vertex at its predicted position, or at its position if it is fixed.
+     * <p>
+     * The quadtree is built from these rather than from the vertices.
+     */
+    private static class Point implements IPoint {
+        final int index;
+        double x;
+        double y;
+
+        Point(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+    }
+
+    /**
+     * Per D3Node metadata for the collision algorithm.
+     */
+    private static class CollideMeta {
+        double r = 0;
+    }
+
+    public ForceCollide() {
+        path = new ArrayList<>();
+        strength = 1;
+        iterations = 1;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        final int n = vxs.size();
+
+        radii = new double[n];
+        dxv = new double[n];
+        dyv = new double[n];
+        points = new Point[n];
+        pointList = new ArrayList<>(n);
+        for(int i=0; i<n; i++) {
+            radii[i] = vxs.get(i).getRadius();
+            points[i] = new Point(i);
+            pointList.add(points[i]);
+        }
+
+        fixedTree = null;
+        fixedPoints = new Point[n];
+        fixed = new boolean[n];
+        fixedSet = null;
+        lastActive = new int[n];
+        lastActiveCount = 0;
+    }
+
+    @Override
+    public void force(final double alpha) {
+        for(int k=0; k<iterations; k++) {
+            iterate(null);
+        }
+    }
+
+    /**
+     * Push apart the active vertices.
+     * <p>
+     * The vertices that are not active are still obstacles, but aren't moved:
+     * an active vertex that overlaps one takes the whole of the correction.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move.
+     */
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        for(int k=0; k<iterations; k++) {
+            iterate(active);
+        }
+    }
+
+    @Override
+    public boolean isConstraint() {
+        return true;
+    }
+
+    /**
+     * Move a fixed vertex to its new position in the quadtree of fixed vertices.
+     *
+     * @param vx The vertex that was moved.
+     */
+    @Override
+    public void fixedMoved(final IVertex vx) {
+        final int i = vx.getIndex();
+        if(fixedTree!=null && fixed[i]) {
+            removeFixed(i);
+            addFixed(i);
+        }
+    }
+
+    private void iterate(final ActiveSet active) {
+        if(active==null) {
+            // Every vertex moves, so a tree of fixed vertices from an
+            // earlier restricted tick is out of date.
+            //
+            fixedTree = null;
+            final int n = vxs.size();
+            Util.parallelFor(n, i -> predict(i));
+            final D3QuadTree tree = build(pointList);
+            Util.parallelFor(n, i -> collide(i, null, tree, null));
+            Util.parallelFor(n, i -> update(i));
+        } else {
+            if(fixedTree==null) {
+                buildFixed(active);
+            } else if(fixedSet!=active || fixedVersion!=active.getVersion()) {
+                updateFixed(active);
+            }
+
+            final int m = active.size();
+            final List<IPoint> moving = new ArrayList<>(m);
+            for(int j=0; j<m; j++) {
+                final int i = active.get(j);
+                predict(i);
+                moving.add(points[i]);
+            }
+
+            final D3QuadTree tree = build(moving);
+            Util.parallelFor(m, j -> collide(active.get(j), active, tree, fixedTree));
+            Util.parallelFor(m, j -> update(active.get(j)));
+        }
+    }
+
+    /**
+     * Build the quadtree of the vertices that aren't active.
+     */
+    private void buildFixed(final ActiveSet active) {
+        final int n = vxs.size();
+        final List<IPoint> fixedList = new ArrayList<>();
+        for(int i=0; i<n; i++) {
+            fixed[i] = !active.contains(i);
+            if(fixed[i]) {
+                final IVertex vx = vxs.get(i);
+                if(fixedPoints[i]==null) {
+                    fixedPoints[i] = new Point(i);
+                }
+                fixedPoints[i].x = vx.getX();
+                fixedPoints[i].y = vx.getY();
+                fixedList.add(fixedPoints[i]);
+            }
+        }
+
+        fixedTree = build(fixedList);
+        remember(active);
+    }
+
+    /**
+     * Bring the quadtree of fixed vertices up to date with a new active set.
+     * <p>
+     * Only the vertices in the new or the last active set can have changed,
+     * so the cost is proportional to the size of the active sets rather
+     * than the size of the graph.
+     */
+    private void updateFixed(final ActiveSet active) {
+        final int m = active.size();
+        for(int j=0; j<m; j++) {
+            final int i = active.get(j);
+            if(fixed[i]) {
+                removeFixed(i);
+            }
+        }
+
+        for(int k=0; k<lastActiveCount; k++) {
+            final int i = lastActive[k];
+            if(!fixed[i] && !active.contains(i)) {
+                addFixed(i);
+            }
+        }
+
+        remember(active);
+    }
+
+    private void remember(final ActiveSet active) {
+        final int m = active.size();
+        for(int j=0; j<m; j++) {
+            lastActive[j] = active.get(j);
+        }
+        lastActiveCount = m;
+        fixedSet = active;
+        fixedVersion = active.getVersion();
+    }
+
+    /**
+     * Add a vertex to the quadtree of fixed vertices at its current position.
+     */
+    private void addFixed(final int i) {
+        final IVertex vx = vxs.get(i);
+        if(fixedPoints[i]==null) {
+            fixedPoints[i] = new Point(i);
+        }
+        final Point p = fixedPoints[i];
+        p.x = vx.getX();
+        p.y = vx.getY();
+        if(Double.isFinite(p.x) && Double.isFinite(p.y)) {
+            fixedTree.add(p);
+            repair(p.x, p.y);
+        }
+        fixed[i] = true;
+    }
+
+    /**
+     * Remove a vertex from the quadtree of fixed vertices.
+     */
+    private void removeFixed(final int i) {
+        final Point p = fixedPoints[i];
+        fixedTree.remove(p);
+        repair(p.x, p.y);
+        fixed[i] = false;
+    }
+
+    /**
+     * Record the largest radius again for each node on the path to a position.
+     * <p>
+     * Adding or removing a point only creates, collapses or changes nodes
+     * on the path to its position, so after either the nodes of the path are
+     * prepared again from the leaf up, and the rest of the tree is still valid.
+     */
+    private void repair(final double x, final double y) {
+        D3QuadNode node = fixedTree.getRoot();
+        final double[] extent = fixedTree.getExtent();
+        if(node==null || extent==null) {
+            return;
+        }
+
+        double x0 = extent[0];
+        double y0 = extent[1];
+        double x1 = extent[2];
+        double y1 = extent[3];
+        path.clear();
+        while(node!=null) {
+            path.add(node);
+            if(node.isLeaf()) {
+                break;
+            }
+
+            final double xm = (x0+x1)/2.0;
+            final boolean right = x >= xm;
+            if(right) {
+                x0 = xm;
+            } else {
+                x1 = xm;
+            }
+
+            final double ym = (y0+y1)/2.0;
+            final boolean bottom = y >= ym;
+            if(bottom) {
+                y0 = ym;
+            } else {
+                y1 = ym;
+            }
+
+            node = node.getNode(((bottom?1:0) << 1) | (right?1:0));
+        }
+
+        for(int p=path.size()-1; p>=0; p--) {
+            prepare(path.get(p));
+        }
+    }
+
+    /**
+     * Put a vertex at the position it will have after this tick.
+     */
+    private void predict(final int i) {
+        final IVertex vx = vxs.get(i);
+        points[i].x = vx.getX() + vx.getXVelocity();
+        points[i].y = vx.getY() + vx.getYVelocity();
+    }
+
+    private D3QuadTree build(final List<IPoint> pts) {
+        final D3QuadTree tree = new D3QuadTree();
+        tree.add(pts);
+        tree.visitAfter(new Prepare());
+
+        return tree;
+    }
+
+    /**
+     * Find the correction for one vertex from the overlaps in one or two quadtrees.
+     */
+    private void collide(final int i, final ActiveSet active, final D3QuadTree tree, final D3QuadTree other) {
+        final Apply apply = new Apply(i, active);
+        tree.visit(apply);
+        if(other!=null) {
+            other.visit(apply);
+        }
+        dxv[i] = apply.xvel;
+        dyv[i] = apply.yvel;
+    }
+
+    private void update(final int i) {
+        final IVertex vx = vxs.get(i);
+        vx.setXVelocity(vx.getXVelocity() + dxv[i]);
+        vx.setYVelocity(vx.getYVelocity() + dyv[i]);
+    }
+
+    /**
+     * Record the largest radius below a quadtree node, whose children are already prepared.
+     */
+    private void prepare(final D3QuadNode node) {
+        final CollideMeta meta = new CollideMeta();
+        if(node.isLeaf()) {
+            for(final IPoint p : node.getData()) {
+                meta.r = Math.max(meta.r, radii[((Point)p).index]);
+            }
+        } else {
+            for(int i=0; i<D3QuadNode.NQUADS; i++) {
+                final D3QuadNode q = node.getNode(i);
+                if(q!=null) {
+                    meta.r = Math.max(meta.r, ((CollideMeta)q.getValue()).r);
+                }
+            }
+        }
+
+        node.setValue(meta);
+    }
+
+    /**
+     * Record the largest radius below each quadtree node.
+     */
+    private class Prepare implements D3AfterVisitor {
+        @Override
+        public void callback(final D3Quad quad) {
+            prepare(quad.node);
+        }
+    }
+
+    private class Apply implements D3Visitor {
+        private final int index;
+        private final ActiveSet active;
+        private final double xi;
+        private final double yi;
+        private final double ri;
+        private final double ri2;
+
+        // The correction accumulated for the current vertex.
+        //
+        private double xvel;
+        private double yvel;
+
+        /**
+         * Find the overlaps of a vertex.
+         *
+         * @param index The index of the vertex.
+         * @param active The vertices that are free to move, or null for every vertex.
+         */
+        Apply(final int index, final ActiveSet active) {
+            this.index = index;
+            this.active = active;
+            xi = points[index].x;
+            yi = points[index].y;
+            ri = radii[index];
+            ri2 = ri * ri;
+            xvel = 0;
+            yvel = 0;
+        }
+
+        @Override
+        public boolean callback(final D3Quad quad) {
+            final double r = ri + ((CollideMeta)quad.node.getValue()).r;
+            if(!quad.node.isLeaf()) {
+                // Prune quadrants that are too far away to hold an overlap.
+                //
+                return quad.x0>xi+r || quad.x1<xi-r || quad.y0>yi+r || quad.y1<yi-r;
+            }
+
+            for(final IPoint p : quad.node.getData()) {
+                final Point point = (Point)p;
+                final int j = point.index;
+                if(j==index) {
+                    continue;
+                }
+
+                final double rj = radii[j];
+                final double rr = ri + rj;
+                double x = xi - point.x;
+                double y = yi - point.y;
+                double l = x*x + y*y;
+                if(l<rr*rr) {
+                    if(x==0) {
+                        x = jiggle();
+                        l += x*x;
+                    }
+                    if(y==0) {
+                        y = jiggle();
+                        l += y*y;
+                    }
+
+                    l = Math.sqrt(l);
+                    l = (rr - l) / l * strength;
+
+                    // The larger vertex moves less. A fixed vertex doesn't move at all.
+                    //
+                    final double rj2 = rj * rj;
+                    final double share = active==null || active.contains(j) ? rj2 / (ri2 + rj2) : 1;
+                    xvel += x * l * share;
+                    yvel += y * l * share;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * The quadtree of the fixed vertices, or null if there isn't one yet.
+     */
+    D3QuadTree getFixedTree() {
+        return fixedTree;
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    /**
+     * The fraction of an overlap that is removed each iteration.
+     *
+     * @param strength A value from 0 to 1; the default is 1.
+     *
+     * @return This force.
+     */
+    public ForceCollide setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * The number of times overlaps are resolved per tick.
+     *
+     * @param iterations The number of iterations; the default is 1.
+     *
+     * @return This force.
+     */
+    public ForceCollide setIterations(final int iterations) {
+        this.iterations = iterations;
+
+        return this;
+    }
+}
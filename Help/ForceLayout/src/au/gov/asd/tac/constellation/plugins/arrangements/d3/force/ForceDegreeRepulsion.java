@@ -0,0 +1,282 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.Util.jiggle;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3AfterVisitor;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3Quad;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadNode;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3Visitor;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.IPoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The degree-weighted repulsion of ForceAtlas2.
+ * <p>
+ * Every vertex has a mass of its degree plus one, and two vertices repel
+ * each other with a force of strength * m<sub>i</sub> * m<sub>j</sub> / d.
+ * Hubs push each other, and everything else, much further apart than the
+ * uniform charges of ForceManyBody, so the neighbourhoods of the hubs of
+ * a scale-free graph are kept separate.
+ * <p>
+ * The force is approximated by Barnes-Hut on a D3QuadTree: each quadtree
+ * node's value holds its total mass and centre of mass, as in
+ * ForceManyBody3D, and each vertex's walk of the quadtree is independent of
+ * the others, so large graphs are done in parallel.
+ *
+ * @author algol
+ */
+public class ForceDegreeRepulsion implements AccumulatingForce {
+    private final List<ILink> links;
+    private List<IVertex> vxs;
+    private List<IPoint> points;
+    private double[] masses;
+    private double strength;
+    private double distanceMin2;
+    private double theta2;
+
+    /**
+     * Per D3QuadNode metadata: the total mass and centre of mass.
+     */
+    private static class ForceMeta {
+        double x = 0;
+        double y = 0;
+        double mass = 0;
+    }
+
+    public ForceDegreeRepulsion(final List<ILink> links) {
+        this.links = links;
+        strength = 2;
+        theta2 = 1.44;
+        distanceMin2 = 1;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        masses = masses(vxs, links);
+        points = new ArrayList<>(vxs);
+    }
+
+    /**
+     * The ForceAtlas2 mass of each vertex: its degree plus one.
+     *
+     * @param vxs The vertices, with their indexes initialised.
+     * @param links The links.
+     *
+     * @return The mass of each vertex, by index.
+     */
+    static double[] masses(final List<IVertex> vxs, final List<ILink> links) {
+        final double[] masses = new double[vxs.size()];
+        for(final IVertex vx : vxs) {
+            masses[vx.getIndex()] = 1;
+        }
+        for(final ILink link : links) {
+            masses[link.getSource().getIndex()]++;
+            masses[link.getTarget().getIndex()]++;
+        }
+
+        return masses;
+    }
+
+    @Override
+    public void force(final double alpha) {
+        apply(alpha, null, null, null);
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        apply(alpha, active, null, null);
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        apply(alpha, active, xvel, yvel);
+    }
+
+    /**
+     * Apply the force to every vertex, or to the active vertices.
+     * <p>
+     * A restricted tick builds the quadtree of every vertex, then applies the
+     * force to the active vertices only.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void apply(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final D3QuadTree tree = new D3QuadTree();
+        tree.add(points);
+        tree.visitAfter(new Accumulate());
+
+        final int n = active==null ? vxs.size() : active.size();
+        Util.parallelFor(n, j -> {
+            final int i = active==null ? j : active.get(j);
+            final IVertex vx = vxs.get(i);
+            final Apply apply = new Apply(vx, strength * masses[i] * alpha);
+            tree.visit(apply);
+            if(xvel==null) {
+                vx.setXVelocity(vx.getXVelocity() + apply.xvel);
+                vx.setYVelocity(vx.getYVelocity() + apply.yvel);
+            } else {
+                xvel[i] += apply.xvel;
+                yvel[i] += apply.yvel;
+            }
+        });
+    }
+
+    private class Accumulate implements D3AfterVisitor {
+        @Override
+        public void callback(final D3Quad quad) {
+            final D3QuadNode node = quad.node;
+            final ForceMeta meta = new ForceMeta();
+            if(node.isLeaf()) {
+                final IPoint p = node.getData().get(0);
+                meta.x = p.getX();
+                meta.y = p.getY();
+                for(final IPoint point : node.getData()) {
+                    meta.mass += masses[((IVertex)point).getIndex()];
+                }
+            } else {
+                for(int i=0; i<D3QuadNode.NQUADS; i++) {
+                    final D3QuadNode q = node.getNode(i);
+                    if(q!=null) {
+                        final ForceMeta child = (ForceMeta)q.getValue();
+                        meta.mass += child.mass;
+                        meta.x += child.mass * child.x;
+                        meta.y += child.mass * child.y;
+                    }
+                }
+
+                meta.x /= meta.mass;
+                meta.y /= meta.mass;
+            }
+
+            node.setValue(meta);
+        }
+    }
+
+    private class Apply implements D3Visitor {
+        private final IVertex currentVx;
+
+        // The strength times the mass of the current vertex times alpha.
+        //
+        private final double k;
+
+        // The velocity accumulated for the current vertex.
+        //
+        private double xvel;
+        private double yvel;
+
+        Apply(final IVertex vx, final double k) {
+            currentVx = vx;
+            this.k = k;
+        }
+
+        @Override
+        public boolean callback(final D3Quad quad) {
+            final ForceMeta meta = (ForceMeta)quad.node.getValue();
+            double x = currentVx.getX() - meta.x;
+            double y = currentVx.getY() - meta.y;
+            final double w = quad.x1 - quad.x0;
+            double l = x*x + y*y;
+
+            // Apply the Barnes-Hut approximation if possible.
+            // The force is m*m/d along a unit vector, so the vector is divided by d squared.
+            //
+            if(w*w/theta2<l) {
+                if(l<distanceMin2) {
+                    l = Math.sqrt(distanceMin2*l);
+                }
+
+                final double s = k * meta.mass / l;
+                xvel += x*s;
+                yvel += y*s;
+
+                return true;
+            } else if(!quad.node.isLeaf()) {
+                return false;
+            }
+
+            // Otherwise, process points directly; randomize direction if coincident.
+            //
+            final List<IPoint> data = quad.node.getData();
+            if(data.get(0)!=currentVx || data.size()>1) {
+                if(x==0) {
+                    x = jiggle();
+                    l += x*x;
+                }
+                if(y==0) {
+                    y = jiggle();
+                    l += y*y;
+                }
+                if(l<distanceMin2) {
+                    l = Math.sqrt(distanceMin2*l);
+                }
+            }
+
+            for(final IPoint p : data) {
+                if(p!=currentVx) {
+                    final double s = k * masses[((IVertex)p).getIndex()] / l;
+                    xvel += x*s;
+                    yvel += y*s;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    /**
+     * The ForceAtlas2 scaling ratio: larger values spread the graph out.
+     *
+     * @param strength The scaling ratio.
+     *
+     * @return This force.
+     */
+    public ForceDegreeRepulsion setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public double getDistanceMin() {
+        return Math.sqrt(distanceMin2);
+    }
+
+    public ForceDegreeRepulsion setDistanceMin(final double distanceMin) {
+        this.distanceMin2 = distanceMin * distanceMin;
+
+        return this;
+    }
+
+    public double getTheta() {
+        return Math.sqrt(theta2);
+    }
+
+    public ForceDegreeRepulsion setTheta(final double theta) {
+        this.theta2 = theta * theta;
+
+        return this;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.List;
+
+/**
+ * The gravity of ForceAtlas2.
+ * <p>
+ * Every vertex is pulled towards the origin with a force of strength times
+ * its ForceAtlas2 mass, whatever its distance, so disconnected components
+ * don't drift away under a degree-weighted repulsion. Strong gravity
+ * multiplies the force by the distance, which holds the graph together
+ * more tightly.
+ *
+ * @author algol
+ */
+public class ForceGravity implements AccumulatingForce {
+    private final List<ILink> links;
+    private List<IVertex> vxs;
+    private double[] masses;
+    private double strength;
+    private boolean strongGravity;
+
+    public ForceGravity(final List<ILink> links) {
+        this.links = links;
+        strength = 1;
+        strongGravity = false;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        masses = ForceDegreeRepulsion.masses(vxs, links);
+    }
+
+    @Override
+    public void force(final double alpha) {
+        apply(alpha, null, null, null);
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        apply(alpha, active, null, null);
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        apply(alpha, active, xvel, yvel);
+    }
+
+    /**
+     * Apply the force to every vertex, or to the active vertices.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void apply(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final int n = active==null ? vxs.size() : active.size();
+        Util.parallelFor(n, j -> {
+            final int i = active==null ? j : active.get(j);
+            final IVertex vx = vxs.get(i);
+            final double x = vx.getX();
+            final double y = vx.getY();
+            final double l = Math.sqrt(x*x + y*y);
+            if(l>0) {
+                final double k = strength * masses[i] * alpha / (strongGravity ? 1 : l);
+                if(xvel==null) {
+                    vx.setXVelocity(vx.getXVelocity() - x*k);
+                    vx.setYVelocity(vx.getYVelocity() - y*k);
+                } else {
+                    xvel[i] -= x*k;
+                    yvel[i] -= y*k;
+                }
+            }
+        });
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    public ForceGravity setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public boolean isStrongGravity() {
+        return strongGravity;
+    }
+
+    /**
+     * Make the gravity proportional to the distance from the origin.
+     *
+     * @param strongGravity True for strong gravity.
+     *
+     * @return This force.
+     */
+    public ForceGravity setStrongGravity(final boolean strongGravity) {
+        this.strongGravity = strongGravity;
+
+        return this;
+    }
+}
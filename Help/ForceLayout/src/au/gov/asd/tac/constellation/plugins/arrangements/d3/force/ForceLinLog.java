@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.List;
+
+/**
+ * The LinLog attraction of ForceAtlas2.
+ * <p>
+ * Linked vertices attract each other with a force of strength * log(1 + d).
+ * Unlike the springs of ForceLink there is no rest length: the distances
+ * are set by the balance with a repulsion such as ForceDegreeRepulsion, and
+ * the logarithm makes clusters tighter and the gaps between them wider.
+ * <p>
+ * To dissuade hubs, the attraction on each vertex is divided by its
+ * ForceAtlas2 mass, so hubs are pulled less by their many neighbours and
+ * end up at the edges of their clusters, and authorities are central.
+ * <p>
+ * The force on each vertex is summed over its own links, so the vertices
+ * are done in parallel without two threads writing the same velocity.
+ *
+ * @author algol
+ */
+public class ForceLinLog implements AccumulatingForce {
+    private final List<ILink> links;
+    private List<IVertex> vxs;
+    private Adjacency adjacency;
+    private double[] masses;
+    private double strength;
+    private boolean dissuadeHubs;
+
+    public ForceLinLog(final List<ILink> links) {
+        this.links = links;
+        strength = 1;
+        dissuadeHubs = false;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        adjacency = Adjacency.build(vxs.size(), links);
+        masses = ForceDegreeRepulsion.masses(vxs, links);
+    }
+
+    @Override
+    public void force(final double alpha) {
+        apply(alpha, null, null, null);
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        apply(alpha, active, null, null);
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        apply(alpha, active, xvel, yvel);
+    }
+
+    /**
+     * Apply the force to every vertex, or to the active vertices.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void apply(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final int n = active==null ? vxs.size() : active.size();
+        Util.parallelFor(n, j -> {
+            final int i = active==null ? j : active.get(j);
+            final IVertex vx = vxs.get(i);
+            final double x = vx.getX();
+            final double y = vx.getY();
+            double dx = 0;
+            double dy = 0;
+            for(int a=adjacency.offsets[i]; a<adjacency.offsets[i+1]; a++) {
+                final IVertex u = vxs.get(adjacency.neighbours[a]);
+                final double ux = u.getX() - x;
+                final double uy = u.getY() - y;
+                final double l = Math.sqrt(ux*ux + uy*uy);
+                if(l>0) {
+                    final double s = Math.log1p(l) / l;
+                    dx += ux * s;
+                    dy += uy * s;
+                }
+            }
+
+            final double k = dissuadeHubs ? strength * alpha / masses[i] : strength * alpha;
+            if(xvel==null) {
+                vx.setXVelocity(vx.getXVelocity() + dx*k);
+                vx.setYVelocity(vx.getYVelocity() + dy*k);
+            } else {
+                xvel[i] += dx*k;
+                yvel[i] += dy*k;
+            }
+        });
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    public ForceLinLog setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public boolean isDissuadeHubs() {
+        return dissuadeHubs;
+    }
+
+    /**
+     * Divide the attraction on each vertex by its degree plus one.
+     *
+     * @param dissuadeHubs True to push hubs to the edges of their clusters.
+     *
+     * @return This force.
+     */
+    public ForceLinLog setDissuadeHubs(final boolean dissuadeHubs) {
+        this.dissuadeHubs = dissuadeHubs;
+
+        return this;
+    }
+}
@@ -16,23 +16,148 @@
 package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
 
 import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.Util.jiggle;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.IntUnaryOperator;
 
 /**
+ * Pull linked vertices towards each other.
+ * <p>
+ * At initialisation the links are compiled into arrays of vertex indexes,
+ * and a full tick gathers the vertex positions and velocities into arrays,
+ * runs the springs over the arrays, and scatters the velocities back,
+ * so the loop over the links makes no calls on the links or vertices.
+ * <p>
+ * The springs of a full tick can run in parallel; see {@link Parallelism}.
+ * <p>
+ * Links with the same endpoints can be coalesced into a single spring;
+ * see {@link #setCoalesce(boolean)}.
+ * <p>
+ * Links can be added and removed while a simulation is running without
+ * initialising the force again; see {@link #addLink(ILink)}.
+ * <p>
+ * For large graphs, the springs can be put in an order with better memory
+ * locality; see {@link #setReorder(boolean)}. For dense graphs, a full
+ * tick can evaluate a sample of the springs; see {@link #setSampling(double, int)}.
  *
  * @author algol
  */
-public class ForceLink implements Force {
+public class ForceLink implements AccumulatingForce {
+    /**
+     * How the springs of a full tick are run.
+     */
+    public enum Parallelism {
+        /**
+         * One link after another, as in d3.
+         */
+        SEQUENTIAL,
+
+        /**
+         * The links are coloured so that no two links of the same colour
+         * share a vertex, and the links of each colour run in parallel.
+         * The result doesn't depend on the number of threads, but a vertex
+         * of high degree needs that many colours, so graphs with hubs
+         * have many small colours. Colours too small to be worth running
+         * in parallel run sequentially, and the links of a colour are
+         * scattered through memory, so if most of the links are in small
+         * colours the links run as {@link #SEQUENTIAL} instead; use
+         * {@link #BUFFERED} for such graphs.
+         */
+        COLOURED,
+
+        /**
+         * Every link computes its change to the velocities in parallel from
+         * the velocities at the start of the iteration, then every vertex
+         * adds up the changes of its own links in parallel. No link sees
+         * the changes made by the others in the same iteration, so the
+         * result doesn't depend on the number of threads. The work and the
+         * extra memory are proportional to the number of links, and this
+         * isn't affected by hubs.
+         */
+        BUFFERED
+    }
+
     private final List<ILink> links;
     private List<IVertex> vxs;
-    private Map<Integer, IVertex> nodeById;
-    private int[] count;
+
+    // The number of links that have been compiled into springs; links
+    // appended to the list after these are compiled by extend().
+    //
+    private int compiled;
+
+    // The springs. Each link has its own spring, in the same order, unless
+    // links are coalesced or reordered, in which case linkSpring maps links
+    // to springs and springLinks maps springs to links. The arrays have
+    // spare capacity for adding links.
+    //
+    private int ns;
+    private int[] source;
+    private int[] target;
+    private int[] multiplicity;
+    private int[] linkSpring;
+    private int[][] springLinks;
+    private boolean coalesce;
+
+    // If the springs are reordered, the vertices of a full tick are numbered
+    // by rank (order is the inverse), and lsource and ltarget are the
+    // springs' vertices in that numbering. Otherwise they are the same
+    // arrays as source and target.
+    //
+    private boolean reorder;
+    private int[] rank;
+    private int[] order;
+    private int[] lsource;
+    private int[] ltarget;
     private double[] bias;
     private double[] strengths;
     private double[] distances;
 
+    // The springs at each vertex; count[v] is the number of them.
+    // A self-loop is at its vertex twice.
+    //
+    private int[] count;
+    private int[][] incident;
+
+    // Working copies of the vertex positions and velocities for a full tick.
+    //
+    private double[] xs;
+    private double[] ys;
+    private double[] xvs;
+    private double[] yvs;
+
+    private Parallelism parallelism;
+
+    // The links sorted by colour, and where each colour starts. If most of
+    // the links are in colours too small to run in parallel, colourless
+    // is true and the links run sequentially.
+    //
+    private int[] colourOffsets;
+    private int[] colourLinks;
+    private boolean colourless;
+
+    // Springs with a vertex of degree at most keepDegree are always
+    // evaluated; the others are sampled each tick.
+    //
+    private double sampleRate;
+    private int keepDegree;
+    private SplittableRandom random;
+    private int[] kept;
+    private int[] sampled;
+    private int[] chosen;
+
+    // For BUFFERED springs, each end of each spring has a slot; the slots
+    // of vertex r (in the numbering of a full tick) are slotOffsets[r] to
+    // slotOffsets[r+1]. Each spring writes the changes to the velocities
+    // of its vertices to its own slots, and each vertex adds up its slots.
+    //
+    private int[] slotOffsets;
+    private int[] sourceSlots;
+    private int[] targetSlots;
+    private double[] slotXs;
+    private double[] slotYs;
+
     private double distance;
     private int iterations;
 
@@ -48,6 +173,12 @@ public class ForceLink implements Force {
         distance = 30;
         iterations = 1;
         strength = null;
+        parallelism = Parallelism.SEQUENTIAL;
+        coalesce = false;
+        reorder = false;
+        sampleRate = 1;
+        keepDegree = 1;
+        random = new SplittableRandom();
     }
 
     @Override
@@ -59,74 +190,1079 @@ public class ForceLink implements Force {
 
         // Vertex instances must already have had their index initialised.
         //
-        nodeById = new HashMap();
-        vxs.forEach(vx -> {nodeById.put(vx.getIndex(), vx);});
-
-        count = new int[n];
+        source = new int[m];
+        target = new int[m];
         for(int i=0; i<m; i++) {
             final ILink link = links.get(i);
             link.setIndex(i);
 
-            count[link.getSource().getIndex()]++;
-            count[link.getTarget().getIndex()]++;
+            source[i] = link.getSource().getIndex();
+            target[i] = link.getTarget().getIndex();
         }
 
-        bias = new double[m];
-        for(int i=0; i<m; i++) {
-            final ILink link = links.get(i);
-            bias[i] = (double)count[link.getSource().getIndex()] /
-                    (count[link.getSource().getIndex()] + count[link.getTarget().getIndex()]);
+        linkSpring = null;
+        springLinks = null;
+        if(coalesce) {
+            coalesceLinks(n);
+        } else {
+            multiplicity = new int[m];
+            Arrays.fill(multiplicity, 1);
+        }
+
+        ns = source.length;
+        rank = null;
+        order = null;
+        lsource = source;
+        ltarget = target;
+        if(reorder) {
+            reorderSprings(n);
+        }
+        count = new int[n];
+        for(int i=0; i<ns; i++) {
+            count[source[i]]++;
+            count[target[i]]++;
         }
 
-        strengths = new double[m];
+        incident = new int[n][];
+        for(int v=0; v<n; v++) {
+            incident[v] = new int[count[v]];
+        }
+        final int[] next = new int[n];
+        for(int i=0; i<ns; i++) {
+            incident[source[i]][next[source[i]]++] = i;
+            incident[target[i]][next[target[i]]++] = i;
+        }
+
+        if(linkSpring!=null) {
+            springLinks = new int[ns][];
+            for(int i=0; i<ns; i++) {
+                springLinks[i] = new int[multiplicity[i]];
+            }
+            final int[] nextLink = new int[ns];
+            for(int i=0; i<m; i++) {
+                final int spring = linkSpring[i];
+                springLinks[spring][nextLink[spring]++] = i;
+            }
+        }
+
+        bias = new double[ns];
+        for(int i=0; i<ns; i++) {
+            bias[i] = (double)count[source[i]] / (count[source[i]] + count[target[i]]);
+        }
+
+        strengths = new double[ns];
         initialiseStrength();
-        distances = new double[m];
+        distances = new double[ns];
         initialiseDistance();
+
+        xs = new double[n];
+        ys = new double[n];
+        xvs = new double[n];
+        yvs = new double[n];
+        colourOffsets = null;
+        colourLinks = null;
+        slotOffsets = null;
+        kept = null;
+        compiled = m;
+    }
+
+    /**
+     * Add the new vertices, and the links appended to the list of links
+     * since the force last saw it.
+     * <p>
+     * The new links are added as by {@link #addLink(ILink)}, and the vertex
+     * arrays grow by doubling, so the cost is proportional to the number of
+     * new vertices and links and the degrees of their vertices rather than
+     * the size of the graph. If the springs are reordered, the new vertices
+     * are numbered after the existing ones.
+     */
+    @Override
+    public void extend(final List<IVertex> vxs, final int n0) {
+        this.vxs = vxs;
+        final int n = vxs.size();
+        if(n>count.length) {
+            final int capacity = Math.max(n, 2*count.length);
+            count = Arrays.copyOf(count, capacity);
+            incident = Arrays.copyOf(incident, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            xvs = Arrays.copyOf(xvs, capacity);
+            yvs = Arrays.copyOf(yvs, capacity);
+            if(rank!=null) {
+                rank = Arrays.copyOf(rank, capacity);
+                order = Arrays.copyOf(order, capacity);
+            }
+        }
+        for(int v=n0; v<n; v++) {
+            count[v] = 0;
+            incident[v] = new int[0];
+            if(rank!=null) {
+                rank[v] = v;
+                order[v] = v;
+            }
+        }
+        slotOffsets = null;
+
+        final int m = links.size();
+        for(int li=compiled; li<m; li++) {
+            final ILink link = links.get(li);
+            link.setIndex(li);
+            compile(link);
+        }
+        compiled = m;
+    }
+
+    /**
+     * Replace the links with one spring for each pair of linked vertices.
+     * <p>
+     * The links are bucketed by their lower vertex index, then each bucket is
+     * scanned with a stamp per vertex to find links with the same higher index,
+     * so this is linear in the number of links.
+     *
+     * @param n The number of vertices.
+     */
+    private void coalesceLinks(final int n) {
+        final int m = source.length;
+        final int[] offsets = new int[n+1];
+        for(int i=0; i<m; i++) {
+            offsets[Math.min(source[i], target[i])+1]++;
+        }
+        for(int v=0; v<n; v++) {
+            offsets[v+1] += offsets[v];
+        }
+
+        final int[] next = offsets.clone();
+        final int[] byLow = new int[m];
+        for(int i=0; i<m; i++) {
+            byLow[next[Math.min(source[i], target[i])]++] = i;
+        }
+
+        final int[] stamp = new int[n];
+        Arrays.fill(stamp, -1);
+        final int[] springOf = new int[n];
+        final int[] ss = new int[m];
+        final int[] st = new int[m];
+        final int[] k = new int[m];
+        linkSpring = new int[m];
+        int ns = 0;
+        for(int u=0; u<n; u++) {
+            for(int j=offsets[u]; j<offsets[u+1]; j++) {
+                final int i = byLow[j];
+                final int v = Math.max(source[i], target[i]);
+                if(stamp[v]!=u) {
+                    stamp[v] = u;
+                    springOf[v] = ns;
+                    ss[ns] = source[i];
+                    st[ns] = target[i];
+                    ns++;
+                }
+
+                linkSpring[i] = springOf[v];
+                k[springOf[v]]++;
+            }
+        }
+
+        source = Arrays.copyOf(ss, ns);
+        target = Arrays.copyOf(st, ns);
+        multiplicity = Arrays.copyOf(k, ns);
+    }
+
+    /**
+     * Renumber the vertices for the full ticks and sort the springs.
+     * <p>
+     * The vertices are numbered in reverse Cuthill-McKee order: breadth first
+     * from a vertex of lowest degree in each component, visiting neighbours
+     * in order of increasing degree, then reversed. Linked vertices get nearby
+     * numbers, and sorting the springs by their renumbered source and target
+     * means that consecutive springs mostly touch the same few cache lines of
+     * the working arrays.
+     *
+     * @param n The number of vertices.
+     */
+    private void reorderSprings(final int n) {
+        final Adjacency adj = Adjacency.build(n, source, target);
+
+        final int[] byDegree = new int[n];
+        final int[] offsets = new int[n+1];
+        for(int v=0; v<n; v++) {
+            offsets[Math.min(adj.degree(v), n-1)+1]++;
+        }
+        for(int d=0; d<n; d++) {
+            offsets[d+1] += offsets[d];
+        }
+        for(int v=0; v<n; v++) {
+            byDegree[offsets[Math.min(adj.degree(v), n-1)]++] = v;
+        }
+
+        order = new int[n];
+        final boolean[] seen = new boolean[n];
+        long[] keys = new long[16];
+        int head = 0;
+        int tail = 0;
+        for(final int start : byDegree) {
+            if(seen[start]) {
+                continue;
+            }
+
+            seen[start] = true;
+            order[tail++] = start;
+            while(head<tail) {
+                final int v = order[head++];
+                int nk = 0;
+                for(int a=adj.offsets[v]; a<adj.offsets[v+1]; a++) {
+                    final int u = adj.neighbours[a];
+                    if(!seen[u]) {
+                        seen[u] = true;
+                        if(nk==keys.length) {
+                            keys = Arrays.copyOf(keys, 2*nk);
+                        }
+                        keys[nk++] = ((long)adj.degree(u) << 32) | u;
+                    }
+                }
+
+                Arrays.sort(keys, 0, nk);
+                for(int k=0; k<nk; k++) {
+                    order[tail++] = (int)keys[k];
+                }
+            }
+        }
+
+        rank = new int[n];
+        for(int j=0; j<n/2; j++) {
+            final int tmp = order[j];
+            order[j] = order[n-1-j];
+            order[n-1-j] = tmp;
+        }
+        for(int j=0; j<n; j++) {
+            rank[order[j]] = j;
+        }
+
+        // Sort the springs by renumbered target, then stably by renumbered source.
+        //
+        final int[] byTarget = countingSort(null, ns, n, i -> rank[target[i]]);
+        final int[] sorted = countingSort(byTarget, ns, n, i -> rank[source[i]]);
+
+        source = permute(source, sorted);
+        target = permute(target, sorted);
+        multiplicity = permute(multiplicity, sorted);
+        final int[] newIndex = new int[ns];
+        for(int j=0; j<ns; j++) {
+            newIndex[sorted[j]] = j;
+        }
+
+        final int m = links.size();
+        if(linkSpring==null) {
+            linkSpring = newIndex;
+        } else {
+            for(int i=0; i<m; i++) {
+                linkSpring[i] = newIndex[linkSpring[i]];
+            }
+        }
+
+        lsource = new int[ns];
+        ltarget = new int[ns];
+        for(int i=0; i<ns; i++) {
+            lsource[i] = rank[source[i]];
+            ltarget[i] = rank[target[i]];
+        }
+    }
+
+    /**
+     * A stable counting sort of springs.
+     *
+     * @param in The springs to sort, or null for all springs in index order.
+     * @param size The number of springs.
+     * @param range The keys are from 0 to range-1.
+     * @param key The key of a spring.
+     *
+     * @return The sorted springs.
+     */
+    private static int[] countingSort(final int[] in, final int size, final int range, final IntUnaryOperator key) {
+        final int[] offsets = new int[range+1];
+        for(int j=0; j<size; j++) {
+            offsets[key.applyAsInt(in==null ? j : in[j])+1]++;
+        }
+        for(int k=0; k<range; k++) {
+            offsets[k+1] += offsets[k];
+        }
+
+        final int[] out = new int[size];
+        for(int j=0; j<size; j++) {
+            final int i = in==null ? j : in[j];
+            out[offsets[key.applyAsInt(i)]++] = i;
+        }
+
+        return out;
+    }
+
+    private static int[] permute(final int[] values, final int[] sorted) {
+        final int[] out = new int[sorted.length];
+        for(int j=0; j<sorted.length; j++) {
+            out[j] = values[sorted[j]];
+        }
+
+        return out;
     }
 
     @Override
     public void force(double alpha) {
-        final int n = links.size();
+        springs(alpha, null, null);
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        springs(alpha, active, null, null);
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        if(active==null) {
+            springs(alpha, xvel, yvel);
+        } else {
+            springs(alpha, active, xvel, yvel);
+        }
+    }
+
+    /**
+     * Apply the spring force of every link.
+     *
+     * @param alpha The current alpha.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void springs(final double alpha, final double[] xvel, final double[] yvel) {
+        final int n = vxs.size();
+        Util.parallelFor(n, i -> {
+            final int v = order!=null ? order[i] : i;
+            final IVertex vx = vxs.get(v);
+            xs[i] = vx.getX();
+            ys[i] = vx.getY();
+            xvs[i] = vx.getXVelocity() + (xvel!=null ? xvel[v] : 0);
+            yvs[i] = vx.getYVelocity() + (yvel!=null ? yvel[v] : 0);
+        });
+
+        final int m = ns;
+        if(sampleRate<1) {
+            sampleSprings(alpha);
+            scatter(xvel, yvel);
+
+            return;
+        }
+
         for(int k=0; k<iterations; k++) {
-            for(int i=0; i<n; i++) {
-                final ILink link = links.get(i);
-                final IVertex source = link.getSource();
-                final IVertex target = link.getTarget();
-                double x = target.getX() + target.getXVelocity() - source.getX() - source.getXVelocity();
-                x = x!=0 ? x : jiggle();
-                double y = target.getY() + target.getYVelocity() - source.getY() - target.getYVelocity();
-                y = y!=0 ? y : jiggle();
-                double l = Math.sqrt(x*x + y*y);
-                l = (double)(l - distances[i]) / l * alpha * strengths[i];
-                x *= l;
-                y *= l;
-                double b = bias[i];
+            if(parallelism==Parallelism.SEQUENTIAL || m<Util.PARALLEL_THRESHOLD) {
+                for(int i=0; i<m; i++) {
+                    springArrays(i, alpha);
+                }
+            } else if(parallelism==Parallelism.COLOURED) {
+                if(colourLinks==null) {
+                    colour();
+                }
+
+                if(colourless) {
+                    for(int i=0; i<m; i++) {
+                        springArrays(i, alpha);
+                    }
+                } else {
+                    final int nc = colourOffsets.length - 1;
+                    for(int c=0; c<nc; c++) {
+                        final int lo = colourOffsets[c];
+                        Util.parallelFor(colourOffsets[c+1] - lo, j -> {
+                            springArrays(colourLinks[lo+j], alpha);
+                        });
+                    }
+                }
+            } else {
+                springsBuffered(alpha, 1, null, m, m);
+            }
+        }
+
+        scatter(xvel, yvel);
+    }
+
+    /**
+     * Apply the springs of a full tick using a sample of the springs.
+     *
+     * @param alpha The current alpha.
+     */
+    private void sampleSprings(final double alpha) {
+        if(kept==null) {
+            stratify();
+        }
+
+        // Choose each of the springs that can be sampled with probability p,
+        // skipping over the springs between the chosen ones with geometrically
+        // distributed jumps, so the cost is proportional to the sample.
+        //
+        final double p = getSamplingProbability(alpha);
+        int nChosen = 0;
+        if(p>=1) {
+            System.arraycopy(sampled, 0, chosen, 0, sampled.length);
+            nChosen = sampled.length;
+        } else if(p>0) {
+            final double logq = Math.log(1 - p);
+            long j = -1;
+            while(true) {
+                j += 1 + (long)(Math.log(1 - random.nextDouble()) / logq);
+                if(j>=sampled.length) {
+                    break;
+                }
+
+                chosen[nChosen++] = sampled[(int)j];
+            }
+        }
+
+        // Each chosen spring stands for 1/p springs.
+        //
+        final double scale = p>0 ? 1/p : 0;
+        final int total = kept.length + nChosen;
+        for(int k=0; k<iterations; k++) {
+            if(parallelism==Parallelism.BUFFERED && total>=Util.PARALLEL_THRESHOLD) {
+                springsBuffered(alpha, scale, kept, kept.length, total);
+            } else {
+                for(final int i : kept) {
+                    springArrays(i, alpha);
+                }
+                for(int j=0; j<nChosen; j++) {
+                    springArrays(chosen[j], sampledAlpha(chosen[j], alpha, scale));
+                }
+            }
+        }
+    }
+
+    /**
+     * The alpha of a chosen spring: alpha scaled by 1/p, but no more than
+     * makes the spring go exactly to its rest length, so a spring standing
+     * in for many springs doesn't overshoot.
+     *
+     * @param i The spring.
+     * @param alpha The current alpha.
+     * @param scale The scale of the chosen springs.
+     *
+     * @return The alpha to apply the spring with.
+     */
+    private double sampledAlpha(final int i, final double alpha, final double scale) {
+        return Math.min(alpha * scale, 1 / strengths[i]);
+    }
+
+    /**
+     * Split the springs into those that are always evaluated and those
+     * that are sampled.
+     */
+    private void stratify() {
+        int nk = 0;
+        for(int i=0; i<ns; i++) {
+            if(Math.min(count[source[i]], count[target[i]])<=keepDegree) {
+                nk++;
+            }
+        }
+
+        kept = new int[nk];
+        sampled = new int[ns-nk];
+        chosen = new int[ns-nk];
+        int k = 0;
+        int j = 0;
+        for(int i=0; i<ns; i++) {
+            if(Math.min(count[source[i]], count[target[i]])<=keepDegree) {
+                kept[k++] = i;
+            } else {
+                sampled[j++] = i;
+            }
+        }
+    }
+
+    /**
+     * Copy the working velocities back to the vertices.
+     *
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void scatter(final double[] xvel, final double[] yvel) {
+        final int n = vxs.size();
+        Util.parallelFor(n, i -> {
+            final int v = order!=null ? order[i] : i;
+            final IVertex vx = vxs.get(v);
+            if(xvel==null) {
+                vx.setXVelocity(xvs[i]);
+                vx.setYVelocity(yvs[i]);
+            } else {
+                xvel[v] = xvs[i] - vx.getXVelocity();
+                yvel[v] = yvs[i] - vx.getYVelocity();
+            }
+        });
+    }
+
+    /**
+     * Apply the spring force of a single link to the working arrays.
+     *
+     * @param i The index of the link.
+     * @param alpha The current alpha.
+     */
+    private void springArrays(final int i, final double alpha) {
+        final int s = lsource[i];
+        final int t = ltarget[i];
+        double x = xs[t] + xvs[t] - xs[s] - xvs[s];
+        double y = ys[t] + yvs[t] - ys[s] - yvs[s];
+        x = x!=0 ? x : jiggle();
+        y = y!=0 ? y : jiggle();
+        double l = Math.sqrt(x*x + y*y);
+        l = (l - distances[i]) / l * alpha * strengths[i];
+        x *= l;
+        y *= l;
+
+        final double b = bias[i];
+        xvs[t] -= x*b;
+        yvs[t] -= y*b;
+        xvs[s] += x*(1.0-b);
+        yvs[s] += y*(1.0-b);
+    }
+
+    /**
+     * Apply the spring force of a single link to its slots.
+     *
+     * @param i The index of the link.
+     * @param alpha The current alpha.
+     */
+    private void springSlots(final int i, final double alpha) {
+        final int s = lsource[i];
+        final int t = ltarget[i];
+        double x = xs[t] + xvs[t] - xs[s] - xvs[s];
+        double y = ys[t] + yvs[t] - ys[s] - yvs[s];
+        x = x!=0 ? x : jiggle();
+        y = y!=0 ? y : jiggle();
+        double l = Math.sqrt(x*x + y*y);
+        l = (l - distances[i]) / l * alpha * strengths[i];
+        x *= l;
+        y *= l;
+
+        final double b = bias[i];
+        slotXs[targetSlots[i]] = -x*b;
+        slotYs[targetSlots[i]] = -y*b;
+        slotXs[sourceSlots[i]] = x*(1.0-b);
+        slotYs[sourceSlots[i]] = y*(1.0-b);
+    }
+
+    /**
+     * One iteration of the springs, computing every spring in parallel and
+     * then adding up the slots of each vertex in parallel.
+     * <p>
+     * Each spring writes only its own slots, and each vertex writes only
+     * its own velocity, so neither pass needs buffers per thread, and the
+     * result doesn't depend on the number of threads.
+     *
+     * @param alpha The current alpha.
+     * @param scale The chosen springs are applied with alpha times this, clamped by sampledAlpha().
+     * @param first The springs to apply first, or null for every spring.
+     * @param nFirst The number of springs to apply first.
+     * @param m The number of springs in total; the springs after the first
+     * ones are the chosen springs.
+     */
+    private void springsBuffered(final double alpha, final double scale, final int[] first, final int nFirst, final int m) {
+        if(slotOffsets==null) {
+            slot();
+        }
+
+        // When springs are sampled, the springs that weren't chosen
+        // mustn't leave their changes from the last iteration.
+        //
+        if(first!=null) {
+            Arrays.fill(slotXs, 0);
+            Arrays.fill(slotYs, 0);
+        }
+
+        Util.parallelFor(m, j -> {
+            if(j<nFirst) {
+                springSlots(first!=null ? first[j] : j, alpha);
+            } else {
+                final int i = chosen[j-nFirst];
+                springSlots(i, sampledAlpha(i, alpha, scale));
+            }
+        });
+
+        final int n = vxs.size();
+        Util.parallelFor(n, r -> {
+            double dx = 0;
+            double dy = 0;
+            final int hi = slotOffsets[r+1];
+            for(int k=slotOffsets[r]; k<hi; k++) {
+                dx += slotXs[k];
+                dy += slotYs[k];
+            }
+
+            xvs[r] += dx;
+            yvs[r] += dy;
+        });
+    }
+
+    /**
+     * Give each end of each spring a slot, with the slots of each vertex together.
+     */
+    private void slot() {
+        final int n = vxs.size();
+        final int m = ns;
+        slotOffsets = new int[n+1];
+        for(int i=0; i<m; i++) {
+            slotOffsets[lsource[i]+1]++;
+            slotOffsets[ltarget[i]+1]++;
+        }
+        for(int r=0; r<n; r++) {
+            slotOffsets[r+1] += slotOffsets[r];
+        }
+
+        final int[] next = Arrays.copyOf(slotOffsets, n);
+        sourceSlots = new int[m];
+        targetSlots = new int[m];
+        for(int i=0; i<m; i++) {
+            sourceSlots[i] = next[lsource[i]]++;
+            targetSlots[i] = next[ltarget[i]]++;
+        }
+
+        slotXs = new double[2*m];
+        slotYs = new double[2*m];
+    }
+
+    /**
+     * Colour the links so that no two links of the same colour share a vertex.
+     * <p>
+     * Each link in turn gets the lowest colour that isn't already used
+     * at either of its vertices. If fewer than half of the links are in
+     * colours big enough to run in parallel, the colours aren't used.
+     */
+    private void colour() {
+        final int n = vxs.size();
+        final int m = ns;
+        final BitSet[] used = new BitSet[n];
+        final int[] colours = new int[m];
+        int nc = 0;
+        for(int i=0; i<m; i++) {
+            final int s = lsource[i];
+            final int t = ltarget[i];
+            if(used[s]==null) {
+                used[s] = new BitSet();
+            }
+            if(used[t]==null) {
+                used[t] = new BitSet();
+            }
+
+            int c = 0;
+            while(true) {
+                final int cs = used[s].nextClearBit(c);
+                c = used[t].nextClearBit(cs);
+                if(c==cs) {
+                    break;
+                }
+            }
+
+            colours[i] = c;
+            used[s].set(c);
+            used[t].set(c);
+            nc = Math.max(nc, c+1);
+        }
+
+        colourOffsets = new int[nc+1];
+        for(int i=0; i<m; i++) {
+            colourOffsets[colours[i]+1]++;
+        }
+        for(int c=0; c<nc; c++) {
+            colourOffsets[c+1] += colourOffsets[c];
+        }
+
+        final int[] next = colourOffsets.clone();
+        colourLinks = new int[m];
+        for(int i=0; i<m; i++) {
+            colourLinks[next[colours[i]]++] = i;
+        }
+
+        int parallel = 0;
+        for(int c=0; c<nc; c++) {
+            final int size = colourOffsets[c+1] - colourOffsets[c];
+            if(size>=Util.PARALLEL_THRESHOLD) {
+                parallel += size;
+            }
+        }
+        colourless = 2*parallel<m;
+    }
+
+    /**
+     * The colour of each link, for testing.
+     *
+     * @return The colour of each link.
+     */
+    int[] getColours() {
+        if(colourLinks==null) {
+            colour();
+        }
+
+        final int[] colours = new int[ns];
+        for(int c=0; c<colourOffsets.length-1; c++) {
+            for(int j=colourOffsets[c]; j<colourOffsets[c+1]; j++) {
+                colours[colourLinks[j]] = c;
+            }
+        }
+
+        return colours;
+    }
+
+    private void springs(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final int n = active.size();
+        for(int k=0; k<iterations; k++) {
+            for(int j=0; j<n; j++) {
+                final int v = active.get(j);
+                final int[] springs = incident[v];
+                for(int a=0; a<count[v]; a++) {
+                    // A spring between two active vertices is at both of them,
+                    // so only do it from the lower index.
+                    //
+                    final int spring = springs[a];
+                    final int other = source[spring]==v ? target[spring] : source[spring];
+                    if(other>=v || !active.contains(other)) {
+                        spring(spring, alpha, active, xvel, yvel);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the spring force of a single link.
+     *
+     * @param i The index of the link.
+     * @param alpha The current alpha.
+     * @param active If not null, only vertices in this set have their velocity updated.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void spring(final int i, final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final int si = this.source[i];
+        final int ti = this.target[i];
+        final IVertex source = vxs.get(si);
+        final IVertex target = vxs.get(ti);
+
+        // Fixed vertices aren't moving, whatever their velocity says.
+        //
+        final boolean moveSource = active==null || active.contains(si);
+        final boolean moveTarget = active==null || active.contains(ti);
+        double svx = moveSource ? source.getXVelocity() : 0;
+        double svy = moveSource ? source.getYVelocity() : 0;
+        double tvx = moveTarget ? target.getXVelocity() : 0;
+        double tvy = moveTarget ? target.getYVelocity() : 0;
+        if(xvel!=null) {
+            svx += moveSource ? xvel[si] : 0;
+            svy += moveSource ? yvel[si] : 0;
+            tvx += moveTarget ? xvel[ti] : 0;
+            tvy += moveTarget ? yvel[ti] : 0;
+        }
+
+        double x = target.getX() + tvx - source.getX() - svx;
+        x = x!=0 ? x : jiggle();
+        double y = target.getY() + tvy - source.getY() - svy;
+        y = y!=0 ? y : jiggle();
+        double l = Math.sqrt(x*x + y*y);
+        l = (double)(l - distances[i]) / l * alpha * strengths[i];
+        x *= l;
+        y *= l;
+        double b = bias[i];
+        if(xvel!=null) {
+            if(moveTarget) {
+                xvel[ti] -= x*b;
+                yvel[ti] -= y*b;
+            }
+            b = 1.0 - b;
+            if(moveSource) {
+                xvel[si] += x*b;
+                yvel[si] += y*b;
+            }
+        } else {
+            if(moveTarget) {
                 target.setXVelocity(target.getXVelocity() - x*b);
                 target.setYVelocity(target.getYVelocity() - y*b);
-                b = 1.0 - b;
+            }
+            b = 1.0 - b;
+            if(moveSource) {
                 source.setXVelocity((source.getXVelocity() + x*b));
                 source.setYVelocity((source.getYVelocity() + y*b));
             }
         }
     }
 
-    double defaultStrength(final ILink link) {
-        return 1.0 / Math.min(count[link.getSource().getIndex()], count[link.getTarget().getIndex()]);
+    double defaultStrength(final int spring) {
+        return 1.0 / Math.min(count[source[spring]], count[target[spring]]);
+    }
+
+    private double springStrength(final int spring) {
+        final double s = strength==null ? defaultStrength(spring) : strength;
+
+        // k springs applied one after the other each remove a fraction s
+        // of what is left of the error in the length, so together they
+        // remove 1-(1-s)^k of it.
+        //
+        return multiplicity[spring]>1 ? 1 - Math.pow(1 - s, multiplicity[spring]) : s;
     }
 
     void initialiseStrength() {
-        System.out.printf("@@strength %s\n", strength);
-        for(int i=0; i<links.size(); i++) {
-            strengths[i] = strength==null ? defaultStrength(links.get(i)) : strength;
+        for(int i=0; i<ns; i++) {
+            strengths[i] = springStrength(i);
         }
     }
 
     void initialiseDistance() {
-        for(int i=0; i<links.size(); i++) {
+        for(int i=0; i<ns; i++) {
             distances[i] = distance;
         }
     }
 
+    /**
+     * Add a link while the simulation is running.
+     * <p>
+     * The link is appended to the list of links the force was constructed
+     * with, so the list must be modifiable, and its vertices must already be
+     * in the simulation. The degree counts of the link's vertices change, so
+     * the bias and default strength of the springs at those vertices are
+     * updated; the cost is proportional to their degree. With
+     * {@link Parallelism#COLOURED}, the springs are coloured again
+     * on the next tick.
+     *
+     * @param link The link to add.
+     *
+     * @return This force.
+     */
+    public ForceLink addLink(final ILink link) {
+        link.setIndex(links.size());
+        links.add(link);
+        compile(link);
+        compiled = links.size();
+
+        return this;
+    }
+
+    /**
+     * Make a spring for a link that is in the list of links, or add it
+     * to the spring of its endpoints if links are coalesced.
+     *
+     * @param link The link, whose index is its position in the list.
+     */
+    private void compile(final ILink link) {
+        final int s = link.getSource().getIndex();
+        final int t = link.getTarget().getIndex();
+        final int li = link.getIndex();
+
+        int spring = -1;
+        if(coalesce) {
+            for(int a=0; a<count[s]; a++) {
+                final int sp = incident[s][a];
+                if((source[sp]==s && target[sp]==t) || (source[sp]==t && target[sp]==s)) {
+                    spring = sp;
+                    break;
+                }
+            }
+        }
+
+        if(spring>=0) {
+            multiplicity[spring]++;
+            strengths[spring] = springStrength(spring);
+        } else {
+            spring = ns;
+            if(ns==source.length) {
+                growSprings(Math.max(16, 2*ns));
+            }
+            ns++;
+            source[spring] = s;
+            target[spring] = t;
+            if(rank!=null) {
+                lsource[spring] = rank[s];
+                ltarget[spring] = rank[t];
+            }
+            multiplicity[spring] = 1;
+            distances[spring] = distance;
+            if(linkSpring!=null) {
+                springLinks[spring] = new int[0];
+            }
+
+            attach(s, spring);
+            attach(t, spring);
+            updateSprings(s);
+            if(t!=s) {
+                updateSprings(t);
+            }
+        }
+
+        if(linkSpring!=null) {
+            if(li==linkSpring.length) {
+                linkSpring = Arrays.copyOf(linkSpring, Math.max(16, 2*li));
+            }
+            linkSpring[li] = spring;
+            final int k = multiplicity[spring];
+            if(k>springLinks[spring].length) {
+                springLinks[spring] = Arrays.copyOf(springLinks[spring], 2*k);
+            }
+            springLinks[spring][k-1] = li;
+        }
+
+        colourLinks = null;
+        slotOffsets = null;
+        kept = null;
+    }
+
+    /**
+     * Remove a link while the simulation is running.
+     * <p>
+     * The last link in the list of links takes the place of the removed link,
+     * and its index changes to match. The bias and default strength of
+     * the springs at the link's vertices are updated; the cost is proportional
+     * to their degree.
+     *
+     * @param link The link to remove.
+     *
+     * @return This force.
+     */
+    public ForceLink removeLink(final ILink link) {
+        final int li = link.getIndex();
+        if(li<0 || li>=links.size() || links.get(li)!=link) {
+            throw new IllegalArgumentException("Link is not in this force");
+        }
+
+        final int spring = getSpring(li);
+
+        // Move the last link into the removed link's place.
+        //
+        final int lastLink = links.size() - 1;
+        final ILink moved = links.get(lastLink);
+        links.set(li, moved);
+        links.remove(lastLink);
+        moved.setIndex(li);
+
+        if(linkSpring!=null) {
+            removeFrom(springLinks, spring, multiplicity[spring], li);
+            if(li!=lastLink) {
+                final int ms = linkSpring[lastLink];
+                replaceIn(springLinks[ms], multiplicity[ms] - (ms==spring ? 1 : 0), lastLink, li);
+                linkSpring[li] = ms;
+            }
+        }
+
+        if(multiplicity[spring]>1) {
+            multiplicity[spring]--;
+            strengths[spring] = springStrength(spring);
+        } else {
+            final int s = source[spring];
+            final int t = target[spring];
+            detach(s, spring);
+            detach(t, spring);
+
+            // Move the last spring into the removed spring's place.
+            // Without coalescing or reordering, this keeps springs and links in step.
+            //
+            final int last = --ns;
+            if(spring!=last) {
+                source[spring] = source[last];
+                target[spring] = target[last];
+                if(rank!=null) {
+                    lsource[spring] = lsource[last];
+                    ltarget[spring] = ltarget[last];
+                }
+                multiplicity[spring] = multiplicity[last];
+                bias[spring] = bias[last];
+                strengths[spring] = strengths[last];
+                distances[spring] = distances[last];
+                replaceIn(incident[source[spring]], count[source[spring]], last, spring);
+                replaceIn(incident[target[spring]], count[target[spring]], last, spring);
+                if(linkSpring!=null) {
+                    springLinks[spring] = springLinks[last];
+                    for(int j=0; j<multiplicity[spring]; j++) {
+                        linkSpring[springLinks[spring][j]] = spring;
+                    }
+                }
+            }
+            if(linkSpring!=null) {
+                springLinks[last] = null;
+            }
+
+            updateSprings(s);
+            if(t!=s) {
+                updateSprings(t);
+            }
+        }
+
+        colourLinks = null;
+        slotOffsets = null;
+        kept = null;
+        compiled = links.size();
+
+        return this;
+    }
+
+    private void growSprings(final int capacity) {
+        source = Arrays.copyOf(source, capacity);
+        target = Arrays.copyOf(target, capacity);
+        multiplicity = Arrays.copyOf(multiplicity, capacity);
+        bias = Arrays.copyOf(bias, capacity);
+        strengths = Arrays.copyOf(strengths, capacity);
+        distances = Arrays.copyOf(distances, capacity);
+        if(linkSpring!=null) {
+            springLinks = Arrays.copyOf(springLinks, capacity);
+        }
+        if(rank!=null) {
+            lsource = Arrays.copyOf(lsource, capacity);
+            ltarget = Arrays.copyOf(ltarget, capacity);
+        } else {
+            lsource = source;
+            ltarget = target;
+        }
+    }
+
+    private void attach(final int v, final int spring) {
+        if(count[v]==incident[v].length) {
+            incident[v] = Arrays.copyOf(incident[v], Math.max(4, 2*count[v]));
+        }
+
+        incident[v][count[v]++] = spring;
+    }
+
+    private void detach(final int v, final int spring) {
+        for(int a=0; a<count[v]; a++) {
+            if(incident[v][a]==spring) {
+                incident[v][a] = incident[v][--count[v]];
+
+                return;
+            }
+        }
+    }
+
+    private static void replaceIn(final int[] values, final int size, final int from, final int to) {
+        for(int a=0; a<size; a++) {
+            if(values[a]==from) {
+                values[a] = to;
+
+                return;
+            }
+        }
+    }
+
+    private static void removeFrom(final int[][] lists, final int list, final int size, final int value) {
+        final int[] values = lists[list];
+        for(int a=0; a<size; a++) {
+            if(values[a]==value) {
+                values[a] = values[size-1];
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Update the bias and strength of the springs at a vertex after
+     * its degree has changed.
+     *
+     * @param v The vertex.
+     */
+    private void updateSprings(final int v) {
+        for(int a=0; a<count[v]; a++) {
+            final int spring = incident[v][a];
+            bias[spring] = (double)count[source[spring]] / (count[source[spring]] + count[target[spring]]);
+            strengths[spring] = springStrength(spring);
+        }
+    }
+
     public double getDistance() {
         return distance;
     }
@@ -147,6 +1283,160 @@ public class ForceLink implements Force {
         return this;
     }
 
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    /**
+     * Coalesce links with the same endpoints into a single spring.
+     * <p>
+     * The spring has the combined strength of the links it replaces,
+     * and the degree of a vertex used for the bias and the default strength
+     * is its number of distinct neighbours. This takes effect when the force
+     * is initialised.
+     *
+     * @param coalesce True to coalesce links.
+     *
+     * @return This force.
+     */
+    public ForceLink setCoalesce(final boolean coalesce) {
+        this.coalesce = coalesce;
+
+        return this;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getKeepDegree() {
+        return keepDegree;
+    }
+
+    /**
+     * Evaluate a sample of the springs in a full tick.
+     * <p>
+     * Springs with a vertex whose degree is at most the keep degree hold
+     * the structure of the graph together, so they are always evaluated.
+     * Each of the other springs is evaluated with probability
+     * p = sampleRate + (1-sampleRate)(1-alpha), which rises to 1 as the
+     * simulation cools, and its strength is scaled by 1/p so that the
+     * expected force is unchanged. The scaled alpha times the strength of a
+     * spring is clamped to 1, which takes the spring exactly to its rest
+     * length; otherwise it would overshoot and make the early ticks
+     * unstable. A clamped spring pulls less than its expected force, so
+     * sampling is biased towards weaker springs while alpha is high. The
+     * active-set path always evaluates
+     * every spring, and in the coloured parallel mode the sample is
+     * evaluated sequentially.
+     *
+     * @param sampleRate The probability of evaluating a sampled spring when
+     * alpha is 1; 1 turns sampling off.
+     * @param keepDegree Springs with a vertex of at most this degree are
+     * always evaluated.
+     *
+     * @return This force.
+     */
+    public ForceLink setSampling(final double sampleRate, final int keepDegree) {
+        this.sampleRate = sampleRate;
+        this.keepDegree = keepDegree;
+        kept = null;
+
+        return this;
+    }
+
+    /**
+     * The probability that a sampled spring is evaluated.
+     *
+     * @param alpha The current alpha.
+     *
+     * @return The probability that a sampled spring is evaluated.
+     */
+    public double getSamplingProbability(final double alpha) {
+        return Math.min(1, Math.max(0, sampleRate + (1-sampleRate)*(1-alpha)));
+    }
+
+    /**
+     * Seed the random number generator used for sampling.
+     *
+     * @param seed The seed.
+     *
+     * @return This force.
+     */
+    public ForceLink setSeed(final long seed) {
+        random = new SplittableRandom(seed);
+
+        return this;
+    }
+
+    public boolean isReorder() {
+        return reorder;
+    }
+
+    /**
+     * Reorder the springs for memory locality.
+     * <p>
+     * The vertices are renumbered with a bandwidth-reducing order for the
+     * force's own working arrays, and the springs are sorted by their
+     * renumbered source and target, so that each spring mostly touches
+     * working data that is already in the cache. The vertex indexes seen
+     * by the rest of the simulation don't change. The springs are applied
+     * in a different order, which changes the result only as much as
+     * supplying the links in a different order would. This takes effect
+     * when the force is initialised; springs for links added afterwards
+     * are appended.
+     *
+     * @param reorder True to reorder the springs.
+     *
+     * @return This force.
+     */
+    public ForceLink setReorder(final boolean reorder) {
+        this.reorder = reorder;
+
+        return this;
+    }
+
+    /**
+     * The number of springs.
+     *
+     * @return The number of springs.
+     */
+    public int getSpringCount() {
+        return ns;
+    }
+
+    /**
+     * The spring that a link is part of.
+     *
+     * @param link The index of a link.
+     *
+     * @return The index of the spring.
+     */
+    public int getSpring(final int link) {
+        return linkSpring!=null ? linkSpring[link] : link;
+    }
+
+    /**
+     * The strength of a spring, for testing.
+     *
+     * @param spring The index of a spring.
+     *
+     * @return The strength of the spring.
+     */
+    double getSpringStrength(final int spring) {
+        return strengths[spring];
+    }
+
+    public Parallelism getParallelism() {
+        return parallelism;
+    }
+
+    public ForceLink setParallelism(final Parallelism parallelism) {
+        this.parallelism = parallelism;
+
+        return this;
+    }
+
     public int getIterations() {
         return iterations;
     }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.Util.jiggle;
+import java.util.List;
+
+/**
+ * The link force for a three-dimensional simulation.
+ * <p>
+ * This is ForceLink with a z dimension. As in ForceLink, the links are
+ * compiled into primitive arrays of source and target indexes, bias,
+ * strength, and distance when the force is initialised, and each full
+ * tick gathers the positions and velocities into working arrays, applies
+ * the springs to the arrays, and scatters the velocities back.
+ * <p>
+ * The parallel modes, coalescing, reordering, sampling, and adding and
+ * removing links of ForceLink are not supported.
+ *
+ * @author algol
+ */
+public class ForceLink3D implements Force {
+    private final List<ILink> links;
+    private List<IVertex> vxs;
+    private double distance;
+    private int iterations;
+    private Double strength;
+
+    private int[] source;
+    private int[] target;
+    private double[] bias;
+    private double[] strengths;
+    private double[] distances;
+
+    // The links at each vertex; count[v] is the number of them.
+    // A self-loop is at its vertex twice.
+    //
+    private int[] count;
+    private int[][] incident;
+
+    // Working copies of the positions and velocities for a full tick.
+    //
+    private double[] xs;
+    private double[] ys;
+    private double[] zs;
+    private double[] xvs;
+    private double[] yvs;
+    private double[] zvs;
+
+    public ForceLink3D(final List<ILink> links) {
+        this.links = links;
+        distance = 30;
+        iterations = 1;
+        strength = null;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+
+        final int n = vxs.size();
+        final int m = links.size();
+
+        // Vertex instances must already have had their index initialised.
+        //
+        source = new int[m];
+        target = new int[m];
+        count = new int[n];
+        for(int i=0; i<m; i++) {
+            final ILink link = links.get(i);
+            link.setIndex(i);
+            source[i] = link.getSource().getIndex();
+            target[i] = link.getTarget().getIndex();
+            count[source[i]]++;
+            count[target[i]]++;
+        }
+
+        incident = new int[n][];
+        for(int v=0; v<n; v++) {
+            incident[v] = new int[count[v]];
+        }
+        final int[] next = new int[n];
+        for(int i=0; i<m; i++) {
+            incident[source[i]][next[source[i]]++] = i;
+            incident[target[i]][next[target[i]]++] = i;
+        }
+
+        bias = new double[m];
+        strengths = new double[m];
+        distances = new double[m];
+        for(int i=0; i<m; i++) {
+            final int s = source[i];
+            final int t = target[i];
+            bias[i] = count[s] / (double)(count[s] + count[t]);
+            strengths[i] = strength==null ? 1.0 / Math.min(count[s], count[t]) : strength;
+            distances[i] = distance;
+        }
+
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        xvs = new double[n];
+        yvs = new double[n];
+        zvs = new double[n];
+    }
+
+    @Override
+    public void force(final double alpha) {
+        final int n = vxs.size();
+        Util.parallelFor(n, i -> {
+            final IVertex3 vx = (IVertex3)vxs.get(i);
+            xs[i] = vx.getX();
+            ys[i] = vx.getY();
+            zs[i] = vx.getZ();
+            xvs[i] = vx.getXVelocity();
+            yvs[i] = vx.getYVelocity();
+            zvs[i] = vx.getZVelocity();
+        });
+
+        final int m = source.length;
+        for(int k=0; k<iterations; k++) {
+            for(int i=0; i<m; i++) {
+                final int s = source[i];
+                final int t = target[i];
+                double x = xs[t] + xvs[t] - xs[s] - xvs[s];
+                double y = ys[t] + yvs[t] - ys[s] - yvs[s];
+                double z = zs[t] + zvs[t] - zs[s] - zvs[s];
+                x = x!=0 ? x : jiggle();
+                y = y!=0 ? y : jiggle();
+                z = z!=0 ? z : jiggle();
+                double l = Math.sqrt(x*x + y*y + z*z);
+                l = (l - distances[i]) / l * alpha * strengths[i];
+                x *= l;
+                y *= l;
+                z *= l;
+
+                final double b = bias[i];
+                xvs[t] -= x*b;
+                yvs[t] -= y*b;
+                zvs[t] -= z*b;
+                xvs[s] += x*(1.0-b);
+                yvs[s] += y*(1.0-b);
+                zvs[s] += z*(1.0-b);
+            }
+        }
+
+        Util.parallelFor(n, i -> {
+            final IVertex3 vx = (IVertex3)vxs.get(i);
+            vx.setXVelocity(xvs[i]);
+            vx.setYVelocity(yvs[i]);
+            vx.setZVelocity(zvs[i]);
+        });
+    }
+
+    /**
+     * Apply the springs that have an active end.
+     * <p>
+     * Only the links at the active vertices are looked at, so the cost is
+     * proportional to their degrees rather than to the number of links.
+     * A link between two active vertices is applied once, from its source.
+     * The velocity of a fixed end counts as zero, and only the active ends
+     * are moved.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move.
+     */
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        final int na = active.size();
+        for(int k=0; k<iterations; k++) {
+            for(int j=0; j<na; j++) {
+                final int v = active.get(j);
+                for(final int i : incident[v]) {
+                    final boolean sourceActive = source[i]==v || active.contains(source[i]);
+                    final boolean targetActive = target[i]==v || active.contains(target[i]);
+                    if(sourceActive && targetActive && source[i]!=v) {
+                        continue;
+                    }
+
+                    final IVertex3 src = (IVertex3)vxs.get(source[i]);
+                    final IVertex3 tgt = (IVertex3)vxs.get(target[i]);
+                    double x = tgt.getX() - src.getX();
+                    double y = tgt.getY() - src.getY();
+                    double z = tgt.getZ() - src.getZ();
+                    if(targetActive) {
+                        x += tgt.getXVelocity();
+                        y += tgt.getYVelocity();
+                        z += tgt.getZVelocity();
+                    }
+                    if(sourceActive) {
+                        x -= src.getXVelocity();
+                        y -= src.getYVelocity();
+                        z -= src.getZVelocity();
+                    }
+                    x = x!=0 ? x : jiggle();
+                    y = y!=0 ? y : jiggle();
+                    z = z!=0 ? z : jiggle();
+                    double l = Math.sqrt(x*x + y*y + z*z);
+                    l = (l - distances[i]) / l * alpha * strengths[i];
+                    x *= l;
+                    y *= l;
+                    z *= l;
+
+                    final double b = bias[i];
+                    if(targetActive) {
+                        tgt.setXVelocity(tgt.getXVelocity() - x*b);
+                        tgt.setYVelocity(tgt.getYVelocity() - y*b);
+                        tgt.setZVelocity(tgt.getZVelocity() - z*b);
+                    }
+                    if(sourceActive) {
+                        src.setXVelocity(src.getXVelocity() + x*(1.0-b));
+                        src.setYVelocity(src.getYVelocity() + y*(1.0-b));
+                        src.setZVelocity(src.getZVelocity() + z*(1.0-b));
+                    }
+                }
+            }
+        }
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public ForceLink3D setDistance(final double distance) {
+        this.distance = distance;
+
+        return this;
+    }
+
+    public Double getStrength() {
+        return strength;
+    }
+
+    public ForceLink3D setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public ForceLink3D setIterations(final int iterations) {
+        this.iterations = iterations;
+
+        return this;
+    }
+}
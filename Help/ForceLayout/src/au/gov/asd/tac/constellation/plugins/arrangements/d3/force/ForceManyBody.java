@@ -23,13 +23,14 @@ import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
 import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3Visitor;
 import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.IPoint;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  *
  * @author algol
  */
-public class ForceManyBody implements Force {
+public class ForceManyBody implements AccumulatingForce {
     private List<IVertex> vxs;
     private double strength;
     private double[] strengths;
@@ -51,11 +52,64 @@ public class ForceManyBody implements Force {
         }
     }
 
+    /**
+     * If more than this fraction of the vertices is moving, a restricted tick
+     * rebuilds the quadtree of every vertex instead of freezing the far field.
+     */
+    private static final double FREEZE_FRACTION = 0.25;
+
     private final DefaultHashMap<Integer, ForceMeta> forceMetas;
 
+    // The charge of each vertex. The quadtrees hold these rather than the
+    // vertices, so a charge stays where it was put while its vertex moves.
+    //
+    private Charge[] charges;
+
+    // The quadtree built by the last full tick. Restricted ticks use it as
+    // a frozen far field: the charges of the active ("thawed") vertices are
+    // taken out of it and put in a small quadtree of their own, and when
+    // a vertex stops being active its charge goes back in where the vertex
+    // stopped. Only the nodes on the path to a charge change, so each move
+    // costs time proportional to the depth of the tree.
+    //
+    private final DefaultHashMap<Integer, ForceMeta> frozenMetas;
+    private D3QuadTree frozenTree;
+    private boolean[] thawed;
+    private final List<IPoint> thawedCharges;
+    private final List<D3QuadNode> path;
+
+    /**
+     * The charge of a vertex at a position.
+     */
+    private static class Charge implements IPoint {
+        final int index;
+        double x;
+        double y;
+
+        Charge(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+    }
+
     public ForceManyBody() {
         forceMetas = new DefaultHashMap<>(ForceMeta.class);
+        frozenMetas = new DefaultHashMap<>(ForceMeta.class);
+        thawedCharges = new ArrayList<>();
+        path = new ArrayList<>();
         strength = -30;
+        theta2 = 0.81;
+        distanceMin2 = 1;
+        distanceMax2 = Double.POSITIVE_INFINITY;
     }
 
     @Override
@@ -63,96 +117,416 @@ public class ForceManyBody implements Force {
         this.vxs = vxs;
         final int n = vxs.size();
 
-        System.out.printf("@@FMB strength %s\n", strength);
         strengths = new double[n];
+        charges = new Charge[n];
         for(int i=0; i<n; i++) {
             final IVertex v = vxs.get(i);
             strengths[v.getIndex()] = strength;
+            charges[i] = new Charge(i);
         }
 
-        theta2 = 0.81;
-        distanceMin2 = 1;
-        distanceMax2 = Double.POSITIVE_INFINITY;
+        frozenTree = null;
+        thawed = new boolean[n];
+        thawedCharges.clear();
+    }
+
+    /**
+     * The new vertices get the current strength. The frozen quadtree is
+     * kept; the new vertices aren't in it, so they start out thawed, and
+     * go into it when they stop being active. The arrays grow by doubling,
+     * so the cost is proportional to the number of new vertices.
+     */
+    @Override
+    public void extend(final List<IVertex> vxs, final int n0) {
+        this.vxs = vxs;
+        final int n = vxs.size();
+        if(n>strengths.length) {
+            final int capacity = Math.max(n, 2*strengths.length);
+            strengths = Arrays.copyOf(strengths, capacity);
+            charges = Arrays.copyOf(charges, capacity);
+            thawed = Arrays.copyOf(thawed, capacity);
+        }
+
+        for(int i=n0; i<n; i++) {
+            strengths[i] = strength;
+            charges[i] = new Charge(i);
+            thawed[i] = frozenTree!=null;
+            if(thawed[i]) {
+                thawedCharges.add(charges[i]);
+            }
+        }
     }
 
     @Override
     public void force(final double alpha) {
+        apply(alpha, null, null, null);
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        apply(alpha, active, xvel, yvel);
+    }
+
+    /**
+     * Apply the force to every vertex, or to the active vertices.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void apply(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        if(active==null) {
+            final D3QuadTree tree = freeze();
+            final Apply apply = new Apply(frozenMetas);
+            vxs.forEach(vx -> {
+                apply.setCurrent(vx, alpha);
+                tree.visit(apply);
+                apply.addTo(xvel, yvel);
+            });
+        } else {
+            applyActive(alpha, active, xvel, yvel);
+        }
+    }
+
+    /**
+     * Build the quadtree of every vertex at its current position.
+     * <p>
+     * The tree is kept as the frozen far field for restricted ticks.
+     *
+     * @return The quadtree.
+     */
+    private D3QuadTree freeze() {
+        frozenMetas.clear();
+        final int n = vxs.size();
+        final List<IPoint> all = new ArrayList<>(n);
+        for(int i=0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            charges[i].x = vx.getX();
+            charges[i].y = vx.getY();
+            thawed[i] = false;
+            all.add(charges[i]);
+        }
+        thawedCharges.clear();
+
+        final D3QuadTree tree = new D3QuadTree();
+        tree.add(all);
+        tree.visitAfter(new Accumulate(frozenMetas));
+        frozenTree = tree;
+
+        return tree;
+    }
+
+    /**
+     * Apply the many-body force to the active vertices only.
+     * <p>
+     * The vertices that aren't active are taken from the quadtree of the
+     * last full tick, which is kept as a frozen far field. When a vertex
+     * becomes active, its charge is taken out of the frozen quadtree, and
+     * while it is active it is in a small quadtree of moving vertices that
+     * is rebuilt every tick. When it stops being active, its charge is put
+     * back in the frozen quadtree where the vertex stopped. Each move costs
+     * time proportional to the depth of the tree, so the cost of a tick is
+     * proportional to the number of active vertices rather than the size
+     * of the graph, however long the restricted ticks go on.
+     * <p>
+     * Fixed vertices that have been moved, such as a vertex that is being
+     * dragged, must be passed to fixedMoved() so their charge is moved too.
+     * <p>
+     * If the active set is large, every vertex is added to a new quadtree,
+     * as in a full tick.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move.
+     */
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        apply(alpha, active, null, null);
+    }
+
+    private void applyActive(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final int n = active.size();
+        final int limit = (int)(vxs.size() * FREEZE_FRACTION);
+        if(n>limit) {
+            final D3QuadTree tree = freeze();
+            frozenTree = null;
+            final Apply apply = new Apply(frozenMetas);
+            for(int j=0; j<n; j++) {
+                apply.setCurrent(vxs.get(active.get(j)), alpha);
+                tree.visit(apply);
+                apply.addTo(xvel, yvel);
+            }
+
+            return;
+        }
+
+        if(frozenTree==null) {
+            freeze();
+        }
+
+        // Vertices that have stopped moving go back in the frozen quadtree,
+        // and vertices that have started come out of it.
+        //
+        int kept = 0;
+        for(int k=0; k<thawedCharges.size(); k++) {
+            final Charge charge = (Charge)thawedCharges.get(k);
+            if(active.contains(charge.index)) {
+                thawedCharges.set(kept++, charge);
+            } else {
+                refreeze(charge.index);
+            }
+        }
+        thawedCharges.subList(kept, thawedCharges.size()).clear();
+
+        for(int j=0; j<n; j++) {
+            final int i = active.get(j);
+            if(!thawed[i]) {
+                thaw(i);
+                thawedCharges.add(charges[i]);
+            }
+        }
+
+        for(final IPoint p : thawedCharges) {
+            final Charge charge = (Charge)p;
+            final IVertex vx = vxs.get(charge.index);
+            charge.x = vx.getX();
+            charge.y = vx.getY();
+        }
+
+        forceMetas.clear();
         final D3QuadTree tree = new D3QuadTree();
-//        System.out.printf("@@add\n");
-//        vxs.forEach(vx -> {System.out.printf("@vx %s\n", vx);});
-        final List<IPoint> vv = new ArrayList<>(vxs);
-        tree.add(vv);
-//        System.out.printf("@@accum\n");
-        tree.visitAfter(new Accumulate());
-//        tree.visitAfter((final D3Quad quad) -> {
-//            System.out.printf("@@> quad %s\n", quad);
-//        });
-//        System.out.printf("@@apply\n");
-        final Apply apply = new Apply();
-        vxs.forEach(vx -> {
+        tree.add(thawedCharges);
+        tree.visitAfter(new Accumulate(forceMetas));
+
+        final Apply applyFrozen = new Apply(frozenMetas);
+        final Apply apply = new Apply(forceMetas);
+        for(int j=0; j<n; j++) {
+            final IVertex vx = vxs.get(active.get(j));
+            applyFrozen.setCurrent(vx, alpha);
+            frozenTree.visit(applyFrozen);
+            applyFrozen.addTo(xvel, yvel);
             apply.setCurrent(vx, alpha);
             tree.visit(apply);
-        });
+            apply.addTo(xvel, yvel);
+        }
+    }
+
+    /**
+     * Move the charge of a fixed vertex to the vertex's new position in the frozen quadtree.
+     *
+     * @param vx The vertex that was moved.
+     */
+    @Override
+    public void fixedMoved(final IVertex vx) {
+        final int i = vx.getIndex();
+        if(frozenTree!=null && !thawed[i]) {
+            thaw(i);
+            refreeze(i);
+        }
+    }
+
+    /**
+     * Take the charge of a vertex out of the frozen quadtree.
+     *
+     * @param i The index of the vertex.
+     */
+    private void thaw(final int i) {
+        final Charge charge = charges[i];
+        frozenTree.remove(charge);
+        repair(charge.x, charge.y);
+        thawed[i] = true;
+    }
+
+    /**
+     * Put the charge of a vertex in the frozen quadtree at the vertex's position.
+     *
+     * @param i The index of the vertex.
+     */
+    private void refreeze(final int i) {
+        final Charge charge = charges[i];
+        final IVertex vx = vxs.get(i);
+        charge.x = vx.getX();
+        charge.y = vx.getY();
+        if(Double.isFinite(charge.x) && Double.isFinite(charge.y)) {
+            frozenTree.add(charge);
+            repair(charge.x, charge.y);
+        }
+        thawed[i] = false;
+    }
+
+    /**
+     * Accumulate the metadata again for each node on the path to a position.
+     * <p>
+     * Adding or removing a charge only creates, collapses or changes nodes
+     * on the path to its position, so after either the nodes of the path
+     * are accumulated again from the leaf up, and the rest of the tree is
+     * still valid.
+     *
+     * @param x The x coordinate of the charge that was added or removed.
+     * @param y The y coordinate of the charge that was added or removed.
+     */
+    private void repair(final double x, final double y) {
+        D3QuadNode node = frozenTree.getRoot();
+        final double[] extent = frozenTree.getExtent();
+        if(node==null || extent==null) {
+            return;
+        }
+
+        double x0 = extent[0];
+        double y0 = extent[1];
+        double x1 = extent[2];
+        double y1 = extent[3];
+        path.clear();
+        while(node!=null) {
+            path.add(node);
+            if(node.isLeaf()) {
+                break;
+            }
+
+            final double xm = (x0+x1)/2.0;
+            final boolean right = x >= xm;
+            if(right) {
+                x0 = xm;
+            } else {
+                x1 = xm;
+            }
+
+            final double ym = (y0+y1)/2.0;
+            final boolean bottom = y >= ym;
+            if(bottom) {
+                y0 = ym;
+            } else {
+                y1 = ym;
+            }
+
+            node = node.getNode(((bottom?1:0) << 1) | (right?1:0));
+        }
+
+        for(int p=path.size()-1; p>=0; p--) {
+            final D3QuadNode q = path.get(p);
+            if(q.isLeaf()) {
+                accumulateLeaf(q, frozenMetas);
+            } else {
+                accumulateInternal(q, frozenMetas);
+            }
+        }
+    }
+
+    /**
+     * For internal nodes, accumulate forces from child quadrants.
+     *
+     * @param node An internal node.
+     * @param metas The metadata of the tree the node belongs to.
+     */
+    private static void accumulateInternal(final D3QuadNode node, final DefaultHashMap<Integer, ForceMeta> metas) {
+        double strength = 0;
+        double weight = 0;
+        double x = 0;
+        double y = 0;
+        for(int i=0; i<D3QuadNode.NQUADS; i++) {
+            final D3QuadNode q = node.getNode(i);
+            if(q!=null) {
+                final ForceMeta meta = metas.get(q.id);
+                final double c = Math.abs(meta.value);
+                if(c!=0) {
+                    strength += meta.value;
+                    weight += c;
+                    x += c * meta.x;
+                    y += c * meta.y;
+                }
+            }
+        }
+
+        final ForceMeta forceMeta = metas.get(node.id);
+        forceMeta.x = x / weight;
+        forceMeta.y = y / weight;
+        forceMeta.value = strength;
+//        System.out.printf("@@accum1 %s %s %s %s\n", strength, forceMeta.x, forceMeta.y, weight);
     }
 
     private class Accumulate implements D3AfterVisitor {
+        private final DefaultHashMap<Integer, ForceMeta> metas;
+
+        Accumulate(final DefaultHashMap<Integer, ForceMeta> metas) {
+            this.metas = metas;
+        }
+
         @Override
         public void callback(final D3Quad quad) {
-            double strength = 0;
-            double weight = 0;
             if(!quad.node.isLeaf()) {
-                // For internal nodes, accumulate forces from child quadrants.
-                //
-                double x = 0;
-                double y = 0;
-                for(int i=0; i<D3QuadNode.NQUADS; i++) {
-                    final D3QuadNode q = quad.node.getNode(i);
-                    if(q!=null) {
-                        final ForceMeta meta = forceMetas.get(q.id);
-                        final double c = Math.abs(meta.value);
-                        if(c!=0) {
-                            strength += meta.value;
-                            weight += c;
-                            x += c * meta.x;
-                            y += c * meta.y;
-                        }
-                    }
-                }
-
-                final ForceMeta forceMeta = forceMetas.get(quad.node.id);
-                forceMeta.x = x / weight;
-                forceMeta.y = y / weight;
-//                System.out.printf("@@accum1 %s %s %s %s\n", strength, forceMeta.x, forceMeta.y, weight);
+                accumulateInternal(quad.node, metas);
             } else {
-                // For leaf nodes, accumulate forces from coincident quadrants.
-                //
-                final D3QuadNode q = quad.node;
-                final ForceMeta forceMeta = forceMetas.get(q.id);
-                final IVertex vx = (IVertex)q.getData().get(0);
-                forceMeta.x = vx.getX();
-                forceMeta.y = vx.getY();
-                for(var point : q.getData()) {
-                    strength += strengths[((IVertex)point).getIndex()];
-                }
-//                System.out.printf("@@accum2 %s %s %s %s\n", strength, forceMeta.x, forceMeta.y, weight);
+                accumulateLeaf(quad.node, metas);
             }
+        }
+    }
 
-            forceMetas.get(quad.node.id).value = strength;
+    /**
+     * For leaf nodes, accumulate forces from coincident quadrants.
+     *
+     * @param node A leaf node.
+     * @param metas The metadata of the tree the node belongs to.
+     */
+    private void accumulateLeaf(final D3QuadNode node, final DefaultHashMap<Integer, ForceMeta> metas) {
+        double strength = 0;
+        final ForceMeta forceMeta = metas.get(node.id);
+        final Charge charge = (Charge)node.getData().get(0);
+        forceMeta.x = charge.x;
+        forceMeta.y = charge.y;
+        for(var point : node.getData()) {
+            strength += strengths[((Charge)point).index];
         }
+//        System.out.printf("@@accum2 %s %s %s\n", strength, forceMeta.x, forceMeta.y);
+
+        forceMeta.value = strength;
     }
 
     private class Apply implements D3Visitor {
+        private final DefaultHashMap<Integer, ForceMeta> metas;
         private IVertex currentVx;
         private double alpha;
 
+        // The velocity accumulated for the current vertex.
+        //
+        private double xvel;
+        private double yvel;
+
+        /**
+         * Apply the force from the charges in a quadtree.
+         *
+         * @param metas The metadata of the quadtree.
+         */
+        Apply(final DefaultHashMap<Integer, ForceMeta> metas) {
+            this.metas = metas;
+        }
+
         void setCurrent(final IVertex vx, final double alpha) {
             currentVx = vx;
             this.alpha = alpha;
+            xvel = 0;
+            yvel = 0;
+        }
+
+        /**
+         * Add the velocity accumulated for the current vertex.
+         *
+         * @param xvels If not null, add the x velocity here instead of to the vertex.
+         * @param yvels If not null, add the y velocity here instead of to the vertex.
+         */
+        void addTo(final double[] xvels, final double[] yvels) {
+            if(xvels==null) {
+                currentVx.setXVelocity(currentVx.getXVelocity() + xvel);
+                currentVx.setYVelocity(currentVx.getYVelocity() + yvel);
+            } else {
+                final int i = currentVx.getIndex();
+                xvels[i] += xvel;
+                yvels[i] += yvel;
+            }
         }
 
         @Override
         public boolean callback(final D3Quad quad) {
-            final ForceMeta meta = forceMetas.get(quad.node.id);
+            final ForceMeta meta = metas.get(quad.node.id);
             if(meta.value==0) {
 //                System.out.printf("@@quad.value %s\n", meta.value);
                 return true;
@@ -183,10 +557,8 @@ public class ForceManyBody implements Force {
                         l = Math.sqrt(distanceMin2*l);
                     }
 
-                    final double xvel = x*meta.value*alpha/l;
-                    currentVx.setXVelocity(currentVx.getXVelocity()+xvel);
-                    final double yvel = y*meta.value*alpha/l;
-                    currentVx.setYVelocity(currentVx.getYVelocity()+yvel);
+                    xvel += x*meta.value*alpha/l;
+                    yvel += y*meta.value*alpha/l;
 //                    System.out.printf("@@a x=%s y=%s %s %s %s\n", x, y, meta.value, alpha, l);
 //                    System.out.printf("@@vela %s %s\n", currentVx.getXVelocity(), currentVx.getYVelocity());
                 }
@@ -201,8 +573,8 @@ public class ForceManyBody implements Force {
 
             // Limit forces for very close nodes; randomize direction if coincident.
             //
-            final IVertex quadVx = (IVertex)quad.node.getData().get(0);
-            if(quadVx.getIndex()!=currentVx.getIndex() || quad.node.getData().size()>1) {
+            final Charge quadCharge = (Charge)quad.node.getData().get(0);
+            if(quadCharge.index!=currentVx.getIndex() || quad.node.getData().size()>1) {
                 if(x==0) {
                     x = jiggle();
                     l += x*x;
@@ -218,13 +590,13 @@ public class ForceManyBody implements Force {
             }
 
             for(final IPoint p : quad.node.getData()) {
-                final IVertex vx = (IVertex)p;
+                final Charge charge = (Charge)p;
 //                System.out.printf("@@pre %s %s %s\n", vx.getIndex()!=currentVx.getIndex(), vx.getIndex(), currentVx.getIndex());
-                if(vx.getIndex()!=currentVx.getIndex()) {
+                if(charge.index!=currentVx.getIndex()) {
 //                    System.out.printf("@@index %s %s %s %s\n", vx.getIndex(), currentVx.getIndex(), vx.getXVelocity(), vx.getYVelocity());
-                    final double s = strengths[vx.getIndex()] * alpha/l;
-                    currentVx.setXVelocity(currentVx.getXVelocity() + x*s);
-                    currentVx.setYVelocity(currentVx.getYVelocity() + y*s);
+                    final double s = strengths[charge.index] * alpha/l;
+                    xvel += x*s;
+                    yvel += y*s;
 //                    System.out.printf("@@b x=%s y=%s %s\n", x, y ,s);
 //                    System.out.printf("@@velb %s %s %s %s\n", vx.getIndex(), s, currentVx.getXVelocity(), currentVx.getYVelocity());
                 }
@@ -234,6 +606,13 @@ public class ForceManyBody implements Force {
         }
     }
 
+    /**
+     * The frozen quadtree, or null if there isn't one.
+     */
+    D3QuadTree getFrozenTree() {
+        return frozenTree;
+    }
+
     public double getStrength() {
         return strength;
     }
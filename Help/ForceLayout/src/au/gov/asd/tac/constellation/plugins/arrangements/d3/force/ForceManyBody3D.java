@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.Util.jiggle;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.octree.D3Oct;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.octree.D3OctAfterVisitor;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.octree.D3OctNode;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.octree.D3OctVisitor;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.octree.D3Octree;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.octree.IPoint3;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The many-body force for a three-dimensional simulation.
+ * <p>
+ * This is ForceManyBody with a D3Octree instead of a D3QuadTree,
+ * as in d3-force-3d. The metadata of each octree node is kept in the
+ * node's value rather than in a map, and each vertex's walk of the octree
+ * is independent of the others, so large graphs are done in parallel.
+ * <p>
+ * The frozen far field of ForceManyBody isn't supported: a restricted tick
+ * builds the octree of every vertex, then applies the force to the active
+ * vertices only.
+ *
+ * @author algol
+ */
+public class ForceManyBody3D implements Force {
+    private List<IVertex> vxs;
+    private List<IPoint3> points;
+    private double strength;
+    private double[] strengths;
+    private double distanceMin2;
+    private double distanceMax2;
+    private double theta2;
+
+    /**
+     * Per D3OctNode metadata for the many-body algorithm.
+     */
+    private static class ForceMeta {
+        double x = 0;
+        double y = 0;
+        double z = 0;
+        double value = 0;
+    }
+
+    public ForceManyBody3D() {
+        strength = -30;
+        theta2 = 0.81;
+        distanceMin2 = 1;
+        distanceMax2 = Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        final int n = vxs.size();
+
+        strengths = new double[n];
+        points = new ArrayList<>(n);
+        for(int i=0; i<n; i++) {
+            strengths[i] = strength;
+            points.add((IVertex3)vxs.get(i));
+        }
+    }
+
+    @Override
+    public void force(final double alpha) {
+        final D3Octree tree = build();
+        Util.parallelFor(vxs.size(), i -> apply(tree, i, alpha));
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        final D3Octree tree = build();
+        Util.parallelFor(active.size(), j -> apply(tree, active.get(j), alpha));
+    }
+
+    private D3Octree build() {
+        final D3Octree tree = new D3Octree();
+        tree.add(points);
+        tree.visitAfter(new Accumulate());
+
+        return tree;
+    }
+
+    private void apply(final D3Octree tree, final int i, final double alpha) {
+        final IVertex3 vx = (IVertex3)vxs.get(i);
+        final Apply apply = new Apply(vx, alpha);
+        tree.visit(apply);
+        vx.setXVelocity(vx.getXVelocity() + apply.xvel);
+        vx.setYVelocity(vx.getYVelocity() + apply.yvel);
+        vx.setZVelocity(vx.getZVelocity() + apply.zvel);
+    }
+
+    private class Accumulate implements D3OctAfterVisitor {
+        @Override
+        public void callback(final D3Oct oct) {
+            final D3OctNode node = oct.node;
+            final ForceMeta meta = new ForceMeta();
+            if(node.isLeaf()) {
+                // For leaf nodes, accumulate forces from coincident vertices.
+                //
+                final IPoint3 p = node.getData().get(0);
+                meta.x = p.getX();
+                meta.y = p.getY();
+                meta.z = p.getZ();
+                for(final IPoint3 point : node.getData()) {
+                    meta.value += strengths[((IVertex)point).getIndex()];
+                }
+            } else {
+                // For internal nodes, accumulate forces from child octants.
+                //
+                double weight = 0;
+                for(int i=0; i<D3OctNode.NOCTS; i++) {
+                    final D3OctNode q = node.getNode(i);
+                    if(q!=null) {
+                        final ForceMeta child = (ForceMeta)q.getValue();
+                        final double c = Math.abs(child.value);
+                        if(c!=0) {
+                            meta.value += child.value;
+                            weight += c;
+                            meta.x += c * child.x;
+                            meta.y += c * child.y;
+                            meta.z += c * child.z;
+                        }
+                    }
+                }
+
+                meta.x /= weight;
+                meta.y /= weight;
+                meta.z /= weight;
+            }
+
+            node.setValue(meta);
+        }
+    }
+
+    private class Apply implements D3OctVisitor {
+        private final IVertex3 currentVx;
+        private final double alpha;
+
+        // The velocity accumulated for the current vertex.
+        //
+        private double xvel;
+        private double yvel;
+        private double zvel;
+
+        Apply(final IVertex3 vx, final double alpha) {
+            currentVx = vx;
+            this.alpha = alpha;
+        }
+
+        @Override
+        public boolean callback(final D3Oct oct) {
+            final ForceMeta meta = (ForceMeta)oct.node.getValue();
+            if(meta.value==0) {
+                return true;
+            }
+
+            double x = meta.x - currentVx.getX();
+            double y = meta.y - currentVx.getY();
+            double z = meta.z - currentVx.getZ();
+            final double w = oct.x1 - oct.x0;
+            double l = x*x + y*y + z*z;
+
+            // Apply the Barnes-Hut approximation if possible.
+            // Limit forces for very close nodes; randomize direction if coincident.
+            //
+            if(w*w/theta2<l) {
+                if(l<distanceMax2) {
+                    if(x==0) {
+                        x = jiggle();
+                        l += x*x;
+                    }
+                    if(y==0) {
+                        y = jiggle();
+                        l += y*y;
+                    }
+                    if(z==0) {
+                        z = jiggle();
+                        l += z*z;
+                    }
+                    if(l<distanceMin2) {
+                        l = Math.sqrt(distanceMin2*l);
+                    }
+
+                    final double s = meta.value*alpha/l;
+                    xvel += x*s;
+                    yvel += y*s;
+                    zvel += z*s;
+                }
+
+                return true;
+            } else if(!oct.node.isLeaf() || l>=distanceMax2) {
+                return false;
+            }
+
+            // Otherwise, process points directly.
+            //
+            final List<IPoint3> data = oct.node.getData();
+            if(data.get(0)!=currentVx || data.size()>1) {
+                if(x==0) {
+                    x = jiggle();
+                    l += x*x;
+                }
+                if(y==0) {
+                    y = jiggle();
+                    l += y*y;
+                }
+                if(z==0) {
+                    z = jiggle();
+                    l += z*z;
+                }
+                if(l<distanceMin2) {
+                    l = Math.sqrt(distanceMin2*l);
+                }
+            }
+
+            for(final IPoint3 p : data) {
+                if(p!=currentVx) {
+                    final double s = strengths[((IVertex)p).getIndex()] * alpha/l;
+                    xvel += x*s;
+                    yvel += y*s;
+                    zvel += z*s;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    public ForceManyBody3D setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public double getDistanceMin() {
+        return Math.sqrt(distanceMin2);
+    }
+
+    public ForceManyBody3D setDistanceMin(final double distanceMin) {
+        this.distanceMin2 = distanceMin * distanceMin;
+
+        return this;
+    }
+
+    public double getDistanceMax() {
+        return Math.sqrt(distanceMax2);
+    }
+
+    public ForceManyBody3D setDistanceMax(final double distanceMax) {
+        this.distanceMax2 = distanceMax * distanceMax;
+
+        return this;
+    }
+
+    public double getTheta() {
+        return Math.sqrt(theta2);
+    }
+
+    public ForceManyBody3D setTheta(final double theta) {
+        this.theta2 = theta * theta;
+
+        return this;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Push vertices towards a circle of the given radius around a centre.
+ * <p>
+ * This is a port of d3's forceRadial. The strength of the force is
+ * proportional to the distance between the vertex and the circle.
+ * Each vertex has its own radius and strength, so vertices can be arranged
+ * on concentric rings, for example by category. These can be changed at any
+ * time with setRadius(int, double) and setStrength(int, double) without
+ * initialising the force again.
+ * <p>
+ * Each vertex is independent of the others, so large graphs are done in parallel.
+ *
+ * @author algol
+ */
+public class ForceRadial implements AccumulatingForce {
+    private List<IVertex> vxs;
+    private double[] radii;
+    private double[] strengths;
+
+    private final double centreX;
+    private final double centreY;
+    private double radius;
+    private double strength;
+
+    public ForceRadial(final double radius, final double centreX, final double centreY) {
+        this.radius = radius;
+        this.centreX = centreX;
+        this.centreY = centreY;
+        strength = 0.1;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        final int n = vxs.size();
+        radii = new double[n];
+        strengths = new double[n];
+
+        for(int i=0; i<n; i++) {
+            radii[i] = radius;
+            strengths[i] = strength;
+        }
+    }
+
+    /**
+     * The existing vertices keep their own radii and strengths.
+     */
+    @Override
+    public void extend(final List<IVertex> vxs, final int n0) {
+        this.vxs = vxs;
+        final int n = vxs.size();
+        radii = Arrays.copyOf(radii, n);
+        strengths = Arrays.copyOf(strengths, n);
+
+        for(int i=n0; i<n; i++) {
+            radii[i] = radius;
+            strengths[i] = strength;
+        }
+    }
+
+    @Override
+    public void force(final double alpha) {
+        apply(alpha, null, null, null);
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        apply(alpha, active, null, null);
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        apply(alpha, active, xvel, yvel);
+    }
+
+    /**
+     * Apply the force to every vertex, or to the active vertices.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvel If not null, add the x velocities here instead of to the vertices.
+     * @param yvel If not null, add the y velocities here instead of to the vertices.
+     */
+    private void apply(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final int n = active==null ? vxs.size() : active.size();
+        Util.parallelFor(n, j -> {
+            final int i = active==null ? j : active.get(j);
+            final IVertex vx = vxs.get(i);
+
+            // A vertex at the centre is moved off it in an arbitrary direction, as in d3.
+            //
+            double dx = vx.getX() - centreX;
+            double dy = vx.getY() - centreY;
+            if(dx==0) {
+                dx = 1e-6;
+            }
+            if(dy==0) {
+                dy = 1e-6;
+            }
+
+            final double r = Math.sqrt(dx*dx + dy*dy);
+            final double k = (radii[i] - r) * strengths[i] * alpha / r;
+            if(xvel==null) {
+                vx.setXVelocity(vx.getXVelocity() + dx*k);
+                vx.setYVelocity(vx.getYVelocity() + dy*k);
+            } else {
+                xvel[i] += dx*k;
+                yvel[i] += dy*k;
+            }
+        });
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * The radius of the circle for every vertex.
+     * <p>
+     * This takes effect when the force is initialised.
+     *
+     * @param radius The radius of the circle.
+     *
+     * @return This force.
+     */
+    public ForceRadial setRadius(final double radius) {
+        this.radius = radius;
+
+        return this;
+    }
+
+    public double getRadius(final int index) {
+        return radii[index];
+    }
+
+    /**
+     * The radius of the circle for one vertex.
+     * <p>
+     * The force must have been initialised.
+     *
+     * @param index The index of the vertex.
+     * @param radius The radius of the circle.
+     *
+     * @return This force.
+     */
+    public ForceRadial setRadius(final int index, final double radius) {
+        radii[index] = radius;
+
+        return this;
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    /**
+     * The strength of the force for every vertex.
+     * <p>
+     * This takes effect when the force is initialised.
+     *
+     * @param strength The strength; the default is 0.1.
+     *
+     * @return This force.
+     */
+    public ForceRadial setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public double getStrength(final int index) {
+        return strengths[index];
+    }
+
+    /**
+     * The strength of the force for one vertex.
+     * <p>
+     * The force must have been initialised.
+     *
+     * @param index The index of the vertex.
+     * @param strength The strength.
+     *
+     * @return This force.
+     */
+    public ForceRadial setStrength(final int index, final double strength) {
+        strengths[index] = strength;
+
+        return this;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+/**
+ * Decide on which ticks a scheduled force is evaluated.
+ *
+ * @author algol
+ */
+@FunctionalInterface
+public interface ForceSchedule {
+    /**
+     * Is the force evaluated on this tick?
+     *
+     * @param tick The number of ticks since the force was initialised.
+     * @param alpha The current alpha.
+     *
+     * @return True if the force is evaluated, false to reuse its previous contribution.
+     */
+    boolean isDue(final int tick, final double alpha);
+
+    /**
+     * Evaluate the force every interval ticks.
+     *
+     * @param interval The number of ticks between evaluations.
+     *
+     * @return A schedule.
+     */
+    static ForceSchedule every(final int interval) {
+        return (tick, alpha) -> tick%interval==0;
+    }
+
+    /**
+     * Evaluate the force every tick while the simulation is hot, then every
+     * interval ticks once alpha has cooled below the given alpha.
+     *
+     * @param coolAlpha The alpha below which the force is evaluated less often.
+     * @param interval The number of ticks between evaluations when cool.
+     *
+     * @return A schedule.
+     */
+    static ForceSchedule whenCool(final double coolAlpha, final int interval) {
+        return (tick, alpha) -> alpha>=coolAlpha || tick%interval==0;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -27,7 +28,7 @@ import java.util.List;
  *
  * @author algol
  */
-public class ForceX implements Force {
+public class ForceX implements AccumulatingForce {
     private List<IVertex> vxs;
     private double[] strengths;
     private double[] xz;
@@ -52,6 +53,24 @@ public class ForceX implements Force {
         }
     }
 
+    /**
+     * The existing vertices keep their targets; only the new vertices take
+     * their targets from their current positions.
+     */
+    @Override
+    public void extend(final List<IVertex> vxs, final int n0) {
+        this.vxs = vxs;
+        final int n = vxs.size();
+        strengths = Arrays.copyOf(strengths, n);
+        xz = Arrays.copyOf(xz, n);
+
+        for(int i=n0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            xz[i] = vx.getX();
+            strengths[i] = Double.isNaN(xz[i]) ? 0 : strength;
+        }
+    }
+
     @Override
     public void force(final double alpha) {
         final int n = vxs.size();
@@ -62,6 +81,27 @@ public class ForceX implements Force {
         }
     }
 
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        final int n = active.size();
+        for(int j=0; j<n; j++) {
+            final int i = active.get(j);
+            final IVertex vx = vxs.get(i);
+            final double vel = (xz[i] - vx.getX()) * strengths[i] * alpha;
+            vx.setXVelocity(vx.getXVelocity() + vel);
+        }
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvel, final double[] yvel) {
+        final double[] vels = xvel;
+        final int n = active==null ? vxs.size() : active.size();
+        for(int j=0; j<n; j++) {
+            final int i = active==null ? j : active.get(j);
+            vels[i] += (xz[i] - vxs.get(i).getX()) * strengths[i] * alpha;
+        }
+    }
+
     public double getStrength() {
         return strength;
     }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.octree.IPoint3;
+
+/**
+ * A vertex in a three-dimensional simulation.
+ *
+ * @author algol
+ */
+public interface IVertex3 extends IVertex, IPoint3 {
+    void setZ(final double z);
+    double getZVelocity();
+    void setZVelocity(final double zv);
+}
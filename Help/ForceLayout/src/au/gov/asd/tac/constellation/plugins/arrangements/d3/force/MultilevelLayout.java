@@ -0,0 +1,548 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A multilevel layout in the style of Walshaw's multilevel force-directed
+ * placement.
+ * <p>
+ * The graph is coarsened by repeatedly merging vertices along links until
+ * it has no more than the coarsest size vertices. The coarsest graph is
+ * laid out with a full simulation of ForceLink and ForceManyBody; each
+ * finer graph then starts from the positions of the coarser graph and is
+ * refined by a short simulation with a lower alpha. Because the graphs
+ * shrink geometrically, the total cost is close to a few ticks of the
+ * original graph, and the large-scale structure is settled while the graph
+ * is small enough for it to untangle.
+ * <p>
+ * Coarsening uses a parallel heavy-edge matching: in each round, every
+ * unmatched vertex picks the unmatched neighbour with the heaviest link
+ * relative to the weights of the two vertices, and pairs that pick each
+ * other are matched. Vertices that are still unmatched afterwards join the
+ * cluster of their best matched neighbour, so stars coarsen as quickly as
+ * paths. Coarsening stops early if a level doesn't get significantly smaller,
+ * for example if the graph is mostly isolated vertices.
+ * <p>
+ * The positions of the coarse levels are scaled by the square root of the
+ * ratio of the vertex counts when they are projected, so every level can be
+ * laid out with the same link distance and vertex density.
+ *
+ * @author algol
+ */
+public final class MultilevelLayout {
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private int coarsestSize;
+    private int levelTicks;
+    private double levelAlpha;
+    private double distance;
+    private double strength;
+    private long seed;
+
+    private int[] levelSizes;
+
+    /**
+     * A level of the hierarchy.
+     * <p>
+     * Vertex and link weights count the vertices and links of the original
+     * graph that have been merged into them.
+     */
+    private static final class Level {
+        final int n;
+        final int[] source;
+        final int[] target;
+        final double[] linkWeights;
+        final double[] weights;
+
+        // The index of each vertex's cluster in the next coarser level.
+        //
+        int[] parent;
+
+        Level(final int n, final int[] source, final int[] target, final double[] linkWeights, final double[] weights) {
+            this.n = n;
+            this.source = source;
+            this.target = target;
+            this.linkWeights = linkWeights;
+            this.weights = weights;
+            parent = null;
+        }
+    }
+
+    /**
+     * A vertex of a coarse level.
+     */
+    private static final class Node implements IVertex {
+        private double x;
+        private double y;
+        private double xVelocity;
+        private double yVelocity;
+        private int index;
+
+        Node(final double x, final double y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void setX(final double x) {
+            this.x = x;
+        }
+
+        @Override
+        public void setY(final double y) {
+            this.y = y;
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+
+        @Override
+        public double getRadius() {
+            return 1;
+        }
+
+        @Override
+        public void setIndex(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public double getXVelocity() {
+            return xVelocity;
+        }
+
+        @Override
+        public double getYVelocity() {
+            return yVelocity;
+        }
+
+        @Override
+        public void setXVelocity(final double xv) {
+            xVelocity = xv;
+        }
+
+        @Override
+        public void setYVelocity(final double yv) {
+            yVelocity = yv;
+        }
+    }
+
+    public MultilevelLayout(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        coarsestSize = 200;
+        levelTicks = 30;
+        levelAlpha = 0.3;
+        distance = 30;
+        strength = -30;
+        seed = 0;
+        levelSizes = new int[0];
+    }
+
+    /**
+     * Lay out the graph.
+     * <p>
+     * Any existing positions of the vertices are ignored.
+     *
+     * @return The layout.
+     */
+    public MultilevelLayout layout() {
+        final int n = vxs.size();
+        final int m = links.size();
+        for(int i=0; i<n; i++) {
+            vxs.get(i).setIndex(i);
+        }
+
+        final int[] source = new int[m];
+        final int[] target = new int[m];
+        final double[] linkWeights = new double[m];
+        for(int i=0; i<m; i++) {
+            final ILink link = links.get(i);
+            source[i] = link.getSource().getIndex();
+            target[i] = link.getTarget().getIndex();
+            linkWeights[i] = 1;
+        }
+
+        final double[] weights = new double[n];
+        Arrays.fill(weights, 1);
+
+        final List<Level> levels = new ArrayList<>();
+        levels.add(new Level(n, source, target, linkWeights, weights));
+        while(levels.get(levels.size()-1).n>coarsestSize) {
+            final Level coarse = coarsen(levels.get(levels.size()-1));
+            if(coarse==null) {
+                break;
+            }
+
+            levels.add(coarse);
+        }
+
+        levelSizes = levels.stream().mapToInt(level -> level.n).toArray();
+
+        // Lay out the coarsest level from scratch, then refine each finer level
+        // starting from the positions of the level above it.
+        //
+        final SplittableRandom random = new SplittableRandom(seed);
+        double[] xs = null;
+        double[] ys = null;
+        for(int l=levels.size()-1; l>=0; l--) {
+            final Level level = levels.get(l);
+            final List<IVertex> lvxs;
+            final List<ILink> llinks;
+            if(l==0) {
+                lvxs = vxs;
+                llinks = links;
+
+                // A graph that isn't coarsened is laid out from scratch too.
+                //
+                if(xs==null) {
+                    vxs.forEach(vx -> {
+                        vx.setX(Double.NaN);
+                        vx.setY(Double.NaN);
+                    });
+                }
+            } else {
+                lvxs = new ArrayList<>(level.n);
+                for(int i=0; i<level.n; i++) {
+                    lvxs.add(new Node(Double.NaN, Double.NaN));
+                }
+
+                llinks = new ArrayList<>(level.source.length);
+                for(int i=0; i<level.source.length; i++) {
+                    llinks.add(new Edge(lvxs.get(level.source[i]), lvxs.get(level.target[i])));
+                }
+            }
+
+            if(xs!=null) {
+                project(level, levels.get(l+1).n, xs, ys, lvxs, random);
+            }
+
+            final Simulation sim = new Simulation(lvxs, llinks);
+            sim.addForce("link", new ForceLink(llinks).setDistance(distance));
+            sim.addForce("many_body", new ForceManyBody().setStrength(strength));
+            if(xs!=null) {
+                sim.setAlpha(levelAlpha);
+                sim.setAlphaDecay(1.0 - Math.pow(sim.getAlphaMin()/levelAlpha, 1.0/levelTicks));
+            }
+
+            sim.step();
+
+            xs = new double[level.n];
+            ys = new double[level.n];
+            for(int i=0; i<level.n; i++) {
+                xs[i] = lvxs.get(i).getX();
+                ys[i] = lvxs.get(i).getY();
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Place each vertex of a level near the position of its parent.
+     * <p>
+     * The parent positions are scaled up so the finer level has the same
+     * density as the coarser level. Each vertex is offset randomly within a
+     * disc whose area is proportional to the size of its cluster, so the
+     * vertices of a cluster don't coincide, and a large cluster such as a
+     * star isn't crammed into a small space.
+     */
+    private void project(final Level level, final int coarseN, final double[] xs, final double[] ys, final List<IVertex> lvxs, final SplittableRandom random) {
+        final int[] sizes = new int[coarseN];
+        for(int i=0; i<level.n; i++) {
+            sizes[level.parent[i]]++;
+        }
+
+        final double scale = Math.sqrt(level.n / (double)coarseN);
+        for(int i=0; i<level.n; i++) {
+            final int p = level.parent[i];
+            final double r = distance * 0.5 * Math.sqrt(sizes[p] * random.nextDouble());
+            final double a = random.nextDouble() * 2 * Math.PI;
+            final IVertex vx = lvxs.get(i);
+            vx.setX(xs[p]*scale + r*Math.cos(a));
+            vx.setY(ys[p]*scale + r*Math.sin(a));
+        }
+    }
+
+    /**
+     * Coarsen a level by merging its vertices along links.
+     *
+     * @param fine The level to coarsen.
+     *
+     * @return The coarser level, or null if it wouldn't be significantly smaller.
+     */
+    private static Level coarsen(final Level fine) {
+        final int n = fine.n;
+        final Adjacency adj = Adjacency.build(n, fine.source, fine.target);
+
+        final int[] match = new int[n];
+        final int[] pick = new int[n];
+        Arrays.fill(match, -1);
+        for(int round=0; round<4; round++) {
+            Util.parallelFor(n, v -> {
+                pick[v] = match[v]==-1 ? best(fine, adj, match, v, false) : -1;
+            });
+            Util.parallelFor(n, v -> {
+                final int u = pick[v];
+                if(u!=-1 && pick[u]==v) {
+                    match[v] = u;
+                }
+            });
+        }
+
+        // Each cluster is led by its lowest vertex; unmatched vertices join
+        // the cluster of their best matched neighbour if they have one.
+        //
+        final int[] leader = new int[n];
+        Util.parallelFor(n, v -> {
+            if(match[v]!=-1) {
+                leader[v] = Math.min(v, match[v]);
+            } else {
+                final int u = best(fine, adj, match, v, true);
+                leader[v] = u==-1 ? v : Math.min(u, match[u]);
+            }
+        });
+
+        final int[] parent = new int[n];
+        int nc = 0;
+        for(int v=0; v<n; v++) {
+            if(leader[v]==v) {
+                parent[v] = nc++;
+            }
+        }
+
+        if(nc>0.9*n) {
+            return null;
+        }
+
+        Util.parallelFor(n, v -> parent[v] = parent[leader[v]]);
+
+        final double[] weights = new double[nc];
+        for(int v=0; v<n; v++) {
+            weights[parent[v]] += fine.weights[v];
+        }
+
+        fine.parent = parent;
+
+        return collapse(fine, nc, weights);
+    }
+
+    /**
+     * The neighbour of a vertex with the heaviest link relative to the weights of the two vertices.
+     * <p>
+     * The score and the tie-break are symmetric, so the heaviest link between
+     * unmatched vertices is always picked from both ends and every round makes
+     * progress.
+     *
+     * @param matched True to consider only matched neighbours, false to consider only unmatched neighbours.
+     */
+    private static int best(final Level fine, final Adjacency adj, final int[] match, final int v, final boolean matched) {
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int bestHash = 0;
+        for(int a=adj.offsets[v]; a<adj.offsets[v+1]; a++) {
+            final int u = adj.neighbours[a];
+            if(u==v || (match[u]!=-1)!=matched) {
+                continue;
+            }
+
+            final double score = fine.linkWeights[adj.links[a]] / (fine.weights[u]*fine.weights[v]);
+            final int hash = (Math.min(u, v)*31 + Math.max(u, v)) * 0x9e3779b9;
+            if(score>bestScore || (score==bestScore && hash>bestHash)) {
+                best = u;
+                bestScore = score;
+                bestHash = hash;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Build the coarse level's links from the fine level's links.
+     * <p>
+     * Links inside a cluster are dropped, and links between the same pair of
+     * clusters are merged by adding their weights. The fine links are bucketed
+     * by the lower of their two clusters, then each bucket is sorted and merged
+     * independently of the others.
+     */
+    private static Level collapse(final Level fine, final int nc, final double[] weights) {
+        final int m = fine.source.length;
+        final int[] parent = fine.parent;
+
+        final int[] offsets = new int[nc+1];
+        for(int i=0; i<m; i++) {
+            final int cs = parent[fine.source[i]];
+            final int ct = parent[fine.target[i]];
+            if(cs!=ct) {
+                offsets[Math.min(cs, ct)+1]++;
+            }
+        }
+
+        for(int c=0; c<nc; c++) {
+            offsets[c+1] += offsets[c];
+        }
+
+        // Each entry is the other cluster in the high half and the fine link in the low half,
+        // so sorting a bucket brings the links to the same cluster together.
+        //
+        final long[] entries = new long[offsets[nc]];
+        final int[] next = Arrays.copyOf(offsets, nc);
+        for(int i=0; i<m; i++) {
+            final int cs = parent[fine.source[i]];
+            final int ct = parent[fine.target[i]];
+            if(cs!=ct) {
+                entries[next[Math.min(cs, ct)]++] = ((long)Math.max(cs, ct)<<32) | i;
+            }
+        }
+
+        final int[] unique = new int[nc+1];
+        Util.parallelFor(nc, c -> {
+            Arrays.sort(entries, offsets[c], offsets[c+1]);
+            int u = 0;
+            for(int j=offsets[c]; j<offsets[c+1]; j++) {
+                if(j==offsets[c] || (entries[j]>>>32)!=(entries[j-1]>>>32)) {
+                    u++;
+                }
+            }
+
+            unique[c+1] = u;
+        });
+
+        for(int c=0; c<nc; c++) {
+            unique[c+1] += unique[c];
+        }
+
+        final int mc = unique[nc];
+        final int[] source = new int[mc];
+        final int[] target = new int[mc];
+        final double[] linkWeights = new double[mc];
+        Util.parallelFor(nc, c -> {
+            int k = unique[c] - 1;
+            for(int j=offsets[c]; j<offsets[c+1]; j++) {
+                if(j==offsets[c] || (entries[j]>>>32)!=(entries[j-1]>>>32)) {
+                    k++;
+                    source[k] = c;
+                    target[k] = (int)(entries[j]>>>32);
+                }
+
+                linkWeights[k] += fine.linkWeights[(int)entries[j]];
+            }
+        });
+
+        return new Level(nc, source, target, linkWeights, weights);
+    }
+
+    /**
+     * The number of vertices at each level of the last layout.
+     *
+     * @return The number of vertices at each level, from the original graph to the coarsest.
+     */
+    public int[] getLevelSizes() {
+        return levelSizes.clone();
+    }
+
+    public int getCoarsestSize() {
+        return coarsestSize;
+    }
+
+    public MultilevelLayout setCoarsestSize(final int coarsestSize) {
+        this.coarsestSize = coarsestSize;
+
+        return this;
+    }
+
+    public int getLevelTicks() {
+        return levelTicks;
+    }
+
+    /**
+     * The number of ticks used to refine each level other than the coarsest.
+     *
+     * @param levelTicks The number of ticks used to refine each level.
+     *
+     * @return The layout.
+     */
+    public MultilevelLayout setLevelTicks(final int levelTicks) {
+        this.levelTicks = levelTicks;
+
+        return this;
+    }
+
+    public double getLevelAlpha() {
+        return levelAlpha;
+    }
+
+    /**
+     * The alpha that the refinement of each level starts from.
+     *
+     * @param levelAlpha The alpha that each refinement starts from.
+     *
+     * @return The layout.
+     */
+    public MultilevelLayout setLevelAlpha(final double levelAlpha) {
+        this.levelAlpha = levelAlpha;
+
+        return this;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public MultilevelLayout setDistance(final double distance) {
+        this.distance = distance;
+
+        return this;
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    public MultilevelLayout setStrength(final double strength) {
+        this.strength = strength;
+
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public MultilevelLayout setSeed(final long seed) {
+        this.seed = seed;
+
+        return this;
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * An initial placement from Brandes and Pich's Pivot MDS.
+ * <p>
+ * Classical multidimensional scaling places the vertices so their distances
+ * approximate the graph distances, but needs all n*n distances. Pivot MDS
+ * only uses the distances from each vertex to k pivot vertices: a breadth
+ * first search from each pivot, run in parallel, gives an n*k matrix of
+ * hop counts. The squared distances are double centred, and the vertex
+ * coordinates are the projections of each vertex's row onto the top
+ * eigenvectors of the small k*k matrix C<sup>T</sup>C. The cost is linear
+ * in the size of the graph for a fixed number of pivots.
+ * <p>
+ * The result is a placement whose large-scale structure is already right,
+ * so a simulation started from it only needs a low alpha to settle the
+ * local detail.
+ * <p>
+ * The pivots are chosen at random so their searches are independent.
+ * Vertices that can't be reached from a pivot are treated as one hop
+ * further away than the furthest vertex that can, so disconnected
+ * components overlap; use a ComponentLayout for graphs with many
+ * components. The coordinates are scaled so the mean link length is the
+ * scale, and each vertex is offset slightly so vertices with the same
+ * distances, such as the leaves of a star, aren't coincident.
+ *
+ * @author algol
+ */
+public final class PivotMDS {
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private int pivots;
+    private int dimensions;
+    private double scale;
+    private long seed;
+
+    public PivotMDS(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        pivots = 50;
+        dimensions = 2;
+        scale = 30;
+        seed = 0;
+    }
+
+    /**
+     * Place every vertex, whether or not it already has a position.
+     * <p>
+     * In three dimensions, every vertex must be an IVertex3.
+     * The vertices keep their index in the list of vertices.
+     *
+     * @return The placement.
+     */
+    public PivotMDS place() {
+        final int n = vxs.size();
+        if(n==0) {
+            return this;
+        }
+
+        for(int i=0; i<n; i++) {
+            vxs.get(i).setIndex(i);
+        }
+
+        final Adjacency adjacency = Adjacency.build(n, links);
+        final int k = Math.min(pivots, n);
+        final SplittableRandom random = new SplittableRandom(seed);
+
+        // A partial shuffle chooses k distinct pivots.
+        //
+        final int[] order = new int[n];
+        Arrays.setAll(order, i -> i);
+        for(int p=0; p<k; p++) {
+            final int j = p + random.nextInt(n-p);
+            final int t = order[p];
+            order[p] = order[j];
+            order[j] = t;
+        }
+
+        // The squared distances, one row per pivot so the searches and
+        // the products below run along contiguous arrays.
+        //
+        final float[][] c = new float[k][];
+        IntStream.range(0, k).parallel().forEach(p -> c[p] = squaredDistances(adjacency, order[p]));
+
+        doubleCentre(c, n);
+
+        // The k*k matrix C^TC, and its top eigenvectors.
+        //
+        final double[][] ctc = new double[k][k];
+        IntStream.range(0, k).parallel().forEach(a -> {
+            for(int b=a; b<k; b++) {
+                double sum = 0;
+                for(int i=0; i<n; i++) {
+                    sum += (double)c[a][i] * c[b][i];
+                }
+                ctc[a][b] = sum;
+                ctc[b][a] = sum;
+            }
+        });
+
+        final int dims = Math.min(dimensions, k);
+        final double[] values = new double[dims];
+        final double[][] vectors = eigenvectors(ctc, dims, values, random);
+
+        // Project each vertex onto the eigenvectors. C v has length
+        // sqrt(lambda) along each axis, so dividing by the fourth root of lambda
+        // gives each axis the relative spread of the classical MDS coordinates.
+        //
+        final double[][] coords = new double[dimensions][n];
+        for(int d=0; d<dims; d++) {
+            final double[] v = vectors[d];
+            final double norm = values[d]>0 ? 1 / Math.sqrt(Math.sqrt(values[d])) : 0;
+            final double[] coord = coords[d];
+            Util.parallelFor(n, i -> {
+                double sum = 0;
+                for(int p=0; p<k; p++) {
+                    sum += c[p][i] * v[p];
+                }
+                coord[i] = sum * norm;
+            });
+        }
+
+        setPositions(vxs, links, coords, scale, random);
+
+        return this;
+    }
+
+    /**
+     * The squared hop counts from a pivot, by breadth first search.
+     */
+    private static float[] squaredDistances(final Adjacency adjacency, final int pivot) {
+        final int n = adjacency.size();
+        final int[] distances = adjacency.distances(pivot);
+        int unreachable = 0;
+        for(int i=0; i<n; i++) {
+            unreachable = Math.max(unreachable, distances[i] + 1);
+        }
+
+        final float[] squared = new float[n];
+        for(int i=0; i<n; i++) {
+            final float d = distances[i]<0 ? unreachable : distances[i];
+            squared[i] = d * d;
+        }
+
+        return squared;
+    }
+
+    /**
+     * Double centre the squared distances in place.
+     */
+    private static void doubleCentre(final float[][] c, final int n) {
+        final int k = c.length;
+        final double[] columnMeans = new double[k];
+        IntStream.range(0, k).parallel().forEach(p -> {
+            double sum = 0;
+            for(int i=0; i<n; i++) {
+                sum += c[p][i];
+            }
+            columnMeans[p] = sum / n;
+        });
+
+        final double[] rowMeans = new double[n];
+        Util.parallelFor(n, i -> {
+            double sum = 0;
+            for(int p=0; p<k; p++) {
+                sum += c[p][i];
+            }
+            rowMeans[i] = sum / k;
+        });
+
+        final double mean = Arrays.stream(columnMeans).sum() / k;
+        IntStream.range(0, k).parallel().forEach(p -> {
+            final float[] row = c[p];
+            final double offset = mean - columnMeans[p];
+            for(int i=0; i<n; i++) {
+                row[i] = (float)(-0.5 * (row[i] - rowMeans[i] + offset));
+            }
+        });
+    }
+
+    /**
+     * The top eigenvectors of a small symmetric positive semi-definite matrix,
+     * by orthogonal iteration.
+     */
+    private static double[][] eigenvectors(final double[][] m, final int count, final double[] values, final SplittableRandom random) {
+        final int k = m.length;
+        double[][] vectors = new double[count][k];
+        for(final double[] v : vectors) {
+            for(int p=0; p<k; p++) {
+                v[p] = random.nextDouble() - 0.5;
+            }
+        }
+        orthonormalise(vectors);
+
+        for(int iteration=0; iteration<1000; iteration++) {
+            final double[][] next = new double[count][];
+            for(int d=0; d<count; d++) {
+                next[d] = multiply(m, vectors[d]);
+            }
+            orthonormalise(next);
+
+            double change = 0;
+            for(int d=0; d<count; d++) {
+                change = Math.max(change, 1 - Math.abs(dot(next[d], vectors[d])));
+            }
+            vectors = next;
+            if(change<1e-10) {
+                break;
+            }
+        }
+
+        for(int d=0; d<count; d++) {
+            values[d] = dot(vectors[d], multiply(m, vectors[d]));
+        }
+
+        return vectors;
+    }
+
+    private static double[] multiply(final double[][] m, final double[] v) {
+        final double[] mv = new double[v.length];
+        for(int a=0; a<v.length; a++) {
+            mv[a] = dot(m[a], v);
+        }
+
+        return mv;
+    }
+
+    private static double dot(final double[] u, final double[] v) {
+        double sum = 0;
+        for(int p=0; p<u.length; p++) {
+            sum += u[p] * v[p];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Gram-Schmidt; a vector that is dependent on the previous ones is set to zero.
+     */
+    private static void orthonormalise(final double[][] vectors) {
+        for(int d=0; d<vectors.length; d++) {
+            final double[] v = vectors[d];
+            for(int e=0; e<d; e++) {
+                final double projection = dot(v, vectors[e]);
+                for(int p=0; p<v.length; p++) {
+                    v[p] -= projection * vectors[e][p];
+                }
+            }
+
+            final double length = Math.sqrt(dot(v, v));
+            for(int p=0; p<v.length; p++) {
+                v[p] = length>1e-12 ? v[p]/length : 0;
+            }
+        }
+    }
+
+    /**
+     * Scale the coordinates so the mean link length is the scale, and set the
+     * vertex positions.
+     * <p>
+     * Each vertex is offset by a tenth of the scale in a random direction,
+     * so vertices with the same coordinates aren't coincident.
+     *
+     * @param vxs The vertices, with their indexes initialised.
+     * @param links The links.
+     * @param coords The coordinates of each vertex, one array per dimension.
+     * @param scale The mean link length.
+     * @param random The source of the offsets.
+     */
+    static void setPositions(final List<IVertex> vxs, final List<ILink> links, final double[][] coords, final double scale, final SplittableRandom random) {
+        double length = 0;
+        int count = 0;
+        for(final ILink link : links) {
+            final int s = link.getSource().getIndex();
+            final int t = link.getTarget().getIndex();
+            double l2 = 0;
+            for(final double[] coord : coords) {
+                l2 += (coord[t]-coord[s]) * (coord[t]-coord[s]);
+            }
+            length += Math.sqrt(l2);
+            count++;
+        }
+
+        // Without links, every vertex is a hop from every other.
+        //
+        final double factor = count>0 && length>0 ? scale * count / length : scale;
+        final double offset = scale * 0.1;
+        final int n = vxs.size();
+        for(int i=0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            if(coords.length==3) {
+                final double angle = random.nextDouble() * 2 * Math.PI;
+                final double cosPolar = 2 * random.nextDouble() - 1;
+                final double sinPolar = Math.sqrt(1 - cosPolar*cosPolar);
+                vx.setX(coords[0][i] * factor + offset * sinPolar * Math.cos(angle));
+                vx.setY(coords[1][i] * factor + offset * sinPolar * Math.sin(angle));
+                ((IVertex3)vx).setZ(coords[2][i] * factor + offset * cosPolar);
+            } else {
+                final double angle = random.nextDouble() * 2 * Math.PI;
+                vx.setX(coords[0][i] * factor + offset * Math.cos(angle));
+                vx.setY(coords[1][i] * factor + offset * Math.sin(angle));
+            }
+        }
+    }
+
+    public int getPivots() {
+        return pivots;
+    }
+
+    /**
+     * The number of vertices to measure distances from.
+     * <p>
+     * More pivots give a better placement at a cost proportional to the
+     * square of the number of pivots.
+     *
+     * @param pivots The number of pivots.
+     *
+     * @return The placement.
+     */
+    public PivotMDS setPivots(final int pivots) {
+        this.pivots = pivots;
+
+        return this;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Place the vertices in two or three dimensions.
+     *
+     * @param dimensions 2 or 3.
+     *
+     * @return The placement.
+     */
+    public PivotMDS setDimensions(final int dimensions) {
+        if(dimensions!=2 && dimensions!=3) {
+            throw new IllegalArgumentException("Dimensions must be 2 or 3: " + dimensions);
+        }
+
+        this.dimensions = dimensions;
+
+        return this;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * The mean link length of the placement; this should usually be the link distance.
+     *
+     * @param scale The mean link length.
+     *
+     * @return The placement.
+     */
+    public PivotMDS setScale(final double scale) {
+        this.scale = scale;
+
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public PivotMDS setSeed(final long seed) {
+        this.seed = seed;
+
+        return this;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.BiConsumer;
+
+/**
+ * A quick preview of a layout of a large graph, by laying out a sample of
+ * the vertices and interpolating the rest.
+ * <p>
+ * The sample is the vertices of highest degree plus random landmarks. A
+ * breadth first search from every sample vertex at once divides the graph
+ * into regions, one per sample vertex; two sample vertices are linked if
+ * their regions are, so the sample graph has the shape of the whole graph.
+ * The sample graph is laid out by a Simulation with the normal forces,
+ * then scaled so a sample link is as long as the link distance times its
+ * number of hops, on average, because each sample link stands in for a
+ * path of that many links.
+ * <p>
+ * Every other vertex is then placed in order of its distance from the
+ * sample, one layer of the search at a time, at the barycentre of its
+ * neighbours in the layer before, with each link counted once. Each layer
+ * is placed in parallel. A vertex is offset from the barycentre by the link
+ * distance divided by the number of those neighbours, in a direction that
+ * turns by the golden angle from one vertex to the next, so the leaves of
+ * a hub are spread around it.
+ * <p>
+ * The preview is only an approximation; Simulation.placePreview() hands it
+ * to a short simulation of the whole graph to refine it. A component that
+ * has no sample vertex is given one, so graphs with many components get
+ * large samples; use a ComponentLayout for them.
+ *
+ * @author algol
+ */
+public final class PreviewLayout {
+    private static final double GOLDEN_ANGLE = Math.PI * (3-Math.sqrt(5));
+
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private BiConsumer<Simulation, List<ILink>> forces;
+    private int samples;
+    private double hubFraction;
+    private double distance;
+    private long seed;
+
+    private int sampleSize;
+
+    public PreviewLayout(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        forces = (sim, simLinks) -> {
+            sim.addForce("link", new ForceLink(simLinks).setDistance(distance));
+            sim.addForce("many_body", new ForceManyBody());
+        };
+        samples = 1000;
+        hubFraction = 0.5;
+        distance = 30;
+        seed = 0;
+        sampleSize = 0;
+    }
+
+    /**
+     * Lay out the graph.
+     * <p>
+     * Any existing positions of the vertices are ignored.
+     * The vertices keep their index in the list of vertices.
+     *
+     * @return The layout.
+     */
+    public PreviewLayout layout() {
+        final int n = vxs.size();
+        for(int i=0; i<n; i++) {
+            vxs.get(i).setIndex(i);
+        }
+        if(n==0) {
+            sampleSize = 0;
+            return this;
+        }
+
+        final Adjacency adjacency = Adjacency.build(n, links);
+        final int[] sample = chooseSample(adjacency);
+
+        // Search from every sample vertex at once. The queue ends up holding
+        // every vertex in layers of increasing hops; a vertex that can't be
+        // reached becomes a sample vertex and starts a new search.
+        //
+        final int[] region = new int[n];
+        final int[] hops = new int[n];
+        Arrays.fill(region, -1);
+        final int[] queue = new int[n];
+        int[] sampleVxs = new int[sample.length];
+        int k = 0;
+        int head = 0;
+        int tail = 0;
+        for(final int s : sample) {
+            region[s] = k;
+            sampleVxs[k++] = s;
+            queue[tail++] = s;
+        }
+        int next = 0;
+        while(true) {
+            while(head<tail) {
+                final int v = queue[head++];
+                for(int a=adjacency.offsets[v]; a<adjacency.offsets[v+1]; a++) {
+                    final int u = adjacency.neighbours[a];
+                    if(region[u]<0) {
+                        region[u] = region[v];
+                        hops[u] = hops[v] + 1;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+
+            while(next<n && region[next]>=0) {
+                next++;
+            }
+            if(next==n) {
+                break;
+            }
+
+            if(k==sampleVxs.length) {
+                sampleVxs = Arrays.copyOf(sampleVxs, 2*k);
+            }
+            region[next] = k;
+            sampleVxs[k++] = next;
+            queue[tail++] = next;
+        }
+        sampleSize = k;
+
+        final double scale = layoutSample(adjacency, region, hops, sampleVxs, k);
+
+        // Place each layer at the barycentres of the layer before.
+        //
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        for(int p=0; p<k; p++) {
+            final IVertex vx = vxs.get(sampleVxs[p]);
+            xs[sampleVxs[p]] = vx.getX() * scale;
+            ys[sampleVxs[p]] = vx.getY() * scale;
+        }
+
+        int start = 0;
+        while(start<n) {
+            int end = start + 1;
+            while(end<n && hops[queue[end]]==hops[queue[start]]) {
+                end++;
+            }
+
+            if(hops[queue[start]]>0) {
+                final int layer = start;
+                Util.parallelFor(end-start, j -> {
+                    final int v = queue[layer+j];
+                    double x = 0;
+                    double y = 0;
+                    int count = 0;
+                    for(int a=adjacency.offsets[v]; a<adjacency.offsets[v+1]; a++) {
+                        final int u = adjacency.neighbours[a];
+                        if(hops[u]==hops[v]-1) {
+                            x += xs[u];
+                            y += ys[u];
+                            count++;
+                        }
+                    }
+
+                    final double r = distance / count;
+                    final double angle = v * GOLDEN_ANGLE;
+                    xs[v] = x / count + r * Math.cos(angle);
+                    ys[v] = y / count + r * Math.sin(angle);
+                });
+            }
+
+            start = end;
+        }
+
+        for(int i=0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            vx.setIndex(i);
+            vx.setX(xs[i]);
+            vx.setY(ys[i]);
+        }
+
+        return this;
+    }
+
+    /**
+     * The vertices of highest degree, then distinct random vertices.
+     */
+    private int[] chooseSample(final Adjacency adjacency) {
+        final int n = adjacency.size();
+        final int k = Math.min(samples, n);
+        final int hubs = (int)Math.min(k, Math.round(k * hubFraction));
+
+        // A counting sort by degree, highest first.
+        //
+        final int[] counts = new int[n+1];
+        for(int v=0; v<n; v++) {
+            counts[Math.min(adjacency.degree(v), n)]++;
+        }
+        int threshold = n;
+        int above = 0;
+        while(threshold>0 && above+counts[threshold]<hubs) {
+            above += counts[threshold--];
+        }
+
+        final boolean[] chosen = new boolean[n];
+        final int[] sample = new int[k];
+        int size = 0;
+        for(int v=0; v<n && size<hubs; v++) {
+            if(Math.min(adjacency.degree(v), n)>threshold) {
+                chosen[v] = true;
+                sample[size++] = v;
+            }
+        }
+        for(int v=0; v<n && size<hubs; v++) {
+            if(!chosen[v] && Math.min(adjacency.degree(v), n)==threshold) {
+                chosen[v] = true;
+                sample[size++] = v;
+            }
+        }
+
+        // A partial shuffle of the rest chooses the landmarks.
+        //
+        final SplittableRandom random = new SplittableRandom(seed);
+        final int[] rest = new int[n-size];
+        int nr = 0;
+        for(int v=0; v<n; v++) {
+            if(!chosen[v]) {
+                rest[nr++] = v;
+            }
+        }
+        for(int j=0; size<k; j++) {
+            final int r = j + random.nextInt(nr-j);
+            final int t = rest[j];
+            rest[j] = rest[r];
+            rest[r] = t;
+            sample[size++] = rest[j];
+        }
+
+        return sample;
+    }
+
+    /**
+     * Lay out the sample graph with a simulation.
+     * <p>
+     * Two sample vertices are linked if a link joins their regions.
+     * The sample vertices are left at their positions in the sample layout.
+     *
+     * @return The scale that makes the length of a sample link the link
+     * distance times its number of hops, on average.
+     */
+    private double layoutSample(final Adjacency adjacency, final int[] region, final int[] hops, final int[] sampleVxs, final int k) {
+        // Each link between regions as its pair of regions and the length of
+        // the path between the sample vertices through it; sorting brings
+        // each pair together with its shortest path first.
+        //
+        final int n = adjacency.size();
+        int nk = 0;
+        long[] keys = new long[16];
+        for(int v=0; v<n; v++) {
+            for(int a=adjacency.offsets[v]; a<adjacency.offsets[v+1]; a++) {
+                final int u = adjacency.neighbours[a];
+                if(region[v]<region[u]) {
+                    if(nk==keys.length) {
+                        keys = Arrays.copyOf(keys, 2*nk);
+                    }
+                    final long length = Math.min(hops[v] + hops[u] + 1, 0xffff);
+                    keys[nk++] = (((long)region[v] * k + region[u]) << 16) | length;
+                }
+            }
+        }
+        Arrays.parallelSort(keys, 0, nk);
+
+        final List<IVertex> svxs = new ArrayList<>(k);
+        for(int p=0; p<k; p++) {
+            final IVertex vx = vxs.get(sampleVxs[p]);
+            vx.setX(Double.NaN);
+            vx.setY(Double.NaN);
+            svxs.add(vx);
+        }
+
+        final List<ILink> slinks = new ArrayList<>();
+        double hopSum = 0;
+        for(int j=0; j<nk; j++) {
+            final long pair = keys[j] >>> 16;
+            if(j==0 || pair!=keys[j-1] >>> 16) {
+                slinks.add(new Edge(svxs.get((int)(pair / k)), svxs.get((int)(pair % k))));
+                hopSum += keys[j] & 0xffff;
+            }
+        }
+
+        final Simulation sim = new Simulation(svxs, slinks);
+        forces.accept(sim, slinks);
+        sim.step();
+
+        double length = 0;
+        for(final ILink link : slinks) {
+            length += Math.hypot(link.getTarget().getX() - link.getSource().getX(), link.getTarget().getY() - link.getSource().getY());
+        }
+
+        return length>0 ? distance * hopSum / length : 1;
+    }
+
+    /**
+     * The number of vertices in the sample of the last layout, including
+     * the vertices added so every component has one.
+     *
+     * @return The size of the sample.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Give the sample simulation its forces.
+     * <p>
+     * The callback is called with the simulation and the sample links. The
+     * forces must be new for each call, because a force keeps the vertices
+     * it was initialised with. The default adds a ForceLink with the
+     * distance and a ForceManyBody.
+     *
+     * @param forces Adds the forces to the sample simulation.
+     *
+     * @return The layout.
+     */
+    public PreviewLayout setForces(final BiConsumer<Simulation, List<ILink>> forces) {
+        this.forces = forces;
+
+        return this;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * The number of vertices to lay out with the simulation.
+     *
+     * @param samples The number of sample vertices.
+     *
+     * @return The layout.
+     */
+    public PreviewLayout setSamples(final int samples) {
+        this.samples = samples;
+
+        return this;
+    }
+
+    public double getHubFraction() {
+        return hubFraction;
+    }
+
+    /**
+     * The fraction of the sample that is the vertices of highest degree; the rest are random.
+     *
+     * @param hubFraction A fraction from 0 to 1.
+     *
+     * @return The layout.
+     */
+    public PreviewLayout setHubFraction(final double hubFraction) {
+        this.hubFraction = hubFraction;
+
+        return this;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * The link distance of the sample simulation, and the distance of a
+     * vertex with one placed neighbour from that neighbour.
+     *
+     * @param distance The link distance.
+     *
+     * @return The layout.
+     */
+    public PreviewLayout setDistance(final double distance) {
+        this.distance = distance;
+
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public PreviewLayout setSeed(final long seed) {
+        this.seed = seed;
+
+        return this;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluate a force on some ticks only.
+ * <p>
+ * On the ticks that the schedule says are due, the wrapped force is evaluated
+ * and its contribution to each vertex's velocity is recorded. On the other
+ * ticks, the recorded contribution is added again instead, scaled by the
+ * current alpha. This suits expensive forces that change slowly, such as
+ * the far field of ForceManyBody late in a simulation.
+ * <p>
+ * Only forces that act through the vertex velocities can be scheduled.
+ * A force that moves vertices directly, such as ForceCentre, would be
+ * skipped on the ticks that aren't due.
+ * <p>
+ * If every vertex is an IVertex3, the z velocity is recorded and
+ * reused along with x and y.
+ * <p>
+ * A scheduled force can be accumulated if the force it wraps can be.
+ *
+ * @author algol
+ */
+public class ScheduledForce implements AccumulatingForce {
+    private final Force force;
+    private final ForceSchedule schedule;
+    private List<IVertex> vxs;
+    private boolean extrapolate;
+
+    private int tick;
+    private int evaluations;
+    private int lastTick;
+    private int previousTick;
+
+    // The contribution per unit alpha at the last evaluation,
+    // and at the one before that for extrapolation.
+    // The z arrays are null unless the vertices are three-dimensional.
+    //
+    private double[] xvel;
+    private double[] yvel;
+    private double[] zvel;
+    private double[] xvel0;
+    private double[] yvel0;
+    private double[] zvel0;
+
+    public ScheduledForce(final Force force, final ForceSchedule schedule) {
+        this.force = force;
+        this.schedule = schedule;
+        extrapolate = false;
+    }
+
+    @Override
+    public void initialise(final List<IVertex> vxs) {
+        this.vxs = vxs;
+        force.initialise(vxs);
+
+        final int n = vxs.size();
+        xvel = new double[n];
+        yvel = new double[n];
+        xvel0 = new double[n];
+        yvel0 = new double[n];
+        final boolean threeD = vxs.stream().allMatch(vx -> vx instanceof IVertex3);
+        zvel = threeD ? new double[n] : null;
+        zvel0 = threeD ? new double[n] : null;
+        tick = 0;
+        evaluations = 0;
+    }
+
+    /**
+     * The wrapped force is extended, and evaluated again on the next tick
+     * because it has no recorded contribution for the new vertices.
+     */
+    @Override
+    public void extend(final List<IVertex> vxs, final int n0) {
+        this.vxs = vxs;
+        force.extend(vxs, n0);
+
+        final int n = vxs.size();
+        xvel = Arrays.copyOf(xvel, n);
+        yvel = Arrays.copyOf(yvel, n);
+        xvel0 = Arrays.copyOf(xvel0, n);
+        yvel0 = Arrays.copyOf(yvel0, n);
+        if(zvel!=null) {
+            zvel = Arrays.copyOf(zvel, n);
+            zvel0 = Arrays.copyOf(zvel0, n);
+        }
+        evaluations = 0;
+    }
+
+    @Override
+    public void fixedMoved(final IVertex vx) {
+        force.fixedMoved(vx);
+    }
+
+    @Override
+    public boolean isConstraint() {
+        return force.isConstraint();
+    }
+
+    @Override
+    public void force(final double alpha) {
+        if(evaluations==0 || schedule.isDue(tick, alpha)) {
+            evaluate(alpha, null);
+        } else {
+            reuse(alpha, null, null, null);
+        }
+
+        tick++;
+    }
+
+    @Override
+    public void force(final double alpha, final ActiveSet active) {
+        if(evaluations==0 || schedule.isDue(tick, alpha)) {
+            evaluate(alpha, active);
+        } else {
+            reuse(alpha, active, null, null);
+        }
+
+        tick++;
+    }
+
+    @Override
+    public boolean isAccumulating() {
+        return force instanceof AccumulatingForce && ((AccumulatingForce)force).isAccumulating();
+    }
+
+    @Override
+    public void accumulate(final double alpha, final ActiveSet active, final double[] xvels, final double[] yvels) {
+        if(evaluations==0 || schedule.isDue(tick, alpha)) {
+            final int n = active==null ? vxs.size() : active.size();
+            for(int j=0; j<n; j++) {
+                final int i = active==null ? j : active.get(j);
+                xvel0[i] = xvel[i];
+                yvel0[i] = yvel[i];
+                xvel[i] = 0;
+                yvel[i] = 0;
+                if(zvel!=null) {
+                    zvel0[i] = zvel[i];
+                    zvel[i] = 0;
+                }
+            }
+
+            ((AccumulatingForce)force).accumulate(alpha, active, xvel, yvel);
+
+            for(int j=0; j<n; j++) {
+                final int i = active==null ? j : active.get(j);
+                xvels[i] += xvel[i];
+                yvels[i] += yvel[i];
+                xvel[i] = alpha!=0 ? xvel[i] / alpha : 0;
+                yvel[i] = alpha!=0 ? yvel[i] / alpha : 0;
+            }
+
+            evaluated();
+        } else {
+            reuse(alpha, active, xvels, yvels);
+        }
+
+        tick++;
+    }
+
+    private void evaluate(final double alpha, final ActiveSet active) {
+        final int n = active==null ? vxs.size() : active.size();
+        for(int j=0; j<n; j++) {
+            final int i = active==null ? j : active.get(j);
+            final IVertex vx = vxs.get(i);
+            xvel0[i] = xvel[i];
+            yvel0[i] = yvel[i];
+            xvel[i] = vx.getXVelocity();
+            yvel[i] = vx.getYVelocity();
+            if(zvel!=null) {
+                zvel0[i] = zvel[i];
+                zvel[i] = ((IVertex3)vx).getZVelocity();
+            }
+        }
+
+        if(active==null) {
+            force.force(alpha);
+        } else {
+            force.force(alpha, active);
+        }
+
+        for(int j=0; j<n; j++) {
+            final int i = active==null ? j : active.get(j);
+            final IVertex vx = vxs.get(i);
+            xvel[i] = alpha!=0 ? (vx.getXVelocity() - xvel[i]) / alpha : 0;
+            yvel[i] = alpha!=0 ? (vx.getYVelocity() - yvel[i]) / alpha : 0;
+            if(zvel!=null) {
+                zvel[i] = alpha!=0 ? (((IVertex3)vx).getZVelocity() - zvel[i]) / alpha : 0;
+            }
+        }
+
+        evaluated();
+    }
+
+    private void evaluated() {
+        previousTick = lastTick;
+        lastTick = tick;
+        evaluations++;
+    }
+
+    /**
+     * Add the recorded contribution.
+     *
+     * @param alpha The current alpha.
+     * @param active The vertices that are free to move, or null for every vertex.
+     * @param xvels If not null, add the x velocities here instead of to the vertices.
+     * @param yvels If not null, add the y velocities here instead of to the vertices.
+     * The contribution of a force that accumulates has no z part.
+     */
+    private void reuse(final double alpha, final ActiveSet active, final double[] xvels, final double[] yvels) {
+        // Extrapolate linearly from the last two evaluations if asked to,
+        // otherwise hold the last contribution.
+        //
+        final double f = extrapolate && evaluations>1 ? (double)(tick - lastTick) / (lastTick - previousTick) : 0;
+
+        final int n = active==null ? vxs.size() : active.size();
+        for(int j=0; j<n; j++) {
+            final int i = active==null ? j : active.get(j);
+            final double dx = xvel[i] + f * (xvel[i] - xvel0[i]);
+            final double dy = yvel[i] + f * (yvel[i] - yvel0[i]);
+            if(xvels==null) {
+                final IVertex vx = vxs.get(i);
+                vx.setXVelocity(vx.getXVelocity() + dx*alpha);
+                vx.setYVelocity(vx.getYVelocity() + dy*alpha);
+                if(zvel!=null) {
+                    final IVertex3 vx3 = (IVertex3)vx;
+                    final double dz = zvel[i] + f * (zvel[i] - zvel0[i]);
+                    vx3.setZVelocity(vx3.getZVelocity() + dz*alpha);
+                }
+            } else {
+                xvels[i] += dx*alpha;
+                yvels[i] += dy*alpha;
+            }
+        }
+    }
+
+    public Force getForce() {
+        return force;
+    }
+
+    public boolean isExtrapolate() {
+        return extrapolate;
+    }
+
+    /**
+     * Extrapolate the contribution on skipped ticks.
+     * <p>
+     * By default the last contribution is held; if this is set, it is
+     * extrapolated linearly from the last two evaluations.
+     *
+     * @param extrapolate True to extrapolate.
+     *
+     * @return This force.
+     */
+    public ScheduledForce setExtrapolate(final boolean extrapolate) {
+        this.extrapolate = extrapolate;
+
+        return this;
+    }
+}
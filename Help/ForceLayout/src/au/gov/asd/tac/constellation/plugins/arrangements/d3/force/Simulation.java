@@ -15,8 +15,14 @@
  */
 package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
 
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.IPoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -24,6 +30,26 @@ import java.util.List;
  */
 public final class Simulation {
     private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private final int dimensions;
+    private Adjacency adjacency;
+    private ActiveSet active;
+
+    // A spatial index of the vertex positions for local relaxation.
+    // It indexes copies of the positions so it can be updated as vertices
+    // move: once it exists, integrate() moves each vertex it moves in the
+    // index too, so full ticks keep it up to date instead of dropping it.
+    //
+    private D3QuadTree spatial;
+    private Position[] positions;
+    private ActiveSet localActive;
+
+    // Vertices that haven't converged; the others are frozen.
+    //
+    private double freezeThreshold;
+    private int freezeTicks;
+    private ActiveSet awake;
+    private int[] stillTicks;
     private double alpha;
     private double alphaMin;
     private double alphaDecay;
@@ -31,17 +57,103 @@ public final class Simulation {
     private double velocityDecay;
     private final LinkedHashMap<String, Force> forces;
 
+    // Accumulating forces are evaluated concurrently into these buffers.
+    //
+    private boolean concurrent;
+    private double[][] xbuffers;
+    private double[][] ybuffers;
+
+    private int incrementalHops;
+    private int incrementalTicks;
+    private double incrementalAlpha;
+
+    private double placementAlpha;
+    private int placementTicks;
+
+    // The alpha decay to put back once a placement has cooled, or NaN.
+    //
+    private double savedAlphaDecay;
+
+    // Per-vertex step sizes and progress-based cooling, or null for the d3 integration.
+    //
+    private AdaptiveStep adaptive;
+    private boolean adaptiveEnabled;
+    private double convergence;
+
     final double initialRadius = 10;
     final double initalAngle = Math.PI * (3-Math.sqrt(5));
+    final double initialAngleYaw = Math.PI * 20 / (9+Math.sqrt(221));
 
     public Simulation(final List<IVertex> vxs) {
+        this(vxs, new ArrayList<>());
+    }
+
+    /**
+     * A simulation that knows about the links between its vertices.
+     * <p>
+     * The links are used to find the neighbourhood of vertices for incremental
+     * layouts; they are not a force. Add a ForceLink constructed with the same
+     * list to use them as springs.
+     *
+     * @param vxs The vertices.
+     * @param links The links between the vertices.
+     */
+    public Simulation(final List<IVertex> vxs, final List<ILink> links) {
+        this(vxs, links, 2);
+    }
+
+    /**
+     * A simulation in two or three dimensions.
+     * <p>
+     * In three dimensions, every vertex must be an IVertex3, and the z
+     * coordinates are integrated along with x and y. Use the 3D forces,
+     * such as ForceManyBody3D and ForceLink3D, for the z dimension to move;
+     * the other forces only act on x and y.
+     *
+     * @param vxs The vertices.
+     * @param links The links between the vertices.
+     * @param dimensions 2 or 3.
+     */
+    public Simulation(final List<IVertex> vxs, final List<ILink> links, final int dimensions) {
+        if(dimensions!=2 && dimensions!=3) {
+            throw new IllegalArgumentException("Dimensions must be 2 or 3: " + dimensions);
+        }
+        if(dimensions==3 && !vxs.stream().allMatch(vx -> vx instanceof IVertex3)) {
+            throw new IllegalArgumentException("A 3D simulation needs IVertex3 vertices");
+        }
+
         this.vxs = vxs;
+        this.links = links;
+        this.dimensions = dimensions;
+        adjacency = null;
+        active = null;
+        spatial = null;
+        localActive = null;
         alpha = 1;
         alphaMin = 0.001;
         alphaDecay = 1.0 - Math.pow(alphaMin, 1.0/300.0);
+        savedAlphaDecay = Double.NaN;
         alphaTarget = 0;
         velocityDecay = 0.6;
         forces = new LinkedHashMap<>();
+        concurrent = false;
+        xbuffers = new double[0][];
+        ybuffers = new double[0][];
+
+        incrementalHops = 2;
+        incrementalTicks = 100;
+        incrementalAlpha = 0.3;
+
+        placementAlpha = 0.1;
+        placementTicks = 50;
+
+        adaptive = null;
+        adaptiveEnabled = false;
+        convergence = 0.0005;
+
+        freezeThreshold = 0;
+        freezeTicks = 5;
+        awake = null;
 
         initialiseVertices();
     }
@@ -53,26 +165,521 @@ public final class Simulation {
         return this;
     }
 
+    /**
+     * Add a force that is only evaluated on some ticks.
+     * <p>
+     * On the other ticks, the force's previous contribution to the velocities
+     * is reused. Only forces that act through velocities can be scheduled.
+     *
+     * @param name The name of the force.
+     * @param force The force.
+     * @param schedule Decides which ticks the force is evaluated on.
+     *
+     * @return The simulation.
+     */
+    public Simulation addForce(final String name, final Force force, final ForceSchedule schedule) {
+        return addForce(name, new ScheduledForce(force, schedule));
+    }
+
     private void initialiseVertices() {
         int i = 0;
         for(final IVertex vx : vxs) {
             vx.setIndex(i);
-            if(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY())) {
-                final double radius = initialRadius * Math.sqrt(i);
-                final double angle = i * initalAngle;
-                vx.setX((radius * Math.cos(angle)));
-                vx.setY((radius * Math.sin(angle)));
+            if(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()) || (dimensions==3 && Double.isNaN(((IVertex3)vx).getZ()))) {
+                placeOnSpiral(vx, i);
             }
 
             if(true) { // Double.isNaN(vx.getXVelocity()) || Double.isNaN(vx.getYVelocity())) {
                 vx.setXVelocity(0);
                 vx.setYVelocity(0);
+                if(dimensions==3) {
+                    ((IVertex3)vx).setZVelocity(0);
+                }
             }
 
             i++;
         }
     }
 
+    private void placeOnSpiral(final IVertex vx, final int i) {
+        if(dimensions==3) {
+            // A spherical spiral, as in d3-force-3d.
+            //
+            final double radius = initialRadius * Math.cbrt(0.5 + i);
+            final double roll = i * initalAngle;
+            final double yaw = i * initialAngleYaw;
+            vx.setX(radius * Math.sin(roll) * Math.cos(yaw));
+            vx.setY(radius * Math.cos(roll));
+            ((IVertex3)vx).setZ(radius * Math.sin(roll) * Math.sin(yaw));
+        } else {
+            final double radius = initialRadius * Math.sqrt(i);
+            final double angle = i * initalAngle;
+            vx.setX((radius * Math.cos(angle)));
+            vx.setY((radius * Math.sin(angle)));
+        }
+    }
+
+    /**
+     * Replace the initial placement with a Pivot MDS placement, and cool the simulation.
+     * <p>
+     * Every vertex is placed by PivotMDS, including vertices that had a
+     * position when the simulation was constructed, and the velocities are
+     * reset. Because the placement already has the structure of the graph,
+     * alpha is set to the placement alpha, and alpha decay is set so alpha
+     * reaches alpha min after the placement ticks; step() then only runs the
+     * placement ticks. Once alpha is below alpha min, the alpha decay is
+     * put back, so a later reheat cools at the usual rate. Adaptive
+     * integration starts again with fresh step sizes.
+     *
+     * @param pivots The number of pivots.
+     * @param scale The mean link length of the placement; usually the link distance.
+     *
+     * @return The simulation.
+     */
+    public Simulation placePivotMDS(final int pivots, final double scale) {
+        new PivotMDS(vxs, links).setPivots(pivots).setScale(scale).setDimensions(dimensions).place();
+        cool();
+
+        return this;
+    }
+
+    /**
+     * Replace the initial placement with a spectral placement, and cool the simulation.
+     * <p>
+     * Every vertex is placed by SpectralPlacement, which suits meshes and
+     * grid-like graphs; the simulation is then cooled as for placePivotMDS().
+     *
+     * @param scale The mean link length of the placement; usually the link distance.
+     *
+     * @return The simulation.
+     */
+    public Simulation placeSpectral(final double scale) {
+        new SpectralPlacement(vxs, links).setScale(scale).setDimensions(dimensions).place();
+        cool();
+
+        return this;
+    }
+
+    /**
+     * Replace the initial placement with a preview layout, and cool the simulation.
+     * <p>
+     * A sample of the vertices is laid out by PreviewLayout and the other
+     * vertices are interpolated, which is much quicker than a full
+     * simulation of a large graph; the simulation is then cooled as for
+     * placePivotMDS(), so step() refines the preview with the placement
+     * ticks. The preview is two-dimensional.
+     *
+     * @param samples The number of sample vertices.
+     * @param distance The link distance of the sample simulation.
+     *
+     * @return The simulation.
+     */
+    public Simulation placePreview(final int samples, final double distance) {
+        if(dimensions!=2) {
+            throw new IllegalStateException("A preview placement is two-dimensional");
+        }
+
+        new PreviewLayout(vxs, links).setSamples(samples).setDistance(distance).layout();
+        cool();
+
+        return this;
+    }
+
+    /**
+     * Replace the initial placement with a radial tree layout, and cool the simulation.
+     * <p>
+     * A forest is laid out by TreeLayout in linear time; the simulation is
+     * then cooled as for placePivotMDS(), so step() only refines the tree
+     * with the placement ticks. The layout is two-dimensional.
+     *
+     * @param distance The distance between the depths of the trees; usually the link distance.
+     *
+     * @return The simulation.
+     *
+     * @throws IllegalStateException if the graph isn't a forest.
+     */
+    public Simulation placeTree(final double distance) {
+        if(dimensions!=2) {
+            throw new IllegalStateException("A tree placement is two-dimensional");
+        }
+
+        new TreeLayout(vxs, links).setDistance(distance).layout();
+        cool();
+
+        return this;
+    }
+
+    /**
+     * Reset the velocities and set alpha for a short simulation from a new placement.
+     * <p>
+     * The alpha decay is saved, and tick() puts it back when alpha reaches
+     * alpha min.
+     */
+    private void cool() {
+        for(final IVertex vx : vxs) {
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+            if(dimensions==3) {
+                ((IVertex3)vx).setZVelocity(0);
+            }
+        }
+
+        spatial = null;
+        localActive = null;
+        awake = null;
+        if(adaptive!=null) {
+            adaptive.reset();
+        }
+        if(Double.isNaN(savedAlphaDecay)) {
+            savedAlphaDecay = alphaDecay;
+        }
+        alpha = placementAlpha;
+        alphaDecay = placementAlpha>alphaMin ? 1.0 - Math.pow(alphaMin/placementAlpha, 1.0/placementTicks) : 0;
+    }
+
+    /**
+     * Add vertices and links to an existing layout, and relax only the region around them.
+     * <p>
+     * Each new vertex that doesn't have a position is placed near its
+     * already positioned neighbours. A short simulation is then run with alpha
+     * reheated to the incremental alpha, in which only the new vertices and the
+     * vertices within the incremental hops of them can move; every other vertex
+     * is held fixed, so the existing layout is preserved. The ticks of the short
+     * simulation only process the vertices that can move.
+     * <p>
+     * The vertices and links are appended to the lists given to the constructor,
+     * so those lists must be modifiable. The forces are extended so they see
+     * the new vertices, keeping their settings and the per-vertex state of
+     * the existing vertices; a ForceLink will see the new links if it was
+     * constructed with the same list of links as this simulation.
+     * The adjacency, ForceLink and ForceManyBody are extended in time
+     * proportional to the number of new vertices and links.
+     *
+     * @param newVxs The vertices to add.
+     * @param newLinks The links to add; these may connect new and existing vertices.
+     *
+     * @return The simulation.
+     */
+    public Simulation addVertices(final List<IVertex> newVxs, final List<ILink> newLinks) {
+        final int n0 = vxs.size();
+        final int m0 = links.size();
+        vxs.addAll(newVxs);
+        links.addAll(newLinks);
+
+        final int n = vxs.size();
+        for(int i=n0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            vx.setIndex(i);
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+            if(dimensions==3) {
+                ((IVertex3)vx).setZVelocity(0);
+            }
+        }
+
+        if(adjacency!=null) {
+            adjacency.extend(n, links, m0);
+        } else {
+            adjacency = Adjacency.build(n, links);
+        }
+        localActive = null;
+        awake = null;
+        placeNearNeighbours(n0);
+        if(spatial!=null) {
+            positions = Arrays.copyOf(positions, n);
+            for(int i=n0; i<n; i++) {
+                positions[i] = new Position(vxs.get(i));
+                spatial.add(positions[i]);
+            }
+        }
+
+        forces.forEach((name, force) -> {
+            force.extend(vxs, n0);
+        });
+
+        final ActiveSet region = new ActiveSet(n);
+        for(int i=n0; i<n; i++) {
+            region.add(i);
+        }
+        expand(region, incrementalHops);
+
+        // Relax the region from the incremental alpha down to alphaMin,
+        // then put the simulation back the way it was.
+        //
+        final double savedAlpha = alpha;
+        final double savedAlphaDecay = alphaDecay;
+        final double savedAlphaTarget = alphaTarget;
+        alpha = incrementalAlpha;
+        alphaTarget = 0;
+        alphaDecay = incrementalAlpha>alphaMin ? 1.0 - Math.pow(alphaMin/incrementalAlpha, 1.0/incrementalTicks) : 0;
+
+        setActive(region);
+        tick(incrementalTicks);
+        setActive(null);
+
+        alpha = savedAlpha;
+        alphaDecay = savedAlphaDecay;
+        alphaTarget = savedAlphaTarget;
+
+        return this;
+    }
+
+    /**
+     * Place each new vertex without a position near its positioned neighbours.
+     * <p>
+     * New vertices are placed breadth first outwards from the existing layout,
+     * so a chain of new vertices grows out of the vertex it is attached to.
+     * New vertices that are not connected to the existing layout are placed
+     * on the initial spiral.
+     *
+     * @param n0 The index of the first new vertex.
+     */
+    private void placeNearNeighbours(final int n0) {
+        // Only the new vertices can be unplaced, so the state is kept
+        // for them alone, at i-n0.
+        //
+        final int n = vxs.size();
+        final boolean[] placed = new boolean[n-n0];
+        final boolean[] queued = new boolean[n-n0];
+        for(int i=n0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            placed[i-n0] = !(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()) || (dimensions==3 && Double.isNaN(((IVertex3)vx).getZ())));
+        }
+
+        final int[] queue = new int[n-n0];
+        int head = 0;
+        int tail = 0;
+        for(int i=n0; i<n; i++) {
+            if(!placed[i-n0]) {
+                final int degree = adjacency.degree(i);
+                for(int k=0; k<degree; k++) {
+                    final int u = adjacency.neighbour(i, k);
+                    if(u<n0 || placed[u-n0]) {
+                        queued[i-n0] = true;
+                        queue[tail++] = i;
+                        break;
+                    }
+                }
+            }
+        }
+
+        while(head<tail) {
+            final int v = queue[head++];
+            double sx = 0;
+            double sy = 0;
+            double sz = 0;
+            int c = 0;
+            final int degree = adjacency.degree(v);
+            for(int k=0; k<degree; k++) {
+                final int u = adjacency.neighbour(v, k);
+                if(u<n0 || placed[u-n0]) {
+                    sx += vxs.get(u).getX();
+                    sy += vxs.get(u).getY();
+                    if(dimensions==3) {
+                        sz += ((IVertex3)vxs.get(u)).getZ();
+                    }
+                    c++;
+                } else if(!queued[u-n0]) {
+                    queued[u-n0] = true;
+                    queue[tail++] = u;
+                }
+            }
+
+            // Offset from the barycentre so siblings aren't coincident.
+            //
+            final double angle = Math.random() * 2 * Math.PI;
+            final IVertex vx = vxs.get(v);
+            if(dimensions==3) {
+                final double cosPolar = 2 * Math.random() - 1;
+                final double sinPolar = Math.sqrt(1 - cosPolar*cosPolar);
+                vx.setX(sx/c + initialRadius * sinPolar * Math.cos(angle));
+                vx.setY(sy/c + initialRadius * sinPolar * Math.sin(angle));
+                ((IVertex3)vx).setZ(sz/c + initialRadius * cosPolar);
+            } else {
+                vx.setX(sx/c + initialRadius * Math.cos(angle));
+                vx.setY(sy/c + initialRadius * Math.sin(angle));
+            }
+            placed[v-n0] = true;
+        }
+
+        for(int i=n0; i<n; i++) {
+            if(!placed[i-n0]) {
+                placeOnSpiral(vxs.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * Add the vertices within the given number of hops to the set.
+     *
+     * @param region The set to expand.
+     * @param hops The number of hops.
+     */
+    private void expand(final ActiveSet region, final int hops) {
+        int start = 0;
+        for(int h=0; h<hops; h++) {
+            final int end = region.size();
+            for(int j=start; j<end; j++) {
+                final int v = region.get(j);
+                final int degree = adjacency.degree(v);
+                for(int k=0; k<degree; k++) {
+                    region.add(adjacency.neighbour(v, k));
+                }
+            }
+
+            start = end;
+        }
+    }
+
+    /**
+     * Restrict the simulation to a subset of the vertices.
+     * <p>
+     * Vertices outside the active set are held fixed; forces still use them
+     * as sources. If a fixed vertex is moved between ticks, pass it to each
+     * force's fixedMoved().
+     *
+     * @param active The vertices that are free to move, or null to free every vertex.
+     *
+     * @return The simulation.
+     */
+    public Simulation setActive(final ActiveSet active) {
+        this.active = active;
+
+        return this;
+    }
+
+    public ActiveSet getActive() {
+        return active;
+    }
+
+    /**
+     * Relax the region around the seed vertices, holding everything else fixed.
+     * <p>
+     * This is for interactive editing: when a user drags a vertex, call this
+     * every frame with the dragged vertex as a seed. The active set is every
+     * vertex within the radius of a seed plus the vertices linked to a seed;
+     * the seeds themselves are held where the user put them.
+     * <p>
+     * Forces are only applied to the active set, and ForceManyBody uses the
+     * quadtree of its last full tick as a frozen far field, so the cost of
+     * a frame depends on the size of the region rather than the graph.
+     * The seeds are passed to each force's fixedMoved(), so the far field
+     * has them where the user put them.
+     * The first call indexes the vertex positions; after that, the index
+     * is updated as vertices move, including during full ticks, so later
+     * calls don't have to index the graph again.
+     * <p>
+     * Alpha decays as usual; as in d3, set the alpha target to keep
+     * the region warm while dragging.
+     * <p>
+     * In three dimensions, the region is found using the x and y
+     * coordinates only, so it may include vertices further than the
+     * radius from the seeds in z.
+     *
+     * @param seeds The vertices that the user has moved.
+     * @param radius Vertices within this distance of a seed are relaxed.
+     * @param iterations The number of ticks to run.
+     *
+     * @return The simulation.
+     */
+    public Simulation tickLocal(final Collection<IVertex> seeds, final double radius, final int iterations) {
+        final int n = vxs.size();
+        adjacency();
+
+        if(spatial==null) {
+            positions = new Position[n];
+            for(int i=0; i<n; i++) {
+                positions[i] = new Position(vxs.get(i));
+            }
+
+            spatial = new D3QuadTree();
+            spatial.add(List.of(positions));
+        }
+
+        if(localActive==null) {
+            localActive = new ActiveSet(n);
+        } else {
+            localActive.clear();
+        }
+
+        // The seeds have probably moved since they were indexed, and since
+        // the forces last saw them.
+        //
+        seeds.forEach(this::reindex);
+        seeds.forEach(seed -> forces.values().forEach(force -> force.fixedMoved(seed)));
+
+        seeds.forEach(seed -> {
+            spatial.findAll(seed.getX(), seed.getY(), radius).forEach(p -> {
+                localActive.add(((Position)p).index);
+            });
+
+            final int s = seed.getIndex();
+            final int degree = adjacency.degree(s);
+            for(int k=0; k<degree; k++) {
+                localActive.add(adjacency.neighbour(s, k));
+            }
+        });
+
+        seeds.forEach(seed -> {
+            localActive.remove(seed.getIndex());
+        });
+
+        final ActiveSet saved = active;
+        active = localActive;
+        tick(iterations);
+        active = saved;
+
+        return this;
+    }
+
+    private Adjacency adjacency() {
+        if(adjacency==null) {
+            adjacency = Adjacency.build(vxs.size(), links);
+        }
+
+        return adjacency;
+    }
+
+    /**
+     * Move a vertex to its current position in the spatial index.
+     *
+     * @param vx The vertex.
+     */
+    private void reindex(final IVertex vx) {
+        final Position p = positions[vx.getIndex()];
+        if(p.x!=vx.getX() || p.y!=vx.getY()) {
+            spatial.remove(p);
+            p.x = vx.getX();
+            p.y = vx.getY();
+            spatial.add(p);
+        }
+    }
+
+    /**
+     * A copy of the position of a vertex.
+     */
+    private static final class Position implements IPoint {
+        final int index;
+        double x;
+        double y;
+
+        Position(final IVertex vx) {
+            index = vx.getIndex();
+            x = vx.getX();
+            y = vx.getY();
+        }
+
+        @Override
+        public double getX() {
+            return x;
+        }
+
+        @Override
+        public double getY() {
+            return y;
+        }
+    }
+
     void step() {
         while(alpha>=alphaMin) {
             tick(1);
@@ -85,36 +692,290 @@ public final class Simulation {
     void tick(final int iterations) {
         for(int k=0; k<iterations; k++) {
             alpha += (alphaTarget - alpha) * alphaDecay;
+            if(adaptiveEnabled && (adaptive==null || adaptive.size()!=vxs.size())) {
+                adaptive = new AdaptiveStep(vxs, dimensions);
+            }
+            final double forceAlpha = forceAlpha();
 
-            forces.forEach((name, force) -> {
-//                System.out.printf("@@force %s %s %s\n", name, force, alpha);
-                force.force(alpha);
-            });
+            if(active==null && freezeThreshold>0) {
+                tickAwake();
+            } else if(active==null) {
+                applyForces(null);
+
+//                int[] _i = new int[1];
+                vxs.forEach(vx -> {
+//                    System.out.printf("@@vel %s %s\n", vx.getXVelocity(), vx.getYVelocity());
+                    integrate(vx);
+//                    System.out.printf("@@tick %s %s %s\n", _i[0]++, vx.getX(), vx.getY());
+                });
+            } else {
+                applyForces(active);
+
+                final int n = active.size();
+                for(int j=0; j<n; j++) {
+                    integrate(vxs.get(active.get(j)));
+                }
+            }
+
+            // A converged layout is cooled to the alpha target, which ends step().
+            // A restricted tick (tickLocal(), addVertices()) moves too few
+            // vertices to say anything about the layout as a whole, so it
+            // leaves the heat and the alpha alone.
+            //
+            if(adaptive!=null && active==null && adaptive.finish(forceAlpha, convergence)) {
+                alpha = Math.min(alpha, alphaTarget);
+            }
+
+            // A cooled placement has run its ticks.
+            //
+            if(active==null && alpha<alphaMin && !Double.isNaN(savedAlphaDecay)) {
+                alphaDecay = savedAlphaDecay;
+                savedAlphaDecay = Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * The alpha that the forces are applied with: alpha times the adaptive heat.
+     */
+    private double forceAlpha() {
+        return adaptive==null ? alpha : alpha * adaptive.getHeat();
+    }
+
+    /**
+     * Apply the forces for a tick.
+     * <p>
+     * If the simulation is concurrent, the accumulating forces are evaluated
+     * at the same time, each into its own velocity buffers, and the buffers
+     * are added to the velocities in a parallel pass. The other forces are
+     * then applied one at a time in the order they were added, and the
+     * constraints last of all.
+     *
+     * @param set The vertices that are free to move, or null for every vertex.
+     */
+    private void applyForces(final ActiveSet set) {
+        if(adaptive!=null) {
+            adaptive.start(set);
+        }
+
+        final double forceAlpha = forceAlpha();
+        final List<AccumulatingForce> accumulating = new ArrayList<>();
+        final List<Force> sequential = new ArrayList<>();
+        final List<Force> constraints = new ArrayList<>();
+        forces.forEach((name, force) -> {
+            if(force.isConstraint()) {
+                constraints.add(force);
+            } else if(concurrent && force instanceof AccumulatingForce && ((AccumulatingForce)force).isAccumulating()) {
+                accumulating.add((AccumulatingForce)force);
+            } else {
+                sequential.add(force);
+            }
+        });
 
-//            int[] _i = new int[1];
-            vxs.forEach(vx -> {
-//                System.out.printf("@@vel %s %s\n", vx.getXVelocity(), vx.getYVelocity());
-                vx.setXVelocity(vx.getXVelocity() * velocityDecay);
-                vx.setX(vx.getX() + vx.getXVelocity());
+        if(!accumulating.isEmpty()) {
+            final int nf = accumulating.size();
+            final int n = vxs.size();
+            if(xbuffers.length<nf || xbuffers[0].length!=n) {
+                xbuffers = new double[nf][n];
+                ybuffers = new double[nf][n];
+            }
+
+            final int count = set==null ? n : set.size();
+            IntStream.range(0, nf).parallel().forEach(f -> {
+                final double[] xbuf = xbuffers[f];
+                final double[] ybuf = ybuffers[f];
+                if(set==null) {
+                    Arrays.fill(xbuf, 0);
+                    Arrays.fill(ybuf, 0);
+                } else {
+                    for(int j=0; j<count; j++) {
+                        xbuf[set.get(j)] = 0;
+                        ybuf[set.get(j)] = 0;
+                    }
+                }
+
+                accumulating.get(f).accumulate(forceAlpha, set, xbuf, ybuf);
+            });
 
-                vx.setYVelocity(vx.getYVelocity() * velocityDecay);
-                vx.setY(vx.getY() + vx.getYVelocity());
+            Util.parallelFor(count, j -> {
+                final int i = set==null ? j : set.get(j);
+                double xv = 0;
+                double yv = 0;
+                for(int f=0; f<nf; f++) {
+                    xv += xbuffers[f][i];
+                    yv += ybuffers[f][i];
+                }
 
-//                System.out.printf("@@tick %s %s %s\n", _i[0]++, vx.getX(), vx.getY());
+                final IVertex vx = vxs.get(i);
+                vx.setXVelocity(vx.getXVelocity() + xv);
+                vx.setYVelocity(vx.getYVelocity() + yv);
             });
         }
+
+        sequential.forEach(force -> apply(force, forceAlpha, set));
+        if(adaptive!=null && !constraints.isEmpty()) {
+            adaptive.constrain(set);
+        }
+        constraints.forEach(force -> apply(force, forceAlpha, set));
+    }
+
+    private static void apply(final Force force, final double alpha, final ActiveSet set) {
+        if(set==null) {
+            force.force(alpha);
+        } else {
+            force.force(alpha, set);
+        }
+    }
+
+    /**
+     * A tick that skips the frozen vertices.
+     * <p>
+     * A vertex that moves less than the freeze threshold for the given number
+     * of consecutive ticks is frozen: it is no longer integrated or given
+     * forces, but it is still a source. A vertex that moves further than the
+     * threshold keeps its neighbours awake, and wakes any that are frozen;
+     * raising alpha wakes every vertex.
+     */
+    private void tickAwake() {
+        final int n = vxs.size();
+        if(awake==null) {
+            awake = new ActiveSet(n);
+            stillTicks = new int[n];
+            for(int i=0; i<n; i++) {
+                awake.add(i);
+            }
+        }
+
+        // While every vertex is awake, the forces see a full tick, so forces
+        // that do nothing for a subset, such as ForceCentre, still act.
+        //
+        applyForces(awake.size()==n ? null : awake);
+
+        final Adjacency adj = adjacency();
+        final double threshold2 = freezeThreshold * freezeThreshold;
+        final int na = awake.size();
+        for(int j=0; j<na; j++) {
+            final int i = awake.get(j);
+            final IVertex vx = vxs.get(i);
+            integrate(vx);
+
+            final double xv = vx.getXVelocity();
+            final double yv = vx.getYVelocity();
+            final double zv = dimensions==3 ? ((IVertex3)vx).getZVelocity() : 0;
+            if(xv*xv + yv*yv + zv*zv<threshold2) {
+                stillTicks[i]++;
+            } else {
+                stillTicks[i] = 0;
+                final int degree = adj.degree(i);
+                for(int k=0; k<degree; k++) {
+                    final int u = adj.neighbour(i, k);
+                    stillTicks[u] = 0;
+                    awake.add(u);
+                }
+            }
+        }
+
+        awake.removeIf(i -> {
+            if(stillTicks[i]>=freezeTicks) {
+                final IVertex vx = vxs.get(i);
+                vx.setXVelocity(0);
+                vx.setYVelocity(0);
+                if(dimensions==3) {
+                    ((IVertex3)vx).setZVelocity(0);
+                }
+
+                return true;
+            }
+
+            return false;
+        });
+    }
+
+    private void wakeAll() {
+        if(awake!=null) {
+            final int n = vxs.size();
+            for(int i=0; i<n; i++) {
+                stillTicks[i] = 0;
+                awake.add(i);
+            }
+        }
+    }
+
+    /**
+     * The spatial index used by tickLocal(), or null if there isn't one.
+     */
+    D3QuadTree getSpatial() {
+        return spatial;
+    }
+
+    /**
+     * The vertices that are not frozen.
+     *
+     * @return The vertices that are not frozen, or null if nothing has been frozen yet.
+     */
+    ActiveSet getAwake() {
+        return awake;
+    }
+
+    private void integrate(final IVertex vx) {
+        if(adaptive!=null) {
+            adaptive.integrate(vx, velocityDecay);
+        } else {
+            vx.setXVelocity(vx.getXVelocity() * velocityDecay);
+            vx.setX(vx.getX() + vx.getXVelocity());
+
+            vx.setYVelocity(vx.getYVelocity() * velocityDecay);
+            vx.setY(vx.getY() + vx.getYVelocity());
+
+            if(dimensions==3) {
+                final IVertex3 vx3 = (IVertex3)vx;
+                vx3.setZVelocity(vx3.getZVelocity() * velocityDecay);
+                vx3.setZ(vx3.getZ() + vx3.getZVelocity());
+            }
+        }
+
+        if(spatial!=null) {
+            reindex(vx);
+        }
+    }
+
+    public int getDimensions() {
+        return dimensions;
     }
 
     public double getAlpha() {
         return alpha;
     }
 
+    /**
+     * Set alpha.
+     * <p>
+     * Reheating the simulation by increasing alpha wakes any frozen vertices.
+     *
+     * @param alpha The new alpha.
+     *
+     * @return The simulation.
+     */
     public Simulation setAlpha(final double alpha) {
+        if(alpha>this.alpha) {
+            reheat();
+        }
+
         this.alpha = alpha;
 
         return this;
     }
 
+    /**
+     * Wake the frozen vertices and restart the adaptive integration.
+     */
+    private void reheat() {
+        wakeAll();
+        if(adaptive!=null) {
+            adaptive.reset();
+        }
+    }
+
     public double getAlphaMin() {
         return alphaMin;
     }
@@ -131,6 +992,7 @@ public final class Simulation {
 
     public Simulation setAlphaDecay(final double alphaDecay) {
         this.alphaDecay = alphaDecay;
+        savedAlphaDecay = Double.NaN;
 
         return this;
     }
@@ -139,7 +1001,21 @@ public final class Simulation {
         return alphaTarget;
     }
 
+    /**
+     * Set the alpha target.
+     * <p>
+     * Raising the target above alpha reheats the simulation, as d3 does while
+     * a vertex is dragged, so it wakes any frozen vertices as setAlpha() does.
+     *
+     * @param alphaTarget The new alpha target.
+     *
+     * @return The simulation.
+     */
     public Simulation setAlphaTarget(final double alphaTarget) {
+        if(alphaTarget>alpha) {
+            reheat();
+        }
+
         this.alphaTarget = alphaTarget;
 
         return this;
@@ -155,4 +1031,175 @@ public final class Simulation {
         return this;
     }
 
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Evaluate the accumulating forces concurrently.
+     * <p>
+     * Forces that only add to the velocities, such as ForceLink and
+     * ForceManyBody, are evaluated at the same time into separate buffers.
+     * Other forces, such as ForceCentre, are applied afterwards one at a time.
+     *
+     * @param concurrent True to evaluate accumulating forces concurrently.
+     *
+     * @return The simulation.
+     */
+    public Simulation setConcurrent(final boolean concurrent) {
+        this.concurrent = concurrent;
+
+        return this;
+    }
+
+    public double getFreezeThreshold() {
+        return freezeThreshold;
+    }
+
+    /**
+     * Freeze vertices that have converged.
+     * <p>
+     * A vertex that moves less than this distance per tick for the freeze
+     * ticks is skipped by the forces and the integration until it is woken
+     * by a moving neighbour or by a reheat. Zero, the default, turns
+     * freezing off.
+     * <p>
+     * Once any vertex is frozen, the forces are only applied to the awake
+     * vertices, so ForceCentre stops centring: the frozen vertices anchor
+     * the layout instead.
+     *
+     * @param freezeThreshold The distance per tick.
+     *
+     * @return The simulation.
+     */
+    public Simulation setFreezeThreshold(final double freezeThreshold) {
+        this.freezeThreshold = freezeThreshold;
+        if(freezeThreshold<=0) {
+            awake = null;
+        }
+
+        return this;
+    }
+
+    public int getFreezeTicks() {
+        return freezeTicks;
+    }
+
+    public Simulation setFreezeTicks(final int freezeTicks) {
+        this.freezeTicks = freezeTicks;
+
+        return this;
+    }
+
+    public int getIncrementalHops() {
+        return incrementalHops;
+    }
+
+    /**
+     * The number of links from a new vertex that can move in an incremental layout.
+     *
+     * @param incrementalHops The number of hops.
+     *
+     * @return The simulation.
+     */
+    public Simulation setIncrementalHops(final int incrementalHops) {
+        this.incrementalHops = incrementalHops;
+
+        return this;
+    }
+
+    public int getIncrementalTicks() {
+        return incrementalTicks;
+    }
+
+    public Simulation setIncrementalTicks(final int incrementalTicks) {
+        this.incrementalTicks = incrementalTicks;
+
+        return this;
+    }
+
+    public double getIncrementalAlpha() {
+        return incrementalAlpha;
+    }
+
+    public Simulation setIncrementalAlpha(final double incrementalAlpha) {
+        this.incrementalAlpha = incrementalAlpha;
+
+        return this;
+    }
+
+    public boolean isAdaptive() {
+        return adaptiveEnabled;
+    }
+
+    /**
+     * Integrate with per-vertex step sizes and progress-based cooling.
+     * <p>
+     * Each vertex's force is scaled by a step of its own, which grows while
+     * the force keeps its direction and shrinks when the vertex oscillates.
+     * The forces are also scaled by a heat that falls when the energy rises
+     * and recovers after the energy has fallen for several ticks in a row,
+     * as in Hu's adaptive cooling. Alpha still decays as usual, but the
+     * simulation stops early, by cooling alpha to the alpha target, once the
+     * mean distance moved in a tick is less than the convergence times the
+     * spread of the vertices.
+     *
+     * @param adaptive True for adaptive integration.
+     *
+     * @return The simulation.
+     */
+    public Simulation setAdaptive(final boolean adaptive) {
+        adaptiveEnabled = adaptive;
+        if(!adaptive) {
+            this.adaptive = null;
+        }
+
+        return this;
+    }
+
+    public double getConvergence() {
+        return convergence;
+    }
+
+    /**
+     * The mean distance moved in a tick, as a fraction of the spread of
+     * the vertices, below which an adaptive simulation has converged.
+     *
+     * @param convergence The fraction of the spread.
+     *
+     * @return The simulation.
+     */
+    public Simulation setConvergence(final double convergence) {
+        this.convergence = convergence;
+
+        return this;
+    }
+
+    public double getPlacementAlpha() {
+        return placementAlpha;
+    }
+
+    /**
+     * The alpha that a simulation starts from after a Pivot MDS or spectral placement.
+     *
+     * @param placementAlpha The alpha.
+     *
+     * @return The simulation.
+     */
+    public Simulation setPlacementAlpha(final double placementAlpha) {
+        this.placementAlpha = placementAlpha;
+
+        return this;
+    }
+
+    public int getPlacementTicks() {
+        return placementTicks;
+    }
+
+    public Simulation setPlacementTicks(final int placementTicks) {
+        this.placementTicks = placementTicks;
+
+        return this;
+    }
+
 }
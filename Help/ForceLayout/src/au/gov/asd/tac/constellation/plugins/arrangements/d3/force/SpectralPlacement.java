@@ -0,0 +1,481 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.DMatrixSparseCSC;
+import org.ejml.data.DMatrixSparseTriplet;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.factory.DecompositionFactory_DDRM;
+import org.ejml.interfaces.decomposition.EigenDecomposition_F64;
+import org.ejml.ops.DConvertMatrixStruct;
+import org.ejml.sparse.csc.CommonOps_DSCC;
+
+/**
+ * An initial placement from the eigenvectors of the graph Laplacian.
+ * <p>
+ * Following Koren's "Drawing graphs by eigenvectors", the coordinates are
+ * the generalised eigenvectors of Lx = &lambda;Dx with the smallest
+ * eigenvalues after the trivial constant vector, where L is the Laplacian
+ * and D is the diagonal matrix of degrees. These minimise the squared link
+ * lengths relative to the spread of the vertices, which puts meshes and
+ * grid-like graphs out flat with their links short and uniform.
+ * <p>
+ * The Laplacian is held as an EJML sparse matrix, and the eigenvectors are
+ * found by LOBPCG (locally optimal block preconditioned conjugate gradient)
+ * with the inverse of the degrees as the preconditioner. Each iteration is
+ * one sparse product of the Laplacian with a block of vectors, and a
+ * Rayleigh-Ritz step on a subspace of at most three times the number of
+ * dimensions, so the cost is linear in the size of the graph per iteration.
+ * The iterations start from a Pivot MDS placement, which is already close
+ * to the smooth eigenvectors.
+ * <p>
+ * Each component of a disconnected graph has its own constant eigenvector,
+ * so the components collapse; use a ComponentLayout for graphs with many
+ * components. Vertices without links are given a degree of one.
+ * The coordinates are scaled so the mean link length is the scale.
+ *
+ * @author algol
+ */
+public final class SpectralPlacement {
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private int dimensions;
+    private double scale;
+    private double tolerance;
+    private int maxIterations;
+    private long seed;
+
+    private int iterations;
+    private boolean converged;
+
+    public SpectralPlacement(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        dimensions = 2;
+        scale = 30;
+        tolerance = 0.1;
+        maxIterations = 2000;
+        seed = 0;
+        iterations = 0;
+        converged = false;
+    }
+
+    /**
+     * Place every vertex, whether or not it already has a position.
+     * <p>
+     * In three dimensions, every vertex must be an IVertex3.
+     * The vertices keep their index in the list of vertices.
+     *
+     * @return The placement.
+     */
+    public SpectralPlacement place() {
+        // The Pivot MDS coordinates are the starting vectors; this also
+        // initialises the vertex indexes.
+        //
+        new PivotMDS(vxs, links).setDimensions(dimensions).setScale(scale).setSeed(seed).place();
+        final int n = vxs.size();
+        iterations = 0;
+        converged = true;
+        if(n<=dimensions+1) {
+            return this;
+        }
+
+        final DMatrixRMaj x = new DMatrixRMaj(n, dimensions);
+        for(int i=0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            x.set(i, 0, vx.getX());
+            x.set(i, 1, vx.getY());
+            if(dimensions==3) {
+                x.set(i, 2, ((IVertex3)vx).getZ());
+            }
+        }
+
+        final double[] degrees = new double[n];
+        final DMatrixSparseCSC laplacian = laplacian(n, degrees);
+        final double[][] coords = solve(laplacian, degrees, x);
+
+        PivotMDS.setPositions(vxs, links, coords, scale, new SplittableRandom(seed));
+
+        return this;
+    }
+
+    /**
+     * The Laplacian of the links; multiple links between two vertices add up.
+     */
+    private DMatrixSparseCSC laplacian(final int n, final double[] degrees) {
+        final DMatrixSparseTriplet triplet = new DMatrixSparseTriplet(n, n, n + 2*links.size());
+        for(final ILink link : links) {
+            final int s = link.getSource().getIndex();
+            final int t = link.getTarget().getIndex();
+            if(s!=t) {
+                triplet.addItem(s, t, -1);
+                triplet.addItem(t, s, -1);
+                degrees[s]++;
+                degrees[t]++;
+            }
+        }
+
+        for(int i=0; i<n; i++) {
+            triplet.addItem(i, i, degrees[i]);
+            degrees[i] = Math.max(degrees[i], 1);
+        }
+
+        final DMatrixSparseCSC laplacian = DConvertMatrixStruct.convert(triplet, (DMatrixSparseCSC)null);
+        laplacian.sortIndices(null);
+        CommonOps_DSCC.duplicatesAdd(laplacian, null);
+
+        return laplacian;
+    }
+
+    /**
+     * LOBPCG for the smallest non-trivial generalised eigenvectors.
+     * <p>
+     * The subspace [X, W, P] of the current vectors, the preconditioned
+     * residuals, and the previous search directions is D-orthonormalised
+     * explicitly every iteration, and directions that have become
+     * dependent are dropped, which keeps the Rayleigh-Ritz step well
+     * conditioned as the vectors converge. A current vector is never
+     * dropped: if one collapses into the span of the others, it is replaced
+     * by a random vector, so there are always as many vectors as dimensions.
+     *
+     * @return The eigenvectors, one array per dimension.
+     */
+    private double[][] solve(final DMatrixSparseCSC laplacian, final double[] degrees, final DMatrixRMaj x0) {
+        final int n = degrees.length;
+        final int k = dimensions;
+
+        final SplittableRandom random = new SplittableRandom(seed);
+        DMatrixRMaj x = orthonormalise(x0, degrees, k, random);
+        DMatrixRMaj lx = null;
+        DMatrixRMaj p = null;
+        double[] values = null;
+        converged = false;
+        for(iterations=0; iterations<maxIterations; iterations++) {
+            final DMatrixRMaj s;
+            if(values==null) {
+                s = x;
+            } else {
+                // The residuals R = LX - DX diag(values), preconditioned by
+                // the inverse of D; their D^-1 norms relative to the
+                // eigenvalues decide convergence.
+                //
+                final DMatrixRMaj w = new DMatrixRMaj(n, k);
+                double residual = 0;
+                for(int j=0; j<k; j++) {
+                    double r2 = 0;
+                    for(int i=0; i<n; i++) {
+                        final double r = lx.get(i, j) - degrees[i] * x.get(i, j) * values[j];
+                        r2 += r * r / degrees[i];
+                        w.set(i, j, r / degrees[i]);
+                    }
+                    residual = Math.max(residual, Math.sqrt(r2) / Math.max(values[j], Double.MIN_NORMAL));
+                }
+
+                if(residual<tolerance) {
+                    converged = true;
+                    break;
+                }
+
+                s = concatenate(x, w, p);
+            }
+
+            final DMatrixRMaj basis = orthonormalise(s, degrees, k, random);
+            final int m = basis.numCols;
+            final DMatrixRMaj lb = CommonOps_DSCC.mult(laplacian, basis, null);
+            final DMatrixRMaj a = new DMatrixRMaj(m, m);
+            CommonOps_DDRM.multTransA(basis, lb, a);
+            for(int r=0; r<m; r++) {
+                for(int c=0; c<r; c++) {
+                    final double v = (a.get(r, c) + a.get(c, r)) / 2;
+                    a.set(r, c, v);
+                    a.set(c, r, v);
+                }
+            }
+
+            // The Ritz vectors with the smallest Ritz values.
+            //
+            final EigenDecomposition_F64<DMatrixRMaj> eig = DecompositionFactory_DDRM.eig(m, true, true);
+            if(!eig.decompose(a)) {
+                break;
+            }
+            final Integer[] order = new Integer[m];
+            for(int j=0; j<m; j++) {
+                order[j] = j;
+            }
+            Arrays.sort(order, (i, j) -> Double.compare(eig.getEigenvalue(i).getReal(), eig.getEigenvalue(j).getReal()));
+
+            final DMatrixRMaj c = new DMatrixRMaj(m, k);
+            values = new double[k];
+            for(int j=0; j<k; j++) {
+                final DMatrixRMaj v = eig.getEigenVector(order[j]);
+                values[j] = eig.getEigenvalue(order[j]).getReal();
+                for(int r=0; r<m; r++) {
+                    c.set(r, j, v.get(r, 0));
+                }
+            }
+
+            // LX is carried along with X, so each iteration only needs the
+            // one sparse product.
+            //
+            final DMatrixRMaj next = CommonOps_DDRM.mult(basis, c, null);
+            final DMatrixRMaj lnext = CommonOps_DDRM.mult(lb, c, null);
+
+            // The new search directions are the part of the step that
+            // doesn't come from the current vectors.
+            //
+            if(m>k) {
+                final DMatrixRMaj tail = CommonOps_DDRM.extract(basis, 0, n, k, m);
+                final DMatrixRMaj ct = CommonOps_DDRM.extract(c, k, m, 0, k);
+                p = CommonOps_DDRM.mult(tail, ct, null);
+            }
+            x = next;
+            lx = lnext;
+        }
+
+        final double[][] coords = new double[k][n];
+        for(int i=0; i<n; i++) {
+            for(int j=0; j<k; j++) {
+                coords[j][i] = x.get(i, j);
+            }
+        }
+
+        return coords;
+    }
+
+    private static DMatrixRMaj concatenate(final DMatrixRMaj x, final DMatrixRMaj w, final DMatrixRMaj p) {
+        final int n = x.numRows;
+        final int m = x.numCols + w.numCols + (p==null ? 0 : p.numCols);
+        final DMatrixRMaj s = new DMatrixRMaj(n, m);
+        CommonOps_DDRM.insert(x, s, 0, 0);
+        CommonOps_DDRM.insert(w, s, 0, x.numCols);
+        if(p!=null) {
+            CommonOps_DDRM.insert(p, s, 0, x.numCols + w.numCols);
+        }
+
+        return s;
+    }
+
+    /**
+     * D-orthonormalise the columns against the constant vector and each other.
+     * <p>
+     * This is Gram-Schmidt done twice per column, which is enough to keep
+     * the columns orthogonal in floating point; columns that are mostly
+     * in the span of the previous ones are dropped, except that the first
+     * columns, which are the current vectors, are replaced by random
+     * columns instead.
+     *
+     * @param s The columns.
+     * @param degrees The degrees, which weight the inner product.
+     * @param keep The number of leading columns that are never dropped.
+     * @param random Random values for collapsed leading columns.
+     */
+    static DMatrixRMaj orthonormalise(final DMatrixRMaj s, final double[] degrees, final int keep, final SplittableRandom random) {
+        final int n = s.numRows;
+        final int m = s.numCols;
+        double volume = 0;
+        for(int i=0; i<n; i++) {
+            volume += degrees[i];
+        }
+
+        final double[][] columns = new double[m][];
+        int kept = 0;
+        for(int j=0; j<m; j++) {
+            final double[] col = new double[n];
+            for(int i=0; i<n; i++) {
+                col[i] = s.data[i*m + j];
+            }
+
+            while(true) {
+                final double norm0 = Math.sqrt(dot(col, col, degrees));
+                for(int pass=0; pass<2; pass++) {
+                    double mean = 0;
+                    for(int i=0; i<n; i++) {
+                        mean += degrees[i] * col[i];
+                    }
+                    mean /= volume;
+                    for(int i=0; i<n; i++) {
+                        col[i] -= mean;
+                    }
+
+                    for(int c=0; c<kept; c++) {
+                        final double projection = dot(col, columns[c], degrees);
+                        final double[] other = columns[c];
+                        for(int i=0; i<n; i++) {
+                            col[i] -= projection * other[i];
+                        }
+                    }
+                }
+
+                final double norm = Math.sqrt(dot(col, col, degrees));
+                if(norm>1e-8*norm0 && norm>0) {
+                    for(int i=0; i<n; i++) {
+                        col[i] /= norm;
+                    }
+                    columns[kept++] = col;
+                    break;
+                }
+                if(j>=keep) {
+                    break;
+                }
+
+                for(int i=0; i<n; i++) {
+                    col[i] = random.nextDouble() - 0.5;
+                }
+            }
+        }
+
+        final DMatrixRMaj basis = new DMatrixRMaj(n, kept);
+        for(int j=0; j<kept; j++) {
+            final double[] col = columns[j];
+            for(int i=0; i<n; i++) {
+                basis.data[i*kept + j] = col[i];
+            }
+        }
+
+        return basis;
+    }
+
+    private static double dot(final double[] u, final double[] v, final double[] degrees) {
+        double sum = 0;
+        for(int i=0; i<u.length; i++) {
+            sum += degrees[i] * u[i] * v[i];
+        }
+
+        return sum;
+    }
+
+    /**
+     * The number of iterations of the last placement.
+     *
+     * @return The number of iterations.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Place the vertices in two or three dimensions.
+     *
+     * @param dimensions 2 or 3.
+     *
+     * @return The placement.
+     */
+    public SpectralPlacement setDimensions(final int dimensions) {
+        if(dimensions!=2 && dimensions!=3) {
+            throw new IllegalArgumentException("Dimensions must be 2 or 3: " + dimensions);
+        }
+
+        this.dimensions = dimensions;
+
+        return this;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * The mean link length of the placement; this should usually be the link distance.
+     *
+     * @param scale The mean link length.
+     *
+     * @return The placement.
+     */
+    public SpectralPlacement setScale(final double scale) {
+        this.scale = scale;
+
+        return this;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * The iterations stop when the residual of every eigenvector, relative to
+     * its eigenvalue, is below the tolerance.
+     * <p>
+     * A placement doesn't need the eigenvectors to be exact, because a
+     * simulation will move the vertices anyway.
+     *
+     * @param tolerance The tolerance.
+     *
+     * @return The placement.
+     */
+    public SpectralPlacement setTolerance(final double tolerance) {
+        this.tolerance = tolerance;
+
+        return this;
+    }
+
+    /**
+     * Did the last placement reach the tolerance?
+     * <p>
+     * If it didn't, the placement is still usable, but the eigenvectors
+     * weren't found to within the tolerance in the maximum number of
+     * iterations.
+     *
+     * @return True if the last placement converged.
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * The most iterations of a placement.
+     * <p>
+     * The number of iterations grows with the diameter of the graph; a
+     * 1000 by 1000 grid needs about 1400.
+     *
+     * @param maxIterations The maximum number of iterations; the default is 2000.
+     *
+     * @return The placement.
+     */
+    public SpectralPlacement setMaxIterations(final int maxIterations) {
+        this.maxIterations = maxIterations;
+
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * The seed of the Pivot MDS starting vectors.
+     *
+     * @param seed The seed.
+     *
+     * @return The placement.
+     */
+    public SpectralPlacement setSeed(final long seed) {
+        this.seed = seed;
+
+        return this;
+    }
+}
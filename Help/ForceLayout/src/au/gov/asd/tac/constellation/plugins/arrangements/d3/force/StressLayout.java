@@ -0,0 +1,355 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A stress layout by stochastic gradient descent, after Zheng, Pawar and
+ * Goodman's "Graph Drawing by Stochastic Gradient Descent".
+ * <p>
+ * Stress is the sum over pairs of vertices of w(d - |x<sub>i</sub> -
+ * x<sub>j</sub>|)<sup>2</sup>, where d is the graph distance and w =
+ * d<sup>-2</sup>. Instead of a force simulation, each term of the stress
+ * is relaxed in turn by moving its vertices towards their ideal distance,
+ * with a step size that is annealed from large to small. This converges in
+ * a few tens of iterations, and the distances keep long paths and meshes
+ * stretched out, where forces tend to fold them up.
+ * <p>
+ * The n*n distances are approximated using k pivots chosen by max-min
+ * breadth first search, so memory is O(n*k). Each vertex has an exact term
+ * for each of its links and a term for each pivot, and each vertex belongs
+ * to the region of its nearest pivot. A pivot's term stands in for the
+ * vertices of the pivot's region that are closer to the pivot than to the
+ * vertex, so it is weighted by the number of those vertices.
+ * <p>
+ * Each vertex's terms only move that vertex; a link's term is split between
+ * the terms of its two vertices. The vertices are updated in parallel, and
+ * each is relaxed against the positions the other vertices had at the start
+ * of the iteration, so the updates don't depend on each other and the same
+ * seed always gives the same layout.
+ * <p>
+ * If any vertex doesn't have a position, every vertex is first placed by
+ * PivotMDS; otherwise the layout starts from the current positions.
+ * Vertices that can't be reached from a pivot have no term for it, so
+ * the components of a disconnected graph are only held apart by their
+ * starting positions; use a ComponentLayout for graphs with many
+ * components.
+ *
+ * @author algol
+ */
+public final class StressLayout {
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private int pivots;
+    private int iterations;
+    private double epsilon;
+    private double distance;
+    private long seed;
+
+    public StressLayout(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        pivots = 50;
+        iterations = 30;
+        epsilon = 0.1;
+        distance = 30;
+        seed = 0;
+    }
+
+    /**
+     * Lay out the vertices.
+     * <p>
+     * The vertices keep their index in the list of vertices.
+     *
+     * @return The layout.
+     */
+    public StressLayout layout() {
+        final int n = vxs.size();
+        if(n==0) {
+            return this;
+        }
+
+        if(vxs.stream().anyMatch(vx -> Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()))) {
+            new PivotMDS(vxs, links).setScale(distance).setSeed(seed).place();
+        }
+
+        for(int i=0; i<n; i++) {
+            vxs.get(i).setIndex(i);
+        }
+
+        final Adjacency adjacency = Adjacency.build(n, links);
+        final SplittableRandom random = new SplittableRandom(seed);
+
+        // Max-min pivots: each pivot is the vertex furthest from the
+        // pivots before it. Unreachable vertices are furthest of all,
+        // so every component gets a pivot if there are enough of them.
+        //
+        final int k = Math.min(pivots, n);
+        final int[] pivotVxs = new int[k];
+        final int[][] distances = new int[k][];
+        final int[] nearest = new int[n];
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        pivotVxs[0] = random.nextInt(n);
+        for(int p=0; p<k; p++) {
+            distances[p] = adjacency.distances(pivotVxs[p]);
+            int furthest = 0;
+            for(int i=0; i<n; i++) {
+                final int d = distances[p][i]<0 ? Integer.MAX_VALUE : distances[p][i];
+                nearest[i] = Math.min(nearest[i], d);
+                if(nearest[i]>nearest[furthest]) {
+                    furthest = i;
+                }
+            }
+            if(p+1<k) {
+                pivotVxs[p+1] = furthest;
+            }
+        }
+
+        final double[][] weights = pivotWeights(distances, n);
+
+        // Positions are in units of links until the end.
+        //
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        for(int i=0; i<n; i++) {
+            xs[i] = vxs.get(i).getX() / distance;
+            ys[i] = vxs.get(i).getY() / distance;
+        }
+
+        // The step size is annealed from 1/wMin, which moves every term
+        // the whole way to its ideal distance, down to epsilon/wMax.
+        //
+        double wMin = adjacency.neighbours.length>0 ? 1 : Double.POSITIVE_INFINITY;
+        double wMax = adjacency.neighbours.length>0 ? 1 : 0;
+        for(int p=0; p<k; p++) {
+            for(int i=0; i<n; i++) {
+                if(distances[p][i]>0) {
+                    final double w = weights[p][distances[p][i]] / ((double)distances[p][i] * distances[p][i]);
+                    if(w>0) {
+                        wMin = Math.min(wMin, w);
+                        wMax = Math.max(wMax, w);
+                    }
+                }
+            }
+        }
+        if(wMax==0) {
+            return this;
+        }
+
+        final double etaMax = 1 / wMin;
+        final double etaMin = epsilon / wMax;
+        final double lambda = iterations>1 ? Math.log(etaMax/etaMin) / (iterations-1) : 0;
+
+        final double[] x0s = new double[n];
+        final double[] y0s = new double[n];
+        for(int t=0; t<iterations; t++) {
+            final double eta = etaMax * Math.exp(-lambda * t);
+            System.arraycopy(xs, 0, x0s, 0, n);
+            System.arraycopy(ys, 0, y0s, 0, n);
+
+            final int rotation = t;
+            Util.parallelFor(n, i -> {
+
+                // The pivot terms, starting at a different pivot each iteration.
+                //
+                for(int q=0; q<k; q++) {
+                    final int p = (q+rotation) % k;
+                    final int d = distances[p][i];
+                    if(d>0 && weights[p][d]>0) {
+                        final double w = weights[p][d] / ((double)d * d);
+                        relax(xs, ys, i, x0s[pivotVxs[p]], y0s[pivotVxs[p]], d, Math.min(eta * w, 1));
+                    }
+                }
+
+                // Half of each link term; the other vertex does the other half.
+                //
+                final double mu = Math.min(eta, 1) / 2;
+                for(int a=adjacency.offsets[i]; a<adjacency.offsets[i+1]; a++) {
+                    final int u = adjacency.neighbours[a];
+                    if(u!=i) {
+                        relax(xs, ys, i, x0s[u], y0s[u], 1, mu);
+                    }
+                }
+            });
+        }
+
+        for(int i=0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            vx.setX(xs[i] * distance);
+            vx.setY(ys[i] * distance);
+        }
+
+        return this;
+    }
+
+    /**
+     * Move vertex i towards or away from the position ⟨xj, yj⟩ by mu of its error.
+     */
+    private static void relax(final double[] xs, final double[] ys, final int i, final double xj, final double yj, final double d, final double mu) {
+        double dx = xs[i] - xj;
+        double dy = ys[i] - yj;
+        double l = Math.sqrt(dx*dx + dy*dy);
+        if(l==0) {
+            dx = Util.jiggle();
+            dy = Util.jiggle();
+            l = Math.sqrt(dx*dx + dy*dy);
+        }
+
+        final double r = mu * (l - d) / l;
+        xs[i] -= r * dx;
+        ys[i] -= r * dy;
+    }
+
+    /**
+     * The weight of each pivot's term by distance from the pivot.
+     * <p>
+     * The term between a vertex at distance d and a pivot stands for the
+     * vertices of the pivot's region within d/2 of the pivot; weights[p][d]
+     * is the number of them.
+     */
+    private static double[][] pivotWeights(final int[][] distances, final int n) {
+        final int k = distances.length;
+        final int[] region = new int[n];
+        final int[] maxDistance = new int[k];
+        for(int i=0; i<n; i++) {
+            int best = 0;
+            for(int p=0; p<k; p++) {
+                final int d = distances[p][i];
+                if(d>=0) {
+                    maxDistance[p] = Math.max(maxDistance[p], d);
+                    final int b = distances[best][i];
+                    if(b<0 || d<b) {
+                        best = p;
+                    }
+                }
+            }
+            region[i] = best;
+        }
+
+        final double[][] weights = new double[k][];
+        for(int p=0; p<k; p++) {
+            weights[p] = new double[maxDistance[p]+1];
+        }
+        for(int i=0; i<n; i++) {
+            final int p = region[i];
+            final int d = distances[p][i];
+            if(d>=0) {
+                weights[p][d]++;
+            }
+        }
+
+        // Turn the counts at each distance into counts within half of each distance.
+        //
+        for(int p=0; p<k; p++) {
+            final double[] counts = weights[p];
+            final double[] within = new double[counts.length];
+            double sum = 0;
+            int half = 0;
+            for(int d=0; d<counts.length; d++) {
+                while(half<=d/2) {
+                    sum += counts[half++];
+                }
+                within[d] = sum;
+            }
+            weights[p] = within;
+        }
+
+        return weights;
+    }
+
+    public int getPivots() {
+        return pivots;
+    }
+
+    /**
+     * The number of pivots that the distances are measured from.
+     * <p>
+     * The distances take O(n*k) memory.
+     *
+     * @param pivots The number of pivots.
+     *
+     * @return The layout.
+     */
+    public StressLayout setPivots(final int pivots) {
+        this.pivots = pivots;
+
+        return this;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * The number of iterations over all of the terms; the step size is annealed over these.
+     *
+     * @param iterations The number of iterations.
+     *
+     * @return The layout.
+     */
+    public StressLayout setIterations(final int iterations) {
+        this.iterations = iterations;
+
+        return this;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * The last iteration moves the term with the largest weight by this fraction of its error.
+     *
+     * @param epsilon The final step size relative to the largest weight.
+     *
+     * @return The layout.
+     */
+    public StressLayout setEpsilon(final double epsilon) {
+        this.epsilon = epsilon;
+
+        return this;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * The length of a link; the ideal distance between two vertices is this times their graph distance.
+     *
+     * @param distance The length of a link.
+     *
+     * @return The layout.
+     */
+    public StressLayout setDistance(final double distance) {
+        this.distance = distance;
+
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public StressLayout setSeed(final long seed) {
+        this.seed = seed;
+
+        return this;
+    }
+}
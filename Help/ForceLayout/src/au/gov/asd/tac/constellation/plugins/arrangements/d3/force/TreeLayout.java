@@ -0,0 +1,354 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A radial layout of a forest in linear time.
+ * <p>
+ * A tree doesn't need a simulation: each tree is rooted at its centre
+ * (the middle of a longest path, found by two breadth first searches) and
+ * each vertex is placed on a circle around the root, one circle per depth.
+ * Each vertex has a wedge of the circle shared among its children in
+ * proportion to the number of leaves below each child, so every subtree
+ * keeps to its own wedge. As in Eades' radial drawing, the children of a
+ * vertex are kept within the tangents to its circle at the vertex, so the
+ * links of a subtree never cut back across the circle of its parent, and
+ * no links cross.
+ * <p>
+ * The circles are the link distance apart, or up to twice as far apart
+ * where a depth has so many vertices that they would be closer than the
+ * link distance if they were evenly spaced around the circle; spreading
+ * the circles any further would only make the links long. The wedges of
+ * one depth are shared out in parallel.
+ * <p>
+ * The trees of a forest are packed together as circles by a ComponentPacker.
+ * The layout can be refined by a short simulation with
+ * Simulation.placeTree().
+ *
+ * @author algol
+ */
+public final class TreeLayout {
+    private final List<IVertex> vxs;
+    private final List<ILink> links;
+    private double distance;
+    private double padding;
+
+    private int trees;
+
+    public TreeLayout(final List<IVertex> vxs, final List<ILink> links) {
+        this.vxs = vxs;
+        this.links = links;
+        distance = 30;
+        padding = 10;
+        trees = 0;
+    }
+
+    /**
+     * Is a graph a forest?
+     * <p>
+     * A graph is a forest if none of its links close a cycle, which is the
+     * same as having as many links as vertices less components. Loops and
+     * repeated links are cycles. A union-find checks each link in turn.
+     * The vertices are indexed as a side effect.
+     *
+     * @param vxs The vertices.
+     * @param links The links.
+     *
+     * @return True if the graph is a forest.
+     */
+    public static boolean isForest(final List<IVertex> vxs, final List<ILink> links) {
+        final int n = vxs.size();
+        for(int i=0; i<n; i++) {
+            vxs.get(i).setIndex(i);
+        }
+        if(links.size()>=n) {
+            return links.isEmpty();
+        }
+
+        final int[] parent = new int[n];
+        for(int i=0; i<n; i++) {
+            parent[i] = i;
+        }
+        for(final ILink link : links) {
+            final int a = find(parent, link.getSource().getIndex());
+            final int b = find(parent, link.getTarget().getIndex());
+            if(a==b) {
+                return false;
+            }
+            parent[Math.max(a, b)] = Math.min(a, b);
+        }
+
+        return true;
+    }
+
+    /**
+     * Find the root of a vertex's tree, halving the path on the way.
+     */
+    private static int find(final int[] parent, final int vx) {
+        int i = vx;
+        while(parent[i]!=i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Lay out the forest.
+     * <p>
+     * Any existing positions of the vertices are ignored.
+     * The vertices keep their index in the list of vertices.
+     *
+     * @return The layout.
+     *
+     * @throws IllegalStateException if the graph isn't a forest.
+     */
+    public TreeLayout layout() {
+        if(!isForest(vxs, links)) {
+            throw new IllegalStateException("The graph is not a forest");
+        }
+
+        final int n = vxs.size();
+        final Adjacency adjacency = Adjacency.build(n, links);
+
+        // Search each tree from its centre. The order ends up holding each
+        // tree in turn, in layers of increasing depth.
+        //
+        final int[] depth = new int[n];
+        final int[] parent = new int[n];
+        final int[] order = new int[n];
+        Arrays.fill(depth, -1);
+        final int[] starts = new int[n+1];
+        trees = 0;
+        int end = 0;
+        for(int v=0; v<n; v++) {
+            if(depth[v]<0) {
+                final int start = end;
+                starts[trees++] = start;
+
+                // The furthest vertex from any vertex is one end of a longest
+                // path, and the furthest vertex from that is the other end.
+                //
+                end = search(adjacency, v, depth, parent, order, start);
+                final int a = order[end-1];
+                clear(depth, order, start, end);
+                search(adjacency, a, depth, parent, order, start);
+                int centre = order[end-1];
+                final int steps = depth[centre] / 2;
+                for(int k=0; k<steps; k++) {
+                    centre = parent[centre];
+                }
+                clear(depth, order, start, end);
+                search(adjacency, centre, depth, parent, order, start);
+            }
+        }
+        starts[trees] = n;
+
+        // The number of leaves below each vertex.
+        //
+        final int[] leaves = new int[n];
+        for(int i=n-1; i>=0; i--) {
+            final int v = order[i];
+            if(leaves[v]==0) {
+                leaves[v] = 1;
+            }
+            if(parent[v]>=0) {
+                leaves[parent[v]] += leaves[v];
+            }
+        }
+
+        // The radius of each vertex's circle, and the radius that encloses each tree.
+        //
+        final double[] radii = new double[n];
+        final double[] treeRadii = new double[trees];
+        for(int t=0; t<trees; t++) {
+            double radius = 0;
+            int i = starts[t] + 1;
+            while(i<starts[t+1]) {
+                int j = i + 1;
+                while(j<starts[t+1] && depth[order[j]]==depth[order[i]]) {
+                    j++;
+                }
+                radius = Math.max(radius + distance, Math.min(radius + 2*distance, (j-i) * distance / (2*Math.PI)));
+                for(int k=i; k<j; k++) {
+                    radii[order[k]] = radius;
+                }
+                i = j;
+            }
+
+            double enclosing = 0;
+            for(int k=starts[t]; k<starts[t+1]; k++) {
+                enclosing = Math.max(enclosing, radius + vxs.get(order[k]).getRadius());
+            }
+            treeRadii[t] = enclosing;
+        }
+
+        // Share out the wedges one layer at a time; each vertex places its
+        // own children, so the vertices of a layer are independent.
+        //
+        final double[] angles = new double[n];
+        final double[] wedges = new double[n];
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        for(int t=0; t<trees; t++) {
+            wedges[order[starts[t]]] = 2*Math.PI;
+            int i = starts[t];
+            while(i<starts[t+1]) {
+                int j = i + 1;
+                while(j<starts[t+1] && depth[order[j]]==depth[order[i]]) {
+                    j++;
+                }
+                final int layer = i;
+                Util.parallelFor(j-i, p -> {
+                    final int v = order[layer+p];
+                    if(adjacency.degree(v)>(parent[v]<0 ? 0 : 1)) {
+                        placeChildren(adjacency, v, parent, leaves, radii, angles, wedges, xs, ys);
+                    }
+                });
+                i = j;
+            }
+        }
+
+        // Pack the trees around the origin.
+        //
+        final double[] cxs = new double[trees];
+        final double[] cys = new double[trees];
+        if(trees>1) {
+            new ComponentPacker().setPadding(padding).packCircles(treeRadii, cxs, cys);
+        }
+
+        final int nTrees = trees;
+        Util.parallelFor(nTrees, t -> {
+            for(int k=starts[t]; k<starts[t+1]; k++) {
+                final int v = order[k];
+                final IVertex vx = vxs.get(v);
+                vx.setX(xs[v] + cxs[t]);
+                vx.setY(ys[v] + cys[t]);
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Share a vertex's wedge among its children in proportion to their leaves.
+     * <p>
+     * Below the root, the children are kept within the tangents to the
+     * vertex's circle at the vertex, which is an angle of
+     * acos(r / r') either side of the vertex, where r' is the radius of
+     * the children's circle.
+     */
+    private static void placeChildren(final Adjacency adjacency, final int v, final int[] parent, final int[] leaves, final double[] radii, final double[] angles, final double[] wedges, final double[] xs, final double[] ys) {
+        double wedge = wedges[v];
+        if(parent[v]>=0) {
+            final int child = adjacency.neighbours[adjacency.offsets[v]]==parent[v] ? adjacency.neighbours[adjacency.offsets[v]+1] : adjacency.neighbours[adjacency.offsets[v]];
+            wedge = Math.min(wedge, 2*Math.acos(radii[v] / radii[child]));
+        }
+
+        double angle = angles[v] - wedge/2;
+        for(int a=adjacency.offsets[v]; a<adjacency.offsets[v+1]; a++) {
+            final int u = adjacency.neighbours[a];
+            if(u!=parent[v]) {
+                final double w = wedge * leaves[u] / leaves[v];
+                angles[u] = angle + w/2;
+                wedges[u] = w;
+                xs[u] = radii[u] * Math.cos(angles[u]);
+                ys[u] = radii[u] * Math.sin(angles[u]);
+                angle += w;
+            }
+        }
+    }
+
+    /**
+     * Search a tree breadth first, recording the depth and parent of each vertex.
+     *
+     * @return The end of the tree in the order.
+     */
+    private static int search(final Adjacency adjacency, final int source, final int[] depth, final int[] parent, final int[] order, final int start) {
+        depth[source] = 0;
+        parent[source] = -1;
+        order[start] = source;
+        int head = start;
+        int tail = start + 1;
+        while(head<tail) {
+            final int v = order[head++];
+            for(int a=adjacency.offsets[v]; a<adjacency.offsets[v+1]; a++) {
+                final int u = adjacency.neighbours[a];
+                if(depth[u]<0) {
+                    depth[u] = depth[v] + 1;
+                    parent[u] = v;
+                    order[tail++] = u;
+                }
+            }
+        }
+
+        return tail;
+    }
+
+    private static void clear(final int[] depth, final int[] order, final int start, final int end) {
+        for(int k=start; k<end; k++) {
+            depth[order[k]] = -1;
+        }
+    }
+
+    /**
+     * The number of trees in the last layout.
+     *
+     * @return The number of trees.
+     */
+    public int getTrees() {
+        return trees;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * The distance between the circles of successive depths, and the
+     * least spacing of the vertices around a circle if they were evenly spaced.
+     *
+     * @param distance The link distance.
+     *
+     * @return The layout.
+     */
+    public TreeLayout setDistance(final double distance) {
+        this.distance = distance;
+
+        return this;
+    }
+
+    public double getPadding() {
+        return padding;
+    }
+
+    /**
+     * The padding between the trees of a forest.
+     *
+     * @param padding The padding.
+     *
+     * @return The layout.
+     */
+    public TreeLayout setPadding(final double padding) {
+        this.padding = padding;
+
+        return this;
+    }
+}
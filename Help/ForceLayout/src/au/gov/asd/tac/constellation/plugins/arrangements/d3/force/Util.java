@@ -15,13 +15,39 @@
  */
 package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
 
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
 /**
  *
  * @author algol
  */
 public class Util {
+    /**
+     * Loops with fewer iterations than this aren't worth running in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 4096;
 
     public static double jiggle() {
         return (Math.random() - 0.5) * 1e-6;
     }
+
+    /**
+     * Call the body for each value from 0 to n-1.
+     * <p>
+     * The calls are made in parallel if there are enough of them,
+     * so they must be independent of each other.
+     *
+     * @param n The number of iterations.
+     * @param body The body of the loop.
+     */
+    public static void parallelFor(final int n, final IntConsumer body) {
+        if(n<PARALLEL_THRESHOLD) {
+            for(int i=0; i<n; i++) {
+                body.accept(i);
+            }
+        } else {
+            IntStream.range(0, n).parallel().forEach(body);
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.octree;
+
+/**
+ *
+ * @author algol
+ */
+public class D3Oct {
+    public final D3OctNode node;
+    public final double x0;
+    public final double y0;
+    public final double z0;
+    public final double x1;
+    public final double y1;
+    public final double z1;
+
+    public D3Oct(final D3OctNode node, final double x0, final double y0, final double z0, final double x1, final double y1, final double z1) {
+        this.node = node;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.z0 = z0;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.z1 = z1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s,%s,%s,%s,%s,%s,%s]", node, x0, y0, z0, x1, y1, z1);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.octree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A node of a D3Octree.
+ * <p>
+ * Internal nodes of the octree are represented as eight-element arrays.
+ * The index of a child octant has the x half in bit 0, the y half in bit 1,
+ * and the z half in bit 2, where a set bit is the upper half; for example,
+ * 0 is the octant nearest the origin and 7 is the octant furthest from it.
+ * A child octant may be undefined if it is null.
+ * <p>
+ * Leaf nodes have a list of one or more points, as passed to D3Octree.add().
+ * There is more than one point if the x,y,z coordinates are the same.
+ *
+ * @author algol
+ */
+public class D3OctNode {
+    public static final int NOCTS = 8;
+
+    private static int idCounter = 0;
+
+    /**
+     * Use this as a key for related data.
+     */
+    public final int id;
+
+    private final D3OctNode[] nodes;
+    private final List<IPoint3> data;
+
+    /**
+     * An arbitrary value to be used by anything.
+     */
+    private Object value;
+
+    public D3OctNode() {
+        this.id = nextId();
+        this.nodes = new D3OctNode[NOCTS];
+        this.data = null;
+        value = null;
+    }
+
+    public D3OctNode(final IPoint3 point) {
+        this.id = nextId();
+        nodes = null;
+        data = new ArrayList<>();
+        data.add(point);
+        value = null;
+    }
+
+    private static synchronized int nextId() {
+        return idCounter++;
+    }
+
+    public D3OctNode[] getNodes() {
+        if(isLeaf()) {
+            throw new IllegalStateException("Is a leaf");
+        }
+
+        return nodes;
+    }
+
+    public D3OctNode getNode(final int ix) {
+        if(isLeaf()) {
+            throw new IllegalStateException("Is a leaf");
+        }
+
+        return nodes[ix];
+    }
+
+    /**
+     * Return the list of IPoint3s in this leaf node.
+     * <p>
+     * There is always at least one element in the list if this is a leaf
+     * node. If there is more than one element, they all have same x,y,z position.
+     *
+     * @return A list of one or more coincident IPoint3s.
+     */
+    public List<IPoint3> getData() {
+        if(!isLeaf()) {
+            throw new IllegalStateException("Not a leaf");
+        }
+
+        return data;
+    }
+
+    public boolean isLeaf() {
+        return data!=null;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(final Object value) {
+        this.value = value;
+    }
+
+    /**
+     * Do not change the String output - it is used for testing.
+     *
+     * @return A string representation of the node and its children.
+     */
+    @Override
+    public String toString() {
+        if(isLeaf()) {
+            return "{" + data.stream().map(IPoint3::toString).collect(Collectors.joining(",")) + "}";
+        } else {
+            return "[" + Arrays.stream(nodes).map(node -> node!=null?node.toString():"").collect(Collectors.joining(",")) + "]";
+        }
+    }
+}
@@ -0,0 +1,614 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.octree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The three-dimensional equivalent of D3QuadTree, as in
+ * https://github.com/vasturiano/d3-octree/.
+ * <p>
+ * An octree recursively partitions three-dimensional space into cubes,
+ * dividing each cube into eight equally-sized cubes. Each distinct point
+ * exists in a unique leaf node; coincident points are represented by a list.
+ * The methods have the same contract as their D3QuadTree counterparts.
+ * <p>
+ * The traversals keep the octants still to be visited in a pair of arrays
+ * (the nodes and their bounds) rather than a list of objects, so a visit
+ * only allocates the D3Oct that is passed to the visitor. A traversal
+ * doesn't change the tree, so different threads can visit the same tree
+ * at the same time.
+ *
+ * @author algol
+ */
+public class D3Octree {
+    private D3OctNode root;
+
+    private double extent_x0;
+    private double extent_y0;
+    private double extent_z0;
+    private double extent_x1;
+    private double extent_y1;
+    private double extent_z1;
+
+    public D3Octree() {
+        root = null;
+
+        // Initialise to an invalid extent.
+        //
+        extent_x0 = extent_y0 = extent_z0 = 1;
+        extent_x1 = extent_y1 = extent_z1 = -1;
+    }
+
+    public double[] getExtent(){
+        return extent_x1<extent_x0 ? null : new double[]{extent_x0, extent_y0, extent_z0, extent_x1, extent_y1, extent_z1};
+    }
+
+    public D3Octree setExtent(final double x0, final double y0, final double z0, final double x1, final double y1, final double z1) {
+        return cover(x0, y0, z0).cover(x1, y1, z1);
+    }
+
+    /**
+     * Expands the octree to cover the specified point ⟨x,y,z⟩, and returns the octree.
+     * <p>
+     * If the octree’s extent already covers the specified point,
+     * this method does nothing. If the octree has an extent,
+     * the extent is repeatedly doubled to cover the specified point,
+     * wrapping the root node as necessary; if the octree is empty,
+     * the extent is initialized to the extent [[⌊x⌋, ⌊y⌋, ⌊z⌋], [⌈x⌉, ⌈y⌉, ⌈z⌉]].
+     *
+     * @param x X.
+     * @param y Y.
+     * @param z Z.
+     *
+     * @return The octree.
+     */
+    public D3Octree cover(final double x, final double y, final double z) {
+        if(Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(z)) {
+            // Ignore invalid points.
+            //
+            return this;
+        }
+
+        double x0 = extent_x0;
+        double y0 = extent_y0;
+        double z0 = extent_z0;
+        double x1 = extent_x1;
+        double y1 = extent_y1;
+        double z1 = extent_z1;
+
+        if(x1<x0) {
+            // The octree has no extents, so initialize them.
+            // Integer extents are necessary so that if we later double the extent,
+            // the existing octant boundaries don’t change due to floating point error!
+            //
+            x0 = Math.floor(x);
+            y0 = Math.floor(y);
+            z0 = Math.floor(z);
+            x1 = x0 + 1;
+            y1 = y0 + 1;
+            z1 = z0 + 1;
+        } else {
+            double w = x1 - x0;
+
+            while(x0>x || x>=x1 || y0>y || y>=y1 || z0>z || z>=z1) {
+                final int i = (z<z0?1:0) << 2 | (y<y0?1:0) << 1 | (x<x0?1:0);
+                w *= 2;
+                if((i & 1)!=0) {
+                    x0 = x1 - w;
+                } else {
+                    x1 = x0 + w;
+                }
+                if((i & 2)!=0) {
+                    y0 = y1 - w;
+                } else {
+                    y1 = y0 + w;
+                }
+                if((i & 4)!=0) {
+                    z0 = z1 - w;
+                } else {
+                    z1 = z0 + w;
+                }
+
+                // The old root is the octant of the new root on the far side from the point.
+                //
+                if(root!=null && !root.isLeaf()) {
+                    final D3OctNode parent = new D3OctNode();
+                    parent.getNodes()[i] = root;
+                    root = parent;
+                }
+            }
+        }
+
+        extent_x0 = x0;
+        extent_y0 = y0;
+        extent_z0 = z0;
+        extent_x1 = x1;
+        extent_y1 = y1;
+        extent_z1 = z1;
+
+        return this;
+    }
+
+    /**
+     * Add a point to the octree.
+     * <p>
+     * If the new point is outside the current extent of the octree,
+     * the octree is automatically expanded to cover the new point.
+     * <p>
+     * If possible, use the add(List) method instead.
+     *
+     * @param point The point to be added.
+     *
+     * @return The octree.
+     */
+    public D3Octree add(final IPoint3 point) {
+        return cover(point.getX(), point.getY(), point.getZ()).addPoint(point);
+    }
+
+    private static int octant(final double x, final double y, final double z, final double xm, final double ym, final double zm) {
+        return (z>=zm?1:0) << 2 | (y>=ym?1:0) << 1 | (x>=xm?1:0);
+    }
+
+    private D3Octree addPoint(final IPoint3 point) {
+        D3OctNode node = root;
+        final D3OctNode leaf = new D3OctNode(point);
+
+        // If the tree is empty, initialize the root as a leaf.
+        //
+        if(node==null) {
+            root = leaf;
+            return this;
+        }
+
+        final double x = point.getX();
+        final double y = point.getY();
+        final double z = point.getZ();
+
+        double x0 = extent_x0;
+        double y0 = extent_y0;
+        double z0 = extent_z0;
+        double x1 = extent_x1;
+        double y1 = extent_y1;
+        double z1 = extent_z1;
+
+        // Find the existing leaf for the new point, or add it.
+        //
+        D3OctNode parent = null;
+        int i = -1;
+        while(!node.isLeaf()) {
+            final double xm = (x0+x1)/2.0;
+            final double ym = (y0+y1)/2.0;
+            final double zm = (z0+z1)/2.0;
+            if(x>=xm) x0 = xm; else x1 = xm;
+            if(y>=ym) y0 = ym; else y1 = ym;
+            if(z>=zm) z0 = zm; else z1 = zm;
+
+            parent = node;
+            i = octant(x, y, z, xm, ym, zm);
+            node = node.getNode(i);
+            if(node==null) {
+                parent.getNodes()[i] = leaf;
+
+                return this;
+            }
+        }
+
+        // Is the new point exactly coincident with the existing point?
+        //
+        final IPoint3 existing = node.getData().get(0);
+        final double xp = existing.getX();
+        final double yp = existing.getY();
+        final double zp = existing.getZ();
+        if(x==xp && y==yp && z==zp) {
+            node.getData().add(point);
+
+            return this;
+        }
+
+        // Otherwise, split the leaf node until the old and new point are separated.
+        //
+        int j;
+        do {
+            if(parent!=null) {
+                parent = parent.getNodes()[i] = new D3OctNode();
+            } else {
+                parent = root = new D3OctNode();
+            }
+
+            final double xm = (x0+x1)/2.0;
+            final double ym = (y0+y1)/2.0;
+            final double zm = (z0+z1)/2.0;
+            if(x>=xm) x0 = xm; else x1 = xm;
+            if(y>=ym) y0 = ym; else y1 = ym;
+            if(z>=zm) z0 = zm; else z1 = zm;
+
+            i = octant(x, y, z, xm, ym, zm);
+            j = octant(xp, yp, zp, xm, ym, zm);
+        } while(i==j);
+
+        parent.getNodes()[j] = node;
+        parent.getNodes()[i] = leaf;
+
+        return this;
+    }
+
+    /**
+     * Adds the specified list of points to the octree.
+     * <p>
+     * This is approximately equivalent to calling add(IPoint3) repeatedly,
+     * but, this method results in a more compact octree because
+     * the extent of the data is computed first before adding the data.
+     *
+     * @param points The list of points to be added.
+     *
+     * @return The octree.
+     */
+    public D3Octree add(final List<? extends IPoint3> points) {
+        double x0 = Double.POSITIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY;
+        double z0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY;
+        double y1 = Double.NEGATIVE_INFINITY;
+        double z1 = Double.NEGATIVE_INFINITY;
+
+        // Compute the points and their extent.
+        //
+        for(final IPoint3 p : points) {
+            final double x = p.getX();
+            final double y = p.getY();
+            final double z = p.getZ();
+            if(Double.isFinite(x) && Double.isFinite(y) && Double.isFinite(z)) {
+                if(x<x0) x0 = x;
+                if(x>x1) x1 = x;
+                if(y<y0) y0 = y;
+                if(y>y1) y1 = y;
+                if(z<z0) z0 = z;
+                if(z>z1) z1 = z;
+            }
+        }
+
+        // If there were no (valid) points, stop.
+        //
+        if(x0>x1 || y0>y1 || z0>z1) {
+            return this;
+        }
+
+        // Expand the tree to cover the new points.
+        //
+        cover(x0, y0, z0).cover(x1, y1, z1);
+
+        // Add the new points.
+        //
+        for(final IPoint3 p : points) {
+            if(Double.isFinite(p.getX()) && Double.isFinite(p.getY()) && Double.isFinite(p.getZ())) {
+                addPoint(p);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * The octants still to be visited by a traversal.
+     * <p>
+     * Each entry is a node and its bounds, kept in parallel arrays.
+     */
+    private static final class Stack {
+        private D3OctNode[] nodes;
+        private double[] bounds;
+        private int size;
+
+        Stack() {
+            nodes = new D3OctNode[64];
+            bounds = new double[64*6];
+            size = 0;
+        }
+
+        void push(final D3OctNode node, final double x0, final double y0, final double z0, final double x1, final double y1, final double z1) {
+            if(size==nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2*size);
+                bounds = Arrays.copyOf(bounds, 2*size*6);
+            }
+
+            nodes[size] = node;
+            final int b = 6 * size;
+            bounds[b] = x0;
+            bounds[b+1] = y0;
+            bounds[b+2] = z0;
+            bounds[b+3] = x1;
+            bounds[b+4] = y1;
+            bounds[b+5] = z1;
+            size++;
+        }
+
+        /**
+         * Push the non-null children of a node.
+         *
+         * @param node An internal node.
+         * @param b The bounds of the node.
+         * @param reverse If true, push the octants from 7 to 0 so octant 0 is popped first.
+         */
+        void pushChildren(final D3OctNode node, final double[] b, final boolean reverse) {
+            final double x0 = b[0];
+            final double y0 = b[1];
+            final double z0 = b[2];
+            final double x1 = b[3];
+            final double y1 = b[4];
+            final double z1 = b[5];
+            final double xm = (x0+x1)/2.0;
+            final double ym = (y0+y1)/2.0;
+            final double zm = (z0+z1)/2.0;
+            for(int k=0; k<D3OctNode.NOCTS; k++) {
+                final int i = reverse ? D3OctNode.NOCTS-1-k : k;
+                final D3OctNode child = node.getNode(i);
+                if(child!=null) {
+                    final boolean right = (i & 1)!=0;
+                    final boolean bottom = (i & 2)!=0;
+                    final boolean back = (i & 4)!=0;
+                    push(child, right?xm:x0, bottom?ym:y0, back?zm:z0, right?x1:xm, bottom?y1:ym, back?z1:zm);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return size==0;
+        }
+
+        /**
+         * Pop the top entry.
+         *
+         * @param b Receives the bounds of the node.
+         *
+         * @return The node.
+         */
+        D3OctNode pop(final double[] b) {
+            size--;
+            System.arraycopy(bounds, 6*size, b, 0, 6);
+            final D3OctNode node = nodes[size];
+            nodes[size] = null;
+
+            return node;
+        }
+    }
+
+    /**
+     * Returns the IPoint3 closest to the position ⟨x,y,z⟩.
+     *
+     * @param x X.
+     * @param y Y.
+     * @param z Z.
+     *
+     * @return An IPoint3, or null if there are no points in the octree.
+     */
+    public IPoint3 find(final double x, final double y, final double z) {
+        return find(x, y, z, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the IPoint3 closest to the position ⟨x,y,z⟩ with the given search radius.
+     *
+     * @param x X.
+     * @param y Y.
+     * @param z Z.
+     * @param radius Radius.
+     *
+     * @return An IPoint3, or null if there is no point within the radius.
+     */
+    public IPoint3 find(final double x, final double y, final double z, final double radius) {
+        final Stack stack = new Stack();
+        if(root!=null) {
+            stack.push(root, extent_x0, extent_y0, extent_z0, extent_x1, extent_y1, extent_z1);
+        }
+
+        double r = Double.isInfinite(radius) ? Double.POSITIVE_INFINITY : radius*radius;
+        double d = radius;
+        IPoint3 data = null;
+        final double[] b = new double[6];
+
+        while(!stack.isEmpty()) {
+            final D3OctNode node = stack.pop(b);
+
+            // Stop searching if this octant can’t contain a closer node.
+            //
+            if(b[0]>x+d || b[1]>y+d || b[2]>z+d || b[3]<x-d || b[4]<y-d || b[5]<z-d) {
+                continue;
+            }
+
+            if(!node.isLeaf()) {
+                // Visit the closest octant first by pushing it last.
+                //
+                final int top = stack.size;
+                stack.pushChildren(node, b, true);
+                final int closest = octant(x, y, z, (b[0]+b[3])/2.0, (b[1]+b[4])/2.0, (b[2]+b[5])/2.0);
+                for(int k=top; k<stack.size-1; k++) {
+                    if(stack.nodes[k]==node.getNode(closest)) {
+                        swap(stack, k, stack.size-1);
+                        break;
+                    }
+                }
+            } else {
+                // Visit this point. (Visiting coincident points isn’t necessary!)
+                //
+                final IPoint3 p = node.getData().get(0);
+                final double dx = x - p.getX();
+                final double dy = y - p.getY();
+                final double dz = z - p.getZ();
+                final double d2 = dx*dx + dy*dy + dz*dz;
+                if(d2<r) {
+                    r = d2;
+                    d = Math.sqrt(r);
+                    data = p;
+                }
+            }
+        }
+
+        return data;
+    }
+
+    private static void swap(final Stack stack, final int a, final int b) {
+        final D3OctNode node = stack.nodes[a];
+        stack.nodes[a] = stack.nodes[b];
+        stack.nodes[b] = node;
+        for(int k=0; k<6; k++) {
+            final double t = stack.bounds[6*a+k];
+            stack.bounds[6*a+k] = stack.bounds[6*b+k];
+            stack.bounds[6*b+k] = t;
+        }
+    }
+
+    /**
+     * Returns every IPoint3 within the given radius of the position ⟨x,y,z⟩.
+     * <p>
+     * Coincident points are all included.
+     *
+     * @param x X.
+     * @param y Y.
+     * @param z Z.
+     * @param radius Radius.
+     *
+     * @return A list of IPoint3s, which is empty if there is no point within the radius.
+     */
+    public List<IPoint3> findAll(final double x, final double y, final double z, final double radius) {
+        final List<IPoint3> found = new ArrayList<>();
+        final Stack stack = new Stack();
+        if(root!=null) {
+            stack.push(root, extent_x0, extent_y0, extent_z0, extent_x1, extent_y1, extent_z1);
+        }
+
+        final double r = radius * radius;
+        final double[] b = new double[6];
+        while(!stack.isEmpty()) {
+            final D3OctNode node = stack.pop(b);
+
+            // Skip octants that don't overlap the search area.
+            //
+            if(b[0]>x+radius || b[1]>y+radius || b[2]>z+radius || b[3]<x-radius || b[4]<y-radius || b[5]<z-radius) {
+                continue;
+            }
+
+            if(!node.isLeaf()) {
+                stack.pushChildren(node, b, true);
+            } else {
+                final IPoint3 p = node.getData().get(0);
+                final double dx = x - p.getX();
+                final double dy = y - p.getY();
+                final double dz = z - p.getZ();
+                if(dx*dx + dy*dy + dz*dz<=r) {
+                    found.addAll(node.getData());
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Visits each node in the octree in pre-order traversal,
+     * calling the specified visitor for each node.
+     * <p>
+     * The visitor is called with a D3Oct, containing the node being visited,
+     * ⟨x0, y0, z0⟩ the lower bounds of the node, and ⟨x1, y1, z1⟩ the upper bounds.
+     * If the callback returns true for a given node, then the children of
+     * that node are not visited; otherwise, all child nodes are visited,
+     * in octant order.
+     *
+     * @param visitor A callback instance.
+     *
+     * @return The octree.
+     */
+    public D3Octree visit(final D3OctVisitor visitor) {
+        final Stack stack = new Stack();
+        if(root!=null) {
+            stack.push(root, extent_x0, extent_y0, extent_z0, extent_x1, extent_y1, extent_z1);
+        }
+
+        final double[] b = new double[6];
+        while(!stack.isEmpty()) {
+            final D3OctNode node = stack.pop(b);
+            if(!visitor.callback(new D3Oct(node, b[0], b[1], b[2], b[3], b[4], b[5])) && !node.isLeaf()) {
+                stack.pushChildren(node, b, true);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Visit each node in the octree in post-order traversal,
+     * calling the specified visitor for each node.
+     *
+     * @param visitor A callback instance.
+     *
+     * @return The octree.
+     */
+    public D3Octree visitAfter(final D3OctAfterVisitor visitor) {
+        final Stack stack = new Stack();
+        final List<D3Oct> next = new ArrayList<>();
+        if(root!=null) {
+            stack.push(root, extent_x0, extent_y0, extent_z0, extent_x1, extent_y1, extent_z1);
+        }
+
+        final double[] b = new double[6];
+        while(!stack.isEmpty()) {
+            final D3OctNode node = stack.pop(b);
+            if(!node.isLeaf()) {
+                stack.pushChildren(node, b, false);
+            }
+
+            next.add(new D3Oct(node, b[0], b[1], b[2], b[3], b[4], b[5]));
+        }
+
+        for(int k=next.size()-1; k>=0; k--) {
+            visitor.callback(next.get(k));
+        }
+
+        return this;
+    }
+
+    public List<IPoint3> getData() {
+        final List<IPoint3> data = new ArrayList<>();
+        visit(oct -> {
+            if(oct.node.isLeaf()) {
+                data.addAll(oct.node.getData());
+            }
+
+            return false;
+        });
+
+        return Collections.unmodifiableList(data);
+    }
+
+    public int size() {
+        final int[] count = new int[1];
+        visit(oct -> {
+            if(oct.node.isLeaf()) {
+                count[0] += oct.node.getData().size();
+            }
+
+            return false;
+        });
+
+        return count[0];
+    }
+
+    public D3OctNode getRoot() {
+        return root;
+    }
+}
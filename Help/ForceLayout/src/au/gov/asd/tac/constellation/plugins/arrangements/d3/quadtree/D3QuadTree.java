@@ -125,6 +125,14 @@ public class D3QuadTree {
                         y0 = y1 - z;
                         break;
                 }
+
+                // The old root is the quadrant of the new root on the far side from the point.
+                //
+                if(root!=null && !root.isLeaf()) {
+                    final D3QuadNode parent = new D3QuadNode();
+                    parent.getNodes()[i] = root;
+                    root = parent;
+                }
             }
         }
 
@@ -412,6 +420,61 @@ public class D3QuadTree {
         return data;
     }
 
+    /**
+     * Returns every IPoint within the given radius of the position ⟨x,y⟩.
+     * <p>
+     * This is a find() that keeps a fixed search area instead of shrinking
+     * it to the closest point so far. Coincident points are all included.
+     *
+     * @param x X.
+     * @param y Y.
+     * @param radius Radius.
+     *
+     * @return A list of IPoints, which is empty if there is no point within the radius.
+     */
+    public List<IPoint> findAll(final double x, final double y, final double radius) {
+        final List<IPoint> found = new ArrayList<>();
+        final List<D3Quad> quads = new ArrayList<>();
+        if(root!=null) {
+            quads.add((new D3Quad(root, extent_x0, extent_y0, extent_x1, extent_y1)));
+        }
+
+        final double x0 = x - radius;
+        final double y0 = y - radius;
+        final double x3 = x + radius;
+        final double y3 = y + radius;
+        final double r = radius * radius;
+
+        while(!quads.isEmpty()) {
+            final D3Quad q = quads.remove(quads.size()-1);
+
+            // Skip quadrants that don't overlap the search area.
+            //
+            final D3QuadNode node = q.node;
+            if(node==null || q.x0>x3 || q.y0>y3 || q.x1<x0 || q.y1<y0) {
+                continue;
+            }
+
+            if(!node.isLeaf()) {
+                final double xm = (q.x0 + q.x1)/2.0;
+                final double ym = (q.y0 + q.y1)/2.0;
+                quads.add(new D3Quad(node.getNode(3), xm, ym, q.x1, q.y1));
+                quads.add(new D3Quad(node.getNode(2), q.x0, ym, xm, q.y1));
+                quads.add(new D3Quad(node.getNode(1), xm, q.y0, q.x1, ym));
+                quads.add(new D3Quad(node.getNode(0), q.x0, q.y0, xm, ym));
+            } else {
+                final IPoint vx = node.getData().get(0);
+                final double dx = x - vx.getX();
+                final double dy = y - vx.getY();
+                if(dx*dx + dy*dy<=r) {
+                    found.addAll(node.getData());
+                }
+            }
+        }
+
+        return found;
+    }
+
     /**
      * Visits each node in the quadtree in pre-order traversal,
      * calling the specified visitor for each node.
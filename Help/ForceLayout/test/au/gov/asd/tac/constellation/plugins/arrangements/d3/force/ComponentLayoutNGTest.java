@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ComponentLayoutNGTest {
+    /**
+     * A graph of random trees of up to the given size, in a random order.
+     */
+    private static void forest(final List<IVertex> vxs, final List<ILink> links, final int nTrees, final int maxSize, final long seed) {
+        final Random random = new Random(seed);
+        for(int t=0; t<nTrees; t++) {
+            final List<IVertex> tree = new ArrayList<>();
+            final int size = 1 + random.nextInt(maxSize);
+            for(int i=0; i<size; i++) {
+                final V vx = v(Double.NaN, Double.NaN);
+                vx.setLabel(String.format("t%d-%d", t, i));
+                if(i>0) {
+                    links.add(l(tree.get(random.nextInt(i)), vx));
+                }
+                tree.add(vx);
+            }
+            vxs.addAll(tree);
+        }
+
+        Collections.shuffle(vxs, random);
+    }
+
+    /**
+     * The bounding box of each component.
+     */
+    private static double[][] boxes(final List<IVertex> vxs, final int[] components, final int nComponents) {
+        final double[][] boxes = new double[nComponents][];
+        for(int i=0; i<vxs.size(); i++) {
+            final IVertex vx = vxs.get(i);
+            final int c = components[i];
+            if(boxes[c]==null) {
+                boxes[c] = new double[]{vx.getX(), vx.getY(), vx.getX(), vx.getY()};
+            } else {
+                boxes[c][0] = Math.min(boxes[c][0], vx.getX());
+                boxes[c][1] = Math.min(boxes[c][1], vx.getY());
+                boxes[c][2] = Math.max(boxes[c][2], vx.getX());
+                boxes[c][3] = Math.max(boxes[c][3], vx.getY());
+            }
+        }
+
+        return boxes;
+    }
+
+    private static void assertNoOverlap(final double[][] boxes) {
+        for(int a=0; a<boxes.length; a++) {
+            for(int b=a+1; b<boxes.length; b++) {
+                final boolean apart = boxes[a][2]<boxes[b][0] || boxes[b][2]<boxes[a][0] || boxes[a][3]<boxes[b][1] || boxes[b][3]<boxes[a][1];
+                assertTrue(apart, String.format("components %d and %d overlap", a, b));
+            }
+        }
+    }
+
+    @Test(description="components are found from the links")
+    public void components() {
+        final List<IVertex> vxs = new ArrayList<>();
+        for(int i=0; i<7; i++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+        }
+        final List<ILink> links = List.of(l(vxs.get(0), vxs.get(3)), l(vxs.get(3), vxs.get(5)), l(vxs.get(6), vxs.get(1)), l(vxs.get(5), vxs.get(0)));
+
+        final ComponentLayout layout = new ComponentLayout(vxs, links).layout();
+
+        assertEquals(layout.getComponentCount(), 4);
+        final int[] components = layout.getComponents();
+        final int[] expected = {0, 1, 2, 0, 3, 0, 1};
+        for(int i=0; i<vxs.size(); i++) {
+            assertEquals(components[i], expected[i]);
+            assertEquals(vxs.get(i).getIndex(), i);
+            assertFalse(Double.isNaN(vxs.get(i).getX()) || Double.isNaN(vxs.get(i).getY()));
+        }
+    }
+
+    @Test(description="many small components are laid out in batches and packed without overlapping")
+    public void pack() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        forest(vxs, links, 300, 12, 1);
+
+        final ComponentLayout layout = new ComponentLayout(vxs, links).setBatchSize(64);
+        layout.layout();
+
+        assertEquals(layout.getComponentCount(), 300);
+        assertNoOverlap(boxes(vxs, layout.getComponents(), layout.getComponentCount()));
+    }
+
+    @Test(description="linked vertices stay together when their component is moved")
+    public void together() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        forest(vxs, links, 20, 30, 2);
+
+        final ComponentLayout layout = new ComponentLayout(vxs, links).layout();
+
+        for(final ILink link : links) {
+            final double d = Math.hypot(link.getTarget().getX() - link.getSource().getX(), link.getTarget().getY() - link.getSource().getY());
+            assertTrue(d<100, String.format("link length %s", d));
+        }
+        assertNoOverlap(boxes(vxs, layout.getComponents(), layout.getComponentCount()));
+    }
+
+    @Test(description="components packed as circles don't overlap")
+    public void circles() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        forest(vxs, links, 100, 20, 3);
+
+        final ComponentLayout layout = new ComponentLayout(vxs, links).setPacking(ComponentLayout.Packing.CIRCLES);
+        layout.layout();
+
+        // Each component's vertices are inside a circle around the centroid
+        // that doesn't overlap any other component's circle.
+        //
+        final int nc = layout.getComponentCount();
+        final int[] components = layout.getComponents();
+        final double[] cxs = new double[nc];
+        final double[] cys = new double[nc];
+        final double[] radii = new double[nc];
+        final int[] counts = new int[nc];
+        for(int i=0; i<vxs.size(); i++) {
+            cxs[components[i]] += vxs.get(i).getX();
+            cys[components[i]] += vxs.get(i).getY();
+            counts[components[i]]++;
+        }
+        for(int c=0; c<nc; c++) {
+            cxs[c] /= counts[c];
+            cys[c] /= counts[c];
+        }
+        for(int i=0; i<vxs.size(); i++) {
+            final int c = components[i];
+            radii[c] = Math.max(radii[c], Math.hypot(vxs.get(i).getX()-cxs[c], vxs.get(i).getY()-cys[c]) + vxs.get(i).getRadius());
+        }
+
+        for(int a=0; a<nc; a++) {
+            for(int b=a+1; b<nc; b++) {
+                assertTrue(Math.hypot(cxs[b]-cxs[a], cys[b]-cys[a])>radii[a]+radii[b], String.format("components %d and %d overlap", a, b));
+            }
+        }
+    }
+}
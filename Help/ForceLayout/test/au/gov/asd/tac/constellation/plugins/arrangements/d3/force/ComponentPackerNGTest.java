@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ComponentPackerNGTest {
+    /**
+     * Sizes with a long tail, like the sizes of the components of a graph.
+     */
+    private static double[] sizes(final int n, final Random random) {
+        final double[] sizes = new double[n];
+        for(int i=0; i<n; i++) {
+            sizes[i] = 10 * Math.exp(random.nextGaussian());
+        }
+
+        return sizes;
+    }
+
+    @Test(description="rectangles don't overlap and fill most of their bounds")
+    public void rectangles() {
+        final int n = 1000;
+        final Random random = new Random(1);
+        final double[] widths = sizes(n, random);
+        final double[] heights = sizes(n, random);
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        new ComponentPacker().setPadding(2).packRectangles(widths, heights, xs, ys);
+
+        final double e = 1e-9;
+        double x1 = 0;
+        double y1 = 0;
+        double area = 0;
+        for(int i=0; i<n; i++) {
+            assertTrue(xs[i]>=0 && ys[i]>=0);
+            x1 = Math.max(x1, xs[i]+widths[i]);
+            y1 = Math.max(y1, ys[i]+heights[i]);
+            area += widths[i] * heights[i];
+
+            for(int j=i+1; j<n; j++) {
+                final boolean apart = xs[i]+widths[i]+2<=xs[j]+e || xs[j]+widths[j]+2<=xs[i]+e || ys[i]+heights[i]+2<=ys[j]+e || ys[j]+heights[j]+2<=ys[i]+e;
+                assertTrue(apart, String.format("rectangles %d and %d are too close", i, j));
+            }
+        }
+
+        assertTrue(area/(x1*y1)>0.6, String.format("fill %s", area/(x1*y1)));
+        assertTrue(x1/y1>0.5 && x1/y1<2, String.format("aspect %s", x1/y1));
+    }
+
+    @Test(description="the tallest rectangle is at the origin; the others fill the lowest gaps")
+    public void skyline() {
+        // The strip is as wide as the widest rectangle, so the second rectangle
+        // goes on top of the first, and the third goes in the gap beside the second.
+        //
+        final double[] xs = new double[3];
+        final double[] ys = new double[3];
+        new ComponentPacker().packRectangles(new double[]{4, 3, 1}, new double[]{2, 1.5, 1}, xs, ys);
+
+        assertEquals(xs[0], 0, 0);
+        assertEquals(ys[0], 0, 0);
+        assertEquals(xs[1], 0, 0);
+        assertEquals(ys[1], 2, 0);
+        assertEquals(xs[2], 3, 0);
+        assertEquals(ys[2], 2, 0);
+    }
+
+    @Test(description="circles don't overlap and fill most of their enclosing circle")
+    public void circles() {
+        final int n = 1000;
+        final double[] radii = sizes(n, new Random(2));
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        new ComponentPacker().setPadding(2).packCircles(radii, xs, ys);
+
+        double enclosing = 0;
+        double area = 0;
+        for(int i=0; i<n; i++) {
+            enclosing = Math.max(enclosing, Math.hypot(xs[i], ys[i]) + radii[i]);
+            area += radii[i] * radii[i];
+
+            for(int j=i+1; j<n; j++) {
+                final double d = Math.hypot(xs[j]-xs[i], ys[j]-ys[i]);
+                assertTrue(d>=radii[i]+radii[j]+2-1e-3, String.format("circles %d and %d are too close", i, j));
+            }
+        }
+
+        assertTrue(area/(enclosing*enclosing)>0.6, String.format("fill %s", area/(enclosing*enclosing)));
+    }
+
+    @Test(description="the first three circles are mutually tangent")
+    public void threeCircles() {
+        final double[] radii = {3, 2, 1};
+        final double[] xs = new double[3];
+        final double[] ys = new double[3];
+        new ComponentPacker().packCircles(radii, xs, ys);
+
+        for(int i=0; i<3; i++) {
+            for(int j=i+1; j<3; j++) {
+                assertEquals(Math.hypot(xs[j]-xs[i], ys[j]-ys[i]), radii[i]+radii[j], 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ForceAtlas2LayoutNGTest {
+    private static final int LEAVES = 30;
+
+    /**
+     * Two stars with linked hubs; the hubs are vertices 0 and 1.
+     */
+    private static TGraph stars() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        vxs.add(v(Double.NaN, Double.NaN));
+        vxs.add(v(Double.NaN, Double.NaN));
+        links.add(l(vxs.get(0), vxs.get(1)));
+        for(int i=0; i<2*LEAVES; i++) {
+            final IVertex leaf = v(Double.NaN, Double.NaN);
+            vxs.add(leaf);
+            links.add(l(vxs.get(i%2), leaf));
+        }
+
+        return new TGraph(vxs, links);
+    }
+
+    /**
+     * Every leaf is nearer its own hub than the other hub.
+     */
+    private static void assertStarsSeparated(final TGraph graph) {
+        final IVertex hub0 = graph.vxs.get(0);
+        final IVertex hub1 = graph.vxs.get(1);
+        for(int i=0; i<2*LEAVES; i++) {
+            final IVertex leaf = graph.vxs.get(i+2);
+            final IVertex own = i%2==0 ? hub0 : hub1;
+            final IVertex other = i%2==0 ? hub1 : hub0;
+            assertTrue(TestUtil.distance(leaf, own)<TestUtil.distance(leaf, other), String.format("leaf %d", i));
+        }
+    }
+
+    @Test(description="the leaves of two linked hubs are kept apart")
+    public void hubs() {
+        final TGraph graph = stars();
+        new ForceAtlas2Layout(graph.vxs, graph.links).layout();
+
+        assertStarsSeparated(graph);
+        for(int i=0; i<graph.vxs.size(); i++) {
+            assertEquals(graph.vxs.get(i).getIndex(), i);
+        }
+    }
+
+    @Test(description="the adaptive speed settles the layout")
+    public void converges() {
+        final TGraph graph = TestUtil.buildGridGraph(20, 20);
+        final ForceAtlas2Layout layout = new ForceAtlas2Layout(graph.vxs, graph.links).setIterations(200).layout();
+
+        final double length = TestUtil.meanLinkLength(graph);
+
+        double moved = 0;
+        for(final IVertex vx : graph.vxs) {
+            moved += Math.hypot(vx.getXVelocity(), vx.getYVelocity());
+        }
+        moved /= graph.vxs.size();
+
+        assertTrue(layout.getSpeed()>0);
+        assertTrue(moved<0.01*length, String.format("moved %s with link length %s", moved, length));
+        final double diagonal = length * 19 * Math.sqrt(2);
+        assertTrue(TestUtil.distance(graph.vxs.get(0), graph.vxs.get(399))>0.5*diagonal);
+    }
+
+    @Test(description="the forces can be used in a simulation")
+    public void simulation() {
+        final TGraph graph = stars();
+        final Simulation sim = new Simulation(graph.vxs, graph.links).setConcurrent(true);
+        sim.addForce("repulsion", new ForceDegreeRepulsion(graph.links));
+        sim.addForce("attraction", new ForceLinLog(graph.links).setDissuadeHubs(true));
+        sim.addForce("gravity", new ForceGravity(graph.links).setStrongGravity(true).setStrength(0.01));
+        sim.step();
+
+        assertStarsSeparated(graph);
+    }
+
+    @Test(description="tiny graphs and graphs without links are laid out")
+    public void degenerate() {
+        for(int n=0; n<6; n++) {
+            final List<IVertex> vxs = new ArrayList<>();
+            final List<ILink> links = new ArrayList<>();
+            for(int i=0; i<n; i++) {
+                vxs.add(v(Double.NaN, Double.NaN));
+                if(i>0 && n%2==0) {
+                    links.add(l(vxs.get(i-1), vxs.get(i)));
+                }
+            }
+
+            new ForceAtlas2Layout(vxs, links).layout();
+            for(final IVertex vx : vxs) {
+                assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()), String.format("%d vertices", n));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ForceClusterNGTest {
+    @Test(description="each vertex is pulled towards its cluster's centroid")
+    public void pull() {
+        final List<IVertex> vxs = List.of(v(0, 0), v(4, 0), v(10, 10), v(5, 5));
+        final ForceCluster cluster = new ForceCluster(new int[]{0, 0, 1, -1}).setStrength(0.5);
+        cluster.initialise(vxs);
+        cluster.force(1);
+
+        assertEquals(cluster.getClusterCount(), 2);
+        assertEquals(cluster.getCentroid(0)[0], 2, 0);
+        assertEquals(cluster.getCentroid(0)[1], 0, 0);
+        assertEquals(vxs.get(0).getXVelocity(), 1, 0);
+        assertEquals(vxs.get(1).getXVelocity(), -1, 0);
+
+        // A cluster of one is already at its centroid; a vertex in no cluster isn't pulled.
+        //
+        assertEquals(vxs.get(2).getXVelocity(), 0, 0);
+        assertEquals(vxs.get(3).getXVelocity(), 0, 0);
+        assertEquals(vxs.get(3).getYVelocity(), 0, 0);
+    }
+
+    @Test(description="clusters separate in a simulation")
+    public void separate() {
+        final int n = 200;
+        final List<IVertex> vxs = TestUtil.scatter(n, 200, 1);
+        final int[] ids = new int[n];
+        for(int i=0; i<n; i++) {
+            ids[i] = i%4;
+        }
+
+        final Simulation sim = new Simulation(vxs);
+        final ForceCluster cluster = new ForceCluster(ids).setStrength(0.3);
+        sim.addForce("charge", new ForceManyBody());
+        sim.addForce("cluster", cluster);
+        sim.step();
+
+        // Vertices are closer to their own centroid than to any other.
+        //
+        for(int i=0; i<n; i++) {
+            final IVertex vx = vxs.get(i);
+            final double[] own = cluster.getCentroid(ids[i]);
+            final double d = Math.hypot(vx.getX()-own[0], vx.getY()-own[1]);
+            for(int c=0; c<4; c++) {
+                final double[] other = cluster.getCentroid(c);
+                assertTrue(c==ids[i] || d<Math.hypot(vx.getX()-other[0], vx.getY()-other[1]), "vertex " + i + " nearest its own cluster");
+            }
+        }
+    }
+
+    @Test(description="the active path uses the centroids of all the vertices")
+    public void active() {
+        final int n = 2 * Util.PARALLEL_THRESHOLD;
+        final int[] ids = new int[n];
+        for(int i=0; i<n; i++) {
+            ids[i] = i%7;
+        }
+
+        final List<IVertex> all = TestUtil.scatter(n, 200, 2);
+        final ForceCluster full = new ForceCluster(ids);
+        full.initialise(all);
+        full.force(0.5);
+
+        final List<IVertex> some = TestUtil.scatter(n, 200, 2);
+        final ForceCluster restricted = new ForceCluster(ids);
+        restricted.initialise(some);
+        final ActiveSet active = new ActiveSet(n);
+        for(int i=0; i<n; i+=3) {
+            active.add(i);
+        }
+
+        // The second tick reuses the sums of the fixed vertices.
+        //
+        for(int tick=0; tick<2; tick++) {
+            restricted.force(0.5, active);
+            for(int c=0; c<7; c++) {
+                assertEquals(restricted.getCentroid(c)[0], full.getCentroid(c)[0], 1e-9);
+                assertEquals(restricted.getCentroid(c)[1], full.getCentroid(c)[1], 1e-9);
+            }
+        }
+
+        for(int i=0; i<n; i++) {
+            final double expected = i%3==0 ? 2*all.get(i).getXVelocity() : 0;
+            assertEquals(some.get(i).getXVelocity(), expected, 1e-9, "x velocity of " + i);
+        }
+    }
+
+    @Test(description="a full tick discards the sums of the fixed vertices")
+    public void fullTick() {
+        final List<IVertex> vxs = List.of(v(0, 0), v(4, 0));
+        vxs.get(0).setIndex(0);
+        vxs.get(1).setIndex(1);
+        final ForceCluster cluster = new ForceCluster(new int[]{0, 0});
+        cluster.initialise(vxs);
+        final ActiveSet active = new ActiveSet(2);
+        active.add(0);
+        cluster.force(1, active);
+        assertEquals(cluster.getCentroid(0)[0], 2, 0);
+
+        vxs.get(1).setX(8);
+        cluster.force(1);
+        assertEquals(cluster.getCentroid(0)[0], 4, 0);
+        cluster.force(1, active);
+        assertEquals(cluster.getCentroid(0)[0], 4, 0);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ForceCollideNGTest {
+    /**
+     * The largest overlap of any pair of vertices, as a fraction of the sum of their radii.
+     */
+    private static double maxOverlap(final List<IVertex> vxs) {
+        double max = 0;
+        for(int i=0; i<vxs.size(); i++) {
+            for(int j=i+1; j<vxs.size(); j++) {
+                final IVertex a = vxs.get(i);
+                final IVertex b = vxs.get(j);
+                final double r = a.getRadius() + b.getRadius();
+                final double d = Math.hypot(a.getX()-b.getX(), a.getY()-b.getY());
+                max = Math.max(max, (r-d)/r);
+            }
+        }
+
+        return max;
+    }
+
+    @Test(description="an overlapping pair is pushed apart, the smaller vertex further")
+    public void pair() {
+        final List<IVertex> vxs = List.of(new V(0, 0, 1), new V(1.6, 1.2, 2));
+        vxs.get(0).setIndex(0);
+        vxs.get(1).setIndex(1);
+        final Force collide = new ForceCollide();
+        collide.initialise(vxs);
+        collide.force(1);
+
+        // The overlap is 1: the small vertex moves 4/5 of it, the large one 1/5.
+        //
+        assertEquals(vxs.get(0).getXVelocity(), -0.64, 1e-9);
+        assertEquals(vxs.get(0).getYVelocity(), -0.48, 1e-9);
+        assertEquals(vxs.get(1).getXVelocity(), 0.16, 1e-9);
+        assertEquals(vxs.get(1).getYVelocity(), 0.12, 1e-9);
+    }
+
+    @Test(description="a fixed vertex is an obstacle but doesn't move")
+    public void fixed() {
+        final List<IVertex> vxs = List.of(new V(0, 0, 1), new V(0.6, 0.8, 1));
+        vxs.get(0).setIndex(0);
+        vxs.get(1).setIndex(1);
+        final Force collide = new ForceCollide();
+        collide.initialise(vxs);
+
+        final ActiveSet active = new ActiveSet(2);
+        active.add(1);
+        collide.force(1, active);
+
+        assertEquals(vxs.get(0).getXVelocity(), 0, 0);
+        assertEquals(vxs.get(1).getXVelocity(), 0.6, 1e-9);
+        assertEquals(vxs.get(1).getYVelocity(), 0.8, 1e-9);
+    }
+
+    @Test(description="a fixed vertex is an obstacle at its position until it is moved")
+    public void fixedMoved() {
+        final List<IVertex> vxs = List.of(new V(0, 0, 1), new V(0.6, 0.8, 1));
+        vxs.get(0).setIndex(0);
+        vxs.get(1).setIndex(1);
+        final Force collide = new ForceCollide();
+        collide.initialise(vxs);
+
+        // The velocity of a fixed vertex is ignored.
+        //
+        vxs.get(0).setXVelocity(5);
+        final ActiveSet active = new ActiveSet(2);
+        active.add(1);
+        for(int k=0; k<2; k++) {
+            vxs.get(1).setXVelocity(0);
+            vxs.get(1).setYVelocity(0);
+            collide.force(1, active);
+            assertEquals(vxs.get(0).getXVelocity(), 5, 0);
+            assertEquals(vxs.get(1).getXVelocity(), 0.6, 1e-9);
+            assertEquals(vxs.get(1).getYVelocity(), 0.8, 1e-9);
+        }
+
+        vxs.get(0).setX(1.2);
+        vxs.get(0).setY(1.6);
+        collide.fixedMoved(vxs.get(0));
+        vxs.get(1).setXVelocity(0);
+        vxs.get(1).setYVelocity(0);
+        collide.force(1, active);
+        assertEquals(vxs.get(1).getXVelocity(), -0.6, 1e-9);
+        assertEquals(vxs.get(1).getYVelocity(), -0.8, 1e-9);
+    }
+
+    @Test(description="the quadtree of fixed vertices is updated rather than rebuilt between local ticks")
+    public void tickLocal() {
+        final List<IVertex> vxs = TestUtil.scatter(400, 200, 2, 3);
+        final ForceCollide collide = new ForceCollide();
+        final Simulation sim = new Simulation(vxs);
+        sim.addForce("collide", collide);
+        sim.addForce("charge", new ForceManyBody().setStrength(5));
+        sim.tick(1);
+
+        final IVertex seed = vxs.get(0);
+        sim.tickLocal(List.of(seed), 20, 1);
+        final D3QuadTree tree = collide.getFixedTree();
+        assertNotNull(tree);
+
+        seed.setX(seed.getX() + 15);
+        seed.setY(seed.getY() + 5);
+        sim.tickLocal(List.of(seed), 20, 1);
+        assertSame(collide.getFixedTree(), tree);
+    }
+
+    @Test(description="an updated quadtree of fixed vertices finds the same corrections as a new one")
+    public void updatedFixedTree() {
+        final int n = 400;
+        final List<IVertex> vxs = TestUtil.scatter(n, 100, 3, 4);
+        final List<IVertex> copy = TestUtil.scatter(n, 100, 3, 4);
+        final Force updated = new ForceCollide();
+        updated.initialise(vxs);
+
+        // The first active set, then an overlapping one; the last vertex
+        // is fixed throughout and moves in between.
+        //
+        final ActiveSet first = new ActiveSet(n);
+        for(int i=0; i<n/2; i++) {
+            first.add(i);
+        }
+        updated.force(1, first);
+
+        final ActiveSet second = new ActiveSet(n);
+        for(int i=n/4; i<3*n/4; i++) {
+            second.add(i);
+        }
+        for(final List<IVertex> list : List.of(vxs, copy)) {
+            final IVertex moved = list.get(n-1);
+            moved.setX(moved.getX() + 10);
+            moved.setY(moved.getY() - 10);
+            list.forEach(vx -> {
+                vx.setXVelocity(0);
+                vx.setYVelocity(0);
+            });
+        }
+        updated.fixedMoved(vxs.get(n-1));
+        updated.force(1, second);
+
+        final Force fresh = new ForceCollide();
+        fresh.initialise(copy);
+        fresh.force(1, second);
+
+        for(int i=0; i<n; i++) {
+            assertEquals(vxs.get(i).getXVelocity(), copy.get(i).getXVelocity(), 1e-9, "x velocity of " + i);
+            assertEquals(vxs.get(i).getYVelocity(), copy.get(i).getYVelocity(), 1e-9, "y velocity of " + i);
+        }
+    }
+
+    @Test(description="a simulation removes the overlaps")
+    public void layout() {
+        final List<IVertex> vxs = TestUtil.scatter(300, 50, 4, 1);
+        assertTrue(maxOverlap(vxs)>0.5);
+
+        final Simulation sim = new Simulation(vxs);
+        sim.addForce("collide", new ForceCollide().setIterations(3));
+        sim.step();
+
+        final double overlap = maxOverlap(vxs);
+        assertTrue(overlap<0.05, "max overlap " + overlap);
+    }
+
+    @Test(description="an adaptive simulation applies the corrections in full")
+    public void adaptive() {
+        final List<IVertex> vxs = TestUtil.scatter(300, 50, 4, 1);
+        final Simulation sim = new Simulation(vxs).setAdaptive(true);
+        sim.addForce("collide", new ForceCollide().setIterations(3));
+        sim.addForce("charge", new ForceManyBody().setStrength(5));
+        sim.step();
+
+        final double overlap = maxOverlap(vxs);
+        assertTrue(overlap<0.05, "max overlap " + overlap);
+    }
+
+    @Test(description="the parallel search finds the same corrections as the sequential one")
+    public void parallel() {
+        final int n = 2 * Util.PARALLEL_THRESHOLD;
+        final List<IVertex> vxs = TestUtil.scatter(n, 500, 3, 2);
+        final Force collide = new ForceCollide();
+        collide.initialise(vxs);
+        collide.force(1);
+
+        final List<IVertex> copy = TestUtil.scatter(n, 500, 3, 2);
+        for(int i=0; i<n; i++) {
+            final IVertex a = copy.get(i);
+            double xv = 0;
+            double yv = 0;
+            for(int j=0; j<n; j++) {
+                final IVertex b = copy.get(j);
+                final double x = a.getX() - b.getX();
+                final double y = a.getY() - b.getY();
+                final double l = Math.sqrt(x*x + y*y);
+                if(j!=i && l<6) {
+                    xv += x * (6-l) / l / 2;
+                    yv += y * (6-l) / l / 2;
+                }
+            }
+
+            assertEquals(vxs.get(i).getXVelocity(), xv, 1e-9, "x velocity of " + i);
+            assertEquals(vxs.get(i).getYVelocity(), yv, 1e-9, "y velocity of " + i);
+        }
+    }
+}
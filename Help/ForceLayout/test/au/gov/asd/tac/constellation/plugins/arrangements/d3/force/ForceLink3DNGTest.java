@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ForceLink3DNGTest {
+    /**
+     * Scattered vertices with random velocities.
+     */
+    private static List<IVertex> moving(final int n, final long seed) {
+        final List<IVertex> vxs = TestUtil.scatter3D(n, 100, seed);
+        final Random random = new Random(seed);
+        for(final IVertex vx : vxs) {
+            vx.setXVelocity(random.nextDouble() - 0.5);
+            vx.setYVelocity(random.nextDouble() - 0.5);
+            ((V3)vx).setZVelocity(random.nextDouble() - 0.5);
+        }
+
+        return vxs;
+    }
+
+    @Test(description="an active vertex is pulled towards a fixed vertex as if the fixed vertex had no velocity")
+    public void fixedEnds() {
+        // Vertices 0 to 3 are fixed hubs; each of the others is linked to one hub.
+        //
+        final int n = 40;
+        final List<IVertex> vxs = moving(n, 1);
+        final List<ILink> links = new ArrayList<>();
+        links.add(l(vxs.get(0), vxs.get(1)));
+        for(int i=4; i<n; i++) {
+            links.add(l(vxs.get(i%4), vxs.get(i)));
+        }
+
+        final double[] before = new double[3*n];
+        for(int i=0; i<n; i++) {
+            final V3 vx = (V3)vxs.get(i);
+            before[3*i] = vx.getXVelocity();
+            before[3*i+1] = vx.getYVelocity();
+            before[3*i+2] = vx.getZVelocity();
+        }
+
+        final Force force = new ForceLink3D(links);
+        force.initialise(vxs);
+        final ActiveSet active = new ActiveSet(n);
+        for(int i=4; i<n; i++) {
+            active.add(i);
+        }
+        force.force(0.5, active);
+
+        final int[] count = new int[4];
+        count[0] = 1;
+        count[1] = 1;
+        for(int i=4; i<n; i++) {
+            count[i%4]++;
+        }
+        for(int i=0; i<n; i++) {
+            final V3 vx = (V3)vxs.get(i);
+            double xv = before[3*i];
+            double yv = before[3*i+1];
+            double zv = before[3*i+2];
+            if(i>=4) {
+                final V3 hub = (V3)vxs.get(i%4);
+                final double x = vx.getX() + xv - hub.getX();
+                final double y = vx.getY() + yv - hub.getY();
+                final double z = vx.getZ() + zv - hub.getZ();
+                final double l = Math.sqrt(x*x + y*y + z*z);
+                final double k = (l - 30) / l * 0.5 * count[i%4] / (count[i%4] + 1.0);
+                xv -= x * k;
+                yv -= y * k;
+                zv -= z * k;
+            }
+
+            assertEquals(vx.getXVelocity(), xv, 1e-9, "x velocity of " + i);
+            assertEquals(vx.getYVelocity(), yv, 1e-9, "y velocity of " + i);
+            assertEquals(vx.getZVelocity(), zv, 1e-9, "z velocity of " + i);
+        }
+    }
+
+    @Test(description="a link between two active vertices is applied once")
+    public void activeEnds() {
+        final List<IVertex> all = moving(2, 2);
+        final Force full = new ForceLink3D(List.of(l(all.get(0), all.get(1))));
+        full.initialise(all);
+        full.force(0.5);
+
+        final List<IVertex> some = moving(2, 2);
+        final Force restricted = new ForceLink3D(List.of(l(some.get(0), some.get(1))));
+        restricted.initialise(some);
+        final ActiveSet active = new ActiveSet(2);
+        active.add(0);
+        active.add(1);
+        restricted.force(0.5, active);
+
+        for(int i=0; i<2; i++) {
+            final V3 a = (V3)all.get(i);
+            final V3 b = (V3)some.get(i);
+            assertEquals(b.getXVelocity(), a.getXVelocity(), 1e-12);
+            assertEquals(b.getYVelocity(), a.getYVelocity(), 1e-12);
+            assertEquals(b.getZVelocity(), a.getZVelocity(), 1e-12);
+        }
+    }
+}
@@ -15,8 +15,15 @@
  */
 package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
 
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
 import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import org.testng.annotations.Test;
 
 /**
@@ -24,6 +31,24 @@ import org.testng.annotations.Test;
  * @author algol
  */
 public class ForceLinkNGTest {
+    /**
+     * The x velocities that every spring gives the vertices, which are then
+     * put back to zero.
+     */
+    private static double[] fullVelocities(final List<ILink> links, final List<IVertex> vxs, final double alpha) {
+        final ForceLink full = new ForceLink(links);
+        full.initialise(vxs);
+        full.force(alpha);
+        final double[] velocities = new double[vxs.size()];
+        for(int i=0; i<vxs.size(); i++) {
+            velocities[i] = vxs.get(i).getXVelocity();
+            vxs.get(i).setXVelocity(0);
+            vxs.get(i).setYVelocity(0);
+        }
+
+        return velocities;
+    }
+
     @Test(description="Read graph")
     public void readGraph() {
         final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
@@ -68,4 +93,380 @@ public class ForceLinkNGTest {
 
         TestUtil.writePointsXY(graph, "D:/tmp/tree-xy.txt", true);
     }
+
+    @Test(description="No two links of the same colour share a vertex")
+    public void colouring() {
+        final TGraph graph = TestUtil.buildHubGraph(2000, 5, 1);
+        new Simulation(graph.vxs, graph.links);
+        final ForceLink forceLink = new ForceLink(graph.links);
+        forceLink.initialise(graph.vxs);
+
+        final int[] colours = forceLink.getColours();
+        final int m = graph.links.size();
+        int nc = 0;
+        for(int i=0; i<m; i++) {
+            nc = Math.max(nc, colours[i]+1);
+        }
+
+        final int[] seen = new int[graph.vxs.size() * nc];
+        for(int i=0; i<m; i++) {
+            final ILink link = graph.links.get(i);
+            final int s = link.getSource().getIndex();
+            final int t = link.getTarget().getIndex();
+            assertEquals(seen[s*nc + colours[i]]++, 0, "colour at source of link " + i);
+            if(t!=s) {
+                assertEquals(seen[t*nc + colours[i]]++, 0, "colour at target of link " + i);
+            }
+        }
+    }
+
+    @Test(description="Parallel springs on a graph with hubs give the same velocities as sequential springs")
+    public void parallelHubs() {
+        final TGraph graph = TestUtil.buildHubGraph(10000, 10, 1);
+        new Simulation(graph.vxs, graph.links);
+        final int n = graph.vxs.size();
+
+        // Each mode runs the springs in a different order, and a spring sees
+        // the velocities changed by the springs before it, so the modes only
+        // agree to first order in alpha; a small alpha keeps the difference
+        // well inside the tolerance.
+        //
+        final double alpha = 0.001;
+        final double[][] velocities = new double[ForceLink.Parallelism.values().length][2*n];
+        for(final ForceLink.Parallelism parallelism : ForceLink.Parallelism.values()) {
+            final ForceLink forceLink = new ForceLink(graph.links).setParallelism(parallelism);
+            forceLink.initialise(graph.vxs);
+            graph.vxs.forEach(vx -> {
+                vx.setXVelocity(0);
+                vx.setYVelocity(0);
+            });
+            forceLink.force(alpha);
+
+            final double[] vs = velocities[parallelism.ordinal()];
+            for(int i=0; i<n; i++) {
+                vs[2*i] = graph.vxs.get(i).getXVelocity();
+                vs[2*i+1] = graph.vxs.get(i).getYVelocity();
+            }
+        }
+
+        final double[] sequential = velocities[ForceLink.Parallelism.SEQUENTIAL.ordinal()];
+        double largest = 0;
+        for(final double v : sequential) {
+            largest = Math.max(largest, Math.abs(v));
+        }
+        assertTrue(largest>0, "the springs moved the vertices");
+
+        for(final ForceLink.Parallelism parallelism : ForceLink.Parallelism.values()) {
+            final double[] vs = velocities[parallelism.ordinal()];
+            for(int i=0; i<2*n; i++) {
+                assertEquals(vs[i], sequential[i], 1e-3*largest, parallelism + " velocity " + i);
+            }
+        }
+    }
+
+    /**
+     * Time each mode on a graph with hubs.
+     * <p>
+     * This is a benchmark rather than a test; enable it and run it on a
+     * machine with several cores to compare the modes. With one core,
+     * the parallel modes only show their overhead.
+     */
+    @Test(description="Time the parallel modes on a graph with hubs", enabled=false)
+    public void parallelBenchmark() {
+        final TGraph graph = TestUtil.buildHubGraph(200000, 20, 1);
+        new Simulation(graph.vxs, graph.links);
+        System.out.printf("cores %d, vertices %d, links %d\n", Runtime.getRuntime().availableProcessors(), graph.vxs.size(), graph.links.size());
+        for(final ForceLink.Parallelism parallelism : ForceLink.Parallelism.values()) {
+            final ForceLink forceLink = new ForceLink(graph.links).setParallelism(parallelism);
+            forceLink.initialise(graph.vxs);
+            final int ticks = 50;
+            long best = Long.MAX_VALUE;
+            for(int run=0; run<3; run++) {
+                final long start = System.nanoTime();
+                for(int tick=0; tick<ticks; tick++) {
+                    forceLink.force(0.001);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%s %.2f ms/tick\n", parallelism, best / 1e6 / ticks);
+        }
+    }
+
+    @Test(description="Parallel links are coalesced into one spring")
+    public void coalesce() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final int m = graph.links.size();
+        final List<ILink> links = new ArrayList<>(graph.links);
+        for(int i=0; i<m; i++) {
+            final ILink link = graph.links.get(i);
+            links.add(l(link.getTarget(), link.getSource()));
+        }
+        new Simulation(graph.vxs, links);
+
+        final ForceLink forceLink = new ForceLink(links).setCoalesce(true);
+        forceLink.initialise(graph.vxs);
+        assertEquals(forceLink.getSpringCount(), m);
+        for(int i=0; i<m; i++) {
+            assertEquals(forceLink.getSpring(i+m), forceLink.getSpring(i));
+        }
+    }
+
+    @Test(description="A coalesced spring is equivalent to the links it replaces")
+    public void coalesceStrength() {
+        final double[] xv = new double[2];
+        for(final boolean coalesce : new boolean[]{false, true}) {
+            final V a = v(0, 0);
+            final V b = v(100, 50);
+            a.setIndex(0);
+            b.setIndex(1);
+            final List<IVertex> vxs = List.of(a, b);
+            final List<ILink> links = List.of(l(a, b), l(a, b), l(b, a));
+            vxs.forEach(vx -> {
+                vx.setXVelocity(0);
+                vx.setYVelocity(0);
+            });
+
+            final ForceLink forceLink = new ForceLink(links).setStrength(0.4).setCoalesce(coalesce);
+            forceLink.initialise(vxs);
+            forceLink.force(1);
+            assertEquals(forceLink.getSpringCount(), coalesce ? 1 : 3);
+            xv[coalesce ? 1 : 0] = a.getXVelocity() - b.getXVelocity();
+        }
+
+        assertEquals(xv[1], xv[0], 1e-9);
+    }
+
+    @Test(description="Adding and removing links matches initialising from scratch")
+    public void addRemoveLinks() {
+        for(int variant=0; variant<4; variant++) {
+            final boolean coalesce = (variant&1)!=0;
+            final boolean reorder = (variant&2)!=0;
+            final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+            new Simulation(graph.vxs, graph.links);
+            final int n = graph.vxs.size();
+            final ForceLink dynamic = new ForceLink(graph.links).setCoalesce(coalesce).setReorder(reorder);
+            dynamic.initialise(graph.vxs);
+
+            final Random r = new Random(1);
+            for(int k=0; k<500; k++) {
+                if(r.nextInt(3)==0) {
+                    dynamic.removeLink(graph.links.get(r.nextInt(graph.links.size())));
+                } else {
+                    final ILink link = graph.links.get(r.nextInt(graph.links.size()));
+                    dynamic.addLink(r.nextBoolean() ? l(link.getSource(), link.getTarget()) : l(graph.vxs.get(r.nextInt(n)), graph.vxs.get(r.nextInt(n))));
+                }
+            }
+
+            final ForceLink fresh = new ForceLink(new ArrayList<>(graph.links)).setCoalesce(coalesce).setReorder(reorder);
+            fresh.initialise(graph.vxs);
+            assertEquals(dynamic.getSpringCount(), fresh.getSpringCount());
+            for(int i=0; i<graph.links.size(); i++) {
+                assertEquals(graph.links.get(i).getIndex(), i);
+                assertEquals(dynamic.getSpringStrength(dynamic.getSpring(i)), fresh.getSpringStrength(fresh.getSpring(i)), 1e-12, "strength of link " + i);
+            }
+
+            if(variant==0) {
+                // Springs are in link order, so a tick is identical.
+                //
+                final double[] velocities = new double[2*n];
+                for(final ForceLink forceLink : List.of(dynamic, fresh)) {
+                    graph.vxs.forEach(vx -> {
+                        vx.setXVelocity(0);
+                        vx.setYVelocity(0);
+                    });
+                    forceLink.force(0.5);
+                    for(int i=0; i<n; i++) {
+                        if(forceLink==dynamic) {
+                            velocities[2*i] = graph.vxs.get(i).getXVelocity();
+                            velocities[2*i+1] = graph.vxs.get(i).getYVelocity();
+                        } else {
+                            assertEquals(graph.vxs.get(i).getXVelocity(), velocities[2*i], 1e-9);
+                            assertEquals(graph.vxs.get(i).getYVelocity(), velocities[2*i+1], 1e-9);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(description="Extending the force with new vertices and links matches initialising from scratch")
+    public void extend() {
+        final int n = 300;
+        final int n0 = 200;
+        final TGraph graph = TestUtil.buildHubGraph(n, 5, 3);
+        final List<IVertex> scattered = TestUtil.scatter(n, 200, 3);
+        for(int i=0; i<n; i++) {
+            graph.vxs.get(i).setX(scattered.get(i).getX());
+            graph.vxs.get(i).setY(scattered.get(i).getY());
+            graph.vxs.get(i).setIndex(i);
+        }
+
+        // The links of each vertex go to earlier vertices, so the links of
+        // the first n0 vertices come first.
+        //
+        final List<IVertex> vxs = new ArrayList<>(graph.vxs.subList(0, n0));
+        final List<ILink> links = new ArrayList<>();
+        for(final ILink link : graph.links) {
+            if(link.getTarget().getIndex()<n0) {
+                links.add(link);
+            }
+        }
+        final ForceLink force = new ForceLink(links);
+        force.initialise(vxs);
+
+        vxs.addAll(graph.vxs.subList(n0, n));
+        links.addAll(graph.links.subList(links.size(), graph.links.size()));
+        force.extend(vxs, n0);
+        assertEquals(force.getSpringCount(), graph.links.size());
+
+        force.force(0.5);
+        final double[] extended = new double[n];
+        for(int i=0; i<n; i++) {
+            extended[i] = vxs.get(i).getXVelocity();
+            vxs.get(i).setXVelocity(0);
+            vxs.get(i).setYVelocity(0);
+        }
+
+        final double[] initialised = fullVelocities(links, vxs, 0.5);
+        for(int i=0; i<n; i++) {
+            assertEquals(extended[i], initialised[i], 1e-12, "x velocity of " + i);
+        }
+    }
+
+    @Test(description="Reordered springs are the same springs")
+    public void reorder() {
+        final TGraph graph = TestUtil.buildHubGraph(3000, 5, 2);
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        final ForceLink plain = new ForceLink(graph.links);
+        plain.initialise(graph.vxs);
+        final ForceLink reordered = new ForceLink(graph.links).setReorder(true);
+        reordered.initialise(graph.vxs);
+
+        assertEquals(reordered.getSpringCount(), plain.getSpringCount());
+        final boolean[] seen = new boolean[reordered.getSpringCount()];
+        for(int i=0; i<graph.links.size(); i++) {
+            final int spring = reordered.getSpring(i);
+            assertTrue(!seen[spring], "spring " + spring + " is used once");
+            seen[spring] = true;
+            assertEquals(reordered.getSpringStrength(spring), plain.getSpringStrength(plain.getSpring(i)), 0);
+        }
+
+        sim.addForce("link", reordered);
+        sim.addForce("charge", new ForceManyBody());
+        sim.tick(50);
+        for(final IVertex vx : graph.vxs) {
+            assertTrue(Double.isFinite(vx.getX()) && Double.isFinite(vx.getY()));
+        }
+    }
+
+    @Test(description="Buffered sampled springs are the springs a sequential tick samples")
+    public void samplingBuffered() {
+        // Disjoint pairs, so the order of the springs doesn't matter,
+        // and enough of them to run in parallel.
+        //
+        final int pairs = 10000;
+        final List<IVertex> vxs = TestUtil.scatter(2*pairs, 1000, 4);
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<pairs; i++) {
+            links.add(l(vxs.get(2*i), vxs.get(2*i+1)));
+        }
+
+        final double[][] velocities = new double[2][2*vxs.size()];
+        final ForceLink.Parallelism[] modes = {ForceLink.Parallelism.SEQUENTIAL, ForceLink.Parallelism.BUFFERED};
+        for(int run=0; run<2; run++) {
+            final ForceLink forceLink = new ForceLink(links).setParallelism(modes[run]).setSampling(0.5, 0).setSeed(9);
+            forceLink.initialise(vxs);
+            for(int tick=0; tick<3; tick++) {
+                forceLink.force(0.2);
+            }
+            for(int i=0; i<vxs.size(); i++) {
+                velocities[run][2*i] = vxs.get(i).getXVelocity();
+                velocities[run][2*i+1] = vxs.get(i).getYVelocity();
+                vxs.get(i).setXVelocity(0);
+                vxs.get(i).setYVelocity(0);
+            }
+        }
+
+        for(int i=0; i<2*vxs.size(); i++) {
+            assertEquals(velocities[1][i], velocities[0][i], 1e-12, "velocity " + i);
+        }
+    }
+
+    @Test(description="Sampled springs give the same force on average, and don't overshoot")
+    public void sampling() {
+        // Disjoint pairs, so the springs don't interact.
+        //
+        final int pairs = 200;
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        final Random r = new Random(3);
+        for(int i=0; i<pairs; i++) {
+            final V a = v(r.nextDouble()*100, r.nextDouble()*100);
+            final V b = v(r.nextDouble()*100, r.nextDouble()*100);
+            vxs.add(a);
+            vxs.add(b);
+            links.add(l(a, b));
+        }
+        for(int i=0; i<vxs.size(); i++) {
+            vxs.get(i).setIndex(i);
+        }
+
+        // At an alpha of 1, a full spring already goes to its rest length, so
+        // a chosen spring is clamped to the same velocities: it doesn't
+        // overshoot by 1/p.
+        //
+        final double[] expected = fullVelocities(links, vxs, 1);
+        final ForceLink sampled = new ForceLink(links).setSampling(0.3, 0).setSeed(42);
+        sampled.initialise(vxs);
+        assertEquals(sampled.getSamplingProbability(1), 0.3, 1e-12);
+        final int ticks = 200;
+        int chosen = 0;
+        for(int k=0; k<ticks; k++) {
+            sampled.force(1);
+            for(int i=0; i<2*pairs; i++) {
+                final double xv = vxs.get(i).getXVelocity();
+                if(xv!=0) {
+                    assertEquals(xv, expected[i], 1e-9);
+                    chosen++;
+                }
+                vxs.get(i).setXVelocity(0);
+                vxs.get(i).setYVelocity(0);
+            }
+        }
+        assertEquals(chosen / (double)(ticks * 2 * pairs), 0.3, 0.05);
+
+        // Where the clamp doesn't apply, the expected force is unchanged.
+        //
+        final double alpha = 0.2;
+        final double[] expected2 = fullVelocities(links, vxs, alpha);
+        double ratio = 0;
+        for(int k=0; k<ticks; k++) {
+            sampled.force(alpha);
+            for(int i=0; i<2*pairs; i++) {
+                ratio += vxs.get(i).getXVelocity() / expected2[i];
+                vxs.get(i).setXVelocity(0);
+                vxs.get(i).setYVelocity(0);
+            }
+        }
+        ratio /= ticks * 2 * pairs;
+        assertEquals(ratio, 1, 0.05);
+
+        // The same seed gives the same sample.
+        //
+        final double[] first = new double[2*pairs];
+        for(int run=0; run<2; run++) {
+            final ForceLink seeded = new ForceLink(links).setSampling(0.3, 0).setSeed(7);
+            seeded.initialise(vxs);
+            seeded.force(1);
+            for(int i=0; i<2*pairs; i++) {
+                if(run==0) {
+                    first[i] = vxs.get(i).getXVelocity();
+                } else {
+                    assertEquals(vxs.get(i).getXVelocity(), first[i], 0);
+                }
+                vxs.get(i).setXVelocity(0);
+                vxs.get(i).setYVelocity(0);
+            }
+        }
+    }
 }
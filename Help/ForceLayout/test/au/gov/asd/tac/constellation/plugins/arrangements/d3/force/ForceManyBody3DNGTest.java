@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ForceManyBody3DNGTest {
+    @Test(description="with theta 0, the force is the exact sum over every pair")
+    public void exact() {
+        final int n = 300;
+        final List<IVertex> vxs = TestUtil.scatter3D(n, 100, 1);
+        final Force force = new ForceManyBody3D().setTheta(0);
+        force.initialise(vxs);
+        force.force(0.5);
+
+        for(int i=0; i<n; i++) {
+            final V3 a = (V3)vxs.get(i);
+            double xv = 0;
+            double yv = 0;
+            double zv = 0;
+            for(int j=0; j<n; j++) {
+                if(j!=i) {
+                    final V3 b = (V3)vxs.get(j);
+                    final double x = b.getX() - a.getX();
+                    final double y = b.getY() - a.getY();
+                    final double z = b.getZ() - a.getZ();
+                    double l = x*x + y*y + z*z;
+                    if(l<1) {
+                        l = Math.sqrt(l);
+                    }
+                    xv += x * -30 * 0.5 / l;
+                    yv += y * -30 * 0.5 / l;
+                    zv += z * -30 * 0.5 / l;
+                }
+            }
+
+            assertEquals(a.getXVelocity(), xv, 1e-9, "x velocity of " + i);
+            assertEquals(a.getYVelocity(), yv, 1e-9, "y velocity of " + i);
+            assertEquals(a.getZVelocity(), zv, 1e-9, "z velocity of " + i);
+        }
+    }
+
+    @Test(description="the Barnes-Hut approximation is close to the exact force")
+    public void approximate() {
+        final int n = 2 * Util.PARALLEL_THRESHOLD;
+        final List<IVertex> exact = TestUtil.scatter3D(n, 100, 2);
+        final List<IVertex> approx = TestUtil.scatter3D(n, 100, 2);
+        final Force exactForce = new ForceManyBody3D().setTheta(0);
+        exactForce.initialise(exact);
+        exactForce.force(1);
+        final Force approxForce = new ForceManyBody3D();
+        approxForce.initialise(approx);
+        approxForce.force(1);
+
+        double error = 0;
+        double total = 0;
+        for(int i=0; i<n; i++) {
+            final V3 e = (V3)exact.get(i);
+            final V3 a = (V3)approx.get(i);
+            error += Math.abs(a.getXVelocity()-e.getXVelocity()) + Math.abs(a.getYVelocity()-e.getYVelocity()) + Math.abs(a.getZVelocity()-e.getZVelocity());
+            total += Math.abs(e.getXVelocity()) + Math.abs(e.getYVelocity()) + Math.abs(e.getZVelocity());
+        }
+
+        assertTrue(error/total<0.05, "relative error " + error/total);
+    }
+}
@@ -16,8 +16,12 @@
 package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
 
 import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
 import java.util.ArrayList;
 import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import org.testng.annotations.Test;
 
 /**
@@ -42,6 +46,147 @@ public class ForceManyBodyNGTest {
 //        assertEquals(toString(vxs), "[[-0.5,-0.5,1.0],[-0.5,0.5,1.0],[0.5,0.5,1.0],[0.5,-0.5,1.0]]");
     }
 
+    @Test(description="a restricted tick sees a moved fixed vertex where it is, as a full tick does")
+    public void fixedMoved() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("charge", new ForceManyBody());
+        sim.step();
+
+        // A full tick freezes the far field, then Valjean is dragged.
+        //
+        final ForceManyBody restricted = new ForceManyBody().setTheta(0);
+        restricted.initialise(graph.vxs);
+        restricted.force(1);
+        final IVertex valjean = graph.vxs.get(11);
+        valjean.setX(valjean.getX() + 50);
+        valjean.setY(valjean.getY() + 50);
+
+        final ActiveSet active = new ActiveSet(graph.vxs.size());
+        for(final ILink link : graph.links) {
+            if(link.getSource()==valjean) {
+                active.add(link.getTarget().getIndex());
+            }
+        }
+        graph.vxs.forEach(vx -> {
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+        });
+        restricted.fixedMoved(valjean);
+        restricted.force(1, active);
+        final double[] velocities = new double[2*active.size()];
+        for(int j=0; j<active.size(); j++) {
+            final IVertex vx = graph.vxs.get(active.get(j));
+            velocities[2*j] = vx.getXVelocity();
+            velocities[2*j+1] = vx.getYVelocity();
+        }
+
+        final ForceManyBody full = new ForceManyBody().setTheta(0);
+        full.initialise(graph.vxs);
+        graph.vxs.forEach(vx -> {
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+        });
+        full.force(1);
+        for(int j=0; j<active.size(); j++) {
+            final IVertex vx = graph.vxs.get(active.get(j));
+            assertEquals(velocities[2*j], vx.getXVelocity(), 1e-9, "x velocity of " + vx.getIndex());
+            assertEquals(velocities[2*j+1], vx.getYVelocity(), 1e-9, "y velocity of " + vx.getIndex());
+        }
+    }
+
+    @Test(description="new vertices are thawed into the kept frozen quadtree")
+    public void extend() {
+        final int n = 300;
+        final int n0 = 250;
+        final List<IVertex> all = TestUtil.scatter(n, 200, 5);
+        final List<IVertex> vxs = new ArrayList<>(all.subList(0, n0));
+        final ForceManyBody extended = new ForceManyBody().setTheta(0);
+        extended.initialise(vxs);
+        extended.force(1);
+
+        vxs.addAll(all.subList(n0, n));
+        extended.extend(vxs, n0);
+        final ActiveSet active = new ActiveSet(n);
+        for(int i=n0-10; i<n; i++) {
+            active.add(i);
+        }
+        vxs.forEach(vx -> {
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+        });
+        extended.force(1, active);
+        final double[] velocities = new double[2*n];
+        for(int i=0; i<n; i++) {
+            velocities[2*i] = vxs.get(i).getXVelocity();
+            velocities[2*i+1] = vxs.get(i).getYVelocity();
+            vxs.get(i).setXVelocity(0);
+            vxs.get(i).setYVelocity(0);
+        }
+
+        final ForceManyBody full = new ForceManyBody().setTheta(0);
+        full.initialise(vxs);
+        full.force(1);
+        for(int j=0; j<active.size(); j++) {
+            final IVertex vx = vxs.get(active.get(j));
+            assertEquals(velocities[2*vx.getIndex()], vx.getXVelocity(), 1e-9, "x velocity of " + vx.getIndex());
+            assertEquals(velocities[2*vx.getIndex()+1], vx.getYVelocity(), 1e-9, "y velocity of " + vx.getIndex());
+        }
+    }
+
+    @Test(description="a long drag moves charges in the frozen quadtree instead of rebuilding it")
+    public void longDrag() {
+        final int n = 2000;
+        final List<IVertex> vxs = TestUtil.scatter(n, 400, 7);
+        final ForceManyBody restricted = new ForceManyBody().setTheta(0);
+        restricted.initialise(vxs);
+        restricted.force(1);
+        final D3QuadTree frozen = restricted.getFrozenTree();
+
+        // Every vertex is active for a few ticks and moves while it is,
+        // so between them the ticks thaw many times the active set.
+        //
+        final int window = 20;
+        final ActiveSet active = new ActiveSet(n);
+        for(int start=0; start<n; start+=window/2) {
+            active.clear();
+            for(int i=start; i<Math.min(start+window, n); i++) {
+                active.add(i);
+                vxs.get(i).setX(vxs.get(i).getX() + 3);
+                vxs.get(i).setY(vxs.get(i).getY() - 2);
+            }
+            restricted.force(1, active);
+        }
+        assertSame(restricted.getFrozenTree(), frozen);
+
+        active.clear();
+        for(int i=0; i<n; i+=97) {
+            active.add(i);
+        }
+        vxs.forEach(vx -> {
+            vx.setXVelocity(0);
+            vx.setYVelocity(0);
+        });
+        restricted.force(1, active);
+        final double[] velocities = new double[2*n];
+        for(int i=0; i<n; i++) {
+            velocities[2*i] = vxs.get(i).getXVelocity();
+            velocities[2*i+1] = vxs.get(i).getYVelocity();
+            vxs.get(i).setXVelocity(0);
+            vxs.get(i).setYVelocity(0);
+        }
+
+        final ForceManyBody full = new ForceManyBody().setTheta(0);
+        full.initialise(vxs);
+        full.force(1);
+        for(int j=0; j<active.size(); j++) {
+            final IVertex vx = vxs.get(active.get(j));
+            assertEquals(velocities[2*vx.getIndex()], vx.getXVelocity(), 1e-9, "x velocity of " + vx.getIndex());
+            assertEquals(velocities[2*vx.getIndex()+1], vx.getYVelocity(), 1e-9, "y velocity of " + vx.getIndex());
+        }
+    }
+
 //    @Test(description="basic many body 2")
 //    public void forceManyBody2() {
 //        final Random r = new Random();
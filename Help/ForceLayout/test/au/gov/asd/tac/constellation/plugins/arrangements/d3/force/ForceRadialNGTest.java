@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ForceRadialNGTest {
+    @Test(description="a vertex is pulled towards the circle")
+    public void radial() {
+        final List<IVertex> vxs = List.of(v(13, 6), v(1, 1));
+        final Force radial = new ForceRadial(10, 1, 1).setStrength(0.5);
+        radial.initialise(vxs);
+        radial.force(0.5);
+
+        // The first vertex is 13 from the centre, so moves 3*0.5*0.5 inwards.
+        // The second is at the centre, so moves off it diagonally.
+        //
+        assertEquals(vxs.get(0).getXVelocity(), -0.75*12/13, 1e-12);
+        assertEquals(vxs.get(0).getYVelocity(), -0.75*5/13, 1e-12);
+        assertEquals(vxs.get(1).getXVelocity(), vxs.get(1).getYVelocity(), 0);
+        assertEquals(vxs.get(1).getXVelocity(), 0.25*10/Math.sqrt(2), 1e-6);
+    }
+
+    @Test(description="per-vertex radii arrange vertices on rings")
+    public void rings() {
+        final List<IVertex> vxs = TestUtil.scatter(200, 200, 1);
+        final Simulation sim = new Simulation(vxs);
+        final ForceRadial radial = new ForceRadial(50, 0, 0).setStrength(0.5);
+        sim.addForce("radial", radial);
+        for(int i=0; i<vxs.size(); i+=2) {
+            radial.setRadius(i, 100);
+        }
+        sim.step();
+
+        for(int i=0; i<vxs.size(); i++) {
+            final IVertex vx = vxs.get(i);
+            assertEquals(Math.hypot(vx.getX(), vx.getY()), i%2==0 ? 100 : 50, 1, "radius of " + i);
+        }
+    }
+
+    @Test(description="accumulating in parallel gives the same velocities as applying")
+    public void accumulate() {
+        final int n = 2 * Util.PARALLEL_THRESHOLD;
+        final List<IVertex> vxs = TestUtil.scatter(n, 200, 2);
+        final ForceRadial radial = new ForceRadial(30, 5, -5);
+        radial.initialise(vxs);
+        radial.setStrength(7, 1);
+        radial.force(0.3);
+
+        final double[] xvel = new double[n];
+        final double[] yvel = new double[n];
+        radial.accumulate(0.3, null, xvel, yvel);
+        for(int i=0; i<n; i++) {
+            assertEquals(xvel[i], vxs.get(i).getXVelocity(), 0, "x velocity of " + i);
+            assertEquals(yvel[i], vxs.get(i).getYVelocity(), 0, "y velocity of " + i);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class MultilevelLayoutNGTest {
+    @Test(description="each level is smaller than the one before, down to the coarsest size")
+    public void coarsen() {
+        final TGraph graph = TestUtil.buildGridGraph(40, 40);
+        final MultilevelLayout layout = new MultilevelLayout(graph.vxs, graph.links).setCoarsestSize(100);
+        layout.layout();
+
+        final int[] sizes = layout.getLevelSizes();
+        assertEquals(sizes[0], 1600);
+        assertTrue(sizes.length>2);
+        for(int l=1; l<sizes.length; l++) {
+            assertTrue(sizes[l]<sizes[l-1]);
+        }
+        assertTrue(sizes[sizes.length-1]<=100);
+    }
+
+    @Test(description="a star coarsens to a single vertex in one level")
+    public void star() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        vxs.add(v(Double.NaN, Double.NaN));
+        for(int i=0; i<1000; i++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+            links.add(l(vxs.get(0), vxs.get(i+1)));
+        }
+
+        final MultilevelLayout layout = new MultilevelLayout(vxs, links).setCoarsestSize(10);
+        layout.layout();
+
+        final int[] sizes = layout.getLevelSizes();
+        assertEquals(sizes.length, 2);
+        assertEquals(sizes[1], 1);
+        for(final IVertex vx : vxs) {
+            assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()));
+        }
+    }
+
+    @Test(description="a graph that isn't coarsened ignores existing positions")
+    public void singleLevel() {
+        final TGraph fresh = TestUtil.buildGridGraph(8, 8);
+        new MultilevelLayout(fresh.vxs, fresh.links).layout();
+
+        final TGraph placed = TestUtil.buildGridGraph(8, 8);
+        for(int i=0; i<placed.vxs.size(); i++) {
+            placed.vxs.get(i).setX(1000 + i);
+            placed.vxs.get(i).setY(-1000);
+        }
+        final MultilevelLayout layout = new MultilevelLayout(placed.vxs, placed.links).layout();
+        assertEquals(layout.getLevelSizes().length, 1);
+
+        for(int i=0; i<fresh.vxs.size(); i++) {
+            assertEquals(placed.vxs.get(i).getX(), fresh.vxs.get(i).getX(), 1e-9);
+            assertEquals(placed.vxs.get(i).getY(), fresh.vxs.get(i).getY(), 1e-9);
+        }
+    }
+
+    @Test(description="a grid is untangled: opposite corners are far apart")
+    public void untangle() {
+        final int size = 40;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        new MultilevelLayout(graph.vxs, graph.links).layout();
+
+        // A flat simulation of the same grid typically folds it up, leaving
+        // the corners a few links apart.
+        //
+        final double diagonal = TestUtil.meanLinkLength(graph) * (size-1) * Math.sqrt(2);
+        assertTrue(TestUtil.distance(graph.vxs.get(0), graph.vxs.get(size*size-1))>0.25*diagonal);
+        assertTrue(TestUtil.distance(graph.vxs.get(size-1), graph.vxs.get(size*(size-1)))>0.25*diagonal);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V3.v3;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class PivotMDSNGTest {
+    @Test(description="a path is placed in order along a line")
+    public void path() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<100; i++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+            if(i>0) {
+                links.add(l(vxs.get(i-1), vxs.get(i)));
+            }
+        }
+
+        new PivotMDS(vxs, links).setPivots(10).place();
+
+        // The ends are the length of the path apart, and every vertex is
+        // further from the first vertex than the one before it.
+        //
+        assertEquals(TestUtil.distance(vxs.get(0), vxs.get(99)), 99*30, 0.1*99*30);
+        for(int i=2; i<100; i++) {
+            assertTrue(TestUtil.distance(vxs.get(0), vxs.get(i))>TestUtil.distance(vxs.get(0), vxs.get(i-1)), String.format("vertex %d", i));
+        }
+    }
+
+    @Test(description="a grid is placed untangled with the mean link length as the scale")
+    public void grid() {
+        final int size = 40;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        new PivotMDS(graph.vxs, graph.links).setScale(20).place();
+
+        assertEquals(TestUtil.meanLinkLength(graph), 20, 2);
+        final double diagonal = 20 * (size-1) * Math.sqrt(2);
+        assertTrue(TestUtil.distance(graph.vxs.get(0), graph.vxs.get(size*size-1))>0.8*diagonal);
+        assertTrue(TestUtil.distance(graph.vxs.get(size-1), graph.vxs.get(size*(size-1)))>0.8*diagonal);
+    }
+
+    @Test(description="a simulation started from Pivot MDS converges in the placement ticks and stays untangled")
+    public void simulation() {
+        final int size = 40;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("many_body", new ForceManyBody());
+        sim.placePivotMDS(50, 30);
+        assertEquals(sim.getAlpha(), sim.getPlacementAlpha(), 0);
+
+        for(int i=0; i<sim.getPlacementTicks(); i++) {
+            assertTrue(sim.getAlpha()>=sim.getAlphaMin());
+            sim.tick(1);
+        }
+        assertTrue(sim.getAlpha()<sim.getAlphaMin()*1.0001);
+
+        final double diagonal = TestUtil.meanLinkLength(graph) * (size-1) * Math.sqrt(2);
+        assertTrue(TestUtil.distance(graph.vxs.get(0), graph.vxs.get(size*size-1))>0.5*diagonal);
+        assertTrue(TestUtil.distance(graph.vxs.get(size-1), graph.vxs.get(size*(size-1)))>0.5*diagonal);
+    }
+
+    @Test(description="the alpha decay is put back once the placement has cooled")
+    public void alphaDecay() {
+        final TGraph graph = TestUtil.buildGridGraph(10, 10);
+        final Simulation sim = new Simulation(graph.vxs, graph.links).setAlphaDecay(0.05);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.placePivotMDS(20, 30);
+        assertTrue(sim.getAlphaDecay()!=0.05);
+
+        sim.step();
+        assertEquals(sim.getAlphaDecay(), 0.05, 0);
+    }
+
+    @Test(description="disconnected vertices, stars and three dimensions are placed")
+    public void degenerate() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<20; i++) {
+            vxs.add(v3(Double.NaN, Double.NaN, Double.NaN));
+        }
+        for(int i=1; i<10; i++) {
+            links.add(l(vxs.get(0), vxs.get(i)));
+        }
+
+        new PivotMDS(vxs, links).setDimensions(3).place();
+
+        for(int i=0; i<vxs.size(); i++) {
+            final IVertex3 vx = (IVertex3)vxs.get(i);
+            assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()) || Double.isNaN(vx.getZ()));
+            for(int j=0; j<i; j++) {
+                assertTrue(vx.getX()!=vxs.get(j).getX() || vx.getY()!=vxs.get(j).getY(), String.format("vertices %d and %d are coincident", j, i));
+            }
+        }
+
+        new PivotMDS(vxs, new ArrayList<>()).place();
+        for(final IVertex vx : vxs) {
+            assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()));
+        }
+    }
+}
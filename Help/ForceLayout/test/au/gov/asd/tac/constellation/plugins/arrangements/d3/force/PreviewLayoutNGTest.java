@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class PreviewLayoutNGTest {
+    /**
+     * The root mean square distance of the vertices from their centroid.
+     */
+    private static double spread(final TGraph graph) {
+        double x = 0;
+        double y = 0;
+        for(final IVertex vx : graph.vxs) {
+            x += vx.getX();
+            y += vx.getY();
+        }
+        x /= graph.vxs.size();
+        y /= graph.vxs.size();
+
+        double sum = 0;
+        for(final IVertex vx : graph.vxs) {
+            sum += (vx.getX()-x)*(vx.getX()-x) + (vx.getY()-y)*(vx.getY()-y);
+        }
+
+        return Math.sqrt(sum / graph.vxs.size());
+    }
+
+    @Test(description="a grid is previewed from a small sample with neighbours kept together")
+    public void grid() {
+        final int size = 60;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        final PreviewLayout preview = new PreviewLayout(graph.vxs, graph.links).setSamples(200).layout();
+        assertEquals(preview.getSampleSize(), 200);
+
+        final double length = TestUtil.meanLinkLength(graph);
+        assertTrue(length>10 && length<100, String.format("mean link length %s", length));
+
+        // A random placement would put neighbours as far apart as any two
+        // vertices; a preview keeps them close compared with the whole graph.
+        //
+        assertTrue(length<0.25*spread(graph), String.format("mean link length %s, spread %s", length, spread(graph)));
+        for(int i=0; i<graph.vxs.size(); i++) {
+            assertEquals(graph.vxs.get(i).getIndex(), i);
+        }
+    }
+
+    @Test(description="the hubs are sampled, and their leaves are placed around them")
+    public void hubs() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        final int hubs = 10;
+        for(int h=0; h<hubs; h++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+            if(h>0) {
+                links.add(l(vxs.get(h-1), vxs.get(h)));
+            }
+        }
+        for(int i=0; i<hubs*50; i++) {
+            final IVertex leaf = v(Double.NaN, Double.NaN);
+            vxs.add(leaf);
+            links.add(l(vxs.get(i%hubs), leaf));
+        }
+
+        new PreviewLayout(vxs, links).setSamples(hubs).setHubFraction(1).layout();
+
+        // Each hub was laid out by the sample simulation, and each leaf is
+        // a link distance from its hub in its own direction.
+        //
+        for(int i=0; i<hubs*50; i++) {
+            final IVertex leaf = vxs.get(hubs+i);
+            assertEquals(TestUtil.distance(leaf, vxs.get(i%hubs)), 30, 1e-9);
+            for(int j=i+hubs; j<hubs*50; j+=hubs) {
+                assertTrue(TestUtil.distance(leaf, vxs.get(hubs+j))>0.1, String.format("leaves %d and %d", i, j));
+            }
+        }
+    }
+
+    @Test(description="a preview is refined by a short simulation")
+    public void simulation() {
+        final int size = 40;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("many_body", new ForceManyBody());
+        sim.placePreview(100, 30);
+        assertEquals(sim.getAlpha(), sim.getPlacementAlpha(), 0);
+        sim.step();
+
+        final double length = TestUtil.meanLinkLength(graph);
+        assertTrue(length>10 && length<100, String.format("mean link length %s", length));
+        assertTrue(length<0.25*spread(graph), String.format("mean link length %s, spread %s", length, spread(graph)));
+    }
+
+    @Test(description="every component is placed, including isolated vertices")
+    public void components() {
+        for(int n=0; n<8; n++) {
+            final List<IVertex> vxs = new ArrayList<>();
+            final List<ILink> links = new ArrayList<>();
+            for(int i=0; i<n; i++) {
+                vxs.add(v(Double.NaN, Double.NaN));
+                if(i%3!=0) {
+                    links.add(l(vxs.get(i-1), vxs.get(i)));
+                }
+            }
+
+            final PreviewLayout preview = new PreviewLayout(vxs, links).setSamples(1).layout();
+            assertEquals(preview.getSampleSize(), (n+2)/3);
+            for(final IVertex vx : vxs) {
+                assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()), String.format("%d vertices", n));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class ScheduledForceNGTest {
+    /**
+     * Push every vertex right by one unit per unit alpha, counting evaluations.
+     */
+    private static class Push implements Force {
+        private List<IVertex> vxs;
+        int count;
+
+        @Override
+        public void initialise(final List<IVertex> vxs) {
+            this.vxs = vxs;
+        }
+
+        @Override
+        public void force(final double alpha) {
+            count++;
+            vxs.forEach(vx -> vx.setXVelocity(vx.getXVelocity() + alpha));
+        }
+    }
+
+    @Test(description="a skipped tick reuses the last contribution")
+    public void held() {
+        final List<IVertex> vxs = List.of(v(0, 0), v(1, 1));
+        final Push push = new Push();
+        final Force force = new ScheduledForce(push, ForceSchedule.every(3));
+        force.initialise(vxs);
+
+        double expected = 0;
+        for(int tick=0; tick<7; tick++) {
+            final double alpha = 1.0 / (tick+1);
+            force.force(alpha);
+            expected += alpha;
+        }
+
+        assertEquals(push.count, 3);
+        for(final IVertex vx : vxs) {
+            assertEquals(vx.getXVelocity(), expected, 1e-12);
+            assertEquals(vx.getYVelocity(), 0, 0);
+        }
+    }
+
+    @Test(description="a skipped tick reuses the z contribution of a three-dimensional force")
+    public void threeDimensions() {
+        final int n = 50;
+        final List<IVertex> scheduled = TestUtil.scatter3D(n, 100, 1);
+        final List<IVertex> every = TestUtil.scatter3D(n, 100, 1);
+        final Force force = new ScheduledForce(new ForceManyBody3D(), ForceSchedule.every(2));
+        force.initialise(scheduled);
+        final Force reference = new ForceManyBody3D();
+        reference.initialise(every);
+
+        // The vertices don't move, so the skipped tick gets the same
+        // contribution as the evaluated one.
+        //
+        for(int tick=0; tick<2; tick++) {
+            force.force(0.5);
+            reference.force(0.5);
+        }
+
+        for(int i=0; i<n; i++) {
+            final V3 a = (V3)scheduled.get(i);
+            final V3 b = (V3)every.get(i);
+            assertEquals(a.getXVelocity(), b.getXVelocity(), 1e-9);
+            assertEquals(a.getYVelocity(), b.getYVelocity(), 1e-9);
+            assertEquals(a.getZVelocity(), b.getZVelocity(), 1e-9);
+        }
+    }
+
+    @Test(description="the schedule only thins evaluations once cool")
+    public void whenCool() {
+        final ForceSchedule schedule = ForceSchedule.whenCool(0.1, 4);
+        assertTrue(schedule.isDue(1, 0.5));
+        assertTrue(!schedule.isDue(1, 0.05));
+        assertTrue(schedule.isDue(8, 0.05));
+    }
+
+    @Test(description="a layout with a scheduled many-body force still converges")
+    public void layout() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("charge", new ForceManyBody(), ForceSchedule.whenCool(0.1, 3));
+        sim.addForce("centre", new ForceCentre(0, 0));
+        sim.step();
+
+        double length = 0;
+        for(final ILink link : graph.links) {
+            final double dx = link.getSource().getX() - link.getTarget().getX();
+            final double dy = link.getSource().getY() - link.getTarget().getY();
+            length += Math.sqrt(dx*dx + dy*dy);
+        }
+        length /= graph.links.size();
+        assertTrue(length>10 && length<100, "mean link length " + length);
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.D3QuadTree;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class SimulationNGTest {
+    private static Simulation layout(final TGraph graph) {
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("charge", new ForceManyBody());
+        sim.addForce("centre", new ForceCentre(0, 0));
+        sim.step();
+
+        return sim;
+    }
+
+    private static double[] positions(final List<IVertex> vxs) {
+        final double[] xy = new double[2*vxs.size()];
+        for(int i=0; i<vxs.size(); i++) {
+            xy[2*i] = vxs.get(i).getX();
+            xy[2*i+1] = vxs.get(i).getY();
+        }
+
+        return xy;
+    }
+
+    /**
+     * The energy of a layout under ForceLink and ForceManyBody with their default settings.
+     */
+    private static double energy(final TGraph graph) {
+        final int n = graph.vxs.size();
+        final int[] count = new int[n];
+        for(final ILink link : graph.links) {
+            count[link.getSource().getIndex()]++;
+            count[link.getTarget().getIndex()]++;
+        }
+
+        double energy = 0;
+        for(final ILink link : graph.links) {
+            final IVertex s = link.getSource();
+            final IVertex t = link.getTarget();
+            final double d = Math.hypot(t.getX()-s.getX(), t.getY()-s.getY());
+            energy += (d-30) * (d-30) / (2 * Math.min(count[s.getIndex()], count[t.getIndex()]));
+        }
+        for(int i=0; i<n; i++) {
+            for(int j=i+1; j<n; j++) {
+                final IVertex a = graph.vxs.get(i);
+                final IVertex b = graph.vxs.get(j);
+                energy -= 30 * Math.log(Math.max(1, Math.hypot(b.getX()-a.getX(), b.getY()-a.getY())));
+            }
+        }
+
+        return energy;
+    }
+
+    @Test(description="Incremental layout only moves the new vertices and their neighbourhood")
+    public void addVertices() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final Simulation sim = layout(graph);
+        final int n0 = graph.vxs.size();
+        final int m0 = graph.links.size();
+        final double[] before = positions(graph.vxs);
+
+        // A chain of two new vertices hanging off Myriel.
+        //
+        final IVertex myriel = graph.vxs.get(0);
+        final V a = v(Double.NaN, Double.NaN);
+        final V b = v(Double.NaN, Double.NaN);
+        sim.setIncrementalHops(1);
+        sim.addVertices(List.of(a, b), List.of(l(myriel, a), l(a, b)));
+
+        assertEquals(graph.vxs.size(), n0+2);
+        assertEquals(graph.links.size(), m0+2);
+        assertEquals(a.getIndex(), n0);
+        assertEquals(b.getIndex(), n0+1);
+
+        // Only Myriel is within one hop of the new vertices.
+        //
+        final double[] after = positions(graph.vxs);
+        for(int i=1; i<n0; i++) {
+            assertEquals(after[2*i], before[2*i], 0, "x of " + i);
+            assertEquals(after[2*i+1], before[2*i+1], 0, "y of " + i);
+        }
+
+        for(final IVertex vx : List.of(a, b)) {
+            assertTrue(Double.isFinite(vx.getX()) && Double.isFinite(vx.getY()));
+            final double dx = vx.getX() - myriel.getX();
+            final double dy = vx.getY() - myriel.getY();
+            assertTrue(Math.sqrt(dx*dx + dy*dy)<200, "new vertex near its neighbour");
+        }
+    }
+
+    @Test(description="Vertices added to added vertices are placed next to them")
+    public void addVerticesTwice() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final Simulation sim = layout(graph);
+        final IVertex myriel = graph.vxs.get(0);
+        final V a = v(Double.NaN, Double.NaN);
+        sim.addVertices(List.of(a), List.of(l(myriel, a)));
+        final V b = v(Double.NaN, Double.NaN);
+        final V c = v(Double.NaN, Double.NaN);
+        sim.addVertices(List.of(b, c), List.of(l(a, b), l(b, c)));
+
+        assertEquals(c.getIndex(), graph.vxs.size()-1);
+        for(final IVertex vx : List.of(b, c)) {
+            assertTrue(Double.isFinite(vx.getX()) && Double.isFinite(vx.getY()));
+            final double dx = vx.getX() - a.getX();
+            final double dy = vx.getY() - a.getY();
+            assertTrue(Math.sqrt(dx*dx + dy*dy)<200, "new vertex near its neighbour");
+        }
+    }
+
+    @Test(description="Incremental layout keeps the settings and per-vertex state of the forces")
+    public void addVerticesKeepsForces() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<4; i++) {
+            vxs.add(v(10*i, 0));
+            if(i>0) {
+                links.add(l(vxs.get(i-1), vxs.get(i)));
+            }
+        }
+
+        final Simulation sim = new Simulation(vxs, links);
+        final ForceManyBody many = new ForceManyBody().setTheta(0.5).setDistanceMax(100);
+        final ForceX forceX = new ForceX();
+        final ForceRadial radial = new ForceRadial(50, 0, 0);
+        sim.addForce("link", new ForceLink(links));
+        sim.addForce("charge", many);
+        sim.addForce("x", forceX);
+        sim.addForce("radial", radial);
+        radial.setRadius(2, 80);
+        sim.step();
+
+        final V added = v(Double.NaN, Double.NaN);
+        sim.addVertices(List.of(added), List.of(l(vxs.get(3), added)));
+
+        assertEquals(many.getTheta(), 0.5, 1e-12);
+        assertEquals(many.getDistanceMax(), 100, 1e-12);
+        assertEquals(radial.getRadius(2), 80, 0);
+        assertEquals(radial.getRadius(4), 50, 0);
+
+        // ForceX still pulls an existing vertex towards its original x.
+        //
+        final IVertex vx = vxs.get(2);
+        vx.setXVelocity(0);
+        forceX.force(1);
+        assertEquals(vx.getXVelocity(), (20 - vx.getX()) * forceX.getStrength(), 1e-9);
+    }
+
+    @Test(description="Local relaxation only moves vertices near the seeds")
+    public void tickLocal() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final Simulation sim = layout(graph);
+        final int n = graph.vxs.size();
+
+        // Drag Valjean.
+        //
+        final IVertex valjean = graph.vxs.get(11);
+        valjean.setX(valjean.getX() + 50);
+        valjean.setY(valjean.getY() + 50);
+        final double[] before = positions(graph.vxs);
+
+        final double radius = 40;
+        final boolean[] near = new boolean[n];
+        graph.links.forEach(link -> {
+            if(link.getSource()==valjean) {
+                near[link.getTarget().getIndex()] = true;
+            } else if(link.getTarget()==valjean) {
+                near[link.getSource().getIndex()] = true;
+            }
+        });
+        for(int i=0; i<n; i++) {
+            final double dx = before[2*i] - valjean.getX();
+            final double dy = before[2*i+1] - valjean.getY();
+            near[i] |= Math.sqrt(dx*dx + dy*dy)<=radius;
+        }
+
+        sim.setAlpha(0.3);
+        for(int frame=0; frame<10; frame++) {
+            sim.tickLocal(List.of(valjean), radius, 1);
+        }
+
+        final double[] after = positions(graph.vxs);
+        int moved = 0;
+        for(int i=0; i<n; i++) {
+            if(i==11 || !near[i]) {
+                assertEquals(after[2*i], before[2*i], 0, "x of " + i);
+                assertEquals(after[2*i+1], before[2*i+1], 0, "y of " + i);
+            } else if(after[2*i]!=before[2*i] || after[2*i+1]!=before[2*i+1]) {
+                moved++;
+            }
+        }
+
+        assertTrue(moved>0, "the region relaxed");
+    }
+
+    @Test(description="full ticks keep the spatial index of tickLocal() up to date")
+    public void tickLocalAfterFullTicks() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final Simulation sim = layout(graph);
+        final IVertex valjean = graph.vxs.get(11);
+        sim.setAlpha(0.3);
+        sim.tickLocal(List.of(valjean), 40, 1);
+        final D3QuadTree spatial = sim.getSpatial();
+
+        sim.tick(5);
+        assertSame(sim.getSpatial(), spatial);
+        for(final IVertex vx : graph.vxs) {
+            final boolean found = spatial.findAll(vx.getX(), vx.getY(), 1e-9).stream()
+                    .anyMatch(p -> p.getX()==vx.getX() && p.getY()==vx.getY());
+            assertTrue(found, "vertex " + vx.getIndex() + " is indexed where it is");
+        }
+
+        sim.tickLocal(List.of(valjean), 40, 1);
+        assertSame(sim.getSpatial(), spatial);
+    }
+
+    @Test(description="Converged vertices are frozen, and woken by a reheat")
+    public void freeze() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final int n = graph.vxs.size();
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("charge", new ForceManyBody());
+        sim.setFreezeThreshold(0.05);
+        sim.step();
+
+        assertTrue(sim.getAwake().size()<n, "some vertices froze");
+
+        double length = 0;
+        for(final ILink link : graph.links) {
+            final double dx = link.getSource().getX() - link.getTarget().getX();
+            final double dy = link.getSource().getY() - link.getTarget().getY();
+            length += Math.sqrt(dx*dx + dy*dy);
+        }
+        length /= graph.links.size();
+        assertTrue(length>10 && length<100, "mean link length " + length);
+
+        sim.setAlpha(0.3);
+        assertEquals(sim.getAwake().size(), n);
+    }
+
+    @Test(description="Freezing keeps the centring, and raising the alpha target wakes every vertex")
+    public void freezeCentre() {
+        final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final int n = graph.vxs.size();
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("charge", new ForceManyBody());
+        sim.addForce("centre", new ForceCentre(200, 100));
+        sim.setFreezeThreshold(0.05);
+        sim.step();
+
+        double cx = 0;
+        double cy = 0;
+        for(final IVertex vx : graph.vxs) {
+            cx += vx.getX();
+            cy += vx.getY();
+        }
+        assertEquals(cx/n, 200, 20);
+        assertEquals(cy/n, 100, 20);
+
+        assertTrue(sim.getAwake().size()<n, "some vertices froze");
+        sim.setAlphaTarget(0.3);
+        assertEquals(sim.getAwake().size(), n);
+    }
+
+    @Test(description="A 3D layout is centred while every vertex is awake")
+    public void freezeCentre3D() {
+        final TGraph graph = TestUtil.to3D(TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt")));
+        final int n = graph.vxs.size();
+        final Simulation sim = new Simulation(graph.vxs, graph.links, 3);
+        sim.addForce("link", new ForceLink3D(graph.links));
+        sim.addForce("charge", new ForceManyBody3D());
+        sim.addForce("centre", new ForceCentre3D(200, 100, 50));
+        sim.setFreezeThreshold(0.05);
+        sim.step();
+
+        double cx = 0;
+        double cy = 0;
+        double cz = 0;
+        for(final IVertex vx : graph.vxs) {
+            cx += vx.getX();
+            cy += vx.getY();
+            cz += ((IVertex3)vx).getZ();
+        }
+        assertEquals(cx/n, 200, 20);
+        assertEquals(cy/n, 100, 20);
+        assertEquals(cz/n, 50, 20);
+    }
+
+    @Test(description="Concurrent forces give the same velocities as sequential forces")
+    public void concurrent() {
+        final TGraph seqGraph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final TGraph conGraph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+        final List<Simulation> sims = List.of(new Simulation(seqGraph.vxs, seqGraph.links), new Simulation(conGraph.vxs, conGraph.links));
+        sims.get(0).addForce("link", new ForceLink(seqGraph.links));
+        sims.get(0).addForce("charge", new ForceManyBody());
+        sims.get(0).addForce("centre", new ForceCentre(0, 0));
+        sims.get(1).addForce("link", new ForceLink(conGraph.links));
+        sims.get(1).addForce("charge", new ForceManyBody());
+        sims.get(1).addForce("centre", new ForceCentre(0, 0));
+        sims.get(1).setConcurrent(true);
+
+        for(int k=0; k<5; k++) {
+            sims.forEach(sim -> sim.tick(1));
+        }
+
+        final double[] seq = positions(seqGraph.vxs);
+        final double[] con = positions(conGraph.vxs);
+        for(int i=0; i<seq.length; i++) {
+            assertEquals(con[i], seq[i], 1e-9, "position " + i);
+        }
+    }
+
+    @Test(description="A 3D layout uses all three dimensions")
+    public void threeDimensions() {
+        final TGraph graph = TestUtil.to3D(TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt")));
+        final Simulation sim = new Simulation(graph.vxs, graph.links, 3);
+        sim.addForce("link", new ForceLink3D(graph.links));
+        sim.addForce("charge", new ForceManyBody3D());
+        sim.addForce("centre", new ForceCentre3D(0, 0, 0));
+        sim.step();
+
+        double length = 0;
+        for(final ILink link : graph.links) {
+            final IVertex3 s = (IVertex3)link.getSource();
+            final IVertex3 t = (IVertex3)link.getTarget();
+            length += Math.sqrt(Math.pow(s.getX()-t.getX(), 2) + Math.pow(s.getY()-t.getY(), 2) + Math.pow(s.getZ()-t.getZ(), 2));
+        }
+        length /= graph.links.size();
+        assertTrue(length>10 && length<100, "mean link length " + length);
+
+        double sx = 0;
+        double sz = 0;
+        for(final IVertex vx : graph.vxs) {
+            sx += vx.getX()*vx.getX();
+            sz += ((IVertex3)vx).getZ()*((IVertex3)vx).getZ();
+        }
+        assertTrue(sz>sx/4 && sz<sx*4, "z is spread like x");
+    }
+
+    @Test(description="Adaptive integration reaches the same energy in fewer ticks")
+    public void adaptive() {
+        final int[] ticks = new int[2];
+        final double[] energies = new double[2];
+        for(int k=0; k<2; k++) {
+            final TGraph graph = TestUtil.readGraph(getClass().getResourceAsStream("miserables.txt"));
+            final Simulation sim = new Simulation(graph.vxs, graph.links).setAdaptive(k==1);
+            sim.addForce("link", new ForceLink(graph.links));
+            sim.addForce("charge", new ForceManyBody());
+            while(sim.getAlpha()>=sim.getAlphaMin()) {
+                sim.tick(1);
+                ticks[k]++;
+            }
+            energies[k] = energy(graph);
+        }
+
+        assertTrue(ticks[1]<0.75*ticks[0], String.format("%d adaptive ticks, %d ticks", ticks[1], ticks[0]));
+        assertTrue(energies[1]<energies[0] + 0.01*Math.abs(energies[0]), String.format("adaptive energy %s, energy %s", energies[1], energies[0]));
+    }
+
+    @Test(description="Adaptive integration stops early, and runs again after a reheat")
+    public void adaptiveReheat() {
+        final TGraph graph = TestUtil.buildGridGraph(10, 10);
+        final Simulation sim = new Simulation(graph.vxs, graph.links).setAdaptive(true);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("charge", new ForceManyBody());
+        int ticks = 0;
+        while(sim.getAlpha()>=sim.getAlphaMin()) {
+            sim.tick(1);
+            ticks++;
+        }
+        assertTrue(ticks<300, ticks + " ticks");
+        assertEquals(sim.getAlpha(), 0, 0);
+
+        sim.setAlpha(0.1);
+        sim.tick(1);
+        assertTrue(sim.getAlpha()>sim.getAlphaMin());
+    }
+
+    @Test(description="A restricted tick doesn't stop an adaptive layout")
+    public void adaptiveLocal() {
+        // The seed has no links and no vertex is within the radius, so
+        // the tick moves no vertices.
+        //
+        final TGraph graph = TestUtil.buildGridGraph(10, 10);
+        final Simulation sim = new Simulation(graph.vxs, List.of()).setAdaptive(true);
+        sim.addForce("charge", new ForceManyBody());
+        sim.tick(1);
+        final double alpha = sim.getAlpha();
+
+        sim.tickLocal(List.of(graph.vxs.get(0)), 1e-6, 1);
+        assertTrue(sim.getAlpha()>0.9*alpha, "alpha " + sim.getAlpha());
+    }
+}
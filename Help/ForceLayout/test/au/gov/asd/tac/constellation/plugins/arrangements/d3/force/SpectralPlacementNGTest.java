@@ -0,0 +1,167 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.ejml.data.DMatrixRMaj;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class SpectralPlacementNGTest {
+    @Test(description="a ring is placed in order around a circle")
+    public void ring() {
+        final int n = 60;
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<n; i++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+        }
+        for(int i=0; i<n; i++) {
+            links.add(l(vxs.get(i), vxs.get((i+1)%n)));
+        }
+
+        final SpectralPlacement placement = new SpectralPlacement(vxs, links);
+        placement.place();
+        assertTrue(placement.getIterations()<placement.getMaxIterations());
+        assertTrue(placement.isConverged());
+
+        // The eigenvectors are a cosine and a sine, so every vertex is the
+        // same distance from the centre, and the angles go round in one direction.
+        //
+        double cx = 0;
+        double cy = 0;
+        for(final IVertex vx : vxs) {
+            cx += vx.getX() / n;
+            cy += vx.getY() / n;
+        }
+        final double radius = 30 / (2 * Math.sin(Math.PI/n));
+        double turn = 0;
+        for(int i=0; i<n; i++) {
+            final IVertex a = vxs.get(i);
+            final IVertex b = vxs.get((i+1)%n);
+            assertEquals(Math.hypot(a.getX()-cx, a.getY()-cy), radius, 0.05*radius);
+            double angle = Math.atan2(b.getY()-cy, b.getX()-cx) - Math.atan2(a.getY()-cy, a.getX()-cx);
+            angle = Math.IEEEremainder(angle, 2*Math.PI);
+            assertTrue(Math.abs(angle)<4*Math.PI/n, String.format("vertex %d", i));
+            turn += angle;
+        }
+        assertEquals(Math.abs(turn), 2*Math.PI, 1e-6);
+    }
+
+    @Test(description="a grid is placed untangled with the mean link length as the scale")
+    public void grid() {
+        final int size = 40;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        new SpectralPlacement(graph.vxs, graph.links).setScale(20).place();
+
+        assertEquals(TestUtil.meanLinkLength(graph), 20, 2);
+        final double diagonal = 20 * (size-1) * Math.sqrt(2);
+        assertTrue(TestUtil.distance(graph.vxs.get(0), graph.vxs.get(size*size-1))>0.8*diagonal);
+        assertTrue(TestUtil.distance(graph.vxs.get(size-1), graph.vxs.get(size*(size-1)))>0.8*diagonal);
+    }
+
+    @Test(description="a simulation started from a spectral placement is cooled and stays untangled")
+    public void simulation() {
+        final int size = 40;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("many_body", new ForceManyBody());
+        sim.placeSpectral(30);
+        assertEquals(sim.getAlpha(), sim.getPlacementAlpha(), 0);
+        sim.step();
+
+        final double diagonal = TestUtil.meanLinkLength(graph) * (size-1) * Math.sqrt(2);
+        assertTrue(TestUtil.distance(graph.vxs.get(0), graph.vxs.get(size*size-1))>0.5*diagonal);
+        assertTrue(TestUtil.distance(graph.vxs.get(size-1), graph.vxs.get(size*(size-1)))>0.5*diagonal);
+    }
+
+    @Test(description="tiny graphs and graphs without links are placed")
+    public void degenerate() {
+        for(int n=0; n<6; n++) {
+            final List<IVertex> vxs = new ArrayList<>();
+            final List<ILink> links = new ArrayList<>();
+            for(int i=0; i<n; i++) {
+                vxs.add(v(Double.NaN, Double.NaN));
+                if(i>0 && n%2==0) {
+                    links.add(l(vxs.get(i-1), vxs.get(i)));
+                }
+            }
+
+            new SpectralPlacement(vxs, links).place();
+            for(final IVertex vx : vxs) {
+                assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()), String.format("%d vertices", n));
+            }
+        }
+    }
+
+    @Test(description="a placement that runs out of iterations isn't converged")
+    public void notConverged() {
+        final TGraph graph = TestUtil.buildGridGraph(40, 40);
+        final SpectralPlacement placement = new SpectralPlacement(graph.vxs, graph.links).setMaxIterations(2);
+        placement.place();
+        assertEquals(placement.getIterations(), 2);
+        assertFalse(placement.isConverged());
+        for(final IVertex vx : graph.vxs) {
+            assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()));
+        }
+    }
+
+    @Test(description="a current vector that collapses is replaced, and other columns are dropped")
+    public void collapsed() {
+        final int n = 50;
+        final double[] degrees = new double[n];
+        final DMatrixRMaj s = new DMatrixRMaj(n, 4);
+        for(int i=0; i<n; i++) {
+            degrees[i] = 1 + i%3;
+            s.set(i, 0, i);
+            s.set(i, 1, 2*i);
+            s.set(i, 2, i*i);
+            s.set(i, 3, 7);
+        }
+
+        // The second column is a multiple of the first, and the fourth is constant.
+        //
+        final DMatrixRMaj basis = SpectralPlacement.orthonormalise(s, degrees, 2, new SplittableRandom(1));
+        assertEquals(basis.numCols, 3);
+        for(int a=0; a<3; a++) {
+            double mean = 0;
+            for(int i=0; i<n; i++) {
+                mean += degrees[i] * basis.get(i, a);
+            }
+            assertEquals(mean, 0, 1e-9);
+
+            for(int b=0; b<=a; b++) {
+                double dot = 0;
+                for(int i=0; i<n; i++) {
+                    dot += degrees[i] * basis.get(i, a) * basis.get(i, b);
+                }
+                assertEquals(dot, a==b ? 1 : 0, 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class StressLayoutNGTest {
+    /**
+     * The exact stress of a layout, with all pairs distances by breadth first search.
+     */
+    private static double stress(final TGraph graph, final double length) {
+        final int n = graph.vxs.size();
+        for(int i=0; i<n; i++) {
+            graph.vxs.get(i).setIndex(i);
+        }
+        final Adjacency adjacency = Adjacency.build(n, graph.links);
+
+        double stress = 0;
+        final int[] distances = new int[n];
+        final int[] queue = new int[n];
+        for(int s=0; s<n; s++) {
+            Arrays.fill(distances, -1);
+            int head = 0;
+            int tail = 0;
+            distances[s] = 0;
+            queue[tail++] = s;
+            while(head<tail) {
+                final int v = queue[head++];
+                for(int a=adjacency.offsets[v]; a<adjacency.offsets[v+1]; a++) {
+                    final int u = adjacency.neighbours[a];
+                    if(distances[u]<0) {
+                        distances[u] = distances[v] + 1;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+
+            for(int t=s+1; t<n; t++) {
+                final double d = distances[t] * length;
+                final double e = d - TestUtil.distance(graph.vxs.get(s), graph.vxs.get(t));
+                stress += e * e / (d * d);
+            }
+        }
+
+        return stress;
+    }
+
+    @Test(description="a path is laid out straight")
+    public void path() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<200; i++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+            if(i>0) {
+                links.add(l(vxs.get(i-1), vxs.get(i)));
+            }
+        }
+
+        new StressLayout(vxs, links).layout();
+
+        assertEquals(TestUtil.distance(vxs.get(0), vxs.get(199)), 199*30, 0.05*199*30);
+        for(int i=0; i<vxs.size(); i++) {
+            assertEquals(vxs.get(i).getIndex(), i);
+        }
+    }
+
+    @Test(description="the layout has less stress than the Pivot MDS placement it starts from")
+    public void stress() {
+        final int size = 20;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        for(int i=size; i<size*size; i+=size+1) {
+            graph.links.add(l(graph.vxs.get(i-size), graph.vxs.get(i)));
+        }
+
+        new PivotMDS(graph.vxs, graph.links).place();
+        final double before = stress(graph, 30);
+        new StressLayout(graph.vxs, graph.links).layout();
+        final double after = stress(graph, 30);
+
+        assertTrue(after<0.75*before, String.format("stress %s after %s before", after, before));
+    }
+
+    @Test(description="a grid is untangled with its links near the link distance")
+    public void grid() {
+        final int size = 40;
+        final TGraph graph = TestUtil.buildGridGraph(size, size);
+        new StressLayout(graph.vxs, graph.links).setDistance(20).layout();
+
+        // The graph distances across a grid are Manhattan distances, so
+        // minimising stress stretches the links a little.
+        //
+        double sum = 0;
+        for(final ILink link : graph.links) {
+            sum += TestUtil.distance(link.getSource(), link.getTarget());
+        }
+        final double length = sum / graph.links.size();
+        assertTrue(length>20 && length<30, String.format("mean link length %s", length));
+
+        final double diagonal = length * (size-1) * Math.sqrt(2);
+        assertTrue(TestUtil.distance(graph.vxs.get(0), graph.vxs.get(size*size-1))>0.8*diagonal);
+        assertTrue(TestUtil.distance(graph.vxs.get(size-1), graph.vxs.get(size*(size-1)))>0.8*diagonal);
+    }
+
+    @Test(description="the parallel layout is the same for the same seed")
+    public void reproducible() {
+        final int size = 70;
+        final double[][] positions = new double[2][];
+        for(int k=0; k<2; k++) {
+            final TGraph graph = TestUtil.buildGridGraph(size, size);
+            new StressLayout(graph.vxs, graph.links).setSeed(3).layout();
+            positions[k] = new double[2*size*size];
+            for(int i=0; i<size*size; i++) {
+                positions[k][2*i] = graph.vxs.get(i).getX();
+                positions[k][2*i+1] = graph.vxs.get(i).getY();
+            }
+        }
+
+        assertTrue(size*size>Util.PARALLEL_THRESHOLD);
+        for(int i=0; i<positions[0].length; i++) {
+            assertEquals(positions[1][i], positions[0][i], 0, "coordinate " + i);
+        }
+    }
+
+    @Test(description="a layout without stress isn't moved")
+    public void positioned() {
+        final List<IVertex> vxs = List.of(v(0, 0), v(30, 0), v(60, 0));
+        final List<ILink> links = List.of(l(vxs.get(0), vxs.get(1)), l(vxs.get(1), vxs.get(2)));
+
+        new StressLayout(vxs, links).layout();
+
+        assertEquals(vxs.get(0).getX(), 0, 1e-9);
+        assertEquals(vxs.get(1).getX(), 30, 1e-9);
+        assertEquals(vxs.get(2).getX(), 60, 1e-9);
+        for(int i=0; i<3; i++) {
+            assertEquals(vxs.get(i).getY(), 0, 1e-9);
+        }
+    }
+}
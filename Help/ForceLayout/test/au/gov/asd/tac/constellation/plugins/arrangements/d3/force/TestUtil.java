@@ -103,6 +103,165 @@ public class TestUtil {
         return new TGraph(vxs, links);
     }
 
+    /**
+     * A graph where most links go to a few hubs.
+     * <p>
+     * Every vertex that isn't a hub is linked to a random hub and to a random
+     * earlier vertex.
+     *
+     * @param n The number of vertices.
+     * @param hubs The number of hubs.
+     * @param seed The random seed.
+     *
+     * @return A graph.
+     */
+    public static TGraph buildHubGraph(final int n, final int hubs, final long seed) {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+
+        final Random r = new Random(seed);
+        for(int i=0; i<n; i++) {
+            final V vx = v(Double.NaN, Double.NaN);
+            vx.setLabel(String.format("v%d", i));
+            vxs.add(vx);
+
+            if(i>=hubs) {
+                links.add(l(vxs.get(r.nextInt(hubs)), vx));
+                links.add(l(vxs.get(hubs + r.nextInt(i-hubs+1)), vx));
+            }
+        }
+
+        return new TGraph(vxs, links);
+    }
+
+    /**
+     * A rectangular grid of vertices, each linked to its right and lower neighbours.
+     * <p>
+     * Vertex y*width+x is at column x and row y.
+     *
+     * @param width The number of columns.
+     * @param height The number of rows.
+     *
+     * @return A graph.
+     */
+    public static TGraph buildGridGraph(final int width, final int height) {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int y=0; y<height; y++) {
+            for(int x=0; x<width; x++) {
+                final V vx = v(Double.NaN, Double.NaN);
+                vx.setLabel(String.format("v%d-%d", x, y));
+                vxs.add(vx);
+
+                if(x>0) {
+                    links.add(l(vxs.get(vxs.size()-2), vx));
+                }
+                if(y>0) {
+                    links.add(l(vxs.get(vxs.size()-1-width), vx));
+                }
+            }
+        }
+
+        return new TGraph(vxs, links);
+    }
+
+    /**
+     * A copy of a graph with three-dimensional vertices.
+     *
+     * @param graph A graph.
+     *
+     * @return The same graph with V3 vertices that have no position.
+     */
+    public static TGraph to3D(final TGraph graph) {
+        final Map<IVertex, IVertex> map = new HashMap<>();
+        final List<IVertex> vxs = new ArrayList<>();
+        graph.vxs.forEach(vx -> {
+            final V3 vx3 = new V3(Double.NaN, Double.NaN, Double.NaN);
+            map.put(vx, vx3);
+            vxs.add(vx3);
+        });
+
+        final List<ILink> links = new ArrayList<>();
+        graph.links.forEach(link -> links.add(l(map.get(link.getSource()), map.get(link.getTarget()))));
+
+        return new TGraph(vxs, links);
+    }
+
+    /**
+     * Vertices at random positions in a square centred on the origin.
+     *
+     * @param n The number of vertices.
+     * @param size The side of the square.
+     * @param seed The random seed.
+     *
+     * @return Vertices with indices 0 to n-1 and radius 1.
+     */
+    public static List<IVertex> scatter(final int n, final double size, final long seed) {
+        return scatter(n, size, 1, seed);
+    }
+
+    /**
+     * Vertices of one radius at random positions in a square centred on the origin.
+     *
+     * @param n The number of vertices.
+     * @param size The side of the square.
+     * @param radius The radius of each vertex.
+     * @param seed The random seed.
+     *
+     * @return Vertices with indices 0 to n-1.
+     */
+    public static List<IVertex> scatter(final int n, final double size, final double radius, final long seed) {
+        final Random random = new Random(seed);
+        final List<IVertex> vxs = new ArrayList<>();
+        for(int i=0; i<n; i++) {
+            final V vx = new V((random.nextDouble() - 0.5) * size, (random.nextDouble() - 0.5) * size, radius);
+            vx.setIndex(i);
+            vxs.add(vx);
+        }
+
+        return vxs;
+    }
+
+    /**
+     * Three-dimensional vertices at random positions in a cube centred on the origin.
+     *
+     * @param n The number of vertices.
+     * @param size The side of the cube.
+     * @param seed The random seed.
+     *
+     * @return V3 vertices with indices 0 to n-1.
+     */
+    public static List<IVertex> scatter3D(final int n, final double size, final long seed) {
+        final Random random = new Random(seed);
+        final List<IVertex> vxs = new ArrayList<>();
+        for(int i=0; i<n; i++) {
+            final V3 vx = new V3((random.nextDouble() - 0.5) * size, (random.nextDouble() - 0.5) * size, (random.nextDouble() - 0.5) * size);
+            vx.setIndex(i);
+            vxs.add(vx);
+        }
+
+        return vxs;
+    }
+
+    /**
+     * The distance between two vertices in the plane.
+     */
+    public static double distance(final IVertex a, final IVertex b) {
+        return Math.hypot(b.getX() - a.getX(), b.getY() - a.getY());
+    }
+
+    /**
+     * The mean length of the links of a graph in the plane.
+     */
+    public static double meanLinkLength(final TGraph graph) {
+        double sum = 0;
+        for(final ILink link : graph.links) {
+            sum += distance(link.getSource(), link.getTarget());
+        }
+
+        return sum / graph.links.size();
+    }
+
     static void writePointsXY(final TGraph graph, final String fnam, final boolean includeLinks) throws FileNotFoundException {
         try(final PrintWriter out = new PrintWriter(fnam)) {
             graph.vxs.forEach(vx -> {
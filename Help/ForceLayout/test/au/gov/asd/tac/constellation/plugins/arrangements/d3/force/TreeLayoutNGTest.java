@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.L.l;
+import static au.gov.asd.tac.constellation.plugins.arrangements.d3.force.V.v;
+import au.gov.asd.tac.constellation.plugins.arrangements.d3.force.TestUtil.TGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class TreeLayoutNGTest {
+    /**
+     * Which side of the line through a and b is c on?
+     */
+    private static double side(final IVertex a, final IVertex b, final IVertex c) {
+        return (b.getX()-a.getX())*(c.getY()-a.getY()) - (b.getY()-a.getY())*(c.getX()-a.getX());
+    }
+
+    /**
+     * Do two links that don't share a vertex cross?
+     */
+    private static boolean cross(final ILink p, final ILink q) {
+        return side(p.getSource(), p.getTarget(), q.getSource())*side(p.getSource(), p.getTarget(), q.getTarget())<0
+                && side(q.getSource(), q.getTarget(), p.getSource())*side(q.getSource(), q.getTarget(), p.getTarget())<0;
+    }
+
+    /**
+     * A random tree where each vertex is linked to an earlier vertex.
+     */
+    private static TGraph randomTree(final int n, final Random random) {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<n; i++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+            if(i>0) {
+                links.add(l(vxs.get(random.nextInt(i)), vxs.get(i)));
+            }
+        }
+
+        return new TGraph(vxs, links);
+    }
+
+    @Test(description="forests are detected by their links")
+    public void isForest() {
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        assertTrue(TreeLayout.isForest(vxs, links));
+
+        for(int i=0; i<6; i++) {
+            vxs.add(v(0, 0));
+        }
+        assertTrue(TreeLayout.isForest(vxs, links));
+
+        links.add(l(vxs.get(0), vxs.get(1)));
+        links.add(l(vxs.get(1), vxs.get(2)));
+        links.add(l(vxs.get(3), vxs.get(4)));
+        assertTrue(TreeLayout.isForest(vxs, links));
+
+        links.add(l(vxs.get(2), vxs.get(0)));
+        assertFalse(TreeLayout.isForest(vxs, links));
+
+        links.set(3, l(vxs.get(4), vxs.get(3)));
+        assertFalse(TreeLayout.isForest(vxs, links), "repeated link");
+
+        links.set(3, l(vxs.get(5), vxs.get(5)));
+        assertFalse(TreeLayout.isForest(vxs, links), "loop");
+    }
+
+    @Test(description="a tree is laid out without crossings")
+    public void noCrossings() {
+        final Random random = new Random(1);
+        for(int k=0; k<5; k++) {
+            final TGraph graph = randomTree(300, random);
+            final TreeLayout tree = new TreeLayout(graph.vxs, graph.links).layout();
+            assertEquals(tree.getTrees(), 1);
+
+            for(final ILink link : graph.links) {
+                assertTrue(TestUtil.distance(link.getSource(), link.getTarget())>=30-1e-9);
+            }
+
+            for(int i=0; i<graph.links.size(); i++) {
+                for(int j=i+1; j<graph.links.size(); j++) {
+                    final ILink p = graph.links.get(i);
+                    final ILink q = graph.links.get(j);
+                    if(p.getSource()!=q.getSource() && p.getSource()!=q.getTarget() && p.getTarget()!=q.getSource() && p.getTarget()!=q.getTarget()) {
+                        assertFalse(cross(p, q), String.format("links %d and %d cross", i, j));
+                    }
+                }
+            }
+            for(int i=0; i<graph.vxs.size(); i++) {
+                assertEquals(graph.vxs.get(i).getIndex(), i);
+            }
+        }
+    }
+
+    @Test(description="a tree is rooted at its centre")
+    public void centre() {
+        // A path is centred on its middle vertex.
+        //
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        for(int i=0; i<9; i++) {
+            vxs.add(v(Double.NaN, Double.NaN));
+            if(i>0) {
+                links.add(l(vxs.get(i-1), vxs.get(i)));
+            }
+        }
+
+        new TreeLayout(vxs, links).layout();
+        assertEquals(vxs.get(4).getX(), 0, 1e-9);
+        assertEquals(vxs.get(4).getY(), 0, 1e-9);
+        assertEquals(Math.hypot(vxs.get(0).getX(), vxs.get(0).getY()), 120, 1e-9);
+        assertEquals(Math.hypot(vxs.get(8).getX(), vxs.get(8).getY()), 120, 1e-9);
+    }
+
+    @Test(description="the trees of a forest are packed apart")
+    public void forest() {
+        final Random random = new Random(2);
+        final List<IVertex> vxs = new ArrayList<>();
+        final List<ILink> links = new ArrayList<>();
+        final List<Integer> trees = new ArrayList<>();
+        for(int t=0; t<12; t++) {
+            final TGraph graph = randomTree(1 + random.nextInt(40), random);
+            vxs.addAll(graph.vxs);
+            links.addAll(graph.links);
+            for(int i=0; i<graph.vxs.size(); i++) {
+                trees.add(t);
+            }
+        }
+
+        final TreeLayout tree = new TreeLayout(vxs, links).setPadding(10).layout();
+        assertEquals(tree.getTrees(), 12);
+        for(int i=0; i<vxs.size(); i++) {
+            assertFalse(Double.isNaN(vxs.get(i).getX()) || Double.isNaN(vxs.get(i).getY()));
+            for(int j=i+1; j<vxs.size(); j++) {
+                if(!trees.get(i).equals(trees.get(j))) {
+                    assertTrue(TestUtil.distance(vxs.get(i), vxs.get(j))>=10-1e-6, String.format("vertices %d and %d", i, j));
+                }
+            }
+        }
+    }
+
+    @Test(description="a graph with a cycle isn't laid out")
+    public void notForest() {
+        final TGraph graph = randomTree(10, new Random(3));
+        graph.links.add(l(graph.vxs.get(9), graph.vxs.get(0)));
+        try {
+            new TreeLayout(graph.vxs, graph.links).layout();
+            assertTrue(false, "expected IllegalStateException");
+        } catch(final IllegalStateException ex) {
+            assertTrue(Double.isNaN(graph.vxs.get(0).getX()));
+        }
+    }
+
+    @Test(description="a tree layout is refined by a short simulation")
+    public void simulation() {
+        final TGraph graph = TestUtil.buildTreeGraph(200, 3);
+        final Simulation sim = new Simulation(graph.vxs, graph.links);
+        sim.addForce("link", new ForceLink(graph.links));
+        sim.addForce("many_body", new ForceManyBody());
+        sim.placeTree(30);
+        assertEquals(sim.getAlpha(), sim.getPlacementAlpha(), 0);
+        sim.step();
+
+        final double length = TestUtil.meanLinkLength(graph);
+        assertTrue(length>10 && length<100, String.format("mean link length %s", length));
+        for(final IVertex vx : graph.vxs) {
+            assertFalse(Double.isNaN(vx.getX()) || Double.isNaN(vx.getY()));
+        }
+    }
+}
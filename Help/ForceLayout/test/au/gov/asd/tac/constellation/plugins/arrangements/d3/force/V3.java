@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.force;
+
+/**
+ * An implementation of IVertex3 sufficient for unit testing.
+ *
+ * @author algol
+ */
+public class V3 extends V implements IVertex3 {
+    private double z;
+    private double zVelocity;
+
+    public V3(final double x, final double y, final double z) {
+        super(x, y);
+        this.z = z;
+        zVelocity = 0;
+    }
+
+    @Override
+    public double getZ() {
+        return z;
+    }
+
+    @Override
+    public void setZ(final double z) {
+        this.z = z;
+    }
+
+    @Override
+    public double getZVelocity() {
+        return zVelocity;
+    }
+
+    @Override
+    public void setZVelocity(final double zv) {
+        this.zVelocity = zv;
+    }
+
+    public static V3 v3(final double x, final double y, final double z) {
+        return new V3(x, y, z);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s,%s,%s]", getX(), getY(), z);
+    }
+}
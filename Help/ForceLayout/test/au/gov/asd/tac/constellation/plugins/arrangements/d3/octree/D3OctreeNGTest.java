@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010-2020 Australian Signals Directorate
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package au.gov.asd.tac.constellation.plugins.arrangements.d3.octree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author algol
+ */
+public class D3OctreeNGTest {
+    private static List<P3> random(final int n, final long seed) {
+        final Random random = new Random(seed);
+        final List<P3> points = new ArrayList<>();
+        for(int i=0; i<n; i++) {
+            points.add(new P3(random.nextDouble()*100, random.nextDouble()*100, random.nextDouble()*100));
+        }
+
+        return points;
+    }
+
+    private static double distance2(final IPoint3 p, final double x, final double y, final double z) {
+        final double dx = p.getX() - x;
+        final double dy = p.getY() - y;
+        final double dz = p.getZ() - z;
+
+        return dx*dx + dy*dy + dz*dz;
+    }
+
+    private static String extent(final D3Octree tree) {
+        final double[] e = tree.getExtent();
+
+        return String.format("[%s,%s,%s,%s,%s,%s]", e[0], e[1], e[2], e[3], e[4], e[5]);
+    }
+
+    @Test(description="cover(x, y, z) repeatedly doubles the extent")
+    public void cover() {
+        assertEquals(extent(new D3Octree().cover(0, 0, 0)), "[0.0,0.0,0.0,1.0,1.0,1.0]");
+        assertEquals(extent(new D3Octree().cover(0, 0, 0).cover(2, 2, 2)), "[0.0,0.0,0.0,4.0,4.0,4.0]");
+        assertEquals(extent(new D3Octree().cover(0, 0, 0).cover(2, 2, 2).cover(-1, 1, -3)), "[-4.0,0.0,-4.0,4.0,8.0,4.0]");
+        assertNull(new D3Octree().cover(Double.NaN, 0, 0).getExtent());
+    }
+
+    @Test(description="cover(x, y, z) wraps the root node if it has children")
+    public void coverWrapsRoot() {
+        final D3Octree tree = new D3Octree().add(new P3(0, 0, 0)).add(new P3(2, 2, 2));
+        assertEquals(tree.getRoot().toString(), "[{[0.0,0.0,0.0]},,,,,,,{[2.0,2.0,2.0]}]");
+
+        tree.cover(-1, 1, 1);
+        assertEquals(tree.getRoot().toString(), "[,[{[0.0,0.0,0.0]},,,,,,,{[2.0,2.0,2.0]}],,,,,,]");
+        assertEquals(tree.find(0.1, 0.1, 0.1).toString(), "[0.0,0.0,0.0]");
+        assertEquals(tree.find(1.9, 1.9, 1.9).toString(), "[2.0,2.0,2.0]");
+    }
+
+    @Test(description="add(datum) keeps coincident points in one leaf")
+    public void coincident() {
+        final P3 a = new P3(1, 2, 3);
+        final P3 b = new P3(1, 2, 3);
+        final D3Octree tree = new D3Octree().add(List.of(a, b, new P3(5, 5, 5)));
+
+        assertEquals(tree.size(), 3);
+        assertEquals(tree.findAll(1, 2, 3, 0).size(), 2);
+    }
+
+    @Test(description="add(data) ignores points with NaN coordinates")
+    public void addNaN() {
+        final D3Octree tree = new D3Octree().add(List.of(new P3(1, 2, Double.NaN), new P3(1, 2, 3)));
+
+        assertEquals(tree.size(), 1);
+        assertEquals(extent(tree), "[1.0,2.0,3.0,2.0,3.0,4.0]");
+    }
+
+    @Test(description="find(x, y, z, radius) returns the closest point within the radius")
+    public void find() {
+        final List<P3> points = random(1000, 1);
+        final D3Octree tree = new D3Octree().add(points);
+        assertEquals(tree.size(), points.size());
+
+        final Random random = new Random(2);
+        for(int k=0; k<200; k++) {
+            final double x = random.nextDouble()*120 - 10;
+            final double y = random.nextDouble()*120 - 10;
+            final double z = random.nextDouble()*120 - 10;
+            final double radius = k%2==0 ? Double.POSITIVE_INFINITY : 5;
+
+            P3 closest = null;
+            for(final P3 p : points) {
+                final double d2 = distance2(p, x, y, z);
+                if(d2<radius*radius && (closest==null || d2<distance2(closest, x, y, z))) {
+                    closest = p;
+                }
+            }
+
+            assertSame(tree.find(x, y, z, radius), closest);
+        }
+    }
+
+    @Test(description="findAll(x, y, z, radius) returns every point within the radius")
+    public void findAll() {
+        final List<P3> points = random(1000, 3);
+        final D3Octree tree = new D3Octree().add(points);
+
+        final List<IPoint3> found = tree.findAll(50, 50, 50, 20);
+        int expected = 0;
+        for(final P3 p : points) {
+            if(distance2(p, 50, 50, 50)<=400) {
+                expected++;
+                assertTrue(found.contains(p));
+            }
+        }
+
+        assertEquals(found.size(), expected);
+    }
+
+    @Test(description="visit(callback) applies pre-order traversal in octant order")
+    public void visit() {
+        final D3Octree tree = new D3Octree().add(List.of(new P3(0, 0, 0), new P3(1, 0, 0), new P3(0, 0, 1), new P3(1, 1, 1)));
+        final List<String> octs = new ArrayList<>();
+        tree.visit(oct -> {
+            octs.add(String.format("[%s,%s,%s]", oct.x0, oct.y0, oct.z0));
+
+            return false;
+        });
+
+        assertEquals(String.join(",", octs), "[0.0,0.0,0.0],[0.0,0.0,0.0],[1.0,0.0,0.0],[0.0,0.0,1.0],[1.0,1.0,1.0]");
+    }
+
+    @Test(description="visit(callback) does not recurse if the callback returns true")
+    public void visitPartial() {
+        final D3Octree tree = new D3Octree().add(random(100, 4));
+        final int[] count = new int[1];
+        tree.visit(oct -> {
+            count[0]++;
+
+            return true;
+        });
+
+        assertEquals(count[0], 1);
+    }
+
+    @Test(description="visitAfter(callback) visits children before their parent")
+    public void visitAfter() {
+        final D3Octree tree = new D3Octree().add(random(100, 5));
+        final List<D3OctNode> visited = new ArrayList<>();
+        tree.visitAfter(oct -> {
+            if(!oct.node.isLeaf()) {
+                for(final D3OctNode child : oct.node.getNodes()) {
+                    assertTrue(child==null || visited.contains(child));
+                }
+            }
+
+            visited.add(oct.node);
+        });
+
+        assertSame(visited.get(visited.size()-1), tree.getRoot());
+        assertEquals(tree.getData().size(), 100);
+    }
+}
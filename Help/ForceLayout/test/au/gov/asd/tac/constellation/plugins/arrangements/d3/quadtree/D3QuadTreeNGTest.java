@@ -19,7 +19,6 @@ import static au.gov.asd.tac.constellation.plugins.arrangements.d3.quadtree.P.p;
 import java.util.ArrayList;
 import java.util.List;
 import static org.testng.Assert.assertEquals;
-import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.assertArrayEquals;
@@ -117,6 +116,12 @@ public class D3QuadTreeNGTest {
         final D3QuadTree q = new D3QuadTree().add(new P(0, 0)).add(new P(2, 2));
 
         assertEquals(q.getRoot().toString(), "[{[0.0,0.0]},,,{[2.0,2.0]}]");
+        assertEquals(q.copy().cover(3, 3).getRoot().toString(), "[{[0.0,0.0]},,,{[2.0,2.0]}]");
+        assertEquals(q.copy().cover(-1, 3).getRoot().toString(), "[,[{[0.0,0.0]},,,{[2.0,2.0]}],,]");
+        assertEquals(q.copy().cover(3, -1).getRoot().toString(), "[,,[{[0.0,0.0]},,,{[2.0,2.0]}],]");
+        assertEquals(q.copy().cover(-1, -1).getRoot().toString(), "[,,,[{[0.0,0.0]},,,{[2.0,2.0]}]]");
+        assertEquals(q.copy().cover(5, 5).getRoot().toString(), "[[{[0.0,0.0]},,,{[2.0,2.0]}],,,]");
+        assertEquals(q.copy().cover(-5, -5).getRoot().toString(), "[,,,[,,,[{[0.0,0.0]},,,{[2.0,2.0]}]]]");
     }
 
     @Test(description="extent(extent) extends the extent")
@@ -333,10 +338,11 @@ public class D3QuadTreeNGTest {
         assertEquals(q.getRoot().toString(), "[[{[0.0,0.0]},,,{[0.4,0.4]}],,,{[0.9,0.9]}]");
     }
 
-    @Test(description="add vd addAll: addAll trees are probably more compact")
+    @Test(description="add vs addAll: both build the same quadtree")
     public void addSingleVsAll() {
-        // Adding a list results in a more compact quadtree because
-        // the extent of the data is computed first before adding the data.
+        // Adding a list computes the extent of the data before adding the data,
+        // but because cover() wraps the root as the extent doubles, adding the
+        // points one at a time ends up with the same quadtree.
         //
         final List<IPoint> points = new ArrayList();
         for(int i=0; i<6; i++) {
@@ -346,7 +352,7 @@ public class D3QuadTreeNGTest {
 
         final D3QuadTree q1 = new D3QuadTree();
         points.forEach(q1::add);
-        assertNotEquals(q0.getRoot().toString(), q1.getRoot().toString());
+        assertEquals(q0.getRoot().toString(), q1.getRoot().toString());
     }
 
     @Test(description="find(x, y) returns the closest point to the given [x, y]")
@@ -398,6 +404,19 @@ public class D3QuadTreeNGTest {
         assertNull(p6);
     }
 
+    @Test(description = "findAll(x, y, radius) returns every point within the radius")
+    public void findAllInRadius() {
+        final D3QuadTree q = new D3QuadTree();
+        q.add(List.of(xy(0, 0), xy(100, 0), xy(0, 100), xy(100, 100), xy(100, 100), xy(50, 50)));
+
+        assertEquals(q.findAll(20, 20, 10).size(), 0);
+        assertEquals(q.findAll(20, 20, 30).toString(), "[[0.0,0.0]]");
+        assertEquals(q.findAll(50, 50, 0).toString(), "[[50.0,50.0]]");
+        assertEquals(q.findAll(75, 75, 40).toString(), "[[50.0,50.0], [100.0,100.0], [100.0,100.0]]");
+        assertEquals(q.findAll(50, 50, 50 * Math.sqrt(2)).size(), 6);
+        assertEquals(new D3QuadTree().findAll(0, 0, 10).size(), 0);
+    }
+
     @Test(description="find(x, y, Inifinity) works")
     public void findInfinity() {
         final D3QuadTree q = new D3QuadTree();